@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client;
+
+/**
+ * A BatchCallback is the object called after each task of a batch, identified by its key, e.g., the entailment an
+ * explanation was requested for. It is called from the threads executing the tasks, so it must be thread safe.
+ * 
+ * @param <K> the type of the keys identifying the tasks
+ * @param <T> the type returned from the tasks
+ */
+public interface BatchCallback<K, T> {
+
+	/**
+	 * Executed when a task is executed with success
+	 * 
+	 * @param key the key of the task
+	 * @param value the result of the task
+	 */
+	public void success(K key, T value);
+
+	/**
+	 * Executed when a problem occurred during a task. The other tasks are not affected.
+	 * 
+	 * @param key the key of the task
+	 * @param exception the cause of the failure
+	 */
+	public void failure(K key, PelletClientException exception);
+}
@@ -69,4 +69,25 @@ public interface KnowledgeBase extends Iterable<KBPelletService> {
 	 * @return the list of services provided
 	 */
 	public Collection<KBPelletService> getServices();
+
+	/**
+	 * Get a fingerprint of the current state of the {@link KnowledgeBase} in the server, made of the HTTP validators
+	 * ({@code ETag} or {@code Last-Modified}) of its reasoning services. The server is probed again if it was never
+	 * probed, or if the last probe is older than {@link PelletServer#getVersionCheckInterval()}.
+	 * 
+	 * @return the version of the KB, or {@code null} if the server sends no validators, in which case the results of
+	 *         the KB are not cached
+	 * @throws PelletClientException if there was an error while probing the server
+	 */
+	public String getVersion() throws PelletClientException;
+
+	/**
+	 * Probe the server for the current state of the {@link KnowledgeBase}. If it changed, or if the server sends no
+	 * validators, all the results of the KB in the server's
+	 * {@link com.clarkparsia.pelletserver.client.cache.ResultCache ResultCache} are dropped.
+	 * 
+	 * @return the version of the KB, or {@code null} if the server sends no validators
+	 * @throws PelletClientException if there was an error while probing the server
+	 */
+	public String refreshVersion() throws PelletClientException;
 }
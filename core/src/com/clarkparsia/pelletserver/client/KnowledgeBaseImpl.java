@@ -15,8 +15,15 @@ import java.net.URL;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
+import com.clarkparsia.pelletserver.client.cache.ResultCache;
+import com.clarkparsia.pelletserver.client.services.Classify;
+import com.clarkparsia.pelletserver.client.services.Consistency;
+import com.clarkparsia.pelletserver.client.services.Realize;
+import com.clarkparsia.pelletserver.client.utils.RequestUtils;
 import com.google.common.collect.ClassToInstanceMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.MutableClassToInstanceMap;
 
@@ -48,6 +55,22 @@ public class KnowledgeBaseImpl implements KnowledgeBase {
 	 */
 	private PelletServer server;
 
+	/**
+	 * The services whose HTTP validators make up the version of the {@link KnowledgeBase}
+	 */
+	private static final List<Class<? extends KBPelletService>> VERSIONED_SERVICES = 
+		ImmutableList.<Class<? extends KBPelletService>> of(Consistency.class, Classify.class, Realize.class);
+
+	/**
+	 * The last known version of the {@link KnowledgeBase}, or {@code null} if the server sends no validators
+	 */
+	private String version;
+
+	/**
+	 * The time of the last version probe, or 0 if the KB was never probed
+	 */
+	private long versionTime;
+
 	public KnowledgeBaseImpl(PelletServer server, URL location, String name) {
 		this.server = server;
 		this.location = location;
@@ -119,6 +142,65 @@ public class KnowledgeBaseImpl implements KnowledgeBase {
 		return Collections.unmodifiableCollection(services.values());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.clarkparsia.pelletserver.client.KnowledgeBase#getVersion()
+	 */
+	public String getVersion() throws PelletClientException {
+		synchronized (this) {
+			if (versionTime != 0 && System.currentTimeMillis() - versionTime <= server.getVersionCheckInterval()) {
+				return version;
+			}
+		}
+
+		return refreshVersion();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.clarkparsia.pelletserver.client.KnowledgeBase#refreshVersion()
+	 */
+	public String refreshVersion() throws PelletClientException {
+		// The KB description only lists the services, so it stays the same when the KB is reloaded; the validators of
+		// the reasoning services change with the contents of the KB
+		StringBuilder validators = new StringBuilder();
+
+		for (Class<? extends KBPelletService> reasoning : VERSIONED_SERVICES) {
+			KBPelletService service = getService(reasoning);
+
+			// The probe runs without holding the lock, so a slow server doesn't block the threads with a fresh version
+			String validator = service != null 
+				? RequestUtils.validator(service.getEndpoint().getURL(), server.getVersionCheckTimeout()) : null;
+
+			if (validator != null) {
+				validators.append(service.getName()).append('=').append(validator).append(' ');
+			}
+		}
+
+		String probed = validators.length() > 0 ? validators.toString().trim() : null;
+
+		synchronized (this) {
+			version = probed;
+			versionTime = System.currentTimeMillis();
+		}
+
+		ResultCache cache = server.getResultCache();
+
+		if (cache != null) {
+			if (probed != null) {
+				cache.setVersion(ResultCache.scope(this), probed);
+			}
+			else {
+				// Without a version the results of the KB can't be validated, so they are not kept
+				cache.invalidate(ResultCache.scope(this));
+			}
+		}
+
+		return probed;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
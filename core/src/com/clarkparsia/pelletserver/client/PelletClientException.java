@@ -19,6 +19,11 @@ package com.clarkparsia.pelletserver.client;
  */
 public class PelletClientException extends Exception {
 
+	/**
+	 * The HTTP response code that caused the exception (-1 if it was not caused by an HTTP response)
+	 */
+	private int responseCode = -1;
+
 	public PelletClientException() {
 		super();
 	}
@@ -34,4 +39,23 @@ public class PelletClientException extends Exception {
 	public PelletClientException(String message, Throwable cause) {
 		super(message, cause);
 	}
+
+	public PelletClientException(String message, int responseCode) {
+		super(message);
+		this.responseCode = responseCode;
+	}
+
+	public PelletClientException(String message, int responseCode, Throwable cause) {
+		super(message, cause);
+		this.responseCode = responseCode;
+	}
+
+	/**
+	 * Get the HTTP response code that caused the exception
+	 * 
+	 * @return the response code, or -1 if the exception was not caused by an HTTP response
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
 }
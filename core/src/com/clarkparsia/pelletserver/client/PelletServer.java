@@ -21,6 +21,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.LogManager;
 
+import com.clarkparsia.pelletserver.client.cache.CallRecorder;
+import com.clarkparsia.pelletserver.client.cache.NegativeCache;
+import com.clarkparsia.pelletserver.client.cache.ResultCache;
 import com.clarkparsia.pelletserver.client.utils.PelletServerUtils;
 import com.clarkparsia.pelletserver.client.utils.RequestUtils;
 import com.clarkparsia.utils.web.Method;
@@ -88,6 +91,41 @@ public class PelletServer implements Iterable<KnowledgeBase> {
 	 */
 	private Method preferredMethod;
 
+	/**
+	 * The cache for service results (can be {@code null})
+	 */
+	private ResultCache resultCache;
+
+	/**
+	 * The cache for empty results and deterministic errors (can be {@code null})
+	 */
+	private NegativeCache negativeCache;
+
+	/**
+	 * The recorder of the calls made through the services of this server (can be {@code null})
+	 */
+	private CallRecorder callRecorder;
+
+	/**
+	 * The number of threads parsing N-Triples responses
+	 */
+	private int parserThreads = 1;
+
+	/**
+	 * Whether the RDF results of the services are indexed for pattern matching
+	 */
+	private boolean indexedGraphs;
+
+	/**
+	 * The maximum age, in milliseconds, of a {@link KnowledgeBase} version before the server is probed again
+	 */
+	private long versionCheckInterval = 60 * 1000;
+
+	/**
+	 * The connect and read timeout, in milliseconds, of a {@link KnowledgeBase} version probe
+	 */
+	private int versionCheckTimeout = 5 * 1000;
+
 	public PelletServer(URL location) throws PelletClientException {
 		this(location, Method.GET);
 	}
@@ -171,6 +209,142 @@ public class PelletServer implements Iterable<KnowledgeBase> {
 		return preferredMethod;
 	}
 
+	/**
+	 * Get the {@link ResultCache} used by the services of this server
+	 * 
+	 * @return the result cache or {@code null} if results are not cached
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Set the {@link ResultCache} used by the services of this server
+	 * 
+	 * @param resultCache the result cache or {@code null} to disable caching
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Get the {@link NegativeCache} used by the services of this server
+	 * 
+	 * @return the negative cache or {@code null} if empty results and errors are not cached
+	 */
+	public NegativeCache getNegativeCache() {
+		return negativeCache;
+	}
+
+	/**
+	 * Set the {@link NegativeCache} used by the services of this server
+	 * 
+	 * @param negativeCache the negative cache or {@code null} to disable negative caching
+	 */
+	public void setNegativeCache(NegativeCache negativeCache) {
+		this.negativeCache = negativeCache;
+	}
+
+	/**
+	 * Get the {@link CallRecorder} of the calls made through the services of this server
+	 * 
+	 * @return the call recorder or {@code null} if calls are not recorded
+	 */
+	public CallRecorder getCallRecorder() {
+		return callRecorder;
+	}
+
+	/**
+	 * Set the {@link CallRecorder} of the calls made through the services of this server
+	 * 
+	 * @param callRecorder the call recorder or {@code null} to disable recording
+	 */
+	public void setCallRecorder(CallRecorder callRecorder) {
+		this.callRecorder = callRecorder;
+	}
+
+	/**
+	 * Get the number of threads parsing the RDF responses of the services of this server
+	 * 
+	 * @return the number of threads, 1 by default
+	 */
+	public int getParserThreads() {
+		return parserThreads;
+	}
+
+	/**
+	 * Set the number of threads parsing the RDF responses of the services of this server. With more than one thread,
+	 * N-Triples is requested from the services that support it, and parsed in chunks by a
+	 * {@link com.clarkparsia.pelletserver.client.utils.ParallelNTriplesParser ParallelNTriplesParser}.
+	 * 
+	 * @param parserThreads the number of threads
+	 */
+	public void setParserThreads(int parserThreads) {
+		this.parserThreads = Math.max(1, parserThreads);
+	}
+
+	/**
+	 * Checks if the {@link org.openrdf.model.Graph Graph}s returned by the services of this server are
+	 * {@link com.clarkparsia.pelletserver.client.index.IndexedGraph IndexedGraph}s
+	 * 
+	 * @return true if the graphs are indexed, false by default
+	 */
+	public boolean isIndexedGraphs() {
+		return indexedGraphs;
+	}
+
+	/**
+	 * Set whether the {@link org.openrdf.model.Graph Graph}s returned by the services of this server, e.g., by
+	 * {@link com.clarkparsia.pelletserver.client.services.Classify Classify}, are immutable
+	 * {@link com.clarkparsia.pelletserver.client.index.IndexedGraph IndexedGraph}s, whose
+	 * {@link org.openrdf.model.Graph#match(org.openrdf.model.Resource, org.openrdf.model.URI, org.openrdf.model.Value, org.openrdf.model.Resource...)
+	 * match} is a binary search instead of a scan of the statements
+	 * 
+	 * @param indexedGraphs true to index the graphs
+	 */
+	public void setIndexedGraphs(boolean indexedGraphs) {
+		this.indexedGraphs = indexedGraphs;
+	}
+
+	/**
+	 * Get the maximum age of a {@link KnowledgeBase#getVersion() KnowledgeBase version} before the server is probed
+	 * again
+	 * 
+	 * @return the interval in milliseconds
+	 */
+	public long getVersionCheckInterval() {
+		return versionCheckInterval;
+	}
+
+	/**
+	 * Set the maximum age of a {@link KnowledgeBase#getVersion() KnowledgeBase version} before the server is probed
+	 * again
+	 * 
+	 * @param versionCheckInterval the interval in milliseconds
+	 */
+	public void setVersionCheckInterval(long versionCheckInterval) {
+		this.versionCheckInterval = versionCheckInterval;
+	}
+
+	/**
+	 * Get the connect and read timeout of a {@link KnowledgeBase#getVersion() KnowledgeBase version} probe
+	 * 
+	 * @return the timeout in milliseconds
+	 */
+	public int getVersionCheckTimeout() {
+		return versionCheckTimeout;
+	}
+
+	/**
+	 * Set the connect and read timeout of a {@link KnowledgeBase#getVersion() KnowledgeBase version} probe. A probe
+	 * that times out fails, and the results of the KB are not cached until the server answers again.
+	 * 
+	 * @param versionCheckTimeout the timeout in milliseconds
+	 */
+	public void setVersionCheckTimeout(int versionCheckTimeout) {
+		this.versionCheckTimeout = versionCheckTimeout;
+	}
+
 	/**
 	 * Get information about the server
 	 * 
@@ -11,10 +11,15 @@
 
 package com.clarkparsia.pelletserver.client;
 
+import java.util.Collection;
+import java.util.List;
+
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 /**
  * Common {@link MimeType}s used by {@link PelletServer}
@@ -27,9 +32,24 @@ public abstract class PelletServerMimeTypes {
 	public static MimeType JSON;
 	public static MimeType RDFXML;
 	public static MimeType TURTLE;
+	public static MimeType NTRIPLES;
 	public static MimeType HTML;
 
 	public static MimeType SPARQL_XML;
+	public static MimeType SPARQL_JSON;
+	public static MimeType SPARQL_BINARY;
+
+	/**
+	 * The RDF syntaxes, in order of preference: Turtle is the smallest on the wire, N-Triples the simplest to parse and
+	 * RDF/XML the slowest
+	 */
+	public static MimeType[] RDF_FORMATS;
+
+	/**
+	 * The RDF syntaxes, in order of preference when parsing on several threads or filtering statements: only N-Triples
+	 * can be split into chunks parsed in parallel, or filtered line by line before it is parsed
+	 */
+	public static MimeType[] RDF_FORMATS_PARALLEL;
 
 	/**
 	 * Get a {@link com.google.common.base.Predicate Predicate} that matches the given {@link MimeType}
@@ -45,13 +65,38 @@ public abstract class PelletServerMimeTypes {
 		};
 	}
 
+	/**
+	 * Get the {@link MimeType}s of {@code preferences} that are also in {@code supported}, in order of preference
+	 * 
+	 * @param supported the mimetypes supported by a service
+	 * @param preferences the mimetypes wanted, most preferred first
+	 * @return the mimetypes to negotiate, e.g., in an Accept header
+	 */
+	public static MimeType[] negotiate(Collection<MimeType> supported, MimeType... preferences) {
+		List<MimeType> accepted = Lists.newArrayList();
+
+		for (MimeType type : preferences) {
+			if (Iterables.any(supported, getPredicate(type))) {
+				accepted.add(type);
+			}
+		}
+
+		return accepted.toArray(new MimeType[accepted.size()]);
+	}
+
 	static {
 		try {
 			JSON = new MimeType("text/json");
 			RDFXML = new MimeType("application/rdf+xml");
 			TURTLE = new MimeType("text/turtle");
+			NTRIPLES = new MimeType("text/plain");
 			HTML = new MimeType("text/html");
 			SPARQL_XML = new MimeType("application/sparql-results+xml");
+			SPARQL_JSON = new MimeType("application/sparql-results+json");
+			SPARQL_BINARY = new MimeType("application/x-binary-rdf-results-table");
+
+			RDF_FORMATS = new MimeType[] { TURTLE, NTRIPLES, RDFXML };
+			RDF_FORMATS_PARALLEL = new MimeType[] { NTRIPLES, TURTLE, RDFXML };
 		}
 		catch (MimeTypeParseException e) {
 			e.printStackTrace();
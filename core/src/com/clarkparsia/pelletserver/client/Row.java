@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client;
+
+import java.util.List;
+
+import org.openrdf.model.Value;
+
+/**
+ * A row of a {@code SELECT} result, as read by the parser and passed to a {@link RowMapper}: the cells are the lexical
+ * forms of the values, and their type, datatype and language, so they can be converted to Java types without creating
+ * {@link Value}s.<br>
+ * The same Row is reused for all the rows of a result: its contents, including the {@link CharSequence}s it returns,
+ * are only valid until the mapper returns.
+ */
+public interface Row {
+
+	/**
+	 * Get the variables of the result, in column order
+	 * 
+	 * @return the variable names
+	 */
+	public List<String> getBindingNames();
+
+	/**
+	 * Get the column of a variable
+	 * 
+	 * @param name the variable name
+	 * @return the index of the column, or -1 if the variable is not in the result
+	 */
+	public int getColumn(String name);
+
+	/**
+	 * Checks if a variable is bound in this row
+	 * 
+	 * @param column the column
+	 * @return true if the variable is bound
+	 */
+	public boolean isBound(int column);
+
+	/**
+	 * Checks if the value of a column is a URI
+	 * 
+	 * @param column the column
+	 * @return true if the value is a URI
+	 */
+	public boolean isURI(int column);
+
+	/**
+	 * Checks if the value of a column is a blank node
+	 * 
+	 * @param column the column
+	 * @return true if the value is a blank node
+	 */
+	public boolean isBNode(int column);
+
+	/**
+	 * Checks if the value of a column is a literal
+	 * 
+	 * @param column the column
+	 * @return true if the value is a literal
+	 */
+	public boolean isLiteral(int column);
+
+	/**
+	 * Get the lexical form of the value of a column: the label of a literal, the IRI of a URI, or the identifier of a
+	 * blank node
+	 * 
+	 * @param column the column
+	 * @return the lexical form, only valid until the mapper returns, or {@code null} if the variable is unbound
+	 */
+	public CharSequence getLexicalForm(int column);
+
+	/**
+	 * Get the datatype of the literal of a column. The same datatypes are the same instances across rows.
+	 * 
+	 * @param column the column
+	 * @return the datatype IRI, or {@code null} if the value is not a typed literal
+	 */
+	public String getDatatype(int column);
+
+	/**
+	 * Get the language of the literal of a column
+	 * 
+	 * @param column the column
+	 * @return the language tag, or {@code null} if the value is not a literal with a language
+	 */
+	public String getLanguage(int column);
+
+	/**
+	 * Get the lexical form of the value of a column as a {@link String}
+	 * 
+	 * @param column the column
+	 * @return the lexical form, or {@code null} if the variable is unbound
+	 */
+	public String getString(int column);
+
+	/**
+	 * Get the lexical form of the value of a column as a {@code long}, e.g., of an {@code xsd:integer}
+	 * 
+	 * @param column the column
+	 * @return the number
+	 * @throws NumberFormatException if the variable is unbound or its lexical form is not an integer
+	 */
+	public long getLong(int column);
+
+	/**
+	 * Get the lexical form of the value of a column as a {@code double}, e.g., of an {@code xsd:double} or
+	 * {@code xsd:decimal}
+	 * 
+	 * @param column the column
+	 * @return the number
+	 * @throws NumberFormatException if the variable is unbound or its lexical form is not a number
+	 */
+	public double getDouble(int column);
+
+	/**
+	 * Get the lexical form of the value of a column as a {@code boolean}, as an {@code xsd:boolean}
+	 * 
+	 * @param column the column
+	 * @return true if the lexical form is {@code true} or {@code 1}
+	 */
+	public boolean getBoolean(int column);
+
+	/**
+	 * Get the value of a column as a {@link Value}, which is created if the parser did not create it
+	 * 
+	 * @param column the column
+	 * @return the value, or {@code null} if the variable is unbound
+	 */
+	public Value getValue(int column);
+}
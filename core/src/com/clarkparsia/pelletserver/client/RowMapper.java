@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client;
+
+/**
+ * A RowMapper converts the rows of a {@code SELECT} result to Java objects as they are parsed, e.g.:
+ * 
+ * <pre>
+ * List&lt;String&gt; labels = query.query(&quot;SELECT ?label WHERE { ... }&quot;, new RowMapper&lt;String&gt;() {
+ * 	public String map(Row row) {
+ * 		return row.getString(0);
+ * 	}
+ * });
+ * </pre>
+ * 
+ * Rows mapped to {@code null} are left out of the result, so a mapper can also aggregate the rows in its own fields
+ * (e.g., a sum or a count) without building a list.
+ * 
+ * @param <R>
+ *            The type of the mapped rows
+ */
+public interface RowMapper<R> {
+
+	/**
+	 * Map a row
+	 * 
+	 * @param row the row, which is reused for the next rows
+	 * @return the mapped row, or {@code null} to leave it out
+	 */
+	public R map(Row row);
+}
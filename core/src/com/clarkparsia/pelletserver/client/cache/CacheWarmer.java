@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.TupleQueryResult;
+
+import com.clarkparsia.pelletserver.client.KBPelletService;
+import com.clarkparsia.pelletserver.client.KnowledgeBase;
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.PelletServer;
+import com.clarkparsia.pelletserver.client.services.Classify;
+import com.clarkparsia.pelletserver.client.services.Consistency;
+import com.clarkparsia.pelletserver.client.services.Explain;
+import com.clarkparsia.pelletserver.client.services.Query;
+import com.clarkparsia.pelletserver.client.services.Realize;
+import com.clarkparsia.pelletserver.client.services.Search;
+import com.clarkparsia.pelletserver.client.utils.PelletServerUtils;
+
+/**
+ * Pre-populates the caches of a {@link PelletServer} by replaying {@link RecordedCall}s, usually the hottest calls
+ * saved by a {@link CallRecorder} before the last shutdown. Calls are replayed in the background with bounded
+ * concurrency; the process should wait for {@link #await()} (or poll {@link #isReady()}) before reporting itself ready.
+ * The replayed calls are not recorded again by the {@link CallRecorder} of the server.
+ */
+public class CacheWarmer {
+
+	private static final Logger log = Logger.getLogger(CacheWarmer.class.getName());
+
+	private PelletServer server;
+
+	private int concurrency;
+
+	private final Object lock = new Object();
+
+	/**
+	 * The number of calls submitted and not replayed yet, over all the {@link #warm(Collection)}s
+	 */
+	private int pending;
+
+	private AtomicInteger total = new AtomicInteger();
+	private AtomicInteger completed = new AtomicInteger();
+	private AtomicInteger failed = new AtomicInteger();
+
+	/**
+	 * Create a new CacheWarmer
+	 *
+	 * @param server
+	 *            the server whose caches are warmed up
+	 * @param concurrency
+	 *            the maximum number of calls replayed at the same time
+	 */
+	public CacheWarmer(PelletServer server, int concurrency) {
+		this.server = server;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Start replaying the {@code calls} in the background, in the given order
+	 *
+	 * @param calls
+	 *            the calls to replay
+	 */
+	public void warm(Collection<RecordedCall> calls) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "cache-warmer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		synchronized (lock) {
+			pending += calls.size();
+		}
+
+		total.addAndGet(calls.size());
+
+		for (final RecordedCall call : calls) {
+			executor.execute(new Runnable() {
+				public void run() {
+					CallRecorder recorder = server.getCallRecorder();
+
+					if (recorder != null) {
+						recorder.suspend();
+					}
+
+					try {
+						replay(call);
+					}
+					catch (Exception e) {
+						failed.incrementAndGet();
+						log.log(Level.FINE, "Unable to replay " + call, e);
+					}
+					finally {
+						if (recorder != null) {
+							recorder.resume();
+						}
+
+						completed.incrementAndGet();
+
+						synchronized (lock) {
+							if (--pending == 0) {
+								lock.notifyAll();
+							}
+						}
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+	}
+
+	/**
+	 * Wait until all the calls submitted so far were replayed
+	 *
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public void await() throws InterruptedException {
+		synchronized (lock) {
+			while (pending > 0) {
+				lock.wait();
+			}
+		}
+	}
+
+	/**
+	 * Wait until all the calls submitted so far were replayed, or the timeout elapses
+	 *
+	 * @param timeout
+	 *            the timeout in milliseconds
+	 * @return true if all the calls were replayed, false if the timeout elapsed
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+
+		synchronized (lock) {
+			for (long left = timeout; pending > 0 && left > 0; left = deadline - System.currentTimeMillis()) {
+				lock.wait(left);
+			}
+
+			return pending == 0;
+		}
+	}
+
+	/**
+	 * Checks if all the calls submitted so far were replayed
+	 *
+	 * @return true if the warm-up is done
+	 */
+	public boolean isReady() {
+		synchronized (lock) {
+			return pending == 0;
+		}
+	}
+
+	/**
+	 * Get the number of calls submitted for replay
+	 *
+	 * @return the number of calls
+	 */
+	public int getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * Get the number of calls replayed so far, including the failed ones
+	 *
+	 * @return the number of calls
+	 */
+	public int getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * Get the number of calls that could not be replayed
+	 *
+	 * @return the number of calls
+	 */
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Replay a call through the corresponding service, so its result ends up in the caches
+	 *
+	 * @param call
+	 *            the call
+	 * @throws PelletClientException
+	 *             if the service or KB is not available, or the call failed
+	 */
+	protected void replay(RecordedCall call) throws PelletClientException {
+		KnowledgeBase kb = call.getKnowledgeBase() != null ? server.getKnowledgeBase(call.getKnowledgeBase()) : null;
+		Class<? extends KBPelletService> cl = PelletServerUtils.getKBService(call.getService());
+
+		if (kb == null || cl == null) {
+			throw new PelletClientException("No service for " + call);
+		}
+
+		KBPelletService service = kb.getService(cl);
+
+		if (service == null) {
+			throw new PelletClientException("KB " + kb.getName() + " does not provide " + call.getService());
+		}
+
+		if (service instanceof Query) {
+			Object result = ((Query) service).query(call.getParameter(0), uri(call.getParameter(1)),
+							                        uri(call.getParameter(2)));
+
+			if (result instanceof TupleQueryResult) {
+				try {
+					((TupleQueryResult) result).close();
+				}
+				catch (Exception e) {
+					// the result was already cached, nothing else to do
+				}
+			}
+		}
+		else if (service instanceof Search) {
+			((Search) service).search(call.getParameter(0));
+		}
+		else if (service instanceof Explain) {
+			((Explain) service).query(call.getParameter(0));
+		}
+		else if (service instanceof Classify) {
+			((Classify) service).classify();
+		}
+		else if (service instanceof Realize) {
+			((Realize) service).realize();
+		}
+		else if (service instanceof Consistency) {
+			((Consistency) service).consistency();
+		}
+		else {
+			throw new PelletClientException("Service " + call.getService() + " can't be replayed");
+		}
+	}
+
+	private static URI uri(String uri) {
+		return uri != null && uri.length() > 0 ? new URIImpl(uri) : null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return "CacheWarmer " + getCompleted() + "/" + getTotal() + " (" + getFailed() + " failed)";
+	}
+}
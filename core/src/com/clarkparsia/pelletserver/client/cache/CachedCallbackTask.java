@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import com.clarkparsia.pelletserver.client.CallbackTask;
+import com.clarkparsia.pelletserver.client.KnowledgeBase;
+import com.clarkparsia.pelletserver.client.PelletClientException;
+
+/**
+ * A {@link CallbackTask} that looks its result up in a {@link ResultCache} and a {@link NegativeCache} before executing
+ * another task, and caches the result of that task.<br>
+ * Results of a {@link KnowledgeBase} are checked against its {@link KnowledgeBase#getVersion() version}, so they are
+ * dropped as soon as the KB changes. Empty results and deterministic errors only go to the {@link NegativeCache},
+ * tagged with the version of the KB too. Results of a KB without a version (its server sends no validators) are not
+ * kept by the {@link ResultCache}. A deterministic error of the version probe (e.g., a 404 for a missing KB) fails the
+ * call, and is kept by the {@link NegativeCache} under the scope of the KB; after any other probe error both caches are
+ * bypassed and the task is executed as if no cache was configured.
+ *
+ * @param <T> the result of the task
+ */
+public class CachedCallbackTask<T> implements CallbackTask<T> {
+
+	private ResultCache cache;
+	private NegativeCache negativeCache;
+	private KnowledgeBase kb;
+	private String key;
+	private CallbackTask<T> task;
+
+	/**
+	 * Create a new CachedCallbackTask
+	 *
+	 * @param cache
+	 *            the cache to use (can be {@code null})
+	 * @param negativeCache
+	 *            the cache for empty results and errors (can be {@code null})
+	 * @param kb
+	 *            the KB the result depends on (can be {@code null})
+	 * @param key
+	 *            the key of the result in the cache
+	 * @param task
+	 *            the task to execute when the result is not cached
+	 */
+	public CachedCallbackTask(ResultCache cache, NegativeCache negativeCache, KnowledgeBase kb, String key, 
+					          CallbackTask<T> task) {
+		this.cache = cache;
+		this.negativeCache = negativeCache;
+		this.kb = kb;
+		this.key = key;
+		this.task = task;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@SuppressWarnings("unchecked")
+	public T execute() throws PelletClientException {
+		String scope = null;
+		String version = null;
+
+		// the results are tagged with the version they are computed against, even if the KB changes meanwhile
+		if (kb != null && (cache != null || negativeCache != null)) {
+			String probe = "version\n" + ResultCache.scope(kb);
+
+			if (negativeCache != null) {
+				negativeCache.get(probe);
+			}
+
+			try {
+				version = kb.getVersion();
+			}
+			catch (PelletClientException e) {
+				// A deterministic error, e.g., a 404 for a missing KB, is what the call itself would get
+				if (NegativeCache.isDeterministic(e)) {
+					if (negativeCache != null) {
+						negativeCache.putFailure(probe, e);
+					}
+
+					throw e;
+				}
+
+				// Without a version, cached results can't be validated nor tagged, so the caches are bypassed
+				return task.execute();
+			}
+		}
+
+		if (negativeCache != null) {
+			Object empty = negativeCache.get(key, version);
+
+			if (empty != null) {
+				return (T) empty;
+			}
+		}
+
+		// the results of a KB whose server sends no validators can't be checked against its version, so they are not kept
+		boolean cacheable = cache != null && (kb == null || version != null);
+
+		if (cacheable) {
+			if (kb != null) {
+				scope = ResultCache.scope(kb);
+				cache.setVersion(scope, version);
+			}
+
+			Object cached = cache.get(key);
+
+			if (cached != null) {
+				return (T) cached;
+			}
+		}
+
+		T result;
+
+		try {
+			result = task.execute();
+		}
+		catch (PelletClientException e) {
+			if (negativeCache != null && NegativeCache.isDeterministic(e)) {
+				negativeCache.putFailure(key, version, e);
+			}
+
+			throw e;
+		}
+
+		if (negativeCache != null && NegativeCache.isEmpty(result)) {
+			negativeCache.putEmpty(key, version, result);
+			return result;
+		}
+
+		return cacheable ? cache.put(scope, version, key, result) : result;
+	}
+}
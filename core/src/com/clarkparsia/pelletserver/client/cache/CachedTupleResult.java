@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A fully materialized {@link TupleQueryResult}. A {@link TupleQueryResult} can only be iterated once, so the cache
+ * keeps its rows and hands out a new iteration over them on every hit.
+ */
+public class CachedTupleResult {
+
+	private List<String> bindingNames;
+	private List<BindingSet> bindingSets;
+
+	public CachedTupleResult(List<String> bindingNames, List<BindingSet> bindingSets) {
+		this.bindingNames = bindingNames;
+		this.bindingSets = bindingSets;
+	}
+
+	/**
+	 * Materialize (and consume) a {@link TupleQueryResult}
+	 *
+	 * @param result
+	 *            the result to materialize
+	 * @return the materialized result
+	 * @throws QueryEvaluationException
+	 *             if there was an error while iterating over {@code result}
+	 */
+	public static CachedTupleResult create(TupleQueryResult result) throws QueryEvaluationException {
+		List<BindingSet> bindingSets = Lists.newArrayList();
+
+		try {
+			while (result.hasNext()) {
+				bindingSets.add(result.next());
+			}
+		}
+		finally {
+			result.close();
+		}
+
+		return new CachedTupleResult(Lists.newArrayList(result.getBindingNames()), bindingSets);
+	}
+
+	/**
+	 * Get the binding names of the result
+	 *
+	 * @return the binding names
+	 */
+	public List<String> getBindingNames() {
+		return Collections.unmodifiableList(bindingNames);
+	}
+
+	/**
+	 * Get the rows of the result
+	 *
+	 * @return the rows
+	 */
+	public List<BindingSet> getBindingSets() {
+		return Collections.unmodifiableList(bindingSets);
+	}
+
+	/**
+	 * Get the number of cells of the result, used to weigh it in the cache
+	 *
+	 * @return rows times binding names
+	 */
+	public long size() {
+		return (long) bindingSets.size() * Math.max(1, bindingNames.size());
+	}
+
+	/**
+	 * Create a new {@link TupleQueryResult} over the rows
+	 *
+	 * @return a fresh iteration over the result
+	 */
+	public TupleQueryResult toTupleQueryResult() {
+		return new TupleQueryResultImpl(bindingNames, bindingSets);
+	}
+
+	/**
+	 * Create a new {@link TupleQueryResult} over the rows, followed by the rows left in {@code rest}. This resumes a
+	 * result of which only the first rows were read.
+	 *
+	 * @param rest
+	 *            the result the rows were read from
+	 * @return an iteration over the rows and then over {@code rest}, closing {@code rest} when it is closed
+	 */
+	public TupleQueryResult toTupleQueryResult(final TupleQueryResult rest) {
+		final Iterator<BindingSet> head = bindingSets.iterator();
+
+		return new TupleQueryResult() {
+			public List<String> getBindingNames() {
+				return Collections.unmodifiableList(bindingNames);
+			}
+
+			public boolean hasNext() throws QueryEvaluationException {
+				return head.hasNext() || rest.hasNext();
+			}
+
+			public BindingSet next() throws QueryEvaluationException {
+				return head.hasNext() ? head.next() : rest.next();
+			}
+
+			public void remove() throws QueryEvaluationException {
+				throw new UnsupportedOperationException();
+			}
+
+			public void close() throws QueryEvaluationException {
+				while (head.hasNext()) {
+					head.next();
+				}
+
+				rest.close();
+			}
+		};
+	}
+}
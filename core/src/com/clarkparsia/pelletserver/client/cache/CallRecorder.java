@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Records the service calls made through a {@link com.clarkparsia.pelletserver.client.PelletServer PelletServer} and
+ * how often each of them is made, so the hottest calls can be saved to a file and replayed by a {@link CacheWarmer}
+ * after a restart.<br>
+ * At most {@code maxTracked} distinct calls are tracked; when that limit is reached the least frequent half is
+ * forgotten. The calls a thread makes while recording is {@link #suspend() suspended}, e.g., the calls replayed by a
+ * {@link CacheWarmer}, are not recorded.
+ */
+public class CallRecorder {
+
+	private static final int FILE_MAGIC = 0x50535752; // "PSWR"
+
+	/**
+	 * The maximum number of distinct calls to track
+	 */
+	private int maxTracked;
+
+	/**
+	 * The number of times each call was made
+	 */
+	private ConcurrentHashMap<RecordedCall, AtomicLong> counts;
+
+	/**
+	 * Whether recording is suspended in the current thread
+	 */
+	private final ThreadLocal<Boolean> suspended = new ThreadLocal<Boolean>();
+
+	/**
+	 * Create a new CallRecorder
+	 *
+	 * @param maxTracked
+	 *            the maximum number of distinct calls to track
+	 */
+	public CallRecorder(int maxTracked) {
+		this.maxTracked = maxTracked;
+		this.counts = new ConcurrentHashMap<RecordedCall, AtomicLong>();
+	}
+
+	/**
+	 * Record a call
+	 *
+	 * @param call
+	 *            the call
+	 */
+	public void record(RecordedCall call) {
+		if (suspended.get() != null) {
+			return;
+		}
+
+		AtomicLong count = counts.get(call);
+
+		if (count == null) {
+			if (counts.size() >= maxTracked) {
+				prune();
+			}
+
+			AtomicLong previous = counts.putIfAbsent(call, count = new AtomicLong());
+
+			if (previous != null) {
+				count = previous;
+			}
+		}
+
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Stop recording the calls made by the current thread, until {@link #resume()}
+	 */
+	public void suspend() {
+		suspended.set(Boolean.TRUE);
+	}
+
+	/**
+	 * Record the calls made by the current thread again
+	 */
+	public void resume() {
+		suspended.remove();
+	}
+
+	/**
+	 * Get the most frequent calls, most frequent first
+	 *
+	 * @param n
+	 *            the maximum number of calls
+	 * @return the calls
+	 */
+	public List<RecordedCall> getTopCalls(int n) {
+		List<CallCount> entries = sortedCounts();
+		List<RecordedCall> calls = Lists.newArrayListWithExpectedSize(Math.min(n, entries.size()));
+
+		for (CallCount entry : entries.subList(0, Math.min(n, entries.size()))) {
+			calls.add(entry.call);
+		}
+
+		return calls;
+	}
+
+	/**
+	 * Get the number of distinct calls being tracked
+	 *
+	 * @return the number of calls
+	 */
+	public int size() {
+		return counts.size();
+	}
+
+	/**
+	 * Forget all the calls
+	 */
+	public void clear() {
+		counts.clear();
+	}
+
+	/**
+	 * Save the most frequent calls to a file
+	 *
+	 * @param file
+	 *            the file
+	 * @param n
+	 *            the maximum number of calls to save
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public void save(File file, int n) throws IOException {
+		List<RecordedCall> calls = getTopCalls(n);
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+		try {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(calls.size());
+
+			for (RecordedCall call : calls) {
+				writeString(out, call.getService());
+				writeString(out, call.getKnowledgeBase());
+
+				String[] parameters = call.getParameters();
+				out.writeInt(parameters.length);
+
+				for (String parameter : parameters) {
+					writeString(out, parameter);
+				}
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		file.delete();
+
+		if (!tmp.renameTo(file)) {
+			throw new IOException("Unable to rename " + tmp + " to " + file);
+		}
+	}
+
+	/**
+	 * Load the calls saved by {@link #save(File, int)}, most frequent first
+	 *
+	 * @param file
+	 *            the file
+	 * @return the calls
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static List<RecordedCall> load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+		try {
+			if (in.readInt() != FILE_MAGIC) {
+				throw new IOException(file + " is not a call log");
+			}
+
+			int size = in.readInt();
+			List<RecordedCall> calls = Lists.newArrayListWithExpectedSize(size);
+
+			for (int i = 0; i < size; i++) {
+				String service = readString(in);
+				String kb = readString(in);
+				String[] parameters = new String[in.readInt()];
+
+				for (int j = 0; j < parameters.length; j++) {
+					parameters[j] = readString(in);
+				}
+
+				calls.add(new RecordedCall(service, kb, parameters));
+			}
+
+			return calls;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Forget the least frequent half of the calls
+	 */
+	private synchronized void prune() {
+		if (counts.size() < maxTracked) {
+			return;
+		}
+
+		List<CallCount> entries = sortedCounts();
+
+		for (CallCount entry : entries.subList(maxTracked / 2, entries.size())) {
+			counts.remove(entry.call);
+		}
+	}
+
+	/**
+	 * Get a snapshot of the counts, most frequent first. The counts keep changing while calls are recorded, so they are
+	 * copied before being sorted.
+	 */
+	private List<CallCount> sortedCounts() {
+		List<CallCount> entries = Lists.newArrayListWithExpectedSize(counts.size());
+
+		for (Map.Entry<RecordedCall, AtomicLong> entry : counts.entrySet()) {
+			entries.add(new CallCount(entry.getKey(), entry.getValue().get()));
+		}
+
+		Collections.sort(entries, new Comparator<CallCount>() {
+			public int compare(CallCount e1, CallCount e2) {
+				return e1.count > e2.count ? -1 : (e1.count == e2.count ? 0 : 1);
+			}
+		});
+
+		return entries;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = s.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new String(bytes, "UTF-8");
+	}
+
+	private static class CallCount {
+		private final RecordedCall call;
+		private final long count;
+
+		public CallCount(RecordedCall call, long count) {
+			this.call = call;
+			this.count = count;
+		}
+	}
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The second tier of a {@link ResultCache}. Each entry is serialized with {@link ResultCodec} into its own file, and
+ * memory-mapped back when it is requested. Entries are evicted in least recently used order once the total size of
+ * the files exceeds the configured maximum. The access order is kept in the files' modification times, so the cache
+ * contents (and their order) survive a restart of the process.<br>
+ * Entries can be tagged with a scope and the version of that scope (see {@link ResultCache#setVersion(String, String)}),
+ * which are stored along with them.
+ */
+public class DiskCache {
+
+	private static final Logger log = Logger.getLogger(DiskCache.class.getName());
+
+	private static final int FILE_MAGIC = 0x50534346; // "PSCF"
+
+	private static final String SUFFIX = ".result";
+
+	/**
+	 * The directory holding the entries
+	 */
+	private File directory;
+
+	/**
+	 * The maximum size, in bytes, of all entries
+	 */
+	private long maxSize;
+
+	/**
+	 * The current size, in bytes, of all entries
+	 */
+	private long size;
+
+	/**
+	 * The entries, in access order
+	 */
+	private LinkedHashMap<String, DiskEntry> entries;
+
+	/**
+	 * Create a new DiskCache, loading any entries left in {@code directory} by a previous process
+	 *
+	 * @param directory
+	 *            the directory where entries are stored
+	 * @param maxSize
+	 *            the maximum size, in bytes, of all entries
+	 * @throws IOException
+	 *             if the directory can't be created
+	 */
+	public DiskCache(File directory, long maxSize) throws IOException {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, DiskEntry>(16, 0.75f, true);
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create cache directory " + directory);
+		}
+
+		load();
+	}
+
+	/**
+	 * Get an entry from the cache
+	 *
+	 * @param key
+	 *            the key of the entry
+	 * @return the (cached form of the) result or {@code null} if there is no entry for {@code key}
+	 */
+	public Object get(String key) {
+		DiskEntry entry;
+		MappedByteBuffer buffer;
+
+		synchronized (this) {
+			entry = entries.get(key);
+
+			if (entry == null) {
+				return null;
+			}
+
+			try {
+				buffer = map(entry.file);
+			}
+			catch (IOException e) {
+				log.log(Level.WARNING, "Unable to read cache entry " + entry.file, e);
+				remove(key);
+				return null;
+			}
+
+			entry.file.setLastModified(System.currentTimeMillis());
+		}
+
+		// Decoding can take a while for large graphs, so it is done outside of the lock. The mapping stays valid
+		// even if the entry is evicted meanwhile.
+		try {
+			if (!key.equals(readHeader(buffer).key)) {
+				return null;
+			}
+
+			return ResultCodec.decode(buffer);
+		}
+		catch (Exception e) {
+			log.log(Level.WARNING, "Unable to decode cache entry " + entry.file, e);
+
+			synchronized (this) {
+				if (entries.get(key) == entry) {
+					remove(key);
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Add an entry to the cache, evicting the least recently used entries if needed
+	 *
+	 * @param key
+	 *            the key of the entry
+	 * @param value
+	 *            the (cached form of the) result
+	 * @return true if the entry was stored, false if it could not be serialized or is larger than the cache
+	 */
+	public boolean put(String key, Object value) {
+		return put(key, value, null, null);
+	}
+
+	/**
+	 * Add an entry to the cache, evicting the least recently used entries if needed
+	 *
+	 * @param key
+	 *            the key of the entry
+	 * @param value
+	 *            the (cached form of the) result
+	 * @param scope
+	 *            the scope of the entry (can be {@code null})
+	 * @param version
+	 *            the version of the scope the entry belongs to (can be {@code null})
+	 * @return true if the entry was stored, false if it could not be serialized or is larger than the cache
+	 */
+	public boolean put(String key, Object value, String scope, String version) {
+		if (!ResultCodec.supports(value)) {
+			return false;
+		}
+
+		File file = new File(directory, fileName(key));
+		File tmp = null;
+		long length;
+
+		// The entry is encoded straight into a file of its own, outside of the lock, so large graphs are never
+		// held in memory a second time and concurrent puts don't wait for each other
+		try {
+			tmp = File.createTempFile(file.getName() + ".", ".tmp", directory);
+
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+
+			try {
+				out.write(header(key, scope, version));
+				ResultCodec.encode(value, out);
+			}
+			finally {
+				out.close();
+			}
+
+			length = tmp.length();
+		}
+		catch (IOException e) {
+			log.log(Level.WARNING, "Unable to write cache entry " + key, e);
+
+			if (tmp != null) {
+				tmp.delete();
+			}
+
+			return false;
+		}
+
+		if (length > maxSize) {
+			tmp.delete();
+			return false;
+		}
+
+		synchronized (this) {
+			remove(key);
+
+			if (!tmp.renameTo(file)) {
+				log.warning("Unable to rename " + tmp + " to " + file);
+				tmp.delete();
+				return false;
+			}
+
+			entries.put(key, new DiskEntry(file, length, scope, version));
+			size += length;
+
+			evict();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Remove an entry from the cache
+	 *
+	 * @param key
+	 *            the key of the entry
+	 */
+	public synchronized void remove(String key) {
+		DiskEntry entry = entries.remove(key);
+
+		if (entry != null) {
+			size -= entry.length;
+			entry.file.delete();
+		}
+	}
+
+	/**
+	 * Remove all the entries of {@code scope} that do not belong to {@code version}
+	 *
+	 * @param scope
+	 *            the scope of the entries
+	 * @param version
+	 *            the version to keep, or {@code null} to remove all the entries of {@code scope}
+	 * @return the number of removed entries
+	 */
+	public synchronized int invalidate(String scope, String version) {
+		int count = 0;
+		Iterator<DiskEntry> it = entries.values().iterator();
+
+		while (it.hasNext()) {
+			DiskEntry entry = it.next();
+
+			if (scope.equals(entry.scope) && (version == null || !version.equals(entry.version))) {
+				it.remove();
+				size -= entry.length;
+				entry.file.delete();
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Remove all the entries from the cache
+	 */
+	public synchronized void clear() {
+		for (DiskEntry entry : entries.values()) {
+			entry.file.delete();
+		}
+
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Checks if the cache has an entry for {@code key}
+	 *
+	 * @param key
+	 *            the key of the entry
+	 * @return true if there is an entry, false otherwise
+	 */
+	public synchronized boolean contains(String key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * Get the scope and version of an entry
+	 *
+	 * @param key
+	 *            the key of the entry
+	 * @return the scope and version of the entry, or {@code null} if there is no entry for {@code key}
+	 */
+	synchronized String[] getTag(String key) {
+		DiskEntry entry = entries.get(key);
+		return entry != null ? new String[] { entry.scope, entry.version } : null;
+	}
+
+	/**
+	 * Get the number of entries in the cache
+	 *
+	 * @return the number of entries
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Get the size, in bytes, of all entries
+	 *
+	 * @return the current size
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Get the maximum size, in bytes, of all entries
+	 *
+	 * @return the maximum size
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Evict the least recently used entries until the cache fits its maximum size
+	 */
+	private void evict() {
+		Iterator<DiskEntry> it = entries.values().iterator();
+
+		while (size > maxSize && it.hasNext()) {
+			DiskEntry entry = it.next();
+			it.remove();
+			size -= entry.length;
+			entry.file.delete();
+		}
+	}
+
+	/**
+	 * Load the entries left by a previous process, oldest first so the access order is preserved
+	 */
+	private void load() {
+		File[] files = directory.listFiles();
+
+		if (files == null) {
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified(), m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+
+		for (File file : files) {
+			if (file.getName().endsWith(".tmp")) {
+				file.delete();
+			}
+			else if (file.getName().endsWith(SUFFIX)) {
+				try {
+					DiskEntry entry = readHeader(file);
+					entry.file = file;
+					entry.length = file.length();
+					entries.put(entry.key, entry);
+					size += file.length();
+				}
+				catch (Exception e) {
+					log.log(Level.WARNING, "Discarding unreadable cache entry " + file, e);
+					file.delete();
+				}
+			}
+		}
+
+		evict();
+
+		log.fine("Loaded " + entries.size() + " cache entries (" + size + " bytes) from " + directory);
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = raf.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static byte[] header(String key, String scope, String version) throws IOException {
+		byte[][] strings = { key.getBytes("UTF-8"), scope != null ? scope.getBytes("UTF-8") : null, 
+						     version != null ? version.getBytes("UTF-8") : null };
+
+		int length = 4;
+		for (byte[] bytes : strings) {
+			length += 4 + (bytes != null ? bytes.length : 0);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(length);
+		header.putInt(FILE_MAGIC);
+
+		for (byte[] bytes : strings) {
+			if (bytes != null) {
+				header.putInt(bytes.length);
+				header.put(bytes);
+			}
+			else {
+				header.putInt(-1);
+			}
+		}
+
+		return header.array();
+	}
+
+	/**
+	 * Read the header of an entry without mapping the (possibly large) rest of the file
+	 */
+	private static DiskEntry readHeader(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 512));
+
+		try {
+			if (in.readInt() != FILE_MAGIC) {
+				throw new IOException("Not a cache entry");
+			}
+
+			DiskEntry entry = new DiskEntry(null, 0, null, null);
+			entry.key = readString(in);
+			entry.scope = readString(in);
+			entry.version = readString(in);
+
+			if (entry.key == null) {
+				throw new IOException("Cache entry without key");
+			}
+
+			return entry;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new String(bytes, "UTF-8");
+	}
+
+	private static DiskEntry readHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != FILE_MAGIC) {
+			throw new IOException("Not a cache entry");
+		}
+
+		DiskEntry entry = new DiskEntry(null, 0, null, null);
+		entry.key = readString(buffer);
+		entry.scope = readString(buffer);
+		entry.version = readString(buffer);
+
+		if (entry.key == null) {
+			throw new IOException("Cache entry without key");
+		}
+
+		return entry;
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+
+		return new String(bytes, "UTF-8");
+	}
+
+	private static String fileName(String key) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			StringBuilder name = new StringBuilder();
+
+			for (byte b : digest.digest(key.getBytes("UTF-8"))) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+
+			return name.append(SUFFIX).toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class DiskEntry {
+		private File file;
+		private long length;
+		private String key;
+		private String scope;
+		private String version;
+
+		public DiskEntry(File file, long length, String scope, String version) {
+			this.file = file;
+			this.length = length;
+			this.scope = scope;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return directory + " " + getEntryCount() + " entries, " + getSize() + "/" + maxSize + " bytes";
+	}
+}
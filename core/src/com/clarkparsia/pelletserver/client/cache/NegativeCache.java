@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Graph;
+
+import com.clarkparsia.openrdf.ExtGraph;
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.index.IndexedGraph;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+/**
+ * A short-lived cache of negative service results: empty results (e.g., an explanation of an entailment that does not
+ * hold, or a search without hits) and deterministic errors (e.g., a 404 for a missing KB). It is configured separately
+ * from the {@link ResultCache}, usually with a much shorter time to live, and keeps misbehaving callers from asking the
+ * server the same question over and over.<br>
+ * Entries can be tagged with the version of the KB they depend on, so they are not used once the KB changes. When the
+ * version probe of a KB fails with a deterministic error, that error is kept under the scope of the KB; after any other
+ * probe error the cache is bypassed for that KB.
+ */
+public class NegativeCache {
+
+	/**
+	 * The time to live, in milliseconds, of an entry
+	 */
+	private long timeToLive;
+
+	/**
+	 * The maximum number of entries
+	 */
+	private int maxEntries;
+
+	/**
+	 * The entries, in access order
+	 */
+	private LinkedHashMap<String, NegativeEntry> entries;
+
+	private AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Create a new NegativeCache
+	 *
+	 * @param timeToLive
+	 *            the time to live, in milliseconds, of an entry
+	 * @param maxEntries
+	 *            the maximum number of entries
+	 */
+	public NegativeCache(long timeToLive, final int maxEntries) {
+		this.timeToLive = timeToLive;
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, NegativeEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, NegativeEntry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Checks if a result is empty, and can be kept by this cache
+	 *
+	 * @param result
+	 *            the result
+	 * @return true if {@code result} is an empty {@link Graph} or {@link Collection}
+	 */
+	public static boolean isEmpty(Object result) {
+		return result instanceof Collection && ((Collection<?>) result).isEmpty();
+	}
+
+	/**
+	 * Checks if an error is deterministic, i.e., if the server will keep answering the same until the KB changes. These
+	 * are the client errors (4xx) other than timeouts and throttling.
+	 *
+	 * @param exception
+	 *            the error
+	 * @return true if the error is deterministic
+	 */
+	public static boolean isDeterministic(PelletClientException exception) {
+		int code = exception.getResponseCode();
+		return code >= 400 && code < 500 && code != 408 && code != 429;
+	}
+
+	/**
+	 * Get a negative result from the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 * @return an empty result or {@code null} if there is no (live) entry for {@code key}
+	 * @throws PelletClientException
+	 *             if the cached result is an error
+	 */
+	public Object get(String key) throws PelletClientException {
+		return get(key, null);
+	}
+
+	/**
+	 * Get a negative result of a version of a KB from the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 * @param version
+	 *            the current version of the KB the result depends on (can be {@code null})
+	 * @return an empty result or {@code null} if there is no (live) entry for {@code key}, or its entry is of another
+	 *         version
+	 * @throws PelletClientException
+	 *             if the cached result is an error
+	 */
+	public Object get(String key, String version) throws PelletClientException {
+		NegativeEntry entry;
+
+		synchronized (this) {
+			entry = entries.get(key);
+
+			if (entry == null) {
+				return null;
+			}
+
+			if (entry.expiration < System.currentTimeMillis() || !Objects.equal(version, entry.version)) {
+				entries.remove(key);
+				return null;
+			}
+		}
+
+		hits.incrementAndGet();
+
+		if (entry.failure != null) {
+			throw new PelletClientException(entry.failure.getMessage() + " (cached)", entry.failure.getResponseCode(),
+							                entry.failure);
+		}
+
+		// Hand out a new empty result, so callers can't fill the cached one; indexed graphs are immutable
+		if (entry.result instanceof IndexedGraph) {
+			return entry.result;
+		}
+		else if (entry.result instanceof Graph) {
+			return new ExtGraph();
+		}
+
+		return Lists.newArrayList();
+	}
+
+	/**
+	 * Add an empty result to the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 * @param result
+	 *            the empty result
+	 */
+	public void putEmpty(String key, Object result) {
+		putEmpty(key, null, result);
+	}
+
+	/**
+	 * Add an empty result of a version of a KB to the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 * @param version
+	 *            the version of the KB the result was computed against (can be {@code null})
+	 * @param result
+	 *            the empty result
+	 */
+	public synchronized void putEmpty(String key, String version, Object result) {
+		entries.put(key, new NegativeEntry(result, null, version, System.currentTimeMillis() + timeToLive));
+	}
+
+	/**
+	 * Add a deterministic error to the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 * @param failure
+	 *            the error
+	 */
+	public void putFailure(String key, PelletClientException failure) {
+		putFailure(key, null, failure);
+	}
+
+	/**
+	 * Add a deterministic error of a version of a KB to the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 * @param version
+	 *            the version of the KB the error was received for (can be {@code null})
+	 * @param failure
+	 *            the error
+	 */
+	public synchronized void putFailure(String key, String version, PelletClientException failure) {
+		entries.put(key, new NegativeEntry(null, failure, version, System.currentTimeMillis() + timeToLive));
+	}
+
+	/**
+	 * Remove all the entries from the cache
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Get the number of requests answered by the cache
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the time to live of an entry
+	 *
+	 * @return the time to live in milliseconds
+	 */
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Get the maximum number of entries
+	 *
+	 * @return the maximum number of entries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	private static class NegativeEntry {
+		private Object result;
+		private PelletClientException failure;
+		private String version;
+		private long expiration;
+
+		public NegativeEntry(Object result, PelletClientException failure, String version, long expiration) {
+			this.result = result;
+			this.failure = failure;
+			this.version = version;
+			this.expiration = expiration;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+
+import org.openrdf.model.Graph;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A read-only view of a {@link Graph}. The {@link ResultCache} hands out views of the graphs it keeps, so a hit
+ * neither copies the graph nor lets the caller modify it.
+ */
+public class ReadOnlyGraph extends AbstractCollection<Statement> implements Graph {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Graph graph;
+
+	/**
+	 * Create a new ReadOnlyGraph
+	 *
+	 * @param graph
+	 *            the graph to view
+	 */
+	public ReadOnlyGraph(Graph graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public int size() {
+		return graph.size();
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public Iterator<Statement> iterator() {
+		return Iterators.unmodifiableIterator(graph.iterator());
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public boolean contains(Object o) {
+		return graph.contains(o);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public ValueFactory getValueFactory() {
+		return graph.getValueFactory();
+	}
+
+	/**
+	 * A ReadOnlyGraph can't be modified
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	public boolean add(Resource subject, URI predicate, Value object, Resource... contexts) {
+		throw new UnsupportedOperationException("ReadOnlyGraph can't be modified");
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public Iterator<Statement> match(Resource subject, URI predicate, Value object, Resource... contexts) {
+		return Iterators.unmodifiableIterator(graph.match(subject, predicate, object, contexts));
+	}
+}
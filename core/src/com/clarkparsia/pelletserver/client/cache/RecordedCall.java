@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.util.Arrays;
+
+/**
+ * A service call recorded by a {@link CallRecorder}: the name of the service, the name of its KB and the parameters of
+ * the call
+ */
+public class RecordedCall {
+
+	private String service;
+	private String kb;
+	private String[] parameters;
+
+	/**
+	 * Create a new RecordedCall
+	 *
+	 * @param service
+	 *            the name of the service
+	 * @param kb
+	 *            the name of the KB (can be {@code null} for server services)
+	 * @param parameters
+	 *            the parameters of the call
+	 */
+	public RecordedCall(String service, String kb, String... parameters) {
+		this.service = service;
+		this.kb = kb;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Get the name of the service
+	 *
+	 * @return the service name
+	 */
+	public String getService() {
+		return service;
+	}
+
+	/**
+	 * Get the name of the KB
+	 *
+	 * @return the KB name, or {@code null} for server services
+	 */
+	public String getKnowledgeBase() {
+		return kb;
+	}
+
+	/**
+	 * Get the parameters of the call
+	 *
+	 * @return the parameters
+	 */
+	public String[] getParameters() {
+		return parameters.clone();
+	}
+
+	/**
+	 * Get a parameter of the call
+	 *
+	 * @param index
+	 *            the index of the parameter
+	 * @return the parameter or {@code null} if the call has no such parameter
+	 */
+	public String getParameter(int index) {
+		return index < parameters.length ? parameters[index] : null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof RecordedCall)) {
+			return false;
+		}
+
+		RecordedCall other = (RecordedCall) obj;
+
+		return service.equals(other.service) && (kb == null ? other.kb == null : kb.equals(other.kb)) 
+			&& Arrays.equals(parameters, other.parameters);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * (31 * service.hashCode() + (kb != null ? kb.hashCode() : 0)) + Arrays.hashCode(parameters);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return service + (kb != null ? "@" + kb : "") + " " + Arrays.toString(parameters);
+	}
+}
@@ -0,0 +1,567 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Graph;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+
+import com.clarkparsia.pelletserver.client.KnowledgeBase;
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.index.IndexedGraph;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A two-tier cache for service results.<br>
+ * The first tier keeps results on the heap, in least recently used order, up to a maximum weight (the number of
+ * statements of a {@link Graph}, or the number of cells of a {@link TupleQueryResult}). Results evicted from the heap,
+ * or too large to ever fit in it, spill over to an optional {@link DiskCache} and are mapped back (and promoted to the
+ * heap) when requested again. A {@link TupleQueryResult} is only read ahead up to a maximum weight (see
+ * {@link #setMaxTupleWeight(long)}): a larger result is not cached, and is streamed to the caller instead of being
+ * materialized.<br>
+ * <br>
+ * Hits are not copied, so callers can't modify them: {@link Graph}s are returned as {@link ReadOnlyGraph} views
+ * (the {@link IndexedGraph}s, which are immutable, as they are) and {@link List}s as unmodifiable views, and
+ * {@link TupleQueryResult}s are materialized and a new iteration is returned.<br>
+ * <br>
+ * Results can be put in a scope, usually a {@link KnowledgeBase} (see {@link #scope(KnowledgeBase)}), and are tagged
+ * with the version of their scope at that time. When the version of a scope changes (see
+ * {@link #setVersion(String, String)}) all the results of that scope are dropped at once, so results can be cached for
+ * long periods without ever serving a result computed on a previous state of a {@link KnowledgeBase}.
+ */
+public class ResultCache {
+
+	/**
+	 * The heap tier, in access order
+	 */
+	private LinkedHashMap<String, MemoryEntry> memory;
+
+	/**
+	 * The maximum weight of the heap tier
+	 */
+	private long maxWeight;
+
+	/**
+	 * The current weight of the heap tier
+	 */
+	private long weight;
+
+	/**
+	 * The maximum weight of a cached {@link TupleQueryResult}
+	 */
+	private long maxTupleWeight;
+
+	/**
+	 * The disk tier (can be {@code null})
+	 */
+	private DiskCache disk;
+
+	/**
+	 * The current version of each scope
+	 */
+	private Map<String, String> versions;
+
+	private AtomicLong memoryHits = new AtomicLong();
+	private AtomicLong diskHits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create a new heap-only ResultCache
+	 *
+	 * @param maxWeight
+	 *            the maximum weight of the heap tier
+	 */
+	public ResultCache(long maxWeight) {
+		this(maxWeight, null);
+	}
+
+	/**
+	 * Create a new ResultCache
+	 *
+	 * @param maxWeight
+	 *            the maximum weight of the heap tier
+	 * @param disk
+	 *            the disk tier (can be {@code null})
+	 */
+	public ResultCache(long maxWeight, DiskCache disk) {
+		this.maxWeight = maxWeight;
+		this.maxTupleWeight = maxWeight;
+		this.disk = disk;
+		this.memory = new LinkedHashMap<String, MemoryEntry>(16, 0.75f, true);
+		this.versions = Maps.newHashMap();
+	}
+
+	/**
+	 * Get the scope of the results of a {@link KnowledgeBase}
+	 *
+	 * @param kb
+	 *            the KB
+	 * @return the scope of the KB's results
+	 */
+	public static String scope(KnowledgeBase kb) {
+		return kb.getServer().getEndpoint().getURL() + " " + kb.getName();
+	}
+
+	/**
+	 * Get a result from the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 * @return the result or {@code null} if it is not cached
+	 */
+	public Object get(String key) {
+		synchronized (this) {
+			MemoryEntry entry = memory.get(key);
+
+			if (entry != null) {
+				memoryHits.incrementAndGet();
+				return fromCached(entry.value);
+			}
+		}
+
+		String[] tag = disk != null ? disk.getTag(key) : null;
+		Object value = tag != null && isCurrent(tag[0], tag[1]) ? disk.get(key) : null;
+
+		if (value == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		diskHits.incrementAndGet();
+
+		if (weigh(value) <= maxWeight) {
+			addToMemory(key, new MemoryEntry(value, weigh(value), tag[0], tag[1]));
+		}
+
+		return fromCached(value);
+	}
+
+	/**
+	 * Add a result to the cache.<br>
+	 * The cache keeps {@code result} itself (and reads {@link TupleQueryResult}s), so callers must use the returned
+	 * result instead.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 * @param key
+	 *            the key of the result
+	 * @param result
+	 *            the result
+	 * @return the result to use in place of {@code result}
+	 * @throws PelletClientException
+	 *             if {@code result} could not be read
+	 */
+	public <T> T put(String key, T result) throws PelletClientException {
+		return put(null, key, result);
+	}
+
+	/**
+	 * Add a result to the cache, tagged with the current version of {@code scope}.<br>
+	 * The cache keeps {@code result} itself (and reads {@link TupleQueryResult}s), so callers must use the returned
+	 * result instead.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 * @param scope
+	 *            the scope of the result (can be {@code null})
+	 * @param key
+	 *            the key of the result
+	 * @param result
+	 *            the result
+	 * @return the result to use in place of {@code result}
+	 * @throws PelletClientException
+	 *             if {@code result} could not be read
+	 */
+	public <T> T put(String scope, String key, T result) throws PelletClientException {
+		return put(scope, scope != null ? getVersion(scope) : null, key, result);
+	}
+
+	/**
+	 * Add a result to the cache, tagged with the version of {@code scope} it was computed against. If the version of
+	 * the scope changed since, e.g., while the result was computed, the result is stale and is not cached.<br>
+	 * The cache keeps {@code result} itself (and reads {@link TupleQueryResult}s), so callers must use the returned
+	 * result instead.
+	 *
+	 * @param <T>
+	 *            the type of the result
+	 * @param scope
+	 *            the scope of the result (can be {@code null})
+	 * @param version
+	 *            the version of the scope when the result was requested (can be {@code null})
+	 * @param key
+	 *            the key of the result
+	 * @param result
+	 *            the result
+	 * @return the result to use in place of {@code result}
+	 * @throws PelletClientException
+	 *             if {@code result} could not be read
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T put(String scope, String version, String key, T result) throws PelletClientException {
+		if (result == null) {
+			return null;
+		}
+
+		Object value = toCached(result);
+
+		if (value instanceof Partial) {
+			// too large to be cached, the rest of the result is streamed
+			return (T) ((Partial) value).resume();
+		}
+		MemoryEntry entry = new MemoryEntry(value, weigh(value), scope, version);
+
+		if (entry.weight <= maxWeight) {
+			addToMemory(key, entry);
+		}
+		else if (disk != null && isCurrent(scope, version)) {
+			disk.put(key, value, scope, version);
+
+			// the version may have changed while the result was written
+			if (!isCurrent(scope, version)) {
+				disk.remove(key);
+			}
+		}
+
+		return (T) fromCached(value);
+	}
+
+	/**
+	 * Get the maximum weight (the number of cells) of a cached {@link TupleQueryResult}
+	 *
+	 * @return the maximum weight, by default the maximum weight of the heap tier
+	 */
+	public synchronized long getMaxTupleWeight() {
+		return maxTupleWeight;
+	}
+
+	/**
+	 * Set the maximum weight (the number of cells) of a cached {@link TupleQueryResult}. Only that many cells of a
+	 * result are read ahead; a larger result is not cached, and the rest of it is streamed to the caller.
+	 *
+	 * @param maxTupleWeight
+	 *            the maximum weight
+	 */
+	public synchronized void setMaxTupleWeight(long maxTupleWeight) {
+		this.maxTupleWeight = maxTupleWeight;
+	}
+
+	/**
+	 * Get the current version of a scope
+	 *
+	 * @param scope
+	 *            the scope
+	 * @return the version or {@code null} if it is unknown
+	 */
+	public synchronized String getVersion(String scope) {
+		return versions.get(scope);
+	}
+
+	/**
+	 * Set the current version of a scope. If the version is different from the one the results of the scope were
+	 * tagged with, they are all dropped.
+	 *
+	 * @param scope
+	 *            the scope
+	 * @param version
+	 *            the new version
+	 */
+	public void setVersion(String scope, String version) {
+		synchronized (this) {
+			if (version.equals(versions.put(scope, version))) {
+				return;
+			}
+
+			removeFromMemory(scope, version);
+		}
+
+		// The disk tier can hold results of previous versions (e.g., left by a previous process)
+		if (disk != null) {
+			disk.invalidate(scope, version);
+		}
+	}
+
+	/**
+	 * Remove all the results of a scope
+	 *
+	 * @param scope
+	 *            the scope
+	 */
+	public void invalidate(String scope) {
+		synchronized (this) {
+			versions.remove(scope);
+			removeFromMemory(scope, null);
+		}
+
+		if (disk != null) {
+			disk.invalidate(scope, null);
+		}
+	}
+
+	/**
+	 * Remove a result from the cache
+	 *
+	 * @param key
+	 *            the key of the result
+	 */
+	public void remove(String key) {
+		synchronized (this) {
+			MemoryEntry entry = memory.remove(key);
+
+			if (entry != null) {
+				weight -= entry.weight;
+			}
+		}
+
+		if (disk != null) {
+			disk.remove(key);
+		}
+	}
+
+	/**
+	 * Remove all the results from the cache
+	 */
+	public void clear() {
+		synchronized (this) {
+			memory.clear();
+			weight = 0;
+		}
+
+		if (disk != null) {
+			disk.clear();
+		}
+	}
+
+	/**
+	 * Get the disk tier of the cache
+	 *
+	 * @return the disk tier or {@code null} if the cache is heap-only
+	 */
+	public DiskCache getDiskCache() {
+		return disk;
+	}
+
+	/**
+	 * Get the current weight of the heap tier
+	 *
+	 * @return the weight
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Get the number of results found in the heap tier
+	 *
+	 * @return the number of heap hits
+	 */
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	/**
+	 * Get the number of results found in the disk tier
+	 *
+	 * @return the number of disk hits
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * Get the number of results not found in the cache
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Checks if {@code version} is the current version of {@code scope}, or if the current version is unknown
+	 */
+	private synchronized boolean isCurrent(String scope, String version) {
+		String current = scope != null ? versions.get(scope) : null;
+
+		return current == null || current.equals(version);
+	}
+
+	/**
+	 * Remove the results of {@code scope} from the heap tier that do not belong to {@code version}
+	 */
+	private void removeFromMemory(String scope, String version) {
+		Iterator<MemoryEntry> it = memory.values().iterator();
+
+		while (it.hasNext()) {
+			MemoryEntry entry = it.next();
+
+			if (scope.equals(entry.scope) && (version == null || !version.equals(entry.version))) {
+				it.remove();
+				weight -= entry.weight;
+			}
+		}
+	}
+
+	/**
+	 * Add a (cached form of a) result to the heap tier, spilling the least recently used results to disk
+	 */
+	private void addToMemory(String key, MemoryEntry entry) {
+		List<Map.Entry<String, MemoryEntry>> evicted = Lists.newArrayList();
+
+		synchronized (this) {
+			// a result of an older version, e.g., computed while the version changed, is stale
+			if (!isCurrent(entry.scope, entry.version)) {
+				return;
+			}
+
+			MemoryEntry previous = memory.put(key, entry);
+
+			weight += entry.weight - (previous != null ? previous.weight : 0);
+
+			Iterator<Map.Entry<String, MemoryEntry>> it = memory.entrySet().iterator();
+
+			while (weight > maxWeight && it.hasNext()) {
+				Map.Entry<String, MemoryEntry> eldest = it.next();
+
+				if (eldest.getValue() != entry) {
+					it.remove();
+					weight -= eldest.getValue().weight;
+					evicted.add(eldest);
+				}
+			}
+		}
+
+		// Serialization can take a while for large graphs, so it is done outside of the lock
+		if (disk != null) {
+			for (Map.Entry<String, MemoryEntry> eldest : evicted) {
+				if (!disk.contains(eldest.getKey())) {
+					MemoryEntry spilled = eldest.getValue();
+					disk.put(eldest.getKey(), spilled.value, spilled.scope, spilled.version);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Convert a result into the form kept by the cache, or into a {@link Partial} result if it is too large to be kept
+	 */
+	private Object toCached(Object result) throws PelletClientException {
+		if (result instanceof TupleQueryResult) {
+			TupleQueryResult tuples = (TupleQueryResult) result;
+
+			try {
+				List<String> names = Lists.newArrayList(tuples.getBindingNames());
+				List<BindingSet> rows = Lists.newArrayList();
+				long width = Math.max(1, names.size());
+				long limit = getMaxTupleWeight();
+
+				while ((rows.size() + 1) * width <= limit && tuples.hasNext()) {
+					rows.add(tuples.next());
+				}
+
+				if (tuples.hasNext()) {
+					return new Partial(new CachedTupleResult(names, rows), tuples);
+				}
+
+				tuples.close();
+
+				return new CachedTupleResult(names, rows);
+			}
+			catch (Exception e) {
+				try {
+					tuples.close();
+				}
+				catch (QueryEvaluationException closeError) {
+					// the error of the iteration is reported
+				}
+
+				throw new PelletClientException("Problem materializing query result", e);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Convert the form kept by the cache back into a result, which the caller can read but not modify
+	 */
+	private static Object fromCached(Object value) {
+		if (value instanceof CachedTupleResult) {
+			return ((CachedTupleResult) value).toTupleQueryResult();
+		}
+		else if (value instanceof Graph && !(value instanceof IndexedGraph)) {
+			return new ReadOnlyGraph((Graph) value);
+		}
+		else if (value instanceof List) {
+			return Collections.unmodifiableList((List<?>) value);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Get the weight of the (cached form of a) result
+	 */
+	private static long weigh(Object value) {
+		if (value instanceof Graph) {
+			return Math.max(1, ((Graph) value).size());
+		}
+		else if (value instanceof CachedTupleResult) {
+			return Math.max(1, ((CachedTupleResult) value).size());
+		}
+		else if (value instanceof Collection) {
+			return Math.max(1, ((Collection<?>) value).size());
+		}
+
+		return 1;
+	}
+
+	/**
+	 * The first rows of a {@link TupleQueryResult} too large to be cached, and the result they were read from
+	 */
+	private static class Partial {
+		private CachedTupleResult head;
+		private TupleQueryResult rest;
+
+		public Partial(CachedTupleResult head, TupleQueryResult rest) {
+			this.head = head;
+			this.rest = rest;
+		}
+
+		public TupleQueryResult resume() {
+			return head.toTupleQueryResult(rest);
+		}
+	}
+
+	private static class MemoryEntry {
+		private Object value;
+		private long weight;
+		private String scope;
+		private String version;
+
+		public MemoryEntry(Object value, long weight, String scope, String version) {
+			this.value = value;
+			this.weight = weight;
+			this.scope = scope;
+			this.version = version;
+		}
+	}
+}
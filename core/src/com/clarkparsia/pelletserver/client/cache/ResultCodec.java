@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+
+import com.clarkparsia.openrdf.ExtGraph;
+import com.clarkparsia.pelletserver.client.index.IndexedGraph;
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+
+/**
+ * Compact binary serialization of cached service results.<br>
+ * Every string (IRI, blank node id, label, datatype, language, binding name) is written once per entry and referenced
+ * by a variable length index afterwards, so the large and highly repetitive classification and realization graphs
+ * shrink considerably compared to their RDF/XML form. An {@link IndexedGraph} is decoded as an IndexedGraph, any other
+ * graph as a modifiable one.
+ */
+public abstract class ResultCodec {
+
+	private static final int MAGIC = 0x50534331; // "PSC1"
+
+	private static final byte TYPE_GRAPH = 1;
+	private static final byte TYPE_TUPLE = 2;
+	private static final byte TYPE_BOOLEAN = 3;
+	private static final byte TYPE_INDEXED_GRAPH = 4;
+
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_URI = 1;
+	private static final byte VALUE_BNODE = 2;
+	private static final byte VALUE_LITERAL = 3;
+	private static final byte VALUE_LANG_LITERAL = 4;
+	private static final byte VALUE_TYPED_LITERAL = 5;
+
+	/**
+	 * Checks if {@code value} can be serialized by this codec
+	 *
+	 * @param value
+	 *            the (cached form of the) result
+	 * @return true if the value is supported, false otherwise
+	 */
+	public static boolean supports(Object value) {
+		return value instanceof Graph || value instanceof CachedTupleResult || value instanceof Boolean;
+	}
+
+	/**
+	 * Serialize a cached result. Large graphs are written as they are encoded, so {@code stream} should be buffered.
+	 *
+	 * @param value
+	 *            the (cached form of the) result
+	 * @param stream
+	 *            the stream to write to, which is left open
+	 * @throws IOException
+	 *             if the value can't be serialized or written
+	 */
+	public static void encode(Object value, OutputStream stream) throws IOException {
+		Encoder out = new Encoder(stream);
+		out.writeInt(MAGIC);
+
+		if (value instanceof Graph) {
+			Graph graph = (Graph) value;
+			out.write(graph instanceof IndexedGraph ? TYPE_INDEXED_GRAPH : TYPE_GRAPH);
+			out.writeVarInt(graph.size());
+
+			for (Statement statement : graph) {
+				out.writeValue(statement.getSubject());
+				out.writeValue(statement.getPredicate());
+				out.writeValue(statement.getObject());
+			}
+		}
+		else if (value instanceof CachedTupleResult) {
+			CachedTupleResult result = (CachedTupleResult) value;
+			List<String> names = result.getBindingNames();
+
+			out.write(TYPE_TUPLE);
+			out.writeVarInt(names.size());
+
+			for (String name : names) {
+				out.writeString(name);
+			}
+
+			out.writeVarInt(result.getBindingSets().size());
+
+			for (BindingSet bindingSet : result.getBindingSets()) {
+				for (String name : names) {
+					out.writeValue(bindingSet.getValue(name));
+				}
+			}
+		}
+		else if (value instanceof Boolean) {
+			out.write(TYPE_BOOLEAN);
+			out.write(((Boolean) value).booleanValue() ? 1 : 0);
+		}
+		else {
+			throw new IOException("Unsupported result type " + (value == null ? null : value.getClass()));
+		}
+	}
+
+	/**
+	 * Deserialize a cached result
+	 *
+	 * @param buffer
+	 *            the buffer positioned at the start of the serialized result
+	 * @return the (cached form of the) result
+	 * @throws IOException
+	 *             if the buffer does not contain a valid result
+	 */
+	public static Object decode(ByteBuffer buffer) throws IOException {
+		Decoder in = new Decoder(buffer);
+
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a cached result");
+		}
+
+		byte type = buffer.get();
+
+		if (type == TYPE_GRAPH) {
+			int size = in.readVarInt();
+			ExtGraph graph = new ExtGraph();
+
+			for (int i = 0; i < size; i++) {
+				Resource subject = (Resource) in.readValue();
+				URI predicate = (URI) in.readValue();
+				Value object = in.readValue();
+				graph.add(subject, predicate, object);
+			}
+
+			return graph;
+		}
+		else if (type == TYPE_INDEXED_GRAPH) {
+			int size = in.readVarInt();
+			IndexedGraph.Builder builder = new IndexedGraph.Builder();
+			ValueFactory factory = OpenRdfUtils.getValueFactory();
+
+			for (int i = 0; i < size; i++) {
+				Resource subject = (Resource) in.readValue();
+				URI predicate = (URI) in.readValue();
+				Value object = in.readValue();
+				builder.handleStatement(factory.createStatement(subject, predicate, object));
+			}
+
+			return builder.build();
+		}
+		else if (type == TYPE_TUPLE) {
+			int width = in.readVarInt();
+			List<String> names = new ArrayList<String>(width);
+
+			for (int i = 0; i < width; i++) {
+				names.add(in.readString());
+			}
+
+			int size = in.readVarInt();
+			List<BindingSet> bindingSets = new ArrayList<BindingSet>(size);
+
+			for (int i = 0; i < size; i++) {
+				MapBindingSet bindingSet = new MapBindingSet(width);
+
+				for (String name : names) {
+					Value value = in.readValue();
+
+					if (value != null) {
+						bindingSet.addBinding(name, value);
+					}
+				}
+
+				bindingSets.add(bindingSet);
+			}
+
+			return new CachedTupleResult(names, bindingSets);
+		}
+		else if (type == TYPE_BOOLEAN) {
+			return Boolean.valueOf(buffer.get() != 0);
+		}
+
+		throw new IOException("Unknown result type " + type);
+	}
+
+	/**
+	 * Writes the values of an entry, replacing repeated strings by references
+	 */
+	private static class Encoder {
+
+		private OutputStream out;
+		private Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		public Encoder(OutputStream out) {
+			this.out = out;
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+		}
+
+		public void writeInt(int v) throws IOException {
+			write((v >>> 24) & 0xFF);
+			write((v >>> 16) & 0xFF);
+			write((v >>> 8) & 0xFF);
+			write(v & 0xFF);
+		}
+
+		public void writeVarInt(int v) throws IOException {
+			while ((v & ~0x7F) != 0) {
+				write((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			write(v);
+		}
+
+		public void writeString(String s) throws IOException {
+			Integer index = strings.get(s);
+
+			if (index != null) {
+				// references are shifted by one, 0 announces a new string
+				writeVarInt(index + 1);
+			}
+			else {
+				byte[] bytes = s.getBytes("UTF-8");
+				strings.put(s, strings.size());
+				writeVarInt(0);
+				writeVarInt(bytes.length);
+				out.write(bytes, 0, bytes.length);
+			}
+		}
+
+		public void writeValue(Value value) throws IOException {
+			if (value == null) {
+				write(VALUE_NULL);
+			}
+			else if (value instanceof URI) {
+				write(VALUE_URI);
+				writeString(value.stringValue());
+			}
+			else if (value instanceof BNode) {
+				write(VALUE_BNODE);
+				writeString(((BNode) value).getID());
+			}
+			else {
+				Literal literal = (Literal) value;
+
+				if (literal.getLanguage() != null) {
+					write(VALUE_LANG_LITERAL);
+					writeString(literal.getLabel());
+					writeString(literal.getLanguage());
+				}
+				else if (literal.getDatatype() != null) {
+					write(VALUE_TYPED_LITERAL);
+					writeString(literal.getLabel());
+					writeString(literal.getDatatype().stringValue());
+				}
+				else {
+					write(VALUE_LITERAL);
+					writeString(literal.getLabel());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the values of an entry, resolving string references
+	 */
+	private static class Decoder {
+
+		private ByteBuffer buffer;
+		private List<String> strings = new ArrayList<String>();
+		private ValueFactory factory = OpenRdfUtils.getValueFactory();
+
+		public Decoder(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do {
+				b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			return value;
+		}
+
+		public String readString() throws IOException {
+			int ref = readVarInt();
+
+			if (ref > 0) {
+				return strings.get(ref - 1);
+			}
+
+			byte[] bytes = new byte[readVarInt()];
+			buffer.get(bytes);
+
+			String s = new String(bytes, "UTF-8");
+			strings.add(s);
+
+			return s;
+		}
+
+		public Value readValue() throws IOException {
+			byte tag = buffer.get();
+
+			switch (tag) {
+				case VALUE_NULL:
+					return null;
+				case VALUE_URI:
+					return factory.createURI(readString());
+				case VALUE_BNODE:
+					return factory.createBNode(readString());
+				case VALUE_LITERAL:
+					return factory.createLiteral(readString());
+				case VALUE_LANG_LITERAL:
+					return factory.createLiteral(readString(), readString());
+				case VALUE_TYPED_LITERAL:
+					return factory.createLiteral(readString(), factory.createURI(readString()));
+				default:
+					throw new IOException("Unknown value tag " + tag);
+			}
+		}
+	}
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.index;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+import com.clarkparsia.pelletserver.client.Row;
+import com.clarkparsia.pelletserver.client.RowMapper;
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+/**
+ * A {@code SELECT} result stored by column: the distinct values of the result are numbered once, in a dictionary shared
+ * by all the columns, and each variable is an array of value ids, one per row. A cell costs four bytes instead of a
+ * {@link org.openrdf.query.Binding Binding} and its {@link Value}, and rows are read through a {@link Cursor} that
+ * allocates nothing.<br>
+ * A ColumnarResult is immutable, and safe to use from several threads, each with its own cursor.
+ */
+public class ColumnarResult {
+
+	/**
+	 * The id of the cells of unbound variables
+	 */
+	public static final int UNBOUND = -1;
+
+	private final List<String> bindingNames;
+
+	private final Value[] values;
+
+	/**
+	 * The value ids of each variable, by row
+	 */
+	private final int[][] columns;
+
+	private final int size;
+
+	private ColumnarResult(List<String> bindingNames, List<Value> values, IntList[] columns, int size) {
+		this.bindingNames = Collections.unmodifiableList(Lists.newArrayList(bindingNames));
+		this.values = values.toArray(new Value[values.size()]);
+		this.columns = new int[columns.length][];
+		this.size = size;
+
+		for (int i = 0; i < columns.length; i++) {
+			this.columns[i] = columns[i].toArray();
+		}
+	}
+
+	/**
+	 * Store a result by column, consuming it. The rows of a result parsed from SPARQL/JSON or SPARQL/XML are read
+	 * without creating {@link BindingSet}s, and a {@link Value} is only created for each distinct value.
+	 *
+	 * @param result
+	 *            the result, which is closed
+	 * @return the columnar result
+	 * @throws QueryEvaluationException
+	 *             if there was an error while iterating over {@code result}
+	 */
+	public static ColumnarResult create(TupleQueryResult result) throws QueryEvaluationException {
+		final Builder builder = new Builder(result.getBindingNames());
+
+		OpenRdfUtils.mapRows(result, new RowMapper<Void>() {
+			public Void map(Row row) {
+				builder.add(row);
+				return null;
+			}
+		});
+
+		return builder.build();
+	}
+
+	/**
+	 * Get the variables of the result, in column order
+	 *
+	 * @return the variable names
+	 */
+	public List<String> getBindingNames() {
+		return bindingNames;
+	}
+
+	/**
+	 * Get the column of a variable
+	 *
+	 * @param name
+	 *            the variable name
+	 * @return the index of the column, or -1 if the variable is not in the result
+	 */
+	public int getColumn(String name) {
+		return bindingNames.indexOf(name);
+	}
+
+	/**
+	 * Get the number of rows
+	 *
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of distinct values of the result
+	 *
+	 * @return the number of values
+	 */
+	public int getValueCount() {
+		return values.length;
+	}
+
+	/**
+	 * Get a value by id
+	 *
+	 * @param id
+	 *            the id
+	 * @return the value, or {@code null} if the id is {@link #UNBOUND}
+	 */
+	public Value getValue(int id) {
+		return id == UNBOUND ? null : values[id];
+	}
+
+	/**
+	 * Get the value id of a cell
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the id of the value, or {@link #UNBOUND}
+	 */
+	public int getId(int row, int column) {
+		return columns[column][row];
+	}
+
+	/**
+	 * Get the value of a cell
+	 *
+	 * @param row
+	 *            the row
+	 * @param column
+	 *            the column
+	 * @return the value, or {@code null} if the variable is unbound in the row
+	 */
+	public Value getValue(int row, int column) {
+		return getValue(columns[column][row]);
+	}
+
+	/**
+	 * Copy the value ids of a range of rows of a column
+	 *
+	 * @param column
+	 *            the column
+	 * @param from
+	 *            the first row
+	 * @param target
+	 *            the array receiving the ids
+	 * @param offset
+	 *            the position in {@code target} of the first id
+	 * @param length
+	 *            the number of rows
+	 */
+	public void getIds(int column, int from, int[] target, int offset, int length) {
+		System.arraycopy(columns[column], from, target, offset, length);
+	}
+
+	/**
+	 * Get the value ids of a column
+	 *
+	 * @param column
+	 *            the column
+	 * @return a copy of the ids, one per row
+	 */
+	public int[] getIds(int column) {
+		return columns[column].clone();
+	}
+
+	/**
+	 * Get a cursor over the rows of the result
+	 *
+	 * @return a cursor before the first row
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Get the rows of the result as {@link BindingSet}s, which are created as they are iterated
+	 *
+	 * @return the result
+	 */
+	public TupleQueryResult toTupleQueryResult() {
+		return new TupleQueryResultImpl(bindingNames, new Iterable<BindingSet>() {
+			public Iterator<BindingSet> iterator() {
+				return new Iterator<BindingSet>() {
+					private Cursor cursor = cursor();
+
+					public boolean hasNext() {
+						return cursor.getRow() + 1 < size;
+					}
+
+					public BindingSet next() {
+						if (!cursor.next()) {
+							throw new NoSuchElementException();
+						}
+
+						MapBindingSet row = new MapBindingSet(columns.length);
+
+						for (int i = 0; i < columns.length; i++) {
+							Value value = cursor.getValue(i);
+
+							if (value != null) {
+								row.addBinding(bindingNames.get(i), value);
+							}
+						}
+
+						return row;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Get the approximate number of bytes used by the result, not counting the values themselves
+	 *
+	 * @return the number of bytes
+	 */
+	public long getMemoryFootprint() {
+		return 16 + 4L * values.length + columns.length * (16 + 4L * size);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return "ColumnarResult(bindingNames=" + bindingNames + ", rows=" + size + ", values=" + values.length + ")";
+	}
+
+	/**
+	 * Stores the {@link Row}s of a result by column as they are read, e.g., by a {@link RowMapper}. A cell is looked up
+	 * in the dictionary by its lexical form, type, datatype and language, so only the first occurrence of each distinct
+	 * value creates a {@link Value}.
+	 */
+	public static class Builder {
+
+		private final List<String> bindingNames;
+
+		private final List<Value> values = Lists.newArrayList();
+
+		/**
+		 * The hash of each value of the dictionary
+		 */
+		private final IntList hashes = new IntList(1024);
+
+		/**
+		 * The open addressing table of the dictionary: value ids plus one, 0 for an empty slot
+		 */
+		private int[] table = new int[1024];
+
+		private final IntList[] columns;
+
+		private int size;
+
+		/**
+		 * Create a new Builder
+		 *
+		 * @param bindingNames
+		 *            the variables of the result, in the column order of its rows
+		 */
+		public Builder(List<String> bindingNames) {
+			this.bindingNames = bindingNames;
+			this.columns = new IntList[bindingNames.size()];
+
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = new IntList(1024);
+			}
+		}
+
+		/**
+		 * Add a row
+		 *
+		 * @param row
+		 *            the row, whose columns are in the order of the variables of the builder
+		 */
+		public void add(Row row) {
+			for (int i = 0; i < columns.length; i++) {
+				columns[i].add(row.isBound(i) ? id(row, i) : UNBOUND);
+			}
+
+			size++;
+		}
+
+		/**
+		 * Store the rows added so far. The builder should not be used afterwards.
+		 *
+		 * @return the columnar result
+		 */
+		public ColumnarResult build() {
+			return new ColumnarResult(bindingNames, values, columns, size);
+		}
+
+		private int id(Row row, int column) {
+			int hash = hash(row, column);
+			int mask = table.length - 1;
+
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				int id = table[slot] - 1;
+
+				if (id == UNBOUND) {
+					id = values.size();
+					values.add(row.getValue(column));
+					hashes.add(hash);
+					table[slot] = id + 1;
+
+					if (values.size() * 2 > table.length) {
+						rehash();
+					}
+
+					return id;
+				}
+				else if (hashes.get(id) == hash && matches(values.get(id), row, column)) {
+					return id;
+				}
+			}
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+
+			for (int id = 0; id < values.size(); id++) {
+				int slot = hashes.get(id) & mask;
+
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+
+				table[slot] = id + 1;
+			}
+		}
+
+		private static int hash(Row row, int column) {
+			CharSequence lexical = row.getLexicalForm(column);
+			int hash = row.isURI(column) ? 1 : row.isBNode(column) ? 2 : 3;
+
+			for (int i = 0; i < lexical.length(); i++) {
+				hash = 31 * hash + lexical.charAt(i);
+			}
+
+			hash = 31 * hash + Objects.hashCode(row.getDatatype(column));
+			hash = 31 * hash + Objects.hashCode(row.getLanguage(column));
+
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean matches(Value value, Row row, int column) {
+			if (row.isURI(column) ? !(value instanceof URI) : row.isBNode(column) ? !(value instanceof BNode)
+							: !(value instanceof Literal)) {
+				return false;
+			}
+
+			CharSequence lexical = row.getLexicalForm(column);
+			String string = value.stringValue();
+
+			if (lexical.length() != string.length()) {
+				return false;
+			}
+
+			for (int i = 0; i < string.length(); i++) {
+				if (lexical.charAt(i) != string.charAt(i)) {
+					return false;
+				}
+			}
+
+			if (value instanceof Literal) {
+				Literal literal = (Literal) value;
+				URI datatype = literal.getDatatype();
+
+				return Objects.equal(row.getDatatype(column), datatype != null ? datatype.stringValue() : null)
+					   && Objects.equal(row.getLanguage(column), literal.getLanguage());
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the rows of a {@link ColumnarResult} in order, without allocating:
+	 *
+	 * <pre>
+	 * ColumnarResult.Cursor cursor = result.cursor();
+	 * while (cursor.next()) {
+	 * 	Value value = cursor.getValue(0);
+	 * }
+	 * </pre>
+	 */
+	public class Cursor {
+
+		private int row = -1;
+
+		/**
+		 * Move to the next row
+		 *
+		 * @return false if there are no more rows
+		 */
+		public boolean next() {
+			if (row + 1 < size) {
+				row++;
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * Get the current row
+		 *
+		 * @return the index of the row, -1 before the first row
+		 */
+		public int getRow() {
+			return row;
+		}
+
+		/**
+		 * Move before a row
+		 *
+		 * @param row
+		 *            the row that {@link #next()} moves to
+		 */
+		public void seek(int row) {
+			this.row = row - 1;
+		}
+
+		/**
+		 * Get the value id of a column in the current row
+		 *
+		 * @param column
+		 *            the column
+		 * @return the id of the value, or {@link ColumnarResult#UNBOUND}
+		 */
+		public int getId(int column) {
+			return columns[column][row];
+		}
+
+		/**
+		 * Get the value of a column in the current row
+		 *
+		 * @param column
+		 *            the column
+		 * @return the value, or {@code null} if the variable is unbound
+		 */
+		public Value getValue(int column) {
+			return ColumnarResult.this.getValue(columns[column][row]);
+		}
+	}
+}
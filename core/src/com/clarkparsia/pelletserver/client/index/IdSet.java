@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable set of ids, stored in the smaller of two forms: a sorted array of the ids when they are sparse, or a
+ * {@link BitSet} when they are dense
+ */
+final class IdSet {
+
+	static final IdSet EMPTY = new IdSet(new int[0], null);
+
+	/**
+	 * The ids, sorted, or {@code null} if they are in {@link #bits}
+	 */
+	private final int[] ids;
+
+	private final BitSet bits;
+
+	private IdSet(int[] ids, BitSet bits) {
+		this.ids = ids;
+		this.bits = bits;
+	}
+
+	/**
+	 * Create the set of the bits of {@code bits}, which is kept if it is the smaller form
+	 */
+	static IdSet of(BitSet bits) {
+		int cardinality = bits.cardinality();
+
+		if (cardinality == 0) {
+			return EMPTY;
+		}
+
+		// an int per id, or a bit per id up to the largest
+		if ((long) cardinality * Integer.SIZE < bits.length()) {
+			int[] ids = new int[cardinality];
+
+			for (int i = 0, id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+				ids[i++] = id;
+			}
+
+			return new IdSet(ids, null);
+		}
+
+		BitSet copy = new BitSet(bits.length());
+		copy.or(bits);
+
+		return new IdSet(null, copy);
+	}
+
+	boolean contains(int id) {
+		return ids != null ? Arrays.binarySearch(ids, id) >= 0 : bits.get(id);
+	}
+
+	int size() {
+		return ids != null ? ids.length : bits.cardinality();
+	}
+
+	/**
+	 * Add the ids of this set to {@code target}
+	 */
+	void addTo(BitSet target) {
+		if (ids != null) {
+			for (int id : ids) {
+				target.set(id);
+			}
+		}
+		else {
+			target.or(bits);
+		}
+	}
+
+	int[] toArray() {
+		if (ids != null) {
+			return ids.clone();
+		}
+
+		int[] result = new int[bits.cardinality()];
+
+		for (int i = 0, id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+			result[i++] = id;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the approximate number of bytes used by this set
+	 */
+	long getMemoryFootprint() {
+		// object header and fields, plus the array header
+		long bytes = 16 + 16;
+
+		if (ids != null) {
+			bytes += (long) ids.length * 4;
+		}
+		else {
+			bytes += 16 + bits.size() / 8;
+		}
+
+		return bytes;
+	}
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.index;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.openrdf.model.Graph;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable {@link Graph} of the statements of a service result, indexed for {@link #match(Resource, URI, Value,
+ * Resource...) pattern matching}.<br>
+ * The values of the statements are numbered, and each statement is stored as three ids in three sorted arrays: by
+ * subject, predicate and object (SPO), by predicate, object and subject (POS), and by object, subject and predicate
+ * (OSP). Any pattern is then a range of one of the arrays, found by binary search, and the {@link Statement}s are only
+ * created while iterating. The statements have no context.<br>
+ * An IndexedGraph is built in one go with a {@link Builder}, once all the statements are parsed. It can't be modified,
+ * and is safe to use from several threads.
+ */
+public class IndexedGraph extends AbstractCollection<Statement> implements Graph {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The positions of the subject, predicate and object ids in the rows of each index
+	 */
+	private static final int[][] COLUMNS = { { 0, 1, 2 }, { 2, 0, 1 }, { 1, 2, 0 } };
+
+	private static final int SPO = 0;
+
+	private static final int POS = 1;
+
+	private static final int OSP = 2;
+
+	private final Value[] values;
+
+	/**
+	 * The ids of the values, in an open addressing hash table, -1 in the empty slots
+	 */
+	private final int[] ids;
+
+	/**
+	 * The rows of each index, three ids per statement
+	 */
+	private final int[][] indexes;
+
+	private final int size;
+
+	private IndexedGraph(Builder builder) {
+		values = builder.values.toArray(new Value[builder.values.size()]);
+		ids = hashTable(values);
+
+		int[] s = builder.subjects.toArray();
+		int[] p = builder.predicates.toArray();
+		int[] o = builder.objects.toArray();
+
+		int[] spo = distinct(sort(s, p, o, values.length));
+		size = spo.length / 3;
+
+		for (int i = 0; i < size; i++) {
+			s[i] = spo[i * 3];
+			p[i] = spo[i * 3 + 1];
+			o[i] = spo[i * 3 + 2];
+		}
+
+		s = prefix(s, size);
+		p = prefix(p, size);
+		o = prefix(o, size);
+
+		indexes = new int[][] { spo, sort(p, o, s, values.length), sort(o, s, p, values.length) };
+	}
+
+	private static int[] hashTable(Value[] values) {
+		int capacity = Integer.highestOneBit(Math.max(values.length, 1)) * 4;
+		int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+
+		for (int id = 0; id < values.length; id++) {
+			int slot = slot(values[id], capacity);
+
+			while (table[slot] != -1) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+
+			table[slot] = id;
+		}
+
+		return table;
+	}
+
+	private static int slot(Value value, int capacity) {
+		int h = value.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (capacity - 1);
+	}
+
+	/**
+	 * Sort the rows {@code (first[i], second[i], third[i])}, with a stable counting sort on each column from the last
+	 * one, so it takes linear time and no boxing
+	 *
+	 * @return the sorted rows, three ids per row
+	 */
+	private static int[] sort(int[] first, int[] second, int[] third, int valueCount) {
+		int[] order = new int[first.length];
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		order = sortBy(order, third, valueCount);
+		order = sortBy(order, second, valueCount);
+		order = sortBy(order, first, valueCount);
+
+		int[] rows = new int[order.length * 3];
+
+		for (int i = 0; i < order.length; i++) {
+			rows[i * 3] = first[order[i]];
+			rows[i * 3 + 1] = second[order[i]];
+			rows[i * 3 + 2] = third[order[i]];
+		}
+
+		return rows;
+	}
+
+	private static int[] sortBy(int[] order, int[] keys, int keyCount) {
+		int[] offsets = new int[keyCount + 1];
+
+		for (int i : order) {
+			offsets[keys[i] + 1]++;
+		}
+
+		for (int k = 0; k < keyCount; k++) {
+			offsets[k + 1] += offsets[k];
+		}
+
+		int[] sorted = new int[order.length];
+
+		for (int i : order) {
+			sorted[offsets[keys[i]]++] = i;
+		}
+
+		return sorted;
+	}
+
+	/**
+	 * Remove the repeated rows of sorted rows
+	 */
+	private static int[] distinct(int[] rows) {
+		int length = 0;
+
+		for (int i = 0; i < rows.length; i += 3) {
+			if (length == 0 || compare(rows, length - 3, rows, i, 3) != 0) {
+				System.arraycopy(rows, i, rows, length, 3);
+				length += 3;
+			}
+		}
+
+		return prefix(rows, length);
+	}
+
+	private static int[] prefix(int[] array, int length) {
+		if (length == array.length) {
+			return array;
+		}
+
+		int[] prefix = new int[length];
+		System.arraycopy(array, 0, prefix, 0, length);
+		return prefix;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Iterate over the statements, by subject, predicate and object
+	 */
+	@Override
+	public Iterator<Statement> iterator() {
+		return new RangeIterator(SPO, 0, size);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Statement)) {
+			return false;
+		}
+
+		Statement statement = (Statement) o;
+
+		return statement.getContext() == null
+			   && match(statement.getSubject(), statement.getPredicate(), statement.getObject()).hasNext();
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public ValueFactory getValueFactory() {
+		return OpenRdfUtils.getValueFactory();
+	}
+
+	/**
+	 * An IndexedGraph can't be modified
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	public boolean add(Resource subject, URI predicate, Value object, Resource... contexts) {
+		throw new UnsupportedOperationException("IndexedGraph is immutable");
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public Iterator<Statement> match(Resource subject, URI predicate, Value object, Resource... contexts) {
+		if (!matchesDefaultContext(contexts)) {
+			return Collections.<Statement> emptySet().iterator();
+		}
+
+		int s = id(subject);
+		int p = id(predicate);
+		int o = id(object);
+
+		if (s == -1 || p == -1 || o == -1) {
+			// a value of the pattern is in no statement
+			return Collections.<Statement> emptySet().iterator();
+		}
+
+		// the index whose rows start with the bound values
+		if (s >= 0) {
+			if (p < 0 && o >= 0) {
+				return range(OSP, o, s);
+			}
+
+			return range(SPO, s, p, o);
+		}
+		else if (p >= 0) {
+			return range(POS, p, o);
+		}
+		else if (o >= 0) {
+			return range(OSP, o);
+		}
+
+		return iterator();
+	}
+
+	/**
+	 * Get the approximate number of bytes used by the graph, not counting the values themselves
+	 *
+	 * @return the number of bytes
+	 */
+	public long getMemoryFootprint() {
+		// the values, their hash table, and the three indexes
+		return 16 + 4L * values.length + 16 + 4L * ids.length + 3 * (16 + 12L * size);
+	}
+
+	/**
+	 * Checks if the statements of the graph, which have no context, match the contexts of a pattern
+	 */
+	private static boolean matchesDefaultContext(Resource... contexts) {
+		if (contexts == null || contexts.length == 0) {
+			return true;
+		}
+
+		for (Resource context : contexts) {
+			if (context == null) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Get the id of a value of a pattern
+	 *
+	 * @return the id, -2 if the value is unbound, or -1 if it is in no statement
+	 */
+	private int id(Value value) {
+		if (value == null) {
+			return -2;
+		}
+
+		for (int slot = slot(value, ids.length); ids[slot] != -1; slot = (slot + 1) & (ids.length - 1)) {
+			if (values[ids[slot]].equals(value)) {
+				return ids[slot];
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Get the rows of an index starting with {@code key}, the bound ids of the pattern
+	 */
+	private Iterator<Statement> range(int index, int... key) {
+		int length = 0;
+
+		while (length < key.length && key[length] >= 0) {
+			length++;
+		}
+
+		int[] rows = indexes[index];
+		int from = bound(rows, key, length, false);
+		int to = bound(rows, key, length, true);
+
+		return new RangeIterator(index, from, to);
+	}
+
+	/**
+	 * Binary search of the first row whose prefix is not less than (or, if {@code upper}, greater than) {@code key}
+	 */
+	private int bound(int[] rows, int[] key, int length, boolean upper) {
+		int low = 0;
+		int high = size;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(rows, mid * 3, key, 0, length);
+
+			if (cmp < 0 || (upper && cmp == 0)) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	private static int compare(int[] a, int aOffset, int[] b, int bOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			int x = a[aOffset + i];
+			int y = b[bOffset + i];
+
+			if (x != y) {
+				return x < y ? -1 : 1;
+			}
+		}
+
+		return 0;
+	}
+
+	private class RangeIterator implements Iterator<Statement> {
+
+		private final int[] rows;
+
+		private final int[] columns;
+
+		private int next;
+
+		private final int end;
+
+		public RangeIterator(int index, int from, int to) {
+			rows = indexes[index];
+			columns = COLUMNS[index];
+			next = from;
+			end = to;
+		}
+
+		public boolean hasNext() {
+			return next < end;
+		}
+
+		public Statement next() {
+			if (next >= end) {
+				throw new NoSuchElementException();
+			}
+
+			int row = next++ * 3;
+
+			return new StatementImpl((Resource) values[rows[row + columns[0]]], (URI) values[rows[row + columns[1]]],
+							         values[rows[row + columns[2]]]);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("IndexedGraph is immutable");
+		}
+	}
+
+	/**
+	 * Collects the statements of an RDF response as they are parsed, and indexes them at the end, e.g.:
+	 *
+	 * <pre>
+	 * IndexedGraph.Builder builder = new IndexedGraph.Builder();
+	 * classify.classify(builder);
+	 * IndexedGraph graph = builder.build();
+	 * </pre>
+	 */
+	public static class Builder extends RDFHandlerBase {
+
+		private List<Value> values = Lists.newArrayList();
+
+		private Map<Value, Integer> ids = Maps.newHashMap();
+
+		private IntList subjects = new IntList(1024);
+
+		private IntList predicates = new IntList(1024);
+
+		private IntList objects = new IntList(1024);
+
+		/**
+		 * @inheritDoc
+		 */
+		@Override
+		public void handleStatement(Statement statement) {
+			subjects.add(id(statement.getSubject()));
+			predicates.add(id(statement.getPredicate()));
+			objects.add(id(statement.getObject()));
+		}
+
+		/**
+		 * Index the statements handled so far. The builder should not be used afterwards.
+		 *
+		 * @return the graph
+		 */
+		public IndexedGraph build() {
+			return new IndexedGraph(this);
+		}
+
+		private int id(Value value) {
+			Integer id = ids.get(value);
+
+			if (id == null) {
+				id = values.size();
+				values.add(value);
+				ids.put(value, id);
+			}
+
+			return id;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.index;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of {@code int}s, used while building the indexes
+ */
+class IntList {
+
+	private int[] values;
+
+	private int size;
+
+	public IntList() {
+		this(16);
+	}
+
+	public IntList(int capacity) {
+		values = new int[Math.max(capacity, 1)];
+	}
+
+	public void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		values[size++] = value;
+	}
+
+	public int get(int index) {
+		return values[index];
+	}
+
+	public void set(int index, int value) {
+		values[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Group the {@code values} of pairs by {@code key}, in compressed rows: the values of key {@code k} are
+	 * {@code values[offsets[k]]} to {@code values[offsets[k + 1] - 1]}
+	 *
+	 * @param keys the key of each pair
+	 * @param values the value of each pair
+	 * @param keyCount the number of keys
+	 * @param offsets the array receiving the {@code keyCount + 1} offsets
+	 * @return the grouped values
+	 */
+	public static int[] group(IntList keys, IntList values, int keyCount, int[] offsets) {
+		for (int i = 0; i < keys.size(); i++) {
+			offsets[keys.get(i) + 1]++;
+		}
+
+		for (int k = 0; k < keyCount; k++) {
+			offsets[k + 1] += offsets[k];
+		}
+
+		int[] grouped = new int[keys.size()];
+		int[] next = Arrays.copyOf(offsets, keyCount);
+
+		for (int i = 0; i < keys.size(); i++) {
+			grouped[next[keys.get(i)]++] = values.get(i);
+		}
+
+		return grouped;
+	}
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.index;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import com.clarkparsia.pelletserver.client.utils.StatementFilter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The types of the individuals of a {@link com.clarkparsia.pelletserver.client.services.Realize Realize} result,
+ * indexed in both directions.<br>
+ * Individuals and classes are numbered, and the instances of each class and the types of each individual are stored as
+ * sets of ids: a sorted array of ids when the set is sparse, a bitmap when it is dense. When the realization is indexed
+ * along with the {@link Taxonomy} of the knowledge base, the classes have the ids of the taxonomy, and the instances of
+ * a class including its subclasses are the union of the instances of its {@link Taxonomy#getDescendants(int)
+ * descendants}.<br>
+ * A Realization is immutable, and safe to use from several threads.
+ */
+public class Realization {
+
+	private final Taxonomy taxonomy;
+
+	private final Resource[] individuals;
+
+	private final Map<Resource, Integer> individualIds;
+
+	private final Resource[] classes;
+
+	private final Map<Resource, Integer> classIds;
+
+	/**
+	 * The instances of each class, by class id
+	 */
+	private final IdSet[] instances;
+
+	/**
+	 * The types of each individual, by individual id
+	 */
+	private final IdSet[] types;
+
+	/**
+	 * Create a new Realization from the statements of a realization
+	 *
+	 * @param statements
+	 *            the statements, e.g., a {@link org.openrdf.model.Graph Graph}; statements other than {@code rdf:type}
+	 *            are ignored
+	 * @param taxonomy
+	 *            the taxonomy of the classes, or {@code null}
+	 */
+	public Realization(Iterable<? extends Statement> statements, Taxonomy taxonomy) {
+		this(build(statements, taxonomy));
+	}
+
+	private Realization(Builder builder) {
+		taxonomy = builder.taxonomy;
+
+		individuals = builder.individuals.toArray(new Resource[builder.individuals.size()]);
+		individualIds = builder.individualIds;
+		classes = builder.classes.toArray(new Resource[builder.classes.size()]);
+		classIds = builder.classIds;
+
+		instances = index(builder.classOf, builder.individualOf, classes.length);
+		types = index(builder.individualOf, builder.classOf, individuals.length);
+	}
+
+	private static Builder build(Iterable<? extends Statement> statements, Taxonomy taxonomy) {
+		Builder builder = new Builder(taxonomy);
+
+		for (Statement statement : statements) {
+			builder.handleStatement(statement);
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Group the pairs of ids by key, as a set of values per key
+	 */
+	private static IdSet[] index(IntList keys, IntList values, int keyCount) {
+		int[] offsets = new int[keyCount + 1];
+		int[] grouped = IntList.group(keys, values, keyCount, offsets);
+
+		IdSet[] index = new IdSet[keyCount];
+		BitSet bits = new BitSet();
+
+		for (int k = 0; k < keyCount; k++) {
+			bits.clear();
+
+			for (int i = offsets[k]; i < offsets[k + 1]; i++) {
+				bits.set(grouped[i]);
+			}
+
+			index[k] = IdSet.of(bits);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Create a filter keeping only the statements a Realization is built from
+	 *
+	 * @return the filter
+	 */
+	public static StatementFilter newFilter() {
+		return new StatementFilter(RDF.TYPE);
+	}
+
+	/**
+	 * Get the taxonomy of the classes
+	 *
+	 * @return the taxonomy, or {@code null} if the realization was indexed without one
+	 */
+	public Taxonomy getTaxonomy() {
+		return taxonomy;
+	}
+
+	/**
+	 * Get the number of individuals
+	 *
+	 * @return the number of individuals
+	 */
+	public int getIndividualCount() {
+		return individuals.length;
+	}
+
+	/**
+	 * Get the number of classes, including the classes of the taxonomy without instances
+	 *
+	 * @return the number of classes
+	 */
+	public int getClassCount() {
+		return classes.length;
+	}
+
+	/**
+	 * Get the id of an individual
+	 *
+	 * @param individual
+	 *            the individual
+	 * @return the id of the individual, or -1 if it is not in the realization
+	 */
+	public int getIndividualId(Resource individual) {
+		Integer id = individualIds.get(individual);
+
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Get an individual by id
+	 *
+	 * @param id
+	 *            the id of the individual
+	 * @return the individual
+	 */
+	public Resource getIndividual(int id) {
+		return individuals[id];
+	}
+
+	/**
+	 * Get the id of a class. Classes of the taxonomy have the same id as in the taxonomy.
+	 *
+	 * @param c
+	 *            the class
+	 * @return the id of the class, or -1 if it is not in the realization
+	 */
+	public int getClassId(Resource c) {
+		Integer id = classIds.get(c);
+
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Get a class by id
+	 *
+	 * @param id
+	 *            the id of the class
+	 * @return the class
+	 */
+	public Resource getClass(int id) {
+		return classes[id];
+	}
+
+	/**
+	 * Checks if an individual is an instance of a class
+	 *
+	 * @param individual
+	 *            the id of the individual
+	 * @param c
+	 *            the id of the class
+	 * @param inferred
+	 *            true to also check the superclasses of the types of the individual, in the taxonomy
+	 * @return true if the individual is an instance of the class
+	 */
+	public boolean isInstanceOf(int individual, int c, boolean inferred) {
+		if (instances[c].contains(individual)) {
+			return true;
+		}
+
+		if (inferred && taxonomy != null && c < taxonomy.size()) {
+			for (int type : types[individual].toArray()) {
+				if (type < taxonomy.size() && taxonomy.isSubClassOf(type, c)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks if an individual is an instance of a class
+	 *
+	 * @param individual
+	 *            the individual
+	 * @param c
+	 *            the class
+	 * @param inferred
+	 *            true to also check the superclasses of the types of the individual, in the taxonomy
+	 * @return true if the individual is an instance of the class, false if it is not, or either is not in the
+	 *         realization
+	 */
+	public boolean isInstanceOf(Resource individual, Resource c, boolean inferred) {
+		int individualId = getIndividualId(individual);
+		int classId = getClassId(c);
+
+		return individualId >= 0 && classId >= 0 && isInstanceOf(individualId, classId, inferred);
+	}
+
+	/**
+	 * Get the instances of a class. Iterate over the set bits with {@link BitSet#nextSetBit(int)}.
+	 *
+	 * @param c
+	 *            the id of the class
+	 * @param includeSubClasses
+	 *            true to also get the instances of the subclasses of the class, in the taxonomy
+	 * @return the ids of the instances
+	 */
+	public BitSet getInstances(int c, boolean includeSubClasses) {
+		BitSet result = new BitSet(individuals.length);
+		instances[c].addTo(result);
+
+		if (includeSubClasses && taxonomy != null && c < taxonomy.size()) {
+			BitSet descendants = taxonomy.descendants(c);
+
+			for (int d = descendants.nextSetBit(0); d >= 0; d = descendants.nextSetBit(d + 1)) {
+				instances[d].addTo(result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the instances of a class
+	 *
+	 * @param c
+	 *            the class
+	 * @param includeSubClasses
+	 *            true to also get the instances of the subclasses of the class, in the taxonomy
+	 * @return the instances, empty if the class is not in the realization
+	 */
+	public Set<Resource> getInstances(Resource c, boolean includeSubClasses) {
+		int id = getClassId(c);
+
+		return id >= 0 ? toIndividuals(getInstances(id, includeSubClasses)) : Collections.<Resource> emptySet();
+	}
+
+	/**
+	 * Get the number of instances of a class, without its subclasses
+	 *
+	 * @param c
+	 *            the id of the class
+	 * @return the number of instances
+	 */
+	public int getInstanceCount(int c) {
+		return instances[c].size();
+	}
+
+	/**
+	 * Get the types of an individual. Iterate over the set bits with {@link BitSet#nextSetBit(int)}.
+	 *
+	 * @param individual
+	 *            the id of the individual
+	 * @param includeSuperClasses
+	 *            true to also get the superclasses of the types, in the taxonomy
+	 * @return the ids of the types
+	 */
+	public BitSet getTypes(int individual, boolean includeSuperClasses) {
+		BitSet result = new BitSet(classes.length);
+		types[individual].addTo(result);
+
+		if (includeSuperClasses && taxonomy != null) {
+			for (int type : types[individual].toArray()) {
+				if (type < taxonomy.size()) {
+					result.or(taxonomy.ancestors(type));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the types of an individual
+	 *
+	 * @param individual
+	 *            the individual
+	 * @param includeSuperClasses
+	 *            true to also get the superclasses of the types, in the taxonomy
+	 * @return the types, empty if the individual is not in the realization
+	 */
+	public Set<Resource> getTypes(Resource individual, boolean includeSuperClasses) {
+		int id = getIndividualId(individual);
+
+		return id >= 0 ? toClasses(getTypes(id, includeSuperClasses)) : Collections.<Resource> emptySet();
+	}
+
+	/**
+	 * Get the individuals of a set of ids
+	 *
+	 * @param ids
+	 *            the ids, e.g., {@link #getInstances(int, boolean) instances}
+	 * @return the individuals
+	 */
+	public Set<Resource> toIndividuals(BitSet ids) {
+		Set<Resource> result = Sets.newLinkedHashSet();
+
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			result.add(individuals[id]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the classes of a set of ids
+	 *
+	 * @param ids
+	 *            the ids, e.g., {@link #getTypes(int, boolean) types}
+	 * @return the classes
+	 */
+	public Set<Resource> toClasses(BitSet ids) {
+		Set<Resource> result = Sets.newLinkedHashSet();
+
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			result.add(classes[id]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the approximate number of bytes used by the index, i.e., the id maps and sets, not counting the individuals
+	 * and classes themselves, which are shared with the parsed result, nor the taxonomy
+	 *
+	 * @return the number of bytes
+	 */
+	public long getMemoryFootprint() {
+		// a reference per entry in the arrays, and a hash entry with a boxed id per entry in the maps
+		long bytes = 4L * (individuals.length + classes.length) + 48L * (individualIds.size() + classIds.size());
+
+		for (IdSet set : instances) {
+			bytes += 4 + set.getMemoryFootprint();
+		}
+
+		for (IdSet set : types) {
+			bytes += 4 + set.getMemoryFootprint();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return "Realization(individuals=" + individuals.length + ", classes=" + classes.length + ", bytes="
+			   + getMemoryFootprint() + ")";
+	}
+
+	/**
+	 * Builds a Realization from the statements of a realization as they are parsed, e.g.:
+	 *
+	 * <pre>
+	 * Realization.Builder builder = new Realization.Builder(taxonomy);
+	 * realize.realize(Realization.newFilter(), builder);
+	 * Realization realization = builder.build();
+	 * </pre>
+	 */
+	public static class Builder extends RDFHandlerBase {
+
+		private Taxonomy taxonomy;
+
+		private List<Resource> individuals = Lists.newArrayList();
+
+		private Map<Resource, Integer> individualIds = Maps.newHashMap();
+
+		private List<Resource> classes = Lists.newArrayList();
+
+		private Map<Resource, Integer> classIds = Maps.newHashMap();
+
+		private IntList individualOf = new IntList();
+
+		private IntList classOf = new IntList();
+
+		/**
+		 * Create a new Builder
+		 *
+		 * @param taxonomy
+		 *            the taxonomy of the classes, or {@code null}
+		 */
+		public Builder(Taxonomy taxonomy) {
+			this.taxonomy = taxonomy;
+
+			if (taxonomy != null) {
+				for (Resource c : taxonomy.getClasses()) {
+					id(c, classes, classIds);
+				}
+			}
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		@Override
+		public void handleStatement(Statement statement) {
+			Value object = statement.getObject();
+
+			if (RDF.TYPE.equals(statement.getPredicate()) && object instanceof Resource) {
+				individualOf.add(id(statement.getSubject(), individuals, individualIds));
+				classOf.add(id((Resource) object, classes, classIds));
+			}
+		}
+
+		/**
+		 * Build the Realization of the statements handled so far
+		 *
+		 * @return the realization
+		 */
+		public Realization build() {
+			return new Realization(this);
+		}
+
+		private static int id(Resource value, List<Resource> values, Map<Resource, Integer> ids) {
+			Integer id = ids.get(value);
+
+			if (id == null) {
+				id = values.size();
+				values.add(value);
+				ids.put(value, id);
+			}
+
+			return id;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.index;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import com.clarkparsia.pelletserver.client.utils.StatementFilter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The class hierarchy of a {@link com.clarkparsia.pelletserver.client.services.Classify Classify} result, indexed for
+ * subsumption checks.<br>
+ * Each class is numbered from 0 to {@link #size()} - 1, and its direct superclasses and subclasses (i.e., the
+ * {@code rdfs:subClassOf} edges of the result, {@code owl:equivalentClass} counting as an edge in both directions) are
+ * stored in arrays of ids. The ancestors and descendants of a class are computed the first time they are needed, as a
+ * {@link BitSet} of ids, and kept: after that, a subsumption check is a single bit test.<br>
+ * A Taxonomy is immutable, and safe to use from several threads.
+ */
+public class Taxonomy {
+
+	private final Resource[] classes;
+
+	private final Map<Resource, Integer> ids;
+
+	/**
+	 * The direct superclasses of class {@code c} are {@code parents[parentOffsets[c]]} to
+	 * {@code parents[parentOffsets[c + 1] - 1]}
+	 */
+	private final int[] parentOffsets;
+
+	private final int[] parents;
+
+	private final int[] childOffsets;
+
+	private final int[] children;
+
+	private final AtomicReferenceArray<BitSet> ancestors;
+
+	private final AtomicReferenceArray<BitSet> descendants;
+
+	/**
+	 * Create a new Taxonomy from the statements of a classification
+	 *
+	 * @param statements
+	 *            the statements, e.g., a {@link org.openrdf.model.Graph Graph}; statements other than
+	 *            {@code rdfs:subClassOf}, {@code owl:equivalentClass} and {@code rdf:type owl:Class} are ignored
+	 */
+	public Taxonomy(Iterable<? extends Statement> statements) {
+		this(build(statements));
+	}
+
+	private Taxonomy(Builder builder) {
+		int size = builder.classes.size();
+
+		classes = builder.classes.toArray(new Resource[size]);
+		ids = builder.ids;
+
+		parentOffsets = new int[size + 1];
+		parents = IntList.group(builder.subs, builder.sups, size, parentOffsets);
+		childOffsets = new int[size + 1];
+		children = IntList.group(builder.sups, builder.subs, size, childOffsets);
+
+		ancestors = new AtomicReferenceArray<BitSet>(size);
+		descendants = new AtomicReferenceArray<BitSet>(size);
+	}
+
+	private static Builder build(Iterable<? extends Statement> statements) {
+		Builder builder = new Builder();
+
+		for (Statement statement : statements) {
+			builder.handleStatement(statement);
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Create a filter keeping only the statements a Taxonomy is built from
+	 *
+	 * @return the filter
+	 */
+	public static StatementFilter newFilter() {
+		return new StatementFilter(RDFS.SUBCLASSOF, OWL.EQUIVALENTCLASS, RDF.TYPE);
+	}
+
+	/**
+	 * Get the number of classes
+	 *
+	 * @return the number of classes
+	 */
+	public int size() {
+		return classes.length;
+	}
+
+	/**
+	 * Get the id of a class
+	 *
+	 * @param c
+	 *            the class
+	 * @return the id of the class, or -1 if it is not in the taxonomy
+	 */
+	public int getId(Resource c) {
+		Integer id = ids.get(c);
+
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * Get a class by id
+	 *
+	 * @param id
+	 *            the id of the class
+	 * @return the class
+	 */
+	public Resource getClass(int id) {
+		return classes[id];
+	}
+
+	/**
+	 * Get the classes of the taxonomy, by id
+	 *
+	 * @return the classes
+	 */
+	public List<Resource> getClasses() {
+		return Collections.unmodifiableList(Lists.newArrayList(classes));
+	}
+
+	/**
+	 * Checks if {@code sub} is a subclass of {@code sup}. Every class is a subclass of itself.
+	 *
+	 * @param sub
+	 *            the subclass
+	 * @param sup
+	 *            the superclass
+	 * @return true if {@code sub} is a subclass of {@code sup}, false if it is not, or either class is not in the
+	 *         taxonomy
+	 */
+	public boolean isSubClassOf(Resource sub, Resource sup) {
+		int subId = getId(sub);
+		int supId = getId(sup);
+
+		return subId >= 0 && supId >= 0 && isSubClassOf(subId, supId);
+	}
+
+	/**
+	 * Checks if class {@code sub} is a subclass of class {@code sup}. Every class is a subclass of itself.
+	 *
+	 * @param sub
+	 *            the id of the subclass
+	 * @param sup
+	 *            the id of the superclass
+	 * @return true if {@code sub} is a subclass of {@code sup}
+	 */
+	public boolean isSubClassOf(int sub, int sup) {
+		return sub == sup || ancestors(sub).get(sup);
+	}
+
+	/**
+	 * Get the direct superclasses of a class
+	 *
+	 * @param id
+	 *            the id of the class
+	 * @return the ids of the direct superclasses
+	 */
+	public int[] getDirectSuperClasses(int id) {
+		return range(parents, parentOffsets, id);
+	}
+
+	/**
+	 * Get the direct subclasses of a class
+	 *
+	 * @param id
+	 *            the id of the class
+	 * @return the ids of the direct subclasses
+	 */
+	public int[] getDirectSubClasses(int id) {
+		return range(children, childOffsets, id);
+	}
+
+	/**
+	 * Get the direct superclasses of a class
+	 *
+	 * @param c
+	 *            the class
+	 * @return the direct superclasses, empty if the class is not in the taxonomy
+	 */
+	public Set<Resource> getDirectSuperClasses(Resource c) {
+		int id = getId(c);
+
+		return id >= 0 ? toClasses(getDirectSuperClasses(id)) : Collections.<Resource> emptySet();
+	}
+
+	/**
+	 * Get the direct subclasses of a class
+	 *
+	 * @param c
+	 *            the class
+	 * @return the direct subclasses, empty if the class is not in the taxonomy
+	 */
+	public Set<Resource> getDirectSubClasses(Resource c) {
+		int id = getId(c);
+
+		return id >= 0 ? toClasses(getDirectSubClasses(id)) : Collections.<Resource> emptySet();
+	}
+
+	/**
+	 * Get the ancestors of a class, i.e., its direct and indirect superclasses. Iterate over the set bits with
+	 * {@link BitSet#nextSetBit(int)}.
+	 *
+	 * @param id
+	 *            the id of the class
+	 * @return the ids of the ancestors; a copy that can be modified
+	 */
+	public BitSet getAncestors(int id) {
+		return (BitSet) ancestors(id).clone();
+	}
+
+	/**
+	 * Get the descendants of a class, i.e., its direct and indirect subclasses. Iterate over the set bits with
+	 * {@link BitSet#nextSetBit(int)}.
+	 *
+	 * @param id
+	 *            the id of the class
+	 * @return the ids of the descendants; a copy that can be modified
+	 */
+	public BitSet getDescendants(int id) {
+		return (BitSet) descendants(id).clone();
+	}
+
+	/**
+	 * Get the direct and indirect superclasses of a class
+	 *
+	 * @param c
+	 *            the class
+	 * @return the superclasses, empty if the class is not in the taxonomy
+	 */
+	public Set<Resource> getSuperClasses(Resource c) {
+		int id = getId(c);
+
+		return id >= 0 ? toClasses(ancestors(id)) : Collections.<Resource> emptySet();
+	}
+
+	/**
+	 * Get the direct and indirect subclasses of a class
+	 *
+	 * @param c
+	 *            the class
+	 * @return the subclasses, empty if the class is not in the taxonomy
+	 */
+	public Set<Resource> getSubClasses(Resource c) {
+		int id = getId(c);
+
+		return id >= 0 ? toClasses(descendants(id)) : Collections.<Resource> emptySet();
+	}
+
+	/**
+	 * Get the classes of a set of ids
+	 *
+	 * @param ids
+	 *            the ids, e.g., {@link #getAncestors(int) ancestors}
+	 * @return the classes
+	 */
+	public Set<Resource> toClasses(BitSet ids) {
+		Set<Resource> result = Sets.newLinkedHashSet();
+
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			result.add(classes[id]);
+		}
+
+		return result;
+	}
+
+	private Set<Resource> toClasses(int[] ids) {
+		Set<Resource> result = Sets.newLinkedHashSet();
+
+		for (int id : ids) {
+			result.add(classes[id]);
+		}
+
+		return result;
+	}
+
+	BitSet ancestors(int id) {
+		return closure(id, parents, parentOffsets, ancestors);
+	}
+
+	BitSet descendants(int id) {
+		return closure(id, children, childOffsets, descendants);
+	}
+
+	/**
+	 * Get, computing it if needed, the transitive closure of the edges from a class. Closures already computed for the
+	 * classes reached are reused instead of being walked again. Two threads may compute the same closure, with the same
+	 * result.
+	 */
+	private static BitSet closure(int id, int[] edges, int[] offsets, AtomicReferenceArray<BitSet> closures) {
+		BitSet closure = closures.get(id);
+
+		if (closure != null) {
+			return closure;
+		}
+
+		closure = new BitSet();
+
+		IntList stack = new IntList();
+		stack.add(id);
+		int top = 1;
+
+		while (top > 0) {
+			int c = stack.get(--top);
+
+			for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+				int next = edges[i];
+
+				if (closure.get(next)) {
+					continue;
+				}
+
+				closure.set(next);
+
+				BitSet known = closures.get(next);
+
+				if (known != null) {
+					closure.or(known);
+				}
+				else if (top < stack.size()) {
+					stack.set(top++, next);
+				}
+				else {
+					stack.add(next);
+					top++;
+				}
+			}
+		}
+
+		// equivalent classes reach themselves through each other
+		closure.clear(id);
+
+		closures.compareAndSet(id, null, closure);
+
+		return closures.get(id);
+	}
+
+	private static int[] range(int[] values, int[] offsets, int id) {
+		int[] range = new int[offsets[id + 1] - offsets[id]];
+		System.arraycopy(values, offsets[id], range, 0, range.length);
+		return range;
+	}
+
+	/**
+	 * Builds a Taxonomy from the statements of a classification as they are parsed, e.g.:
+	 *
+	 * <pre>
+	 * Taxonomy.Builder builder = new Taxonomy.Builder();
+	 * classify.classify(Taxonomy.newFilter(), builder);
+	 * Taxonomy taxonomy = builder.build();
+	 * </pre>
+	 */
+	public static class Builder extends RDFHandlerBase {
+
+		private List<Resource> classes = Lists.newArrayList();
+
+		private Map<Resource, Integer> ids = Maps.newHashMap();
+
+		private IntList subs = new IntList();
+
+		private IntList sups = new IntList();
+
+		/**
+		 * @inheritDoc
+		 */
+		@Override
+		public void handleStatement(Statement statement) {
+			Value object = statement.getObject();
+
+			if (!(object instanceof Resource)) {
+				return;
+			}
+
+			if (RDFS.SUBCLASSOF.equals(statement.getPredicate())) {
+				edge(id(statement.getSubject()), id((Resource) object));
+			}
+			else if (OWL.EQUIVALENTCLASS.equals(statement.getPredicate())) {
+				int a = id(statement.getSubject());
+				int b = id((Resource) object);
+
+				edge(a, b);
+				edge(b, a);
+			}
+			else if (RDF.TYPE.equals(statement.getPredicate()) && OWL.CLASS.equals(object)) {
+				id(statement.getSubject());
+			}
+		}
+
+		/**
+		 * Build the Taxonomy of the statements handled so far
+		 *
+		 * @return the taxonomy
+		 */
+		public Taxonomy build() {
+			return new Taxonomy(this);
+		}
+
+		private int id(Resource c) {
+			Integer id = ids.get(c);
+
+			if (id == null) {
+				id = classes.size();
+				classes.add(c);
+				ids.put(c, id);
+			}
+
+			return id;
+		}
+
+		private void edge(int sub, int sup) {
+			if (sub != sup) {
+				subs.add(sub);
+				sups.add(sup);
+			}
+		}
+	}
+}
@@ -13,9 +13,11 @@ package com.clarkparsia.pelletserver.client.services;
 
 import javax.activation.MimeType;
 
+import com.clarkparsia.pelletserver.client.CallbackTask;
 import com.clarkparsia.pelletserver.client.Endpoint;
 import com.clarkparsia.pelletserver.client.KBPelletService;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
+import com.clarkparsia.pelletserver.client.cache.ResultCache;
 
 /**
  * An abstract {@link KBPelletService}
@@ -46,4 +48,18 @@ public abstract class AbstractKBPelletService extends AbstractPelletService impl
 	public KnowledgeBase getKnowledgeBase() {
 		return kb;
 	}
+
+	/**
+	 * Wrap {@code task} so its result is looked up in, and added to, the server's caches, tied to the version of the
+	 * {@link KnowledgeBase} in the {@link ResultCache}
+	 * 
+	 * @param <T> the result of the task
+	 * @param task the task to wrap
+	 * @param parameters the parameters of the call, which together with the service endpoint identify the result
+	 * @return the wrapped task, or {@code task} itself if the server has no cache
+	 */
+	@Override
+	protected <T> CallbackTask<T> cached(CallbackTask<T> task, String... parameters) {
+		return cached(kb, task, parameters);
+	}
 }
@@ -11,6 +11,9 @@
 
 package com.clarkparsia.pelletserver.client.services;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -18,10 +21,19 @@ import java.util.List;
 import javax.activation.MimeType;
 
 
+import com.clarkparsia.pelletserver.client.CallbackTask;
 import com.clarkparsia.pelletserver.client.Endpoint;
+import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletServer;
+import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
 import com.clarkparsia.pelletserver.client.PelletService;
 import com.clarkparsia.pelletserver.client.ServiceAnnotation;
+import com.clarkparsia.pelletserver.client.cache.CachedCallbackTask;
+import com.clarkparsia.pelletserver.client.cache.CallRecorder;
+import com.clarkparsia.pelletserver.client.cache.NegativeCache;
+import com.clarkparsia.pelletserver.client.cache.RecordedCall;
+import com.clarkparsia.pelletserver.client.cache.ResultCache;
+import com.clarkparsia.pelletserver.client.utils.StatementFilter;
 import com.google.common.collect.Lists;
 
 /**
@@ -76,4 +88,123 @@ public abstract class AbstractPelletService implements PelletService {
 		return "";
 	}
 
+	/**
+	 * Get the {@link MimeType}s of {@code preferences} supported by this service
+	 * 
+	 * @param preferences the mimetypes wanted, most preferred first
+	 * @return the supported mimetypes, in order of preference
+	 * @throws IllegalArgumentException if the service supports none of {@code preferences}
+	 */
+	protected MimeType[] negotiate(MimeType... preferences) {
+		MimeType[] accepted = PelletServerMimeTypes.negotiate(mimetypes, preferences);
+
+		checkArgument(accepted.length > 0, getName() + " service must support one of %s", Arrays.toString(preferences));
+
+		return accepted;
+	}
+
+	/**
+	 * Get the RDF syntaxes supported by this service, in order of preference. N-Triples is preferred when the server
+	 * {@link PelletServer#getParserThreads() parses on several threads}.
+	 * 
+	 * @return the supported RDF mimetypes, in order of preference
+	 * @throws IllegalArgumentException if the service supports no RDF syntax
+	 */
+	protected MimeType[] rdfFormats() {
+		return rdfFormats(null);
+	}
+
+	/**
+	 * Get the RDF syntaxes supported by this service, in order of preference. N-Triples is preferred when the server
+	 * {@link PelletServer#getParserThreads() parses on several threads}, or when the statements are filtered.
+	 * 
+	 * @param filter the filter of the statements to parse (can be {@code null})
+	 * @return the supported RDF mimetypes, in order of preference
+	 * @throws IllegalArgumentException if the service supports no RDF syntax
+	 */
+	protected MimeType[] rdfFormats(StatementFilter filter) {
+		return negotiate(filter != null || server.getParserThreads() > 1 ? PelletServerMimeTypes.RDF_FORMATS_PARALLEL
+						: PelletServerMimeTypes.RDF_FORMATS);
+	}
+
+	/**
+	 * Wrap {@code task} so its result is looked up in, and added to, the server's {@link ResultCache} and
+	 * {@link NegativeCache}
+	 * 
+	 * @param <T> the result of the task
+	 * @param task the task to wrap
+	 * @param parameters the parameters of the call, which together with the service endpoint identify the result
+	 * @return the wrapped task, or {@code task} itself if the server has no cache
+	 */
+	protected <T> CallbackTask<T> cached(CallbackTask<T> task, String... parameters) {
+		return cached(null, task, parameters);
+	}
+
+	/**
+	 * Wrap {@code task} so its result is looked up in, and added to, the server's {@link ResultCache} and
+	 * {@link NegativeCache}. The call is also recorded in the server's {@link CallRecorder}, if any.
+	 * 
+	 * @param <T> the result of the task
+	 * @param kb the KB the result depends on (can be {@code null})
+	 * @param task the task to wrap
+	 * @param parameters the parameters of the call, which together with the service endpoint identify the result
+	 * @return the wrapped task, or {@code task} itself if the server has no cache
+	 */
+	protected <T> CallbackTask<T> cached(KnowledgeBase kb, CallbackTask<T> task, String... parameters) {
+		ResultCache cache = server.getResultCache();
+		NegativeCache negativeCache = server.getNegativeCache();
+		CallRecorder recorder = server.getCallRecorder();
+
+		if (recorder != null) {
+			recorder.record(new RecordedCall(getName(), kb != null ? kb.getName() : null, parameters));
+		}
+
+		if (cache == null && negativeCache == null) {
+			return task;
+		}
+
+		return new CachedCallbackTask<T>(cache, negativeCache, kb, cacheKey(parameters), task);
+	}
+
+	/**
+	 * Checks if calls are cached or recorded, i.e., if {@link #cached(CallbackTask, String...)} needs their parameters
+	 * 
+	 * @return true if the server has a {@link ResultCache}, a {@link NegativeCache} or a {@link CallRecorder}
+	 */
+	protected boolean isCached() {
+		return server.getResultCache() != null || server.getNegativeCache() != null || server.getCallRecorder() != null;
+	}
+
+	/**
+	 * Get the cache parameter of a call returning a graph. A cached graph is returned as it was built, so graphs built
+	 * as {@link com.clarkparsia.pelletserver.client.index.IndexedGraph IndexedGraph}s are cached apart from the others.
+	 * 
+	 * @return {@code "indexed"} if the server builds indexed graphs, {@code null} otherwise
+	 */
+	protected String graphParameter() {
+		return server.isIndexedGraphs() ? "indexed" : null;
+	}
+
+	/**
+	 * Create the key of a result of this service in a {@link ResultCache}. Each parameter is prefixed with its length
+	 * (or {@code -} if it is {@code null}), so different parameter lists never share a key, whatever text they contain.
+	 * 
+	 * @param parameters the parameters of the call
+	 * @return the key
+	 */
+	protected String cacheKey(String... parameters) {
+		StringBuilder key = new StringBuilder(getName()).append(' ').append(endpoint.getURL());
+
+		for (String parameter : parameters) {
+			if (parameter != null) {
+				key.append('\n').append(parameter.length()).append(':').append(parameter);
+			}
+			else {
+				key.append("\n-");
+			}
+		}
+
+		return key.toString();
+	}
+
 }
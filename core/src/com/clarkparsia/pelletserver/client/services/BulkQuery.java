@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.rio.ntriples.NTriplesUtil;
+
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.services.Query.QueryForm;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Executes a {@code SELECT} query template for many bindings, e.g., the same query for thousands of subjects, by adding
+ * the bindings to the pattern of the template as {@code VALUES} blocks:
+ *
+ * <pre>
+ * BulkQuery bulk = new BulkQuery(query, &quot;SELECT ?s ?label WHERE { ?s rdfs:label ?label }&quot;);
+ * bulk.setConcurrency(8);
+ * BulkTupleQueryResult result = bulk.select(subjects);
+ * </pre>
+ *
+ * The bindings are split into batches executed concurrently, and the results of the batches are returned as a single
+ * result, in the order the batches complete. The size of the batches adapts to the server: it doubles while batches take
+ * less than half the {@link #setTargetLatency(long) target latency}, is halved when they take longer, and a batch that
+ * fails because of its size (413, 414, a server error or a timeout) is split in two and retried, so a {@code VALUES}
+ * block too large for the server is narrowed down. Any other failure fails the result. The batches are
+ * also kept under a {@link #setMaxQueryLength(int) maximum query length}, since the query is usually sent in the URL;
+ * the length is the one of the URL encoded query, where most of the punctuation of a row takes three characters.
+ */
+public class BulkQuery {
+
+	private final Query<?> service;
+
+	private final String template;
+
+	/**
+	 * The position in the template where the {@code VALUES} block is inserted, after the opening brace of the pattern
+	 */
+	private final int insert;
+
+	private int concurrency = 4;
+
+	private int batchSize = 100;
+
+	private int maxBatchSize = 2000;
+
+	private int maxQueryLength = 8192;
+
+	private long targetLatency = 1000;
+
+	/**
+	 * Create a new BulkQuery
+	 *
+	 * @param service
+	 *            The Query service executing the batches
+	 * @param template
+	 *            The {@code SELECT} query, whose pattern joins the bindings
+	 * @throws IllegalArgumentException
+	 *             if the template is not a {@code SELECT}
+	 */
+	public BulkQuery(Query<?> service, String template) {
+		checkArgument(QueryForm.of(template) == QueryForm.SELECT, "Only SELECT queries can be batched: %s", template);
+
+		int insert = -1;
+
+		for (QueryToken token : QueryToken.tokenize(template)) {
+			if (token.is("{")) {
+				insert = token.end;
+				break;
+			}
+		}
+
+		checkArgument(insert > 0, "No pattern in %s", template);
+
+		this.service = service;
+		this.template = template;
+		this.insert = insert;
+	}
+
+	/**
+	 * Executes the template for {@code bindings}
+	 *
+	 * @param bindings
+	 *            The bindings, whose variables are joined with the variables of the same name in the pattern. The
+	 *            values can't be blank nodes.
+	 * @return the results of the batches, which are executed as the result is read
+	 * @throws IllegalArgumentException
+	 *             if a binding is a blank node
+	 */
+	public BulkTupleQueryResult select(List<? extends BindingSet> bindings) {
+		Set<String> variables = Sets.newLinkedHashSet();
+
+		for (BindingSet row : bindings) {
+			for (String name : row.getBindingNames()) {
+				if (row.getValue(name) instanceof BNode) {
+					throw new IllegalArgumentException("Blank nodes can't be bound in a query: " + row);
+				}
+
+				variables.add(name);
+			}
+		}
+
+		return new BulkTupleQueryResult(this, Lists.newArrayList(variables), bindings);
+	}
+
+	/**
+	 * Get the template
+	 *
+	 * @return the query
+	 */
+	public String getTemplate() {
+		return template;
+	}
+
+	/**
+	 * Get the maximum number of batches executed at the same time
+	 *
+	 * @return the number of batches
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Set the maximum number of batches executed at the same time. The default is 4.
+	 *
+	 * @param concurrency
+	 *            the number of batches
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = Math.max(1, concurrency);
+	}
+
+	/**
+	 * Get the number of bindings of the first batches
+	 *
+	 * @return the number of bindings
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of bindings of the first batches. The default is 100.
+	 *
+	 * @param batchSize
+	 *            the number of bindings
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Get the largest number of bindings of a batch
+	 *
+	 * @return the number of bindings
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Set the largest number of bindings of a batch. The default is 2000.
+	 *
+	 * @param maxBatchSize
+	 *            the number of bindings
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	/**
+	 * Get the maximum length of the URL encoded query of a batch
+	 *
+	 * @return the number of characters
+	 */
+	public int getMaxQueryLength() {
+		return maxQueryLength;
+	}
+
+	/**
+	 * Set the maximum length of the URL encoded query of a batch, which is exceeded only by batches of a single
+	 * binding. The default is 8192 characters, under the URL limit of most servers.
+	 *
+	 * @param maxQueryLength
+	 *            the number of characters
+	 */
+	public void setMaxQueryLength(int maxQueryLength) {
+		this.maxQueryLength = maxQueryLength;
+	}
+
+	/**
+	 * Get the time a batch should take
+	 *
+	 * @return the time in milliseconds
+	 */
+	public long getTargetLatency() {
+		return targetLatency;
+	}
+
+	/**
+	 * Set the time a batch should take, which the size of the batches adapts to. The default is one second.
+	 *
+	 * @param targetLatency
+	 *            the time in milliseconds
+	 */
+	public void setTargetLatency(long targetLatency) {
+		this.targetLatency = targetLatency;
+	}
+
+	/**
+	 * Execute the query of a batch
+	 *
+	 * @param query
+	 *            The template, with the {@code VALUES} block of the batch
+	 * @return the result
+	 * @throws PelletClientException
+	 *             if the query failed
+	 */
+	protected TupleQueryResult fetch(String query) throws PelletClientException {
+		return service.select(query);
+	}
+
+	/**
+	 * Get the URL encoded length of the query of a batch, not counting its rows
+	 */
+	int getQueryLength(List<String> variables) {
+		return encodedLength(getQuery(variables, Collections.<String>emptyList()));
+	}
+
+	/**
+	 * Get the URL encoded length of a row of the {@code VALUES} block, including its line break
+	 */
+	static int getRowLength(String row) {
+		return encodedLength(row) + 3;
+	}
+
+	/**
+	 * Get the query of a batch
+	 *
+	 * @param variables
+	 *            The variables of the bindings
+	 * @param rows
+	 *            The rows of the {@code VALUES} block, from {@link #toRow(List, BindingSet)}
+	 */
+	String getQuery(List<String> variables, List<String> rows) {
+		StringBuilder query = new StringBuilder(template.length() + rows.size() * 64);
+		query.append(template, 0, insert).append("\nVALUES (");
+
+		for (String variable : variables) {
+			query.append(" ?").append(variable);
+		}
+
+		query.append(" ) {\n");
+
+		for (String row : rows) {
+			query.append(row).append('\n');
+		}
+
+		return query.append("}\n").append(template, insert, template.length()).toString();
+	}
+
+	/**
+	 * Get the row of the {@code VALUES} block of a binding set
+	 */
+	static String toRow(List<String> variables, BindingSet bindings) {
+		StringBuilder row = new StringBuilder("(");
+
+		for (String variable : variables) {
+			Value value = bindings.getValue(variable);
+			row.append(' ').append(value != null ? NTriplesUtil.toNTriplesString(value) : "UNDEF");
+		}
+
+		return row.append(" )").toString();
+	}
+
+	/**
+	 * Get the length of {@code s} once encoded by {@link java.net.URLEncoder URLEncoder} in UTF-8, without encoding it
+	 */
+	static int encodedLength(String s) {
+		int length = 0;
+
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-'
+				|| c == '*' || c == '_' || c == ' ') {
+				length++;
+			}
+			else if (c < 0x80) {
+				length += 3;
+			}
+			else if (c < 0x800) {
+				length += 6;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				// a supplementary character takes four bytes
+				length += 12;
+				i++;
+			}
+			else {
+				length += 9;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * The metrics of a batch
+	 */
+	public static class Batch {
+
+		private final int size;
+
+		private final int results;
+
+		private final long latency;
+
+		private final boolean failed;
+
+		Batch(int size, int results, long latency, boolean failed) {
+			this.size = size;
+			this.results = results;
+			this.latency = latency;
+			this.failed = failed;
+		}
+
+		/**
+		 * Get the number of bindings of the batch
+		 *
+		 * @return the number of bindings
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * Get the number of solutions of the batch
+		 *
+		 * @return the number of solutions, 0 if the batch failed
+		 */
+		public int getResults() {
+			return results;
+		}
+
+		/**
+		 * Get the time taken by the batch, from its request until its result was read
+		 *
+		 * @return the time in milliseconds
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Checks if the batch failed, in which case its bindings were retried in smaller batches if the failure was caused
+		 * by its size
+		 *
+		 * @return true if the batch failed
+		 */
+		public boolean isFailed() {
+			return failed;
+		}
+
+		/**
+		 * @inheritDoc
+		 */
+		@Override
+		public String toString() {
+			return "Batch(size=" + size + ", results=" + results + ", latency=" + latency + "ms"
+				   + (failed ? ", failed" : "") + ")";
+		}
+	}
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.services;
+
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.services.BulkQuery.Batch;
+import com.google.common.collect.Lists;
+
+/**
+ * The result of a {@link BulkQuery}: the solutions of its batches, in the order the batches complete.<br>
+ * The batches are executed by {@link BulkQuery#getConcurrency()} threads while the result is read. Each thread reads
+ * the result of its batch before passing it on, and waits while as many batches as there are threads are waiting to be
+ * read, so the memory used is bounded by the size of the batches. Closing the result stops the threads.<br>
+ * A batch the server failed because of its size (a request or URI too long, a server error or a timeout) is retried in
+ * two halves. Any other failure, or the failure of a batch of a single binding, fails the result when it is reached.
+ */
+public class BulkTupleQueryResult implements TupleQueryResult {
+
+	private static final Object END = new Object();
+
+	private static final ThreadFactory THREADS = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "bulk-query");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	private final BulkQuery bulk;
+
+	private final List<String> variables;
+
+	private final List<? extends BindingSet> bindings;
+
+	private final Object lock = new Object();
+
+	/**
+	 * The first binding not yet in a batch
+	 */
+	private int position;
+
+	/**
+	 * The number of bindings of the next batch
+	 */
+	private int batchSize;
+
+	/**
+	 * The rows of the failed batches, to retry
+	 */
+	private final LinkedList<List<String>> retries = Lists.newLinkedList();
+
+	/**
+	 * The number of batches being executed
+	 */
+	private int executing;
+
+	private final List<Batch> batches = Lists.newArrayList();
+
+	/**
+	 * The results of the batches (or their {@link Exception}, or {@link #END}), waiting to be read
+	 */
+	private final BlockingQueue<Object> completed;
+
+	private final AtomicInteger running;
+
+	private final ExecutorService executor;
+
+	private volatile boolean closed;
+
+	/**
+	 * Whether a batch failed for good, so no more batches are executed
+	 */
+	private boolean stopped;
+
+	private List<String> bindingNames;
+
+	private Iterator<BindingSet> current = Collections.<BindingSet> emptyList().iterator();
+
+	private boolean ended;
+
+	BulkTupleQueryResult(BulkQuery bulk, List<String> variables, List<? extends BindingSet> bindings) {
+		this.bulk = bulk;
+		this.variables = variables;
+		this.bindings = bindings;
+		this.batchSize = Math.min(bulk.getBatchSize(), bulk.getMaxBatchSize());
+
+		int threads = bulk.getConcurrency();
+		completed = new ArrayBlockingQueue<Object>(threads);
+		running = new AtomicInteger(threads);
+		executor = Executors.newFixedThreadPool(threads, THREADS);
+
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					execute();
+				}
+			});
+		}
+
+		executor.shutdown();
+	}
+
+	/**
+	 * Get the metrics of the batches executed so far
+	 *
+	 * @return the batches, in the order they completed
+	 */
+	public List<Batch> getBatches() {
+		synchronized (lock) {
+			return Lists.newArrayList(batches);
+		}
+	}
+
+	/**
+	 * Get the number of bindings of the next batch, as adapted to the latency of the previous ones
+	 *
+	 * @return the number of bindings
+	 */
+	public int getBatchSize() {
+		synchronized (lock) {
+			return batchSize;
+		}
+	}
+
+	/**
+	 * The variables of the first batch, waiting for it if needed, or no variables if it failed
+	 */
+	public List<String> getBindingNames() {
+		if (bindingNames == null) {
+			try {
+				hasNext();
+			}
+			catch (QueryEvaluationException e) {
+				return Collections.emptyList();
+			}
+		}
+
+		return bindingNames != null ? bindingNames : Collections.<String> emptyList();
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean hasNext() throws QueryEvaluationException {
+		while (!current.hasNext() && !ended) {
+			Object next;
+
+			try {
+				next = completed.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new QueryEvaluationException(e);
+			}
+
+			if (next == END) {
+				ended = true;
+			}
+			else if (next instanceof Exception) {
+				close();
+				throw new QueryEvaluationException("Problem executing batch", (Exception) next);
+			}
+			else {
+				Chunk chunk = (Chunk) next;
+
+				if (bindingNames == null) {
+					bindingNames = chunk.bindingNames;
+				}
+
+				current = chunk.results.iterator();
+			}
+		}
+
+		return current.hasNext();
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public BindingSet next() throws QueryEvaluationException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		return current.next();
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void remove() throws QueryEvaluationException {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stop executing batches, and discard the results not read yet
+	 */
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+
+		ended = true;
+		current = Collections.<BindingSet> emptyList().iterator();
+		completed.clear();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Execute batches until there are no more bindings
+	 */
+	private void execute() {
+		try {
+			for (List<String> rows = nextBatch(); rows != null; rows = nextBatch()) {
+				long start = System.nanoTime();
+
+				try {
+					TupleQueryResult result = bulk.fetch(bulk.getQuery(variables, rows));
+					List<BindingSet> results = Lists.newArrayList();
+
+					try {
+						while (result.hasNext()) {
+							results.add(result.next());
+						}
+					}
+					finally {
+						result.close();
+					}
+
+					completed(rows.size(), results.size(), (System.nanoTime() - start) / 1000000);
+					put(new Chunk(result.getBindingNames(), results));
+				}
+				catch (Exception e) {
+					if (!failed(rows, (System.nanoTime() - start) / 1000000, isSplittable(e))) {
+						put(e);
+						return;
+					}
+				}
+			}
+		}
+		finally {
+			if (running.decrementAndGet() == 0) {
+				put(END);
+			}
+		}
+	}
+
+	/**
+	 * Take the rows of the next batch: a failed batch, or the next bindings
+	 *
+	 * @return the rows, or {@code null} if there are no more batches
+	 */
+	private List<String> nextBatch() {
+		synchronized (lock) {
+			while (!closed && !stopped) {
+				if (!retries.isEmpty()) {
+					executing++;
+					return retries.removeFirst();
+				}
+				else if (position < bindings.size()) {
+					List<String> rows = Lists.newArrayList();
+					int budget = bulk.getMaxQueryLength() - bulk.getQueryLength(variables);
+
+					while (position < bindings.size() && rows.size() < batchSize) {
+						String row = BulkQuery.toRow(variables, bindings.get(position));
+						budget -= BulkQuery.getRowLength(row);
+
+						if (budget < 0 && !rows.isEmpty()) {
+							break;
+						}
+
+						rows.add(row);
+						position++;
+					}
+
+					executing++;
+					return rows;
+				}
+				else if (executing == 0) {
+					return null;
+				}
+
+				// a batch being executed may still fail, and be retried
+				try {
+					lock.wait();
+				}
+				catch (InterruptedException e) {
+					return null;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Record a batch, and adapt the size of the next ones to its latency
+	 */
+	private void completed(int size, int results, long latency) {
+		synchronized (lock) {
+			executing--;
+			batches.add(new Batch(size, results, latency, false));
+
+			if (latency > bulk.getTargetLatency()) {
+				batchSize = Math.max(1, Math.min(batchSize, size) / 2);
+			}
+			else if (latency * 2 < bulk.getTargetLatency() && size >= batchSize) {
+				batchSize = Math.min(bulk.getMaxBatchSize(), batchSize * 2);
+			}
+
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Checks if a batch failed because of its size, so that smaller batches may succeed: the request or its URI was
+	 * too large (413, 414), the server failed (5xx) or the request timed out
+	 */
+	private static boolean isSplittable(Exception e) {
+		if (e instanceof PelletClientException) {
+			int code = ((PelletClientException) e).getResponseCode();
+
+			if (code == 408 || code == 413 || code == 414 || code >= 500) {
+				return true;
+			}
+		}
+
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SocketTimeoutException) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Record a failed batch, to be retried in two halves if it is {@code splittable}
+	 *
+	 * @return false if the batch can't be retried: it was a single binding, or the failure does not depend on its size
+	 */
+	private boolean failed(List<String> rows, long latency, boolean splittable) {
+		synchronized (lock) {
+			executing--;
+			batches.add(new Batch(rows.size(), 0, latency, true));
+			lock.notifyAll();
+
+			if (!splittable || rows.size() == 1 || closed) {
+				stopped = true;
+				return false;
+			}
+
+			int half = rows.size() / 2;
+			batchSize = Math.max(1, Math.min(batchSize, half));
+			retries.addFirst(rows.subList(half, rows.size()));
+			retries.addFirst(rows.subList(0, half));
+
+			return true;
+		}
+	}
+
+	/**
+	 * Pass on the result of a batch, waiting while the results of the other threads were not read
+	 */
+	private void put(Object result) {
+		try {
+			while (!completed.offer(result, 100, TimeUnit.MILLISECONDS)) {
+				if (closed) {
+					return;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class Chunk {
+
+		private final List<String> bindingNames;
+
+		private final List<BindingSet> results;
+
+		public Chunk(List<String> bindingNames, List<BindingSet> results) {
+			this.bindingNames = bindingNames;
+			this.results = results;
+		}
+	}
+}
@@ -11,26 +11,25 @@
 
 package com.clarkparsia.pelletserver.client.services;
 
-import static com.google.common.base.Preconditions.checkArgument;
-
 import javax.activation.MimeType;
 
 import org.openrdf.model.Graph;
+import org.openrdf.rio.RDFHandler;
 
 
 import com.clarkparsia.pelletserver.client.Callback;
 import com.clarkparsia.pelletserver.client.Endpoint;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletClientException;
-import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
 import com.clarkparsia.pelletserver.client.PelletService;
 import com.clarkparsia.pelletserver.client.PelletServiceCallbackTask;
 import com.clarkparsia.pelletserver.client.ServiceAnnotation;
+import com.clarkparsia.pelletserver.client.index.Taxonomy;
 import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
 import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
 import com.clarkparsia.pelletserver.client.utils.RequestUtils;
-import com.clarkparsia.utils.web.Response;
-import com.google.common.collect.Iterables;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
+import com.clarkparsia.pelletserver.client.utils.StatementFilter;
 
 /**
  * The Classify service performs classification in the {@link KnowledgeBase}
@@ -41,12 +40,11 @@ import com.google.common.collect.Iterables;
 @ServiceAnnotation("classify")
 public class Classify extends AbstractKBPelletService {
 
-	private static final MimeType MIMETYPE = PelletServerMimeTypes.RDFXML;
-
 	public Classify(KnowledgeBase kb, Endpoint endpoint, MimeType... mimetypes) {
 		super(kb, endpoint, mimetypes);
 
-		checkArgument(Iterables.any(this.mimetypes, PelletServerMimeTypes.getPredicate(MIMETYPE)), getName() + " service must support %s", MIMETYPE);
+		// Fail early if the service does not return RDF
+		rdfFormats();
 	}
 
 	/**
@@ -56,7 +54,7 @@ public class Classify extends AbstractKBPelletService {
 	 * @throws PelletClientException if there was an error during invocation
 	 */
 	public Graph classify() throws PelletClientException {
-		return new ClassifyTask(this).execute();
+		return cached(new ClassifyTask(this, rdfFormats()), graphParameter()).execute();
 	}
 
 	/**
@@ -66,23 +64,106 @@ public class Classify extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the classification is done
 	 */
 	public void classify(Callback<Graph> callback) {
-		CallbackUtils.launchThread(callback, new ClassifyTask(this));
+		CallbackUtils.launchThread(callback, cached(new ClassifyTask(this, rdfFormats()), graphParameter()));
+	}
+
+	/**
+	 * Classify the {@link KnowledgeBase}, passing the statements of the result to {@code handler} as they are parsed
+	 * instead of building a {@link org.openrdf.model.Graph Graph}. The result is not cached.
+	 * 
+	 * @param handler
+	 *            The {@link RDFHandler} receiving the classification statements
+	 * @throws PelletClientException if there was an error during invocation, or the handler failed
+	 */
+	public void classify(RDFHandler handler) throws PelletClientException {
+		new ClassifyTask(this, rdfFormats(), null, handler).execute();
+	}
+
+	/**
+	 * Classify the {@link KnowledgeBase}, keeping only the statements of the result accepted by {@code filter}. The
+	 * statements discarded are dropped while the response is parsed, and never held in memory. The result is not
+	 * cached.
+	 * 
+	 * @param filter
+	 *            The {@link StatementFilter} of the statements to keep
+	 * @return The filtered classification {@link org.openrdf.model.Graph Graph}
+	 * @throws PelletClientException if there was an error during invocation
+	 */
+	public Graph classify(StatementFilter filter) throws PelletClientException {
+		return new ClassifyTask(this, rdfFormats(filter), filter, null).execute();
+	}
+
+	/**
+	 * Classify the {@link KnowledgeBase}, passing the statements of the result accepted by {@code filter} to
+	 * {@code handler}. The result is not cached.
+	 * 
+	 * @param filter
+	 *            The {@link StatementFilter} of the statements to keep
+	 * @param handler
+	 *            The {@link RDFHandler} receiving the classification statements
+	 * @throws PelletClientException if there was an error during invocation, or the handler failed
+	 */
+	public void classify(StatementFilter filter, RDFHandler handler) throws PelletClientException {
+		new ClassifyTask(this, rdfFormats(filter), filter, handler).execute();
+	}
+
+	/**
+	 * Classify the {@link KnowledgeBase}, and index the class hierarchy of the result for subsumption checks. Only the
+	 * {@code rdfs:subClassOf}, {@code owl:equivalentClass} and {@code rdf:type} statements of the result are parsed.
+	 * The result is not cached.
+	 * 
+	 * @return The {@link Taxonomy} of the classification
+	 * @throws PelletClientException if there was an error during invocation
+	 */
+	public Taxonomy taxonomy() throws PelletClientException {
+		Taxonomy.Builder builder = new Taxonomy.Builder();
+		classify(Taxonomy.newFilter(), builder);
+		return builder.build();
 	}
 
 	private static class ClassifyTask extends PelletServiceCallbackTask<Graph> {
 
-		protected ClassifyTask(PelletService service) {
+		private MimeType[] accept;
+
+		/**
+		 * The filter of the statements to keep, or {@code null} to keep all of them
+		 */
+		private StatementFilter filter;
+
+		/**
+		 * The handler receiving the statements, or {@code null} to build a graph
+		 */
+		private RDFHandler handler;
+
+		protected ClassifyTask(PelletService service, MimeType[] accept) {
+			this(service, accept, null, null);
+		}
+
+		protected ClassifyTask(PelletService service, MimeType[] accept, StatementFilter filter, RDFHandler handler) {
 			super(service);
+			this.accept = accept;
+			this.filter = filter;
+			this.handler = handler;
 		}
 
 		public Graph execute() throws PelletClientException {
-			Response response = RequestUtils.execute(service.getEndpoint(), service.getServer().getPreferredMethod(), MIMETYPE);
+			ResponseStream response = RequestUtils.stream(service.getEndpoint(), service.getServer().getPreferredMethod(), 
+							                              accept);
 
 			try {
-				return OpenRdfUtils.createGraphFromRDFXMLBlob(response.getContent());
+				if (handler != null) {
+					OpenRdfUtils.parse(response, service.getServer().getParserThreads(), filter, handler);
+					return null;
+				}
+
+				return OpenRdfUtils.createGraphFromStream(response, service.getServer().getParserThreads(), filter, 
+				                                          service.getServer().isIndexedGraphs());
 			}
 			catch (Exception e) {
-				throw new PelletClientException("Problem parsing " + MIMETYPE + " response", e);
+				throw new PelletClientException("Problem parsing " + response.getContentType() + " response", e);
+			}
+			finally {
+				response.close();
 			}
 		}
 	}
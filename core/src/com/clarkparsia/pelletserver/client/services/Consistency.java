@@ -13,14 +13,17 @@ package com.clarkparsia.pelletserver.client.services;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.Collection;
+import java.util.Map;
+
 import javax.activation.MimeType;
 
 import org.openrdf.model.Literal;
 import org.openrdf.model.Value;
-import org.openrdf.query.TupleQueryResult;
 
 
 import com.clarkparsia.pelletserver.client.Callback;
+import com.clarkparsia.pelletserver.client.CallbackTask;
 import com.clarkparsia.pelletserver.client.Endpoint;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletClientException;
@@ -31,8 +34,9 @@ import com.clarkparsia.pelletserver.client.ServiceAnnotation;
 import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
 import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
 import com.clarkparsia.pelletserver.client.utils.RequestUtils;
-import com.clarkparsia.utils.web.Response;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 
 /**
  * The Consistency service checks if the {@link KnowledgeBase} is consistent
@@ -59,7 +63,7 @@ public class Consistency extends AbstractKBPelletService {
 	 * @throws PelletClientException if there was an error during invocation
 	 */
 	public boolean consistency() throws PelletClientException {
-		return new ConsistencyTask(this).execute();
+		return cached(new ConsistencyTask(this)).execute();
 	}
 
 	/**
@@ -69,7 +73,66 @@ public class Consistency extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the check is done
 	 */
 	public void consistency(Callback<Boolean> callback) {
-		CallbackUtils.launchThread(callback, new ConsistencyTask(this));
+		CallbackUtils.launchThread(callback, cached(new ConsistencyTask(this)));
+	}
+
+	/**
+	 * Checks if several {@link KnowledgeBase}s are consistent, running at most {@code concurrency} checks at the same
+	 * time
+	 * 
+	 * @param kbs
+	 *            The KBs to check
+	 * @param concurrency
+	 *            The maximum number of checks running at the same time
+	 * @return The result of each KB
+	 * @throws PelletClientException if the check failed for any of the KBs
+	 */
+	public static Map<KnowledgeBase, Boolean> consistency(Collection<KnowledgeBase> kbs, int concurrency) 
+		throws PelletClientException {
+		Map<KnowledgeBase, PelletClientException> failures = Maps.newLinkedHashMap();
+		Map<KnowledgeBase, Boolean> results = consistency(kbs, concurrency, failures);
+
+		if (!failures.isEmpty()) {
+			Map.Entry<KnowledgeBase, PelletClientException> failure = failures.entrySet().iterator().next();
+
+			throw new PelletClientException("Consistency check failed for " + failures.size() + " KB(s), e.g. " 
+							                + failure.getKey().getName(), failure.getValue());
+		}
+
+		return results;
+	}
+
+	/**
+	 * Checks if several {@link KnowledgeBase}s are consistent, running at most {@code concurrency} checks at the same
+	 * time. A failed check does not affect the others.
+	 * 
+	 * @param kbs
+	 *            The KBs to check
+	 * @param concurrency
+	 *            The maximum number of checks running at the same time
+	 * @param failures
+	 *            The map where the failed checks are put, including the KBs without a consistency service (can be
+	 *            {@code null})
+	 * @return The result of each KB that was checked successfully
+	 * @throws PelletClientException if the thread is interrupted while waiting for the checks
+	 */
+	public static Map<KnowledgeBase, Boolean> consistency(Collection<KnowledgeBase> kbs, int concurrency, 
+					                                      Map<KnowledgeBase, PelletClientException> failures) 
+		throws PelletClientException {
+		Map<KnowledgeBase, CallbackTask<Boolean>> tasks = Maps.newLinkedHashMap();
+
+		for (KnowledgeBase kb : kbs) {
+			Consistency service = kb.getService(Consistency.class);
+
+			if (service != null) {
+				tasks.put(kb, service.cached(new ConsistencyTask(service)));
+			}
+			else if (failures != null) {
+				failures.put(kb, new PelletClientException("KB " + kb.getName() + " does not provide consistency"));
+			}
+		}
+
+		return CallbackUtils.executeAll(tasks, concurrency, failures);
 	}
 
 	private static class ConsistencyTask extends PelletServiceCallbackTask<Boolean> {
@@ -80,13 +143,12 @@ public class Consistency extends AbstractKBPelletService {
 
 		public Boolean execute() throws PelletClientException {
 
-			Response response = RequestUtils.execute(service.getEndpoint(), service.getServer().getPreferredMethod(), 
-							                         MIMETYPE);
+			ResponseStream response = RequestUtils.stream(service.getEndpoint(), 
+							                              service.getServer().getPreferredMethod(), MIMETYPE);
 
-			// Parse the Query result into a boolean
+			// Only the first binding is needed, so the result set is never materialized
 			try {
-				TupleQueryResult resultSet = OpenRdfUtils.createResultSetFromSparqlXMLBlob(response.getContent());
-				Value v = resultSet.next().getValue("Consistent");
+				Value v = OpenRdfUtils.readFirstBinding(response, "Consistent");
 
 				if (v instanceof Literal) {
 					return ((Literal) v).booleanValue();
@@ -97,6 +159,9 @@ public class Consistency extends AbstractKBPelletService {
 			catch (Throwable e) {
 				throw new PelletClientException("Problem parsing " + MIMETYPE + " response", e);
 			}
+			finally {
+				response.close();
+			}
 		}
 	}
 
@@ -11,33 +11,45 @@
 
 package com.clarkparsia.pelletserver.client.services;
 
-import static com.google.common.base.Preconditions.checkArgument;
-
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.activation.MimeType;
 
+import org.openrdf.model.BNode;
 import org.openrdf.model.Graph;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.GraphImpl;
+import org.openrdf.model.impl.URIImpl;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.helpers.RDFHandlerBase;
 
 
+import com.clarkparsia.pelletserver.client.BatchCallback;
 import com.clarkparsia.pelletserver.client.Callback;
+import com.clarkparsia.pelletserver.client.CallbackTask;
 import com.clarkparsia.pelletserver.client.Endpoint;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletClientException;
-import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
 import com.clarkparsia.pelletserver.client.PelletService;
 import com.clarkparsia.pelletserver.client.PelletServiceCallbackTask;
 import com.clarkparsia.pelletserver.client.ServiceAnnotation;
 import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
 import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
 import com.clarkparsia.pelletserver.client.utils.RequestUtils;
-import com.clarkparsia.utils.web.Response;
-import com.google.common.collect.Iterables;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * The Explain service explains the results of a SPARQL query to the {@link KnowledgeBase}
@@ -48,12 +60,18 @@ import com.google.common.collect.Iterables;
 @ServiceAnnotation("explain")
 public class Explain extends AbstractKBPelletService {
 
-	private static final MimeType MIMETYPE = PelletServerMimeTypes.RDFXML;
+	private static final URI OWL_NOTHING = new URIImpl("http://www.w3.org/2002/07/owl#Nothing");
+
+	/**
+	 * The query explaining a triple, prepared once for all the explanations
+	 */
+	private static final PreparedQuery TRIPLE = new PreparedQuery("SELECT * WHERE { ?s ?p ?o }", "s", "p", "o");
 
 	public Explain(KnowledgeBase kb, Endpoint endpoint, MimeType... mimetypes) {
 		super(kb, endpoint, mimetypes);
 
-		checkArgument(Iterables.any(this.mimetypes, PelletServerMimeTypes.getPredicate(MIMETYPE)), getName() + " service must support %s", MIMETYPE);
+		// Fail early if the service does not return RDF
+		rdfFormats();
 	}
 
 	/**
@@ -65,7 +83,7 @@ public class Explain extends AbstractKBPelletService {
 	 * @throws PelletClientException if there is an error while querying
 	 */
 	public Graph query(String query) throws PelletClientException {
-		return new ExplainQueryTask(this, query).execute();
+		return cached(new ExplainQueryTask(this, query, rdfFormats()), query, graphParameter()).execute();
 	}
 
 	/**
@@ -77,7 +95,52 @@ public class Explain extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the explanation is done
 	 */
 	public void query(String query, Callback<Graph> callback) {
-		CallbackUtils.launchThread(callback, new ExplainQueryTask(this, query));
+		CallbackUtils.launchThread(callback, cached(new ExplainQueryTask(this, query, rdfFormats()), query, 
+		                                            graphParameter()));
+	}
+
+	/**
+	 * Explains a SPARQL query, passing the statements of the explanation to {@code handler} as they are parsed instead
+	 * of building a {@link org.openrdf.model.Graph Graph}. The result is not cached.
+	 * 
+	 * @param query
+	 *            The SPARQL query to explain
+	 * @param handler
+	 *            The {@link RDFHandler} receiving the explanation statements
+	 * @throws PelletClientException if there is an error while querying, or the handler failed
+	 */
+	public void query(String query, RDFHandler handler) throws PelletClientException {
+		new ExplainQueryTask(this, query, rdfFormats(), handler).execute();
+	}
+
+	/**
+	 * Explains a {@link PreparedQuery}
+	 * 
+	 * @param query
+	 *            The prepared query to explain
+	 * @param values
+	 *            The values of its parameters, in order
+	 * @return The explanation {@link org.openrdf.model.Graph Graph}
+	 * @throws PelletClientException if there is an error while querying
+	 * @throws IllegalArgumentException if there is not a value for each parameter, or a value is a blank node
+	 */
+	public Graph query(PreparedQuery query, Value... values) throws PelletClientException {
+		return preparedTask(query, values).execute();
+	}
+
+	/**
+	 * Asynchronously explains a {@link PreparedQuery}
+	 * 
+	 * @param query
+	 *            The prepared query to explain
+	 * @param callback
+	 *            The {@link Callback} to execute after the explanation is done
+	 * @param values
+	 *            The values of its parameters, in order
+	 * @throws IllegalArgumentException if there is not a value for each parameter, or a value is a blank node
+	 */
+	public void query(PreparedQuery query, Callback<Graph> callback, Value... values) {
+		CallbackUtils.launchThread(callback, preparedTask(query, values));
 	}
 
 	/**
@@ -91,8 +154,7 @@ public class Explain extends AbstractKBPelletService {
 	 * @throws PelletClientException if there is an error while querying
 	 */
 	public Graph subclass(Resource subclass, Resource superclass) throws PelletClientException {
-		String query = selectQuery(subclass.stringValue(), RDFS.SUBCLASSOF.stringValue(), superclass.stringValue());
-		return query(query);
+		return query(TRIPLE, subclass, RDFS.SUBCLASSOF, superclass);
 	}
 
 	/**
@@ -106,8 +168,7 @@ public class Explain extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the explanation is done
 	 */
 	public void subclass(Resource subclass, Resource superclass, Callback<Graph> callback) {
-		String query = selectQuery(subclass.stringValue(), RDFS.SUBCLASSOF.stringValue(), superclass.stringValue());
-		query(query, callback);
+		query(TRIPLE, callback, subclass, RDFS.SUBCLASSOF, superclass);
 	}
 
 	/**
@@ -120,8 +181,7 @@ public class Explain extends AbstractKBPelletService {
 	 *             If there is an error or {@code cl} is not unsatisfiable
 	 */
 	public Graph unsat(Resource cl) throws PelletClientException {
-		String query = selectQuery(cl.stringValue(), RDFS.SUBCLASSOF.stringValue(), "http://www.w3.org/2002/07/owl#Nothing");
-		return query(query);
+		return query(TRIPLE, cl, RDFS.SUBCLASSOF, OWL_NOTHING);
 	}
 
 	/**
@@ -133,8 +193,7 @@ public class Explain extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the explanation is done
 	 */
 	public void unsat(Resource cl, Callback<Graph> callback) {
-		String query = selectQuery(cl.stringValue(), RDFS.SUBCLASSOF.stringValue(), "http://www.w3.org/2002/07/owl#Nothing");
-		query(query, callback);
+		query(TRIPLE, callback, cl, RDFS.SUBCLASSOF, OWL_NOTHING);
 	}
 
 	/**
@@ -171,8 +230,7 @@ public class Explain extends AbstractKBPelletService {
 	 * @throws PelletClientException if there is an error while querying
 	 */
 	public Graph property(Resource subject, URI predicate, Resource object) throws PelletClientException {
-		String query = selectQuery(subject.stringValue(), predicate.stringValue(), object.stringValue());
-		return query(query);
+		return query(TRIPLE, subject, predicate, object);
 	}
 
 	/**
@@ -188,8 +246,7 @@ public class Explain extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the explanation is done
 	 */
 	public void property(Resource subject, URI predicate, Resource object, Callback<Graph> callback) {
-		String query = selectQuery(subject.stringValue(), predicate.stringValue(), object.stringValue());
-		query(query, callback);
+		query(TRIPLE, callback, subject, predicate, object);
 	}
 
 	/**
@@ -204,8 +261,7 @@ public class Explain extends AbstractKBPelletService {
 	 *             If there is an error or the {@code instance} is not an instance of {@code cl}
 	 */
 	public Graph instance(Resource instance, Resource cl) throws PelletClientException {
-		String query = selectQuery(instance.toString(), RDF.TYPE.stringValue(), cl.stringValue());
-		return query(query);
+		return query(TRIPLE, instance, RDF.TYPE, cl);
 	}
 
 	/**
@@ -219,24 +275,220 @@ public class Explain extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the explanation is done
 	 */
 	public void instance(Resource instance, Resource cl, Callback<Graph> callback) {
-		String query = selectQuery(instance.toString(), RDF.TYPE.stringValue(), cl.stringValue());
-		query(query, callback);
+		query(TRIPLE, callback, instance, RDF.TYPE, cl);
+	}
+
+	/**
+	 * Explains several entailments, running at most {@code concurrency} explanations at the same time. The
+	 * {@code callback} is called with the explanation of each entailment as soon as it is received, from the thread that
+	 * requested it, and a failed explanation does not affect the others. The responses are read to their end, so the
+	 * connections are reused for the next explanations, up to the {@code http.maxConnections} kept alive by the JVM (5
+	 * by default).
+	 * 
+	 * @param entailments
+	 *            The entailments to explain, e.g., ({@code subclass}, rdfs:subClassOf, {@code superclass}) or
+	 *            ({@code instance}, rdf:type, {@code class})
+	 * @param concurrency
+	 *            The maximum number of explanations requested at the same time
+	 * @param callback
+	 *            The {@link BatchCallback} to call after each explanation. Entailments with a blank node fail without
+	 *            being requested.
+	 * @throws PelletClientException
+	 *             if the thread is interrupted while waiting for the explanations
+	 */
+	public void explainAll(Collection<? extends Statement> entailments, int concurrency, 
+						   BatchCallback<Statement, Graph> callback) throws PelletClientException {
+		Map<Statement, CallbackTask<Graph>> tasks = Maps.newLinkedHashMap();
+
+		for (Statement entailment : entailments) {
+			try {
+				tasks.put(entailment, preparedTask(TRIPLE, new Value[] { entailment.getSubject(), 
+								entailment.getPredicate(), entailment.getObject() }));
+			}
+			catch (IllegalArgumentException e) {
+				callback.failure(entailment, new PelletClientException(e));
+			}
+		}
+
+		CallbackUtils.executeEach(tasks, concurrency, callback);
+	}
+
+	/**
+	 * Explains several entailments, running at most {@code concurrency} explanations at the same time, and waits for
+	 * all of them. A failed explanation does not affect the others.
+	 * 
+	 * @param entailments
+	 *            The entailments to explain
+	 * @param concurrency
+	 *            The maximum number of explanations requested at the same time
+	 * @param failures
+	 *            The map where the failed explanations are put
+	 * @return The explanation of each entailment that was explained successfully, in the order of {@code entailments}
+	 * @throws PelletClientException
+	 *             if the thread is interrupted while waiting for the explanations
+	 * @see #explainAll(Collection, int, BatchCallback)
+	 */
+	public Map<Statement, Graph> explainAll(Collection<? extends Statement> entailments, int concurrency, 
+											final Map<Statement, PelletClientException> failures) 
+		throws PelletClientException {
+		final Map<Statement, Graph> explanations = Maps.newHashMap();
+
+		explainAll(entailments, concurrency, new BatchCallback<Statement, Graph>() {
+			public synchronized void success(Statement entailment, Graph explanation) {
+				explanations.put(entailment, explanation);
+			}
+
+			public synchronized void failure(Statement entailment, PelletClientException exception) {
+				failures.put(entailment, exception);
+			}
+		});
+
+		Map<Statement, Graph> results = Maps.newLinkedHashMap();
+
+		for (Statement entailment : entailments) {
+			if (explanations.containsKey(entailment)) {
+				results.put(entailment, explanations.get(entailment));
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Explains why each unsatisfiable class of the {@link KnowledgeBase} is unsatisfiable. The unsatisfiable classes are
+	 * the subclasses of owl:Nothing in the {@link Classify#taxonomy() taxonomy} of the KB, and at most
+	 * {@code concurrency} of them are explained at the same time. The {@code callback} is called with the explanation of
+	 * each class as soon as it is received, and a failed explanation does not affect the others.<br>
+	 * The explanations of the classes usually share most of their axioms, so the statements of the explanations are
+	 * parsed into a {@link GraphImpl} each, where a statement already received for another class is replaced by the same
+	 * instance. Statements with blank nodes are not shared, since their identifiers are only meaningful within a
+	 * response. The explanations are not cached.
+	 * 
+	 * @param concurrency
+	 *            The maximum number of explanations requested at the same time
+	 * @param callback
+	 *            The {@link BatchCallback} to call after each explanation
+	 * @return The unsatisfiable classes; anonymous classes are not explained
+	 * @throws PelletClientException
+	 *             if the KB does not provide classification, the classification failed, or the thread is interrupted
+	 *             while waiting for the explanations
+	 */
+	public Set<Resource> unsatisfiable(int concurrency, BatchCallback<Resource, Graph> callback) 
+		throws PelletClientException {
+		Classify classify = kb.getService(Classify.class);
+
+		if (classify == null) {
+			throw new PelletClientException("KB " + kb.getName() + " does not provide classification");
+		}
+
+		Set<Resource> classes = Sets.newLinkedHashSet();
+
+		for (Resource cl : classify.taxonomy().getSubClasses(OWL_NOTHING)) {
+			if (cl instanceof URI) {
+				classes.add(cl);
+			}
+		}
+
+		ConcurrentMap<Statement, Statement> axioms = new ConcurrentHashMap<Statement, Statement>();
+		Map<Resource, CallbackTask<Graph>> tasks = Maps.newLinkedHashMap();
+
+		for (Resource cl : classes) {
+			String encodedQuery = TRIPLE.getEncodedQuery(cl, RDFS.SUBCLASSOF, OWL_NOTHING);
+			tasks.put(cl, new SharedAxiomsTask(this, encodedQuery, rdfFormats(), axioms));
+		}
+
+		CallbackUtils.executeEach(tasks, concurrency, callback);
+
+		return classes;
 	}
 
 	/**
-	 * Performs a SPARQL {@code SELECT} query with the provided {@code subject}, {@code predicate}, and {@code object}
+	 * Create the (possibly cached) task explaining a prepared query. The query is only rendered as text for the cache
+	 * key; otherwise only its encoded form is built.
 	 */
-	private static String selectQuery(String subject, String predicate, String object) {
-		return String.format("SELECT * WHERE { <%s> <%s> <%s> }", subject, predicate, object);
+	private CallbackTask<Graph> preparedTask(PreparedQuery query, Value[] values) {
+		ExplainQueryTask task = new ExplainQueryTask(this, null, query.getEncodedQuery(values), rdfFormats(), null);
+
+		return isCached() ? cached(task, query.getQuery(values), graphParameter()) : task;
+	}
+
+	/**
+	 * Explains a query into a graph whose statements are shared with the other explanations of a batch
+	 */
+	private static class SharedAxiomsTask extends PelletServiceCallbackTask<Graph> {
+
+		private String encodedQuery;
+
+		private MimeType[] accept;
+
+		/**
+		 * The statements received so far, by themselves
+		 */
+		private ConcurrentMap<Statement, Statement> axioms;
+
+		protected SharedAxiomsTask(PelletService service, String encodedQuery, MimeType[] accept, 
+								   ConcurrentMap<Statement, Statement> axioms) {
+			super(service);
+			this.encodedQuery = encodedQuery;
+			this.accept = accept;
+			this.axioms = axioms;
+		}
+
+		public Graph execute() throws PelletClientException {
+			final Graph graph = new GraphImpl();
+
+			new ExplainQueryTask(service, null, encodedQuery, accept, new RDFHandlerBase() {
+				@Override
+				public void handleStatement(Statement statement) {
+					graph.add(share(statement));
+				}
+			}).execute();
+
+			return graph;
+		}
+
+		private Statement share(Statement statement) {
+			if (statement.getSubject() instanceof BNode || statement.getObject() instanceof BNode) {
+				return statement;
+			}
+
+			Statement shared = axioms.putIfAbsent(statement, statement);
+
+			return shared != null ? shared : statement;
+		}
 	}
 
 	private static class ExplainQueryTask extends PelletServiceCallbackTask<Graph> {
 
 		private String query;
 
-		protected ExplainQueryTask(PelletService service, String query) {
+		/**
+		 * The URL encoded query, if it was encoded in advance
+		 */
+		private String encodedQuery;
+
+		private MimeType[] accept;
+
+		/**
+		 * The handler receiving the statements, or {@code null} to build a graph
+		 */
+		private RDFHandler handler;
+
+		protected ExplainQueryTask(PelletService service, String query, MimeType[] accept) {
+			this(service, query, accept, null);
+		}
+
+		protected ExplainQueryTask(PelletService service, String query, MimeType[] accept, RDFHandler handler) {
+			this(service, query, null, accept, handler);
+		}
+
+		protected ExplainQueryTask(PelletService service, String query, String encodedQuery, MimeType[] accept, 
+								   RDFHandler handler) {
 			super(service);
 			this.query = query;
+			this.encodedQuery = encodedQuery;
+			this.accept = accept;
+			this.handler = handler;
 		}
 
 		public Graph execute() throws PelletClientException {
@@ -244,22 +496,30 @@ public class Explain extends AbstractKBPelletService {
 			URL url = null;
 
 			try {
-				String encodedQuery = URLEncoder.encode(query, "UTF-8");
-				url = new URL(service.getEndpoint().getURL().toString().replaceAll("\\Q{?query}\\E", "?query=" 
-								                                                   + encodedQuery));
+				String encodedQuery = this.encodedQuery != null ? this.encodedQuery : URLEncoder.encode(query, "UTF-8");
+				url = new URL(service.getEndpoint().getURL().toString().replace("{?query}", "?query=" + encodedQuery));
 			}
 			catch (Exception e) {
 				throw new PelletClientException("Problem creating query URL", e);
 			}
 
-			Response response = RequestUtils.execute(new Endpoint(url, service.getEndpoint().getHTTPMethods()), 
-							                                      service.getServer().getPreferredMethod(), MIMETYPE);
+			ResponseStream response = RequestUtils.stream(new Endpoint(url, service.getEndpoint().getHTTPMethods()), 
+							                                      service.getServer().getPreferredMethod(), accept);
 
 			try {
-				return OpenRdfUtils.createGraphFromRDFXMLBlob(response.getContent());
+				if (handler != null) {
+					OpenRdfUtils.parse(response, service.getServer().getParserThreads(), handler);
+					return null;
+				}
+
+				return OpenRdfUtils.createGraphFromStream(response, service.getServer().getParserThreads(), null, 
+				                                          service.getServer().isIndexedGraphs());
 			}
 			catch (Exception e) {
-				throw new PelletClientException("Problem parsing " + MIMETYPE + " response", e);
+				throw new PelletClientException("Problem parsing " + response.getContentType() + " response", e);
+			}
+			finally {
+				response.close();
 			}
 		}
 	}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.clarkparsia.pelletserver.client.services.Query.QueryForm;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A {@code SELECT} query rewritten into pages with {@code LIMIT} and {@code OFFSET}.<br>
+ * The {@code LIMIT} and {@code OFFSET} of the query, if any, are kept as the window the pages are taken from. Since
+ * pages are only consistent if the solutions are always returned in the same order, a query without {@code ORDER BY}
+ * is ordered by its projected variables (all the variables of its pattern for {@code SELECT *}).
+ */
+public class PagedQuery {
+
+	private final String query;
+
+	/**
+	 * The query without its {@code LIMIT} and {@code OFFSET}, ordered
+	 */
+	private final String base;
+
+	private final long offset;
+
+	private final long limit;
+
+	private final List<String> orderBy;
+
+	/**
+	 * Create a new PagedQuery
+	 *
+	 * @param query
+	 *            The {@code SELECT} query
+	 * @throws IllegalArgumentException
+	 *             if the query is not a {@code SELECT}
+	 */
+	public PagedQuery(String query) {
+		checkArgument(QueryForm.of(query) == QueryForm.SELECT, "Only SELECT queries can be paged: %s", query);
+
+		this.query = query;
+
+		List<QueryToken> tokens = QueryToken.tokenize(query);
+		int close = -1;
+
+		for (int i = 0; i < tokens.size(); i++) {
+			if (tokens.get(i).is("}")) {
+				close = i;
+			}
+		}
+
+		// the solution modifiers follow the last brace of the pattern
+		StringBuilder base = new StringBuilder(query);
+		long offset = 0;
+		long limit = -1;
+		boolean ordered = false;
+
+		for (int i = tokens.size() - 2; i > close; i--) {
+			QueryToken token = tokens.get(i);
+			QueryToken next = tokens.get(i + 1);
+
+			if (token.is("LIMIT") && next.isNumber()) {
+				limit = Long.parseLong(next.text);
+				base.delete(token.start, next.end);
+			}
+			else if (token.is("OFFSET") && next.isNumber()) {
+				offset = Long.parseLong(next.text);
+				base.delete(token.start, next.end);
+			}
+			else if (token.is("ORDER") && next.is("BY")) {
+				ordered = true;
+			}
+		}
+
+		this.offset = offset;
+		this.limit = limit;
+		this.orderBy = ordered ? Collections.<String> emptyList() : projection(tokens, close);
+
+		if (!orderBy.isEmpty()) {
+			base.append("\nORDER BY");
+
+			for (String variable : orderBy) {
+				base.append(' ').append(variable);
+			}
+		}
+
+		this.base = base.toString();
+	}
+
+	/**
+	 * Get the original query
+	 *
+	 * @return the query
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Get the {@code OFFSET} of the original query
+	 *
+	 * @return the offset, 0 if there is none
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Get the {@code LIMIT} of the original query
+	 *
+	 * @return the limit, or -1 if there is none
+	 */
+	public long getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Get the variables the query was ordered by
+	 *
+	 * @return the variables, or an empty list if the query had an {@code ORDER BY}
+	 */
+	public List<String> getOrderBy() {
+		return orderBy;
+	}
+
+	/**
+	 * Get the number of solutions of a page, which is smaller than requested at the end of the window of the original
+	 * query
+	 *
+	 * @param offset
+	 *            The position of the first solution of the page, in the window
+	 * @param size
+	 *            The size of the page
+	 * @return the number of solutions of the page, 0 if it is after the window
+	 */
+	public long getPageSize(long offset, int size) {
+		return limit < 0 ? size : Math.max(0, Math.min(size, limit - offset));
+	}
+
+	/**
+	 * Get the query of a page
+	 *
+	 * @param offset
+	 *            The position of the first solution of the page, in the window
+	 * @param size
+	 *            The size of the page
+	 * @return the query of the page, or {@code null} if it is after the window
+	 */
+	public String getPage(long offset, int size) {
+		long pageSize = getPageSize(offset, size);
+
+		if (pageSize == 0) {
+			return null;
+		}
+
+		return base + "\nLIMIT " + pageSize + "\nOFFSET " + (this.offset + offset);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return "PagedQuery(" + getPage(0, Integer.MAX_VALUE) + ")";
+	}
+
+	/**
+	 * Get the projected variables of a query or, for {@code SELECT *}, the variables of its pattern
+	 */
+	private static List<String> projection(List<QueryToken> tokens, int close) {
+		Set<String> variables = Sets.newLinkedHashSet();
+		int depth = 0;
+		int i = 0;
+
+		while (i < tokens.size() && !tokens.get(i).is("SELECT")) {
+			i++;
+		}
+
+		for (i++; i < tokens.size() && !tokens.get(i).is("WHERE") && !tokens.get(i).is("{"); i++) {
+			QueryToken token = tokens.get(i);
+
+			if (token.is("*")) {
+				for (; i < close; i++) {
+					if (tokens.get(i).isVariable()) {
+						variables.add(tokens.get(i).getVariable());
+					}
+				}
+
+				break;
+			}
+			else if (token.is("(")) {
+				depth++;
+			}
+			else if (token.is(")")) {
+				depth--;
+			}
+			else if (token.isVariable() && (depth == 0 || tokens.get(i - 1).is("AS"))) {
+				// the variables of expressions are not projected, only their names
+				variables.add(token.getVariable());
+			}
+		}
+
+		return Collections.unmodifiableList(Lists.newArrayList(variables));
+	}
+}
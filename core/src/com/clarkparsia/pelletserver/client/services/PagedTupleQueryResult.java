@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
+
+/**
+ * A {@link TupleQueryResult} reading the pages of a {@link PagedQuery} one after the other, as if they were a single
+ * result.<br>
+ * Once half of a page was read, the next page is requested on the {@link CallbackUtils#EXECUTOR executor}, so it is
+ * usually ready when the current page ends. At most two pages are open at any time, and the result ends with the first
+ * page that is not full.<br>
+ * The pages are requested by {@link #fetch(String)}, which is implemented by the service executing the queries.
+ */
+public abstract class PagedTupleQueryResult implements TupleQueryResult {
+
+	private final PagedQuery query;
+
+	private final int pageSize;
+
+	private final Object lock = new Object();
+
+	/**
+	 * The page being read
+	 */
+	private TupleQueryResult current;
+
+	/**
+	 * The position of the first solution of the current page, in the window of the query
+	 */
+	private long offset;
+
+	/**
+	 * The number of solutions requested, and read, from the current page
+	 */
+	private long expected, read;
+
+	/**
+	 * The next page, once it was requested
+	 */
+	private Page next;
+
+	/**
+	 * The next result, read ahead by {@link #hasNext()}
+	 */
+	private BindingSet nextResult;
+
+	private boolean closed;
+
+	/**
+	 * Create a new PagedTupleQueryResult, reading the pages after {@code first}
+	 *
+	 * @param query
+	 *            The paged query
+	 * @param pageSize
+	 *            The number of solutions of each page
+	 * @param first
+	 *            The result of the first page, i.e., of {@code query.getPage(0, pageSize)}
+	 */
+	protected PagedTupleQueryResult(PagedQuery query, int pageSize, TupleQueryResult first) {
+		checkArgument(pageSize > 0, "Page size must be positive: %s", pageSize);
+
+		this.query = query;
+		this.pageSize = pageSize;
+		this.current = first;
+		this.expected = query.getPageSize(0, pageSize);
+	}
+
+	/**
+	 * Request a page
+	 *
+	 * @param pageQuery
+	 *            The query of the page
+	 * @return the result of the page
+	 * @throws PelletClientException
+	 *             if the page could not be requested
+	 */
+	protected abstract TupleQueryResult fetch(String pageQuery) throws PelletClientException;
+
+	/**
+	 * @inheritDoc
+	 */
+	public List<String> getBindingNames() {
+		return current.getBindingNames();
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean hasNext() throws QueryEvaluationException {
+		while (nextResult == null && !closed) {
+			if (current.hasNext()) {
+				nextResult = current.next();
+				read++;
+
+				if (read * 2 >= expected) {
+					prefetch();
+				}
+			}
+			else if (read < expected) {
+				// a page that is not full is the last one
+				close();
+			}
+			else {
+				prefetch();
+
+				if (next == null) {
+					// the end of the window of the query
+					close();
+				}
+				else {
+					TupleQueryResult page = next.get();
+
+					current.close();
+					current = page;
+					offset += read;
+					expected = next.size;
+					read = 0;
+					next = null;
+				}
+			}
+		}
+
+		return nextResult != null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public BindingSet next() throws QueryEvaluationException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		BindingSet result = nextResult;
+		nextResult = null;
+		return result;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void remove() throws QueryEvaluationException {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Close the current page and, if it was already received, the next one
+	 */
+	public void close() throws QueryEvaluationException {
+		TupleQueryResult prefetched = null;
+
+		synchronized (lock) {
+			closed = true;
+			nextResult = null;
+
+			if (next != null) {
+				prefetched = next.result;
+				next = null;
+			}
+		}
+
+		try {
+			current.close();
+		}
+		finally {
+			if (prefetched != null) {
+				prefetched.close();
+			}
+		}
+	}
+
+	/**
+	 * Request the page after the current one, if it was not already requested
+	 */
+	private void prefetch() {
+		if (next == null) {
+			long nextOffset = offset + expected;
+			String pageQuery = query.getPage(nextOffset, pageSize);
+
+			if (pageQuery != null) {
+				next = new Page(pageQuery, query.getPageSize(nextOffset, pageSize));
+				CallbackUtils.EXECUTOR.execute(next);
+			}
+		}
+	}
+
+	/**
+	 * The request of a page, executed in the background
+	 */
+	private class Page implements Runnable {
+
+		private final String pageQuery;
+
+		private final long size;
+
+		private TupleQueryResult result;
+
+		private PelletClientException error;
+
+		private boolean done;
+
+		public Page(String pageQuery, long size) {
+			this.pageQuery = pageQuery;
+			this.size = size;
+		}
+
+		public void run() {
+			TupleQueryResult result = null;
+			PelletClientException error = null;
+
+			try {
+				result = fetch(pageQuery);
+			}
+			catch (PelletClientException e) {
+				error = e;
+			}
+			catch (RuntimeException e) {
+				error = new PelletClientException(e);
+			}
+
+			synchronized (lock) {
+				if (closed && result != null) {
+					// nobody will read the page
+					try {
+						result.close();
+					}
+					catch (QueryEvaluationException e) {
+						// the page is discarded anyway
+					}
+				}
+
+				this.result = result;
+				this.error = error;
+				this.done = true;
+				lock.notifyAll();
+			}
+		}
+
+		/**
+		 * Wait for the page
+		 */
+		public TupleQueryResult get() throws QueryEvaluationException {
+			synchronized (lock) {
+				try {
+					while (!done) {
+						lock.wait();
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new QueryEvaluationException(e);
+				}
+
+				if (error != null) {
+					throw new QueryEvaluationException("Problem requesting page: " + pageQuery, error);
+				}
+
+				return result;
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Value;
+import org.openrdf.rio.ntriples.NTriplesUtil;
+
+import com.clarkparsia.pelletserver.client.services.Query.QueryForm;
+import com.google.common.collect.Lists;
+
+/**
+ * A SPARQL query whose parameters, some of its variables, are replaced by values on each call, e.g.:
+ *
+ * <pre>
+ * PreparedQuery labels = new PreparedQuery(&quot;SELECT ?label WHERE { ?s rdfs:label ?label }&quot;, &quot;s&quot;);
+ * for (URI s : subjects) {
+ * 	TupleQueryResult result = query.select(labels, s);
+ * }
+ * </pre>
+ *
+ * The query is parsed once, and split around its parameters into parts that are URL encoded once, so a call only
+ * escapes and encodes its values. URIs and literals are written as in N-Triples, which is valid SPARQL; blank nodes
+ * can't be bound, and neither can the variables projected by a {@code SELECT}. A PreparedQuery is immutable, and safe to use from several threads.
+ */
+public class PreparedQuery {
+
+	private static final String ENCODING = "UTF-8";
+
+	private final String query;
+
+	private final List<String> parameters;
+
+	private final QueryForm form;
+
+	/**
+	 * The parts of the query between the parameters, one more than the number of occurrences of the parameters
+	 */
+	private final String[] parts;
+
+	private final String[] encodedParts;
+
+	/**
+	 * The parameter of each occurrence, by index
+	 */
+	private final int[] slots;
+
+	/**
+	 * Create a new PreparedQuery
+	 *
+	 * @param query
+	 *            The query
+	 * @param parameters
+	 *            The names of the variables of the query replaced by values, without {@code ?}
+	 * @throws IllegalArgumentException
+	 *             if a parameter is not a variable of the query, or is projected by a {@code SELECT}
+	 */
+	public PreparedQuery(String query, String... parameters) {
+		this.query = query;
+		this.parameters = Collections.unmodifiableList(Arrays.asList(parameters.clone()));
+		this.form = QueryForm.of(query);
+
+		List<String> parts = Lists.newArrayList();
+		List<Integer> slots = Lists.newArrayList();
+		boolean[] found = new boolean[parameters.length];
+		int start = 0;
+		boolean projection = false;
+
+		for (QueryToken token : QueryToken.tokenize(query)) {
+			int parameter = token.isVariable() ? this.parameters.indexOf(token.text.substring(1)) : -1;
+
+			// the projection of a (sub-)query ends with its WHERE clause
+			if (token.is("SELECT")) {
+				projection = true;
+			}
+			else if (token.is("WHERE") || token.is("{")) {
+				projection = false;
+			}
+
+			if (parameter >= 0) {
+				// a value in place of a projected variable is not valid SPARQL
+				checkArgument(!projection, "%s is projected by %s", parameters[parameter], query);
+
+				parts.add(query.substring(start, token.start));
+				slots.add(parameter);
+				found[parameter] = true;
+				start = token.end;
+			}
+		}
+
+		parts.add(query.substring(start));
+
+		for (int i = 0; i < found.length; i++) {
+			checkArgument(found[i], "%s is not a variable of %s", parameters[i], query);
+		}
+
+		this.parts = parts.toArray(new String[parts.size()]);
+		this.encodedParts = new String[this.parts.length];
+		this.slots = new int[slots.size()];
+
+		for (int i = 0; i < this.parts.length; i++) {
+			encodedParts[i] = encode(this.parts[i]);
+		}
+
+		for (int i = 0; i < this.slots.length; i++) {
+			this.slots[i] = slots.get(i);
+		}
+	}
+
+	/**
+	 * Get the query, with its parameters as variables
+	 *
+	 * @return the query
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Get the names of the parameters
+	 *
+	 * @return the parameters, in the order of their values
+	 */
+	public List<String> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Get the form of the query
+	 *
+	 * @return the form, or {@code null} if it is not recognized
+	 */
+	public QueryForm getForm() {
+		return form;
+	}
+
+	/**
+	 * Get the query with values for its parameters
+	 *
+	 * @param values
+	 *            The values of the parameters, in order
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if there is not a value for each parameter, or a value is a blank node
+	 */
+	public String getQuery(Value... values) {
+		return render(parts, values, false);
+	}
+
+	/**
+	 * Get the query with values for its parameters, encoded as a URL parameter
+	 *
+	 * @param values
+	 *            The values of the parameters, in order
+	 * @return the encoded query
+	 * @throws IllegalArgumentException
+	 *             if there is not a value for each parameter, or a value is a blank node
+	 */
+	public String getEncodedQuery(Value... values) {
+		return render(encodedParts, values, true);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return "PreparedQuery(" + parameters + ", " + query + ")";
+	}
+
+	private String render(String[] parts, Value[] values, boolean encode) {
+		checkArgument(values.length == parameters.size(), "Expected values for %s", parameters);
+
+		String[] terms = new String[values.length];
+		int length = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			checkArgument(values[i] != null && !(values[i] instanceof BNode), "Can't bind %s to %s", parameters.get(i),
+						  values[i]);
+
+			terms[i] = NTriplesUtil.toNTriplesString(values[i]);
+
+			if (encode) {
+				terms[i] = encode(terms[i]);
+			}
+		}
+
+		for (String part : parts) {
+			length += part.length();
+		}
+
+		for (int slot : slots) {
+			length += terms[slot].length();
+		}
+
+		StringBuilder result = new StringBuilder(length).append(parts[0]);
+
+		for (int i = 0; i < slots.length; i++) {
+			result.append(terms[slots[i]]).append(parts[i + 1]);
+		}
+
+		return result.toString();
+	}
+
+	private static String encode(String s) {
+		try {
+			return URLEncoder.encode(s, ENCODING);
+		}
+		catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -15,24 +15,35 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.List;
 
 import javax.activation.MimeType;
 
+import org.openrdf.model.Graph;
 import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.rio.RDFHandler;
 
 
 import com.clarkparsia.pelletserver.client.Callback;
+import com.clarkparsia.pelletserver.client.CallbackTask;
 import com.clarkparsia.pelletserver.client.Endpoint;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletClientException;
 import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
 import com.clarkparsia.pelletserver.client.PelletService;
 import com.clarkparsia.pelletserver.client.PelletServiceCallbackTask;
+import com.clarkparsia.pelletserver.client.Row;
+import com.clarkparsia.pelletserver.client.RowMapper;
 import com.clarkparsia.pelletserver.client.ServiceAnnotation;
+import com.clarkparsia.pelletserver.client.index.ColumnarResult;
 import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
 import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
 import com.clarkparsia.pelletserver.client.utils.RequestUtils;
-import com.clarkparsia.utils.web.Response;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
 import com.google.common.collect.Iterables;
 
 /**
@@ -40,7 +51,14 @@ import com.google.common.collect.Iterables;
  * Since different queries can return different result types (e.g., a {@code CONSTRUCT} query returns a
  * {@link org.openrdf.model.Graph Graph}, a {@code SELECT} query returns a {@link org.openrdf.query.TupleQueryResult
  * TupleQueryResult}), this service is parameterized by its returning type (i.e., users must know the type of their
- * query result).
+ * query result). Alternatively, the typed methods {@link #select(String)}, {@link #construct(String)} and
+ * {@link #ask(String)} return the result type of each query form.<br>
+ * The fastest streaming result format advertised by the service is requested (SPARQL/JSON, then SPARQL/XML, then
+ * binary), and the response is parsed according to its {@code Content-Type} or, if the server does not send one, to
+ * the form of the query.<br>
+ * {@code SELECT} results are parsed as they are iterated, and closing them early aborts the transfer, unless the server
+ * has a {@link com.clarkparsia.pelletserver.client.cache.ResultCache ResultCache}, in which case they are materialized
+ * to be cached, or the service only provides the binary format, which is read completely.
  * 
  * @author Pedro Oliveira
  * 
@@ -52,6 +70,89 @@ public class Query<T> extends AbstractKBPelletService {
 
 	private static final MimeType[] MIMETYPES = { PelletServerMimeTypes.SPARQL_XML, PelletServerMimeTypes.RDFXML };
 
+	/**
+	 * The result formats, fastest to parse first among those parsed as they are iterated. The binary format is only
+	 * slightly faster to parse than SPARQL/JSON, but it is read completely before the result is returned, so it comes
+	 * after the streaming formats.
+	 */
+	private static final MimeType[] PREFERENCES = { PelletServerMimeTypes.SPARQL_JSON, PelletServerMimeTypes.SPARQL_XML, 
+					                                PelletServerMimeTypes.SPARQL_BINARY, PelletServerMimeTypes.RDFXML };
+
+	/**
+	 * The result formats of {@link #query(String, RowMapper) mapped} rows: the SPARQL formats are read without creating
+	 * values, so they come before the binary format
+	 */
+	private static final MimeType[] ROW_PREFERENCES = { PelletServerMimeTypes.SPARQL_JSON, 
+					                                    PelletServerMimeTypes.SPARQL_XML, PelletServerMimeTypes.SPARQL_BINARY };
+
+	/**
+	 * The result formats supported by the service, in order of preference
+	 */
+	private MimeType[] accept;
+
+	/**
+	 * The formats of mapped rows supported by the service, in order of preference
+	 */
+	private MimeType[] rowAccept;
+
+	/**
+	 * The forms of a SPARQL query
+	 */
+	public static enum QueryForm {
+		SELECT, CONSTRUCT, DESCRIBE, ASK;
+
+		/**
+		 * Get the form of a query, skipping its prologue (i.e., {@code BASE} and {@code PREFIX} declarations) and
+		 * comments
+		 * 
+		 * @param query the query
+		 * @return the form of the query, or {@code null} if it is not recognized
+		 */
+		public static QueryForm of(String query) {
+			int length = query.length();
+
+			for (int i = 0; i < length; i++) {
+				char c = query.charAt(i);
+
+				if (c == '#') {
+					while (i < length && query.charAt(i) != '\n' && query.charAt(i) != '\r') {
+						i++;
+					}
+				}
+				else if (c == '<') {
+					while (i < length && query.charAt(i) != '>') {
+						i++;
+					}
+				}
+				else if (c == '{') {
+					return null;
+				}
+				else if (Character.isLetter(c)) {
+					int start = i;
+
+					while (i + 1 < length && Character.isLetterOrDigit(query.charAt(i + 1))) {
+						i++;
+					}
+
+					// Prefixed names (e.g., "ask:") are not keywords
+					if (i + 1 < length && query.charAt(i + 1) == ':') {
+						continue;
+					}
+
+					String word = query.substring(start, i + 1);
+
+					for (QueryForm form : values()) {
+						if (form.name().equalsIgnoreCase(word)) {
+							return form;
+						}
+					}
+				}
+			}
+
+			return null;
+		}
+	}
+
 	public Query(KnowledgeBase kb, Endpoint endpoint, MimeType... mimetypes) {
 		super(kb, endpoint, mimetypes);
 
@@ -59,6 +160,9 @@ public class Query<T> extends AbstractKBPelletService {
 			checkArgument(Iterables.any(this.mimetypes, PelletServerMimeTypes.getPredicate(mimetype)), 
 							            getName() + " service must support %s", mimetype);
 		}
+
+		accept = PelletServerMimeTypes.negotiate(this.mimetypes, PREFERENCES);
+		rowAccept = PelletServerMimeTypes.negotiate(this.mimetypes, ROW_PREFERENCES);
 	}
 
 	/**
@@ -98,12 +202,7 @@ public class Query<T> extends AbstractKBPelletService {
 	 * @throws PelletClientException if there is an error while querying
 	 */
 	public T query(String query, URI namedGraph, URI defaultGraph) throws PelletClientException {
-		return new QueryTask<T>(this, 
-						        query, 
-						        namedGraph != null ? namedGraph.stringValue() 
-						                           : null, 
-						        defaultGraph != null ? defaultGraph.stringValue()
-						                             : null).execute();
+		return queryTask(query, namedGraph, defaultGraph, (Class<T>) null).execute();
 	}
 
 	/**
@@ -119,33 +218,476 @@ public class Query<T> extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the query is done
 	 */
 	public void query(String query, URI namedGraph, URI defaultGraph, Callback<T> callback) {
-		CallbackUtils.launchThread(callback, new QueryTask<T>(this, 
-						query, 
-						namedGraph != null ? namedGraph.stringValue() 
-										   : null, 
-						defaultGraph != null ? defaultGraph.stringValue() 
-										     : null));
+		CallbackUtils.launchThread(callback, queryTask(query, namedGraph, defaultGraph, (Class<T>) null));
+	}
+
+	/**
+	 * Executes a {@code CONSTRUCT} or {@code DESCRIBE} query in the {@link KnowledgeBase}, passing the statements of the
+	 * result to {@code handler} as they are parsed instead of building a {@link Graph}. The result is not cached.
+	 * 
+	 * @param query
+	 *            The query
+	 * @param handler
+	 *            The {@link RDFHandler} receiving the statements
+	 * @throws PelletClientException if there is an error while querying, the query does not return a graph, or the
+	 *             handler failed
+	 */
+	public void query(String query, RDFHandler handler) throws PelletClientException {
+		query(query, null, null, handler);
+	}
+
+	/**
+	 * Executes a {@code CONSTRUCT} or {@code DESCRIBE} query in the {@link KnowledgeBase}, passing the statements of the
+	 * result to {@code handler} as they are parsed instead of building a {@link Graph}. The result is not cached.
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @param handler
+	 *            The {@link RDFHandler} receiving the statements
+	 * @throws PelletClientException if there is an error while querying, the query does not return a graph, or the
+	 *             handler failed
+	 */
+	public void query(String query, URI namedGraph, URI defaultGraph, RDFHandler handler) throws PelletClientException {
+		String named = namedGraph != null ? namedGraph.stringValue() : null;
+		String dflt = defaultGraph != null ? defaultGraph.stringValue() : null;
+
+		new QueryTask<Void>(this, query, named, dflt, null, rdfFormats(), handler).execute();
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase}, passing each row of the result to {@code mapper} as
+	 * it is parsed. The {@link Row} reads the lexical forms of the values straight from the response, so rows that are
+	 * mapped to numbers or strings create no {@link org.openrdf.model.Value Value}s. The result is not cached.
+	 * 
+	 * @param query
+	 *            The query
+	 * @param mapper
+	 *            The {@link RowMapper} of the rows
+	 * @return The results of {@code mapper}, in row order, without the {@code null}s
+	 * @throws PelletClientException if there is an error while querying, or the query is not a {@code SELECT}
+	 */
+	public <R> List<R> query(String query, RowMapper<R> mapper) throws PelletClientException {
+		return query(query, null, null, mapper);
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase}, passing each row of the result to {@code mapper} as
+	 * it is parsed. The result is not cached.
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @param mapper
+	 *            The {@link RowMapper} of the rows
+	 * @return The results of {@code mapper}, in row order, without the {@code null}s
+	 * @throws PelletClientException if there is an error while querying, or the query is not a {@code SELECT}
+	 */
+	public <R> List<R> query(String query, URI namedGraph, URI defaultGraph, RowMapper<R> mapper) 
+					throws PelletClientException {
+		String named = namedGraph != null ? namedGraph.stringValue() : null;
+		String dflt = defaultGraph != null ? defaultGraph.stringValue() : null;
+
+		return new QueryTask<List<R>>(this, query, named, dflt, null, rowAccept, mapper).execute();
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not a {@code SELECT}
+	 */
+	public TupleQueryResult select(String query) throws PelletClientException {
+		return select(query, null, null);
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not a {@code SELECT}
+	 */
+	public TupleQueryResult select(String query, URI namedGraph, URI defaultGraph) throws PelletClientException {
+		return queryTask(query, namedGraph, defaultGraph, TupleQueryResult.class).execute();
+	}
+
+	/**
+	 * Asynchronously executes a {@code SELECT} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @param callback
+	 *            The {@link Callback} to execute after the query is done
+	 */
+	public void select(String query, URI namedGraph, URI defaultGraph, Callback<TupleQueryResult> callback) {
+		CallbackUtils.launchThread(callback, queryTask(query, namedGraph, defaultGraph, TupleQueryResult.class));
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase} in pages of {@code pageSize} solutions, so that
+	 * neither the server nor the client hold the whole result at once. The query is rewritten with {@code LIMIT} and
+	 * {@code OFFSET} (see {@link PagedQuery}), and the pages are returned as a single result, which requests the next
+	 * page while the current one is read.
+	 * 
+	 * @param query
+	 *            The query
+	 * @param pageSize
+	 *            The number of solutions of each page
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while requesting the first page
+	 * @throws IllegalArgumentException if the query is not a {@code SELECT}
+	 */
+	public TupleQueryResult selectPaged(String query, int pageSize) throws PelletClientException {
+		return selectPaged(query, null, null, pageSize);
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase} in pages of {@code pageSize} solutions
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @param pageSize
+	 *            The number of solutions of each page
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while requesting the first page
+	 * @throws IllegalArgumentException if the query is not a {@code SELECT}
+	 */
+	public TupleQueryResult selectPaged(String query, final URI namedGraph, final URI defaultGraph, int pageSize)
+					throws PelletClientException {
+		checkArgument(pageSize > 0, "Page size must be positive: %s", pageSize);
+
+		PagedQuery paged = new PagedQuery(query);
+		String first = paged.getPage(0, pageSize);
+
+		if (first == null) {
+			// LIMIT 0
+			return select(query, namedGraph, defaultGraph);
+		}
+
+		return new PagedTupleQueryResult(paged, pageSize, select(first, namedGraph, defaultGraph)) {
+			@Override
+			protected TupleQueryResult fetch(String pageQuery) throws PelletClientException {
+				return select(pageQuery, namedGraph, defaultGraph);
+			}
+		};
+	}
+
+	/**
+	 * Executes a {@code SELECT} query template in the {@link KnowledgeBase} for many bindings, which are joined with
+	 * the pattern of the template in {@code VALUES} batches executed concurrently. Use a {@link BulkQuery} to
+	 * configure the batches.
+	 * 
+	 * @param template
+	 *            The query
+	 * @param bindings
+	 *            The bindings of variables of the template
+	 * @return The solutions of all the batches, in the order the batches complete
+	 * @throws IllegalArgumentException if the query is not a {@code SELECT}, or a binding is a blank node
+	 */
+	public BulkTupleQueryResult selectBulk(String template, List<? extends BindingSet> bindings) {
+		return new BulkQuery(this, template).select(bindings);
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase}, and stores the result by column. Large results take
+	 * a fraction of the memory of their {@link org.openrdf.query.BindingSet BindingSet}s, and the columns are filled
+	 * from the rows of the parser, without creating BindingSets.
+	 * 
+	 * @param query
+	 *            The query
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not a {@code SELECT}
+	 */
+	public ColumnarResult selectColumnar(String query) throws PelletClientException {
+		return selectColumnar(query, null, null);
+	}
+
+	/**
+	 * Executes a {@code SELECT} query in the {@link KnowledgeBase}, and stores the result by column
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not a {@code SELECT}
+	 */
+	public ColumnarResult selectColumnar(String query, URI namedGraph, URI defaultGraph) throws PelletClientException {
+		TupleQueryResult result = select(query, namedGraph, defaultGraph);
+
+		try {
+			return ColumnarResult.create(result);
+		}
+		catch (QueryEvaluationException e) {
+			throw new PelletClientException("Problem parsing request response", e);
+		}
+	}
+
+	/**
+	 * Executes a {@code CONSTRUCT} or {@code DESCRIBE} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query does not return a graph
+	 */
+	public Graph construct(String query) throws PelletClientException {
+		return construct(query, null, null);
+	}
+
+	/**
+	 * Executes a {@code CONSTRUCT} or {@code DESCRIBE} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query does not return a graph
+	 */
+	public Graph construct(String query, URI namedGraph, URI defaultGraph) throws PelletClientException {
+		return queryTask(query, namedGraph, defaultGraph, Graph.class).execute();
+	}
+
+	/**
+	 * Asynchronously executes a {@code CONSTRUCT} or {@code DESCRIBE} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @param callback
+	 *            The {@link Callback} to execute after the query is done
+	 */
+	public void construct(String query, URI namedGraph, URI defaultGraph, Callback<Graph> callback) {
+		CallbackUtils.launchThread(callback, queryTask(query, namedGraph, defaultGraph, Graph.class));
+	}
+
+	/**
+	 * Executes an {@code ASK} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not an {@code ASK}
+	 */
+	public boolean ask(String query) throws PelletClientException {
+		return ask(query, null, null);
+	}
+
+	/**
+	 * Executes an {@code ASK} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not an {@code ASK}
+	 */
+	public boolean ask(String query, URI namedGraph, URI defaultGraph) throws PelletClientException {
+		return queryTask(query, namedGraph, defaultGraph, Boolean.class).execute();
+	}
+
+	/**
+	 * Asynchronously executes an {@code ASK} query in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The query
+	 * @param namedGraph
+	 *            The named graph (can be {@code null})
+	 * @param defaultGraph
+	 *            The default graph (can be {@code null})
+	 * @param callback
+	 *            The {@link Callback} to execute after the query is done
+	 */
+	public void ask(String query, URI namedGraph, URI defaultGraph, Callback<Boolean> callback) {
+		CallbackUtils.launchThread(callback, queryTask(query, namedGraph, defaultGraph, Boolean.class));
+	}
+
+	/**
+	 * Executes a {@link PreparedQuery} in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The prepared query
+	 * @param values
+	 *            The values of its parameters, in order
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying
+	 * @throws IllegalArgumentException if there is not a value for each parameter, or a value is a blank node
+	 */
+	public T query(PreparedQuery query, Value... values) throws PelletClientException {
+		return preparedTask(query, values, (Class<T>) null).execute();
+	}
+
+	/**
+	 * Executes a {@code SELECT} {@link PreparedQuery} in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The prepared query
+	 * @param values
+	 *            The values of its parameters, in order
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not a {@code SELECT}
+	 * @throws IllegalArgumentException if there is not a value for each parameter, or a value is a blank node
+	 */
+	public TupleQueryResult select(PreparedQuery query, Value... values) throws PelletClientException {
+		return preparedTask(query, values, TupleQueryResult.class).execute();
+	}
+
+	/**
+	 * Executes a {@code CONSTRUCT} or {@code DESCRIBE} {@link PreparedQuery} in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The prepared query
+	 * @param values
+	 *            The values of its parameters, in order
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query does not return a graph
+	 * @throws IllegalArgumentException if there is not a value for each parameter, or a value is a blank node
+	 */
+	public Graph construct(PreparedQuery query, Value... values) throws PelletClientException {
+		return preparedTask(query, values, Graph.class).execute();
+	}
+
+	/**
+	 * Executes an {@code ASK} {@link PreparedQuery} in the {@link KnowledgeBase}
+	 * 
+	 * @param query
+	 *            The prepared query
+	 * @param values
+	 *            The values of its parameters, in order
+	 * @return The query result
+	 * @throws PelletClientException if there is an error while querying, or the query is not an {@code ASK}
+	 * @throws IllegalArgumentException if there is not a value for each parameter, or a value is a blank node
+	 */
+	public boolean ask(PreparedQuery query, Value... values) throws PelletClientException {
+		return preparedTask(query, values, Boolean.class).execute();
+	}
+
+	/**
+	 * Create the (possibly cached) task executing a prepared query. The query is only rendered as text for the cache
+	 * key; otherwise only its encoded form is built.
+	 */
+	private <R> CallbackTask<R> preparedTask(PreparedQuery query, Value[] values, Class<R> type) {
+		QueryTask<R> task = new QueryTask<R>(this, query.getEncodedQuery(values), query.getForm(), type, accept);
+
+		return isCached() ? cached(task, query.getQuery(values), null, null) : task;
+	}
+
+	/**
+	 * Create the (possibly cached) task executing the {@code query}
+	 */
+	private <R> CallbackTask<R> queryTask(String query, URI namedGraph, URI defaultGraph, Class<R> type) {
+		String named = namedGraph != null ? namedGraph.stringValue() : null;
+		String dflt = defaultGraph != null ? defaultGraph.stringValue() : null;
+
+		return cached(new QueryTask<R>(this, query, named, dflt, type, accept), query, named, dflt);
 	}
 
 	private static class QueryTask<T> extends PelletServiceCallbackTask<T> {
 
 		private String query;
+
+		/**
+		 * The URL encoded query, if it was encoded in advance
+		 */
+		private String encodedQuery;
+
+		/**
+		 * The form of the query, if it is known in advance
+		 */
+		private QueryForm form;
+
 		private String namedGraph;
 		private String defaultGraph;
 
-		protected QueryTask(PelletService service, String query, String defaultGraph, String namedGraph) {
+		/**
+		 * The expected result type, or {@code null} if it is not checked
+		 */
+		private Class<T> type;
+
+		/**
+		 * The result formats to negotiate
+		 */
+		private MimeType[] accept;
+
+		/**
+		 * The handler receiving the statements of a graph result, or {@code null} to return the result
+		 */
+		private RDFHandler handler;
+
+		/**
+		 * The mapper of the rows of a {@code SELECT} result, or {@code null} to return the result
+		 */
+		private RowMapper<?> mapper;
+
+		protected QueryTask(PelletService service, String query, String namedGraph, String defaultGraph, 
+						    Class<T> type, MimeType[] accept) {
+			this(service, query, namedGraph, defaultGraph, type, accept, (RDFHandler) null);
+		}
+
+		protected QueryTask(PelletService service, String encodedQuery, QueryForm form, Class<T> type, 
+						    MimeType[] accept) {
+			this(service, null, null, null, type, accept, (RDFHandler) null);
+			this.encodedQuery = encodedQuery;
+			this.form = form;
+		}
+
+		protected QueryTask(PelletService service, String query, String namedGraph, String defaultGraph, 
+						    Class<T> type, MimeType[] accept, RowMapper<?> mapper) {
+			this(service, query, namedGraph, defaultGraph, type, accept, (RDFHandler) null);
+			this.mapper = mapper;
+		}
+
+		protected QueryTask(PelletService service, String query, String namedGraph, String defaultGraph, 
+						    Class<T> type, MimeType[] accept, RDFHandler handler) {
 			super(service);
+			this.accept = accept;
 			this.query = query;
 			this.namedGraph = namedGraph;
 			this.defaultGraph = defaultGraph;
+			this.type = type;
+			this.handler = handler;
 		}
 
+		@SuppressWarnings("unchecked")
 		public T execute() throws PelletClientException {
 
 			URL url = null;
 
 			try {
-				String encodedQuery = URLEncoder.encode(query, "UTF-8");
+				String encodedQuery = this.encodedQuery != null ? this.encodedQuery : URLEncoder.encode(query, "UTF-8");
 				String sUrl = service.getEndpoint().getURL().toString();
 				String aUrl = sUrl.substring(0, sUrl.lastIndexOf('{')) + "?query=" + encodedQuery; // TODO Use URI
 																								   // template library
@@ -165,27 +707,142 @@ public class Query<T> extends AbstractKBPelletService {
 				throw new PelletClientException("Problem creating query URL", e);
 			}
 
-			Response response = RequestUtils.execute(new Endpoint(url, service.getEndpoint().getHTTPMethods()), 
-							                                      service.getServer().getPreferredMethod(), MIMETYPES);
+			ResponseStream response = RequestUtils.stream(new Endpoint(url, service.getEndpoint().getHTTPMethods()), 
+							                              service.getServer().getPreferredMethod(), accept);
 
-			Object result = null;
-			try {
-				result = OpenRdfUtils.createGraphFromRDFXMLBlob(response.getContent());
+			if (handler != null) {
+				handle(response);
+				return null;
 			}
-			catch (Exception e1) {
-				try {
-					result = OpenRdfUtils.createResultSetFromSparqlXMLBlob(response.getContent());
+
+			if (mapper != null) {
+				return (T) map(response);
+			}
+
+			Object result = parse(response, form != null ? form : QueryForm.of(query));
+
+			if (type != null && !type.isInstance(result)) {
+				// A streamed SELECT result holds the connection until it is closed
+				if (result instanceof TupleQueryResult) {
+					try {
+						((TupleQueryResult) result).close();
+					}
+					catch (QueryEvaluationException e) {
+						// the result is discarded anyway
+					}
 				}
-				catch (Exception e2) {
-					throw new PelletClientException("Problem parsing request response", e2);
+
+				throw new PelletClientException("Query returned a " + result.getClass().getSimpleName() 
+								                + ", expected a " + type.getSimpleName());
+			}
+
+			return (T) result;
+		}
+
+		/**
+		 * Pass the statements of a graph response to the handler
+		 */
+		private void handle(ResponseStream response) throws PelletClientException {
+			try {
+				if (response.isContentType(PelletServerMimeTypes.SPARQL_XML)
+					|| response.isContentType(PelletServerMimeTypes.SPARQL_JSON)
+					|| response.isContentType(PelletServerMimeTypes.SPARQL_BINARY)) {
+					throw new PelletClientException("Query returned a " + response.getContentType()
+									                + " response, expected a graph");
 				}
+
+				OpenRdfUtils.parse(response, service.getServer().getParserThreads(), handler);
+			}
+			catch (PelletClientException e) {
+				throw e;
+			}
+			catch (Exception e) {
+				throw new PelletClientException("Problem parsing request response", e);
+			}
+			finally {
+				response.close();
 			}
+		}
 
+		/**
+		 * Map the rows of a {@code SELECT} response
+		 */
+		private List<?> map(ResponseStream response) throws PelletClientException {
 			try {
-				return (T) result;
+				if (response.isContentType(PelletServerMimeTypes.RDFXML)) {
+					throw new PelletClientException("Query returned a " + response.getContentType()
+									                + " response, expected a SELECT result");
+				}
+
+				return OpenRdfUtils.mapRows(response, mapper);
 			}
-			catch (Throwable t) {
-				throw new PelletClientException("Problem returning result (wrong parameterized type?)", t);
+			catch (QueryEvaluationException e) {
+				throw new PelletClientException("Problem parsing request response", e);
+			}
+			finally {
+				response.close();
+			}
+		}
+
+		/**
+		 * Parse the response according to its content type or, if the server did not send one, to the query form
+		 */
+		private Object parse(ResponseStream response, QueryForm form) throws PelletClientException {
+			boolean closeResponse = true;
+
+			try {
+				if (response.isContentType(PelletServerMimeTypes.RDFXML)) {
+					return OpenRdfUtils.createGraphFromRDFXMLStream(response);
+				}
+				else if (response.isContentType(PelletServerMimeTypes.SPARQL_XML)) {
+					if (form == QueryForm.ASK) {
+						return OpenRdfUtils.readBooleanResult(response);
+					}
+
+					// SELECT results are parsed as they are iterated, so large results are never held in memory
+					closeResponse = false;
+					return OpenRdfUtils.createResultSetFromSparqlXMLStream(response);
+				}
+				else if (response.isContentType(PelletServerMimeTypes.SPARQL_JSON)) {
+					if (form == QueryForm.ASK) {
+						return OpenRdfUtils.readBooleanResultFromSparqlJSON(response);
+					}
+
+					closeResponse = false;
+					return OpenRdfUtils.createResultSetFromSparqlJSONStream(response);
+				}
+				else if (response.isContentType(PelletServerMimeTypes.SPARQL_BINARY)) {
+					return OpenRdfUtils.createResultSetFromBinaryStream(response);
+				}
+				else if (form == QueryForm.CONSTRUCT || form == QueryForm.DESCRIBE) {
+					return OpenRdfUtils.createGraphFromRDFXMLStream(response);
+				}
+				else if (form == QueryForm.ASK) {
+					return OpenRdfUtils.readBooleanResult(response);
+				}
+				else if (form == QueryForm.SELECT) {
+					closeResponse = false;
+					return OpenRdfUtils.createResultSetFromSparqlXMLStream(response);
+				}
+
+				// Neither the content type nor the query form are known, so try both formats
+				String content = response.readContent();
+
+				try {
+					return OpenRdfUtils.createGraphFromRDFXMLBlob(content);
+				}
+				catch (Exception e) {
+					return OpenRdfUtils.createResultSetFromSparqlXMLBlob(content);
+				}
+			}
+			catch (Exception e) {
+				closeResponse = true;
+				throw new PelletClientException("Problem parsing request response", e);
+			}
+			finally {
+				if (closeResponse) {
+					response.close();
+				}
 			}
 		}
 	}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.services;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A word, variable or punctuation mark of a SPARQL query, as found by {@link #tokenize(String)}
+ */
+class QueryToken {
+
+	final String text;
+
+	final int start;
+
+	final int end;
+
+	QueryToken(String query, int start, int end) {
+		this.text = query.substring(start, end);
+		this.start = start;
+		this.end = end;
+	}
+
+	public boolean is(String text) {
+		return this.text.equalsIgnoreCase(text);
+	}
+
+	public boolean isVariable() {
+		return text.length() > 1 && (text.charAt(0) == '?' || text.charAt(0) == '$');
+	}
+
+	/**
+	 * Get the variable of the token, named with {@code ?} whether it is written {@code ?x} or {@code $x}
+	 */
+	public String getVariable() {
+		return "?" + text.substring(1);
+	}
+
+	public boolean isNumber() {
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isDigit(text.charAt(i))) {
+				return false;
+			}
+		}
+
+		return text.length() > 0;
+	}
+
+	/**
+	 * Split a query into words, variables and punctuation, skipping comments, strings and IRIs
+	 */
+	static List<QueryToken> tokenize(String query) {
+		List<QueryToken> tokens = Lists.newArrayList();
+		int length = query.length();
+		int i = 0;
+
+		while (i < length) {
+			char c = query.charAt(i);
+			int start = i;
+
+			if (Character.isWhitespace(c)) {
+				i++;
+			}
+			else if (c == '#') {
+				while (i < length && query.charAt(i) != '\n' && query.charAt(i) != '\r') {
+					i++;
+				}
+			}
+			else if (c == '"' || c == '\'') {
+				for (i++; i < length && query.charAt(i) != c; i++) {
+					if (query.charAt(i) == '\\') {
+						i++;
+					}
+				}
+
+				i++;
+			}
+			else if (c == '<' && isIRI(query, i)) {
+				i = query.indexOf('>', i) + 1;
+			}
+			else if (c == '?' || c == '$' || Character.isLetterOrDigit(c) || c == '_' || c == ':') {
+				i++;
+
+				while (i < length && isNameChar(query.charAt(i))) {
+					i++;
+				}
+
+				tokens.add(new QueryToken(query, start, i));
+			}
+			else {
+				tokens.add(new QueryToken(query, start, ++i));
+			}
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Checks if a {@code <} starts an IRI rather than a comparison, i.e., if it is closed before any whitespace
+	 */
+	private static boolean isIRI(String query, int start) {
+		for (int i = start + 1; i < query.length(); i++) {
+			char c = query.charAt(i);
+
+			if (c == '>') {
+				return true;
+			}
+			else if (Character.isWhitespace(c) || c == '<') {
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == ':' || c == '-';
+	}
+}
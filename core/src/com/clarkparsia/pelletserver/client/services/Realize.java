@@ -11,26 +11,26 @@
 
 package com.clarkparsia.pelletserver.client.services;
 
-import static com.google.common.base.Preconditions.checkArgument;
-
 import javax.activation.MimeType;
 
 import org.openrdf.model.Graph;
+import org.openrdf.rio.RDFHandler;
 
 
 import com.clarkparsia.pelletserver.client.Callback;
 import com.clarkparsia.pelletserver.client.Endpoint;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletClientException;
-import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
 import com.clarkparsia.pelletserver.client.PelletService;
 import com.clarkparsia.pelletserver.client.PelletServiceCallbackTask;
 import com.clarkparsia.pelletserver.client.ServiceAnnotation;
+import com.clarkparsia.pelletserver.client.index.Realization;
+import com.clarkparsia.pelletserver.client.index.Taxonomy;
 import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
 import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
 import com.clarkparsia.pelletserver.client.utils.RequestUtils;
-import com.clarkparsia.utils.web.Response;
-import com.google.common.collect.Iterables;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
+import com.clarkparsia.pelletserver.client.utils.StatementFilter;
 
 /**
  * The Realize service performs the realization of the {@link KnowledgeBase}
@@ -41,13 +41,11 @@ import com.google.common.collect.Iterables;
 @ServiceAnnotation("realize")
 public class Realize extends AbstractKBPelletService {
 
-	private static final MimeType MIMETYPE = PelletServerMimeTypes.RDFXML;
-
 	public Realize(KnowledgeBase kb, Endpoint endpoint, MimeType... mimetypes) {
 		super(kb, endpoint, mimetypes);
 
-		checkArgument(Iterables.any(this.mimetypes, PelletServerMimeTypes.getPredicate(MIMETYPE)), 
-						            getName() + " service must support %s", MIMETYPE);
+		// Fail early if the service does not return RDF
+		rdfFormats();
 	}
 
 	/**
@@ -57,7 +55,7 @@ public class Realize extends AbstractKBPelletService {
 	 * @throws PelletClientException if there was an error during invocation
 	 */
 	public Graph realize() throws PelletClientException {
-		return new RealizeTask(this).execute();
+		return cached(new RealizeTask(this, rdfFormats()), graphParameter()).execute();
 	}
 
 	/**
@@ -67,24 +65,108 @@ public class Realize extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the realization is done
 	 */
 	public void realize(Callback<Graph> callback) {
-		CallbackUtils.launchThread(callback, new RealizeTask(this));
+		CallbackUtils.launchThread(callback, cached(new RealizeTask(this, rdfFormats()), graphParameter()));
+	}
+
+	/**
+	 * Realize the {@link KnowledgeBase}, passing the statements of the result to {@code handler} as they are parsed
+	 * instead of building a {@link org.openrdf.model.Graph Graph}. The result is not cached.
+	 * 
+	 * @param handler
+	 *            The {@link RDFHandler} receiving the realization statements
+	 * @throws PelletClientException if there was an error during invocation, or the handler failed
+	 */
+	public void realize(RDFHandler handler) throws PelletClientException {
+		new RealizeTask(this, rdfFormats(), null, handler).execute();
+	}
+
+	/**
+	 * Realize the {@link KnowledgeBase}, keeping only the statements of the result accepted by {@code filter}. The
+	 * statements discarded are dropped while the response is parsed, and never held in memory. The result is not
+	 * cached.
+	 * 
+	 * @param filter
+	 *            The {@link StatementFilter} of the statements to keep
+	 * @return The filtered realization {@link org.openrdf.model.Graph Graph}
+	 * @throws PelletClientException if there was an error during invocation
+	 */
+	public Graph realize(StatementFilter filter) throws PelletClientException {
+		return new RealizeTask(this, rdfFormats(filter), filter, null).execute();
+	}
+
+	/**
+	 * Realize the {@link KnowledgeBase}, passing the statements of the result accepted by {@code filter} to
+	 * {@code handler}. The result is not cached.
+	 * 
+	 * @param filter
+	 *            The {@link StatementFilter} of the statements to keep
+	 * @param handler
+	 *            The {@link RDFHandler} receiving the realization statements
+	 * @throws PelletClientException if there was an error during invocation, or the handler failed
+	 */
+	public void realize(StatementFilter filter, RDFHandler handler) throws PelletClientException {
+		new RealizeTask(this, rdfFormats(filter), filter, handler).execute();
+	}
+
+	/**
+	 * Realize the {@link KnowledgeBase}, and index the types of the individuals of the result. Only the
+	 * {@code rdf:type} statements of the result are parsed. The result is not cached.
+	 * 
+	 * @param taxonomy
+	 *            The {@link Taxonomy} of the {@link KnowledgeBase}, e.g., from {@link Classify#taxonomy()}, to query
+	 *            the instances of classes including their subclasses, or {@code null}
+	 * @return The {@link Realization} of the {@link KnowledgeBase}
+	 * @throws PelletClientException if there was an error during invocation
+	 */
+	public Realization realization(Taxonomy taxonomy) throws PelletClientException {
+		Realization.Builder builder = new Realization.Builder(taxonomy);
+		realize(Realization.newFilter(), builder);
+		return builder.build();
 	}
 
 	private static class RealizeTask extends PelletServiceCallbackTask<Graph> {
 
-		protected RealizeTask(PelletService service) {
+		private MimeType[] accept;
+
+		/**
+		 * The filter of the statements to keep, or {@code null} to keep all of them
+		 */
+		private StatementFilter filter;
+
+		/**
+		 * The handler receiving the statements, or {@code null} to build a graph
+		 */
+		private RDFHandler handler;
+
+		protected RealizeTask(PelletService service, MimeType[] accept) {
+			this(service, accept, null, null);
+		}
+
+		protected RealizeTask(PelletService service, MimeType[] accept, StatementFilter filter, RDFHandler handler) {
 			super(service);
+			this.accept = accept;
+			this.filter = filter;
+			this.handler = handler;
 		}
 
 		public Graph execute() throws PelletClientException {
-			Response response = RequestUtils.execute(service.getEndpoint(), service.getServer().getPreferredMethod(), 
-							                         MIMETYPE);
+			ResponseStream response = RequestUtils.stream(service.getEndpoint(), service.getServer().getPreferredMethod(), 
+							                              accept);
 
 			try {
-				return OpenRdfUtils.createGraphFromRDFXMLBlob(response.getContent());
+				if (handler != null) {
+					OpenRdfUtils.parse(response, service.getServer().getParserThreads(), filter, handler);
+					return null;
+				}
+
+				return OpenRdfUtils.createGraphFromStream(response, service.getServer().getParserThreads(), filter, 
+				                                          service.getServer().isIndexedGraphs());
 			}
 			catch (Exception e) {
-				throw new PelletClientException("Problem parsing " + MIMETYPE + " response", e);
+				throw new PelletClientException("Problem parsing " + response.getContentType() + " response", e);
+			}
+			finally {
+				response.close();
 			}
 		}
 	}
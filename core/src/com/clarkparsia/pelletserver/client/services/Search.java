@@ -13,22 +13,25 @@ package com.clarkparsia.pelletserver.client.services;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 import javax.activation.MimeType;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.openrdf.model.Resource;
-import org.openrdf.model.impl.BNodeImpl;
-import org.openrdf.model.impl.URIImpl;
 
 
+import com.clarkparsia.pelletserver.client.BatchCallback;
 import com.clarkparsia.pelletserver.client.Callback;
+import com.clarkparsia.pelletserver.client.CallbackTask;
 import com.clarkparsia.pelletserver.client.Endpoint;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletClientException;
@@ -38,9 +41,12 @@ import com.clarkparsia.pelletserver.client.PelletServiceCallbackTask;
 import com.clarkparsia.pelletserver.client.ServiceAnnotation;
 import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
 import com.clarkparsia.pelletserver.client.utils.RequestUtils;
-import com.clarkparsia.utils.web.Response;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
+import com.clarkparsia.pelletserver.client.utils.SearchJsonReader;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 
 /**
  * The Search service executes a free text search in the {@link KnowledgeBase}
@@ -75,7 +81,7 @@ public class Search extends AbstractKBPelletService {
 	 * @throws PelletClientException if there is an error while invoking the search servers
 	 */
 	public Collection<SearchResult> search(String text) throws PelletClientException {
-		return new SearchTask(this, text).execute();
+		return cached(new SearchTask(this, text, null), text).execute();
 	}
 
 	/**
@@ -87,16 +93,115 @@ public class Search extends AbstractKBPelletService {
 	 *            The {@link Callback} to execute after the search is done
 	 */
 	public void search(String text, Callback<Collection<SearchResult>> callback) {
-		CallbackUtils.launchThread(callback, new SearchTask(this, text));
+		CallbackUtils.launchThread(callback, cached(new SearchTask(this, text, null), text));
+	}
+
+	/**
+	 * Search the {@link KnowledgeBase} for the {@code k} {@link Resource}s most related to {@code text}. The response is
+	 * parsed as it is read, and the hits scoring lower than the {@code k} best so far are dropped without being
+	 * created. The result is not cached.
+	 * 
+	 * @param text
+	 *            The {@link String} to search
+	 * @param k
+	 *            The number of results
+	 * @return the best results, by decreasing score
+	 * @throws PelletClientException if there is an error while invoking the search servers
+	 */
+	public List<SearchResult> search(String text, int k) throws PelletClientException {
+		TopResults top = new TopResults(k);
+		new SearchTask(this, text, top).execute();
+		return top.toList();
+	}
+
+	/**
+	 * Search several {@link KnowledgeBase}s for several terms, and keep the {@code k} best results of each term over all
+	 * the KBs. Each term is searched in each KB, running at most {@code concurrency} searches at the same time; the
+	 * results of a term are merged by score as they are parsed, and the hits scoring lower than the {@code k} best so
+	 * far are dropped without being created. A failed search does not affect the others. The results are not cached.
+	 * 
+	 * @param kbs
+	 *            The KBs to search
+	 * @param terms
+	 *            The terms to search
+	 * @param k
+	 *            The number of results of each term
+	 * @param concurrency
+	 *            The maximum number of searches running at the same time
+	 * @param failures
+	 *            The multimap where the terms whose search failed are put, with one exception naming the KB for each
+	 *            KB the search failed in, including the KBs without a search service; the results of the other KBs
+	 *            are still merged (can be {@code null})
+	 * @return The best results of each term, by decreasing score, in the order of {@code terms}
+	 * @throws PelletClientException if the thread is interrupted while waiting for the searches
+	 */
+	public static Map<String, List<SearchResult>> search(Collection<KnowledgeBase> kbs, Collection<String> terms, int k, 
+					                                     int concurrency, 
+					                                     final Multimap<String, PelletClientException> failures) 
+		throws PelletClientException {
+		Map<String, TopResults> tops = Maps.newLinkedHashMap();
+		Map<List<Object>, CallbackTask<Collection<SearchResult>>> tasks = Maps.newLinkedHashMap();
+
+		for (String term : terms) {
+			tops.put(term, new TopResults(k));
+		}
+
+		// the searches of a term in each KB are scheduled together, so the searches running at the same time hit
+		// different KBs
+		for (String term : tops.keySet()) {
+			for (KnowledgeBase kb : kbs) {
+				Search service = kb.getService(Search.class);
+
+				if (service != null) {
+					tasks.put(Arrays.<Object> asList(term, kb), new SearchTask(service, term, tops.get(term)));
+				}
+				else if (failures != null) {
+					failures.put(term, new PelletClientException("KB " + kb.getName() + " does not provide search"));
+				}
+			}
+		}
+
+		CallbackUtils.executeEach(tasks, concurrency, new BatchCallback<List<Object>, Collection<SearchResult>>() {
+			public void success(List<Object> key, Collection<SearchResult> value) {
+				// the results are in the top results of the term
+			}
+
+			public void failure(List<Object> key, PelletClientException exception) {
+				if (failures != null) {
+					String term = (String) key.get(0);
+					KnowledgeBase kb = (KnowledgeBase) key.get(1);
+					PelletClientException failure = new PelletClientException("Search of " + term + " failed in KB "
+						+ kb.getName(), exception.getResponseCode(), exception);
+
+					synchronized (failures) {
+						failures.put(term, failure);
+					}
+				}
+			}
+		});
+
+		Map<String, List<SearchResult>> results = Maps.newLinkedHashMap();
+
+		for (Map.Entry<String, TopResults> top : tops.entrySet()) {
+			results.put(top.getKey(), top.getValue().toList());
+		}
+
+		return results;
 	}
 
 	private static class SearchTask extends PelletServiceCallbackTask<Collection<SearchResult>> {
 
 		private String text;
 
-		protected SearchTask(PelletService service, String text) {
+		/**
+		 * The top results the hits are added to, or {@code null} to return all of them
+		 */
+		private TopResults top;
+
+		protected SearchTask(PelletService service, String text, TopResults top) {
 			super(service);
 			this.text = text;
+			this.top = top;
 		}
 
 		public Collection<SearchResult> execute() throws PelletClientException {
@@ -106,41 +211,94 @@ public class Search extends AbstractKBPelletService {
 				String encodedQuery = URLEncoder.encode(text, "UTF-8");
 
 				// TODO Use URI template library
-				url = new URL(service.getEndpoint().getURL().toString().replaceAll("\\Q{?search}\\E", "?search=" 
-								                                                   + encodedQuery)); 
+				url = new URL(service.getEndpoint().getURL().toString().replace("{?search}", "?search=" + encodedQuery)); 
 			}
 			catch (Exception e) {
 				throw new PelletClientException("Problem creating query URL", e);
 			}
 
-			Response response = RequestUtils.execute(new Endpoint(url, service.getEndpoint().getHTTPMethods()), 
-							                                      service.getServer().getPreferredMethod(), MIMETYPE);
+			ResponseStream response = RequestUtils.stream(new Endpoint(url, service.getEndpoint().getHTTPMethods()), 
+							                              service.getServer().getPreferredMethod(), MIMETYPE);
+
+			KnowledgeBase kb = ((Search) service).getKnowledgeBase();
 
-			// Parse JSON response content into SearchResult objects
+			// Parse the JSON hits as they are read, creating only the SearchResults that are kept
 			try {
 				List<SearchResult> searchResults = Lists.newArrayList();
+				SearchJsonReader reader = new SearchJsonReader(response);
+
+				while (reader.next()) {
+					if (top == null) {
+						searchResults.add(new SearchResult(reader.getResource(), reader.getScore(), kb));
+					}
+					else if (top.accepts(reader.getScore())) {
+						top.add(new SearchResult(reader.getResource(), reader.getScore(), kb));
+					}
+				}
 
-				JSONArray results = new JSONArray(response.getContent());
+				return searchResults;
+			}
+			catch (IOException e) {
+				throw new PelletClientException("Problem parsing " + MIMETYPE + " content", e);
+			}
+			finally {
+				response.close();
+			}
+		}
+	}
 
-				for (int i = 0; i < results.length(); i++) {
-					JSONObject result = results.getJSONObject(i);
+	/**
+	 * The {@code k} best results of a term, in a min-heap by score shared by the searches of the term
+	 */
+	private static class TopResults {
 
-					JSONObject hit = result.getJSONObject("hit");
+		private static final Comparator<SearchResult> BY_SCORE = new Comparator<SearchResult>() {
+			public int compare(SearchResult a, SearchResult b) {
+				return Double.compare(a.getScore(), b.getScore());
+			}
+		};
 
-					Resource resource;
-					if (hit.getString("type").equalsIgnoreCase("uri"))
-						resource = new URIImpl(hit.getString("value"));
-					else
-						resource = new BNodeImpl(hit.getString("value"));
+		private final int k;
 
-					searchResults.add(new SearchResult(resource, result.getDouble("score")));
-				}
+		private final PriorityQueue<SearchResult> heap;
 
-				return searchResults;
+		/**
+		 * The lowest score of the heap once it is full, which the scores of new hits must exceed
+		 */
+		private volatile double threshold = Double.NEGATIVE_INFINITY;
+
+		public TopResults(int k) {
+			checkArgument(k > 0, "k must be positive: %s", k);
+
+			this.k = k;
+			this.heap = new PriorityQueue<SearchResult>(Math.min(k, 1024), BY_SCORE);
+		}
+
+		/**
+		 * Checks, without locking, if a hit with {@code score} would be added
+		 */
+		public boolean accepts(double score) {
+			return score > threshold;
+		}
+
+		public synchronized void add(SearchResult result) {
+			if (heap.size() < k) {
+				heap.add(result);
 			}
-			catch (JSONException e) {
-				throw new PelletClientException("Problem parsing " + MIMETYPE + " content", e);
+			else if (result.getScore() > heap.peek().getScore()) {
+				heap.poll();
+				heap.add(result);
 			}
+
+			if (heap.size() == k) {
+				threshold = heap.peek().getScore();
+			}
+		}
+
+		public synchronized List<SearchResult> toList() {
+			List<SearchResult> results = Lists.newArrayList(heap);
+			Collections.sort(results, Collections.reverseOrder(BY_SCORE));
+			return results;
 		}
 	}
 
@@ -153,10 +311,16 @@ public class Search extends AbstractKBPelletService {
 	public static class SearchResult {
 		private Resource resource;
 		private double score;
+		private KnowledgeBase kb;
 
 		public SearchResult(Resource resource, double score) {
+			this(resource, score, null);
+		}
+
+		public SearchResult(Resource resource, double score, KnowledgeBase kb) {
 			this.resource = resource;
 			this.score = score;
+			this.kb = kb;
 		}
 
 		public Resource getResource() {
@@ -167,6 +331,15 @@ public class Search extends AbstractKBPelletService {
 			return score;
 		}
 
+		/**
+		 * Get the {@link KnowledgeBase} the result was found in
+		 * 
+		 * @return the KB, or {@code null} if it is not known
+		 */
+		public KnowledgeBase getKnowledgeBase() {
+			return kb;
+		}
+
 		public String toString() {
 			return resource + ": " + score;
 		}
@@ -11,11 +11,21 @@
 
 package com.clarkparsia.pelletserver.client.utils;
 
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import com.clarkparsia.pelletserver.client.BatchCallback;
 import com.clarkparsia.pelletserver.client.Callback;
 import com.clarkparsia.pelletserver.client.CallbackTask;
 import com.clarkparsia.pelletserver.client.CallbackThread;
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.google.common.collect.Maps;
 
 
 /**
@@ -26,6 +36,8 @@ import com.clarkparsia.pelletserver.client.CallbackThread;
  */
 public abstract class CallbackUtils {
 
+	private static final Logger log = Logger.getLogger(CallbackUtils.class.getName());
+
 	/**
 	 * Default {@link Thread} executor
 	 */
@@ -35,6 +47,14 @@ public abstract class CallbackUtils {
 		}
 	};
 
+	private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
 	/**
 	 * Launches a {@link Thread} that will execute the {@link CallbackTask} and call the {@link Callback} accordingly to the
 	 * results
@@ -49,4 +69,119 @@ public abstract class CallbackUtils {
 		EXECUTOR.execute(new CallbackThread<T>(callback, task));
 	}
 
+	/**
+	 * Executes several {@link CallbackTask}s concurrently, running at most {@code concurrency} of them at the same time,
+	 * and waits for all of them to finish
+	 * 
+	 * @param <K> the type of the keys identifying the tasks
+	 * @param <T> the type returned from the tasks
+	 * @param tasks
+	 *            The {@link CallbackTask}s to execute
+	 * @param concurrency
+	 *            The maximum number of tasks executed at the same time
+	 * @param failures
+	 *            The map where the failures of the tasks are put (can be {@code null})
+	 * @return The results of the tasks that succeeded, in the order of {@code tasks}
+	 * @throws PelletClientException
+	 *             If the thread is interrupted while waiting for the tasks
+	 */
+	public static <K, T> Map<K, T> executeAll(Map<K, ? extends CallbackTask<T>> tasks, int concurrency, 
+					                          Map<K, PelletClientException> failures) throws PelletClientException {
+		final Map<K, T> results = Maps.newHashMap();
+		final Map<K, PelletClientException> errors = Maps.newHashMap();
+
+		executeEach(tasks, concurrency, new BatchCallback<K, T>() {
+			public synchronized void success(K key, T value) {
+				results.put(key, value);
+			}
+
+			public synchronized void failure(K key, PelletClientException exception) {
+				errors.put(key, exception);
+			}
+		});
+
+		Map<K, T> map = Maps.newLinkedHashMap();
+
+		for (K key : tasks.keySet()) {
+			if (errors.containsKey(key)) {
+				if (failures != null) {
+					failures.put(key, errors.get(key));
+				}
+			}
+			else {
+				map.put(key, results.get(key));
+			}
+		}
+
+		return map;
+	}
+
+	/**
+	 * Executes several {@link CallbackTask}s concurrently, running at most {@code concurrency} of them at the same time
+	 * in the order of {@code tasks}, and waits for all of them to finish. The {@link BatchCallback} is called with the
+	 * result or failure of each task as soon as it is done, from the thread that executed it. A failed task, or a
+	 * callback throwing a {@link RuntimeException}, does not affect the other tasks.
+	 * 
+	 * @param <K> the type of the keys identifying the tasks
+	 * @param <T> the type returned from the tasks
+	 * @param tasks
+	 *            The {@link CallbackTask}s to execute
+	 * @param concurrency
+	 *            The maximum number of tasks executed at the same time
+	 * @param callback
+	 *            The {@link BatchCallback} to call after each task
+	 * @throws PelletClientException
+	 *             If the thread is interrupted while waiting for the tasks, in which case the tasks not started are
+	 *             cancelled
+	 */
+	public static <K, T> void executeEach(Map<K, ? extends CallbackTask<T>> tasks, int concurrency, 
+					                      final BatchCallback<K, T> callback) throws PelletClientException {
+		final CountDownLatch done = new CountDownLatch(tasks.size());
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, tasks.size())), 
+						                                        DAEMON_THREADS);
+
+		try {
+			for (final Map.Entry<K, ? extends CallbackTask<T>> task : tasks.entrySet()) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							T result;
+
+							try {
+								result = task.getValue().execute();
+							}
+							catch (PelletClientException e) {
+								callback.failure(task.getKey(), e);
+								return;
+							}
+							catch (RuntimeException e) {
+								callback.failure(task.getKey(), new PelletClientException(e));
+								return;
+							}
+
+							callback.success(task.getKey(), result);
+						}
+						catch (RuntimeException e) {
+							// the callback failed for this task only
+							log.log(Level.WARNING, "Callback failed for " + task.getKey(), e);
+						}
+						finally {
+							done.countDown();
+						}
+					}
+				});
+			}
+
+			done.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PelletClientException(e);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * A minimal pull scanner of a JSON stream, for the purpose-built parsers of service responses: it reads from its own
+ * character buffer, and reads strings into a reused buffer, so the keys of a document can be matched without creating
+ * strings for them.
+ */
+class JsonScanner {
+
+	private final Reader reader;
+
+	private final char[] buffer = new char[8192];
+
+	private int position;
+
+	private int limit;
+
+	/**
+	 * The text of the last string read
+	 */
+	final StringBuilder text = new StringBuilder();
+
+	JsonScanner(InputStream in) throws IOException {
+		this.reader = new InputStreamReader(in, "UTF-8");
+	}
+
+	void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Consume the separator after a member or element
+	 *
+	 * @return true if there is another member or element, false at the end of the object or array
+	 */
+	boolean nextMember() throws IOException {
+		if (peek() == ',') {
+			position++;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Skip any value
+	 */
+	void skipValue() throws IOException {
+		int c = peek();
+
+		if (c == '"') {
+			readString();
+		}
+		else if (c == '{' || c == '[') {
+			char close = c == '{' ? '}' : ']';
+			position++;
+
+			if (peek() != close) {
+				do {
+					if (close == '}') {
+						readString();
+						expect(':');
+					}
+
+					skipValue();
+				}
+				while (nextMember());
+			}
+
+			expect(close);
+		}
+		else {
+			readToken(null);
+		}
+	}
+
+	/**
+	 * Read a number, {@code true}, {@code false} or {@code null}
+	 *
+	 * @param text
+	 *            The buffer the token is appended to, or {@code null} to skip it
+	 */
+	void readToken(StringBuilder text) throws IOException {
+		while (fill() && "{}[],: \t\r\n\"".indexOf(buffer[position]) < 0) {
+			if (text != null) {
+				text.append(buffer[position]);
+			}
+
+			position++;
+		}
+	}
+
+	/**
+	 * Read {@code true}, {@code false} or {@code null}
+	 *
+	 * @return the first character of the keyword
+	 */
+	char readLiteralKeyword() throws IOException {
+		char first = (char) peek();
+		skipValue();
+		return first;
+	}
+
+	/**
+	 * Read a number
+	 */
+	double readNumber() throws IOException {
+		text.setLength(0);
+		peek();
+		readToken(text);
+
+		try {
+			return Double.parseDouble(text.toString());
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid number: " + text);
+		}
+	}
+
+	/**
+	 * Read a string into {@link #text}
+	 */
+	void readString() throws IOException {
+		text.setLength(0);
+		readString(text);
+	}
+
+	/**
+	 * Read a string, appending it to {@code text}
+	 */
+	void readString(StringBuilder text) throws IOException {
+		expect('"');
+
+		while (true) {
+			if (!fill()) {
+				throw new IOException("Unterminated string");
+			}
+
+			int start = position;
+
+			while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+				position++;
+			}
+
+			text.append(buffer, start, position - start);
+
+			if (position == limit) {
+				continue;
+			}
+
+			char c = buffer[position++];
+
+			if (c == '"') {
+				return;
+			}
+
+			text.append(readEscape());
+		}
+	}
+
+	private char readEscape() throws IOException {
+		char c = read();
+
+		switch (c) {
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int code = 0;
+
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(read(), 16);
+
+					if (digit < 0) {
+						throw new IOException("Invalid unicode escape");
+					}
+
+					code = (code << 4) | digit;
+				}
+
+				return (char) code;
+			default:
+				// '"', '\\' and '/'
+				return c;
+		}
+	}
+
+	boolean textEquals(String s) {
+		int length = s.length();
+
+		if (text.length() != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (text.charAt(i) != s.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	boolean textEqualsIgnoreCase(String s) {
+		int length = s.length();
+
+		if (text.length() != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (Character.toLowerCase(text.charAt(i)) != Character.toLowerCase(s.charAt(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	void expect(char expected) throws IOException {
+		char c = (char) peek();
+
+		if (c != expected) {
+			throw new IOException("Expected '" + expected + "' but found '" + c + "'");
+		}
+
+		position++;
+	}
+
+	/**
+	 * Get the next non-whitespace character, without consuming it
+	 */
+	int peek() throws IOException {
+		while (fill()) {
+			char c = buffer[position];
+
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+
+			position++;
+		}
+
+		throw new IOException("Unexpected end of document");
+	}
+
+	/**
+	 * Consume the character returned by {@link #peek()}
+	 */
+	void skip() {
+		position++;
+	}
+
+	private char read() throws IOException {
+		if (!fill()) {
+			throw new IOException("Unexpected end of document");
+		}
+
+		return buffer[position++];
+	}
+
+	/**
+	 * Make sure there is at least one character in the buffer
+	 *
+	 * @return false at the end of the stream
+	 */
+	private boolean fill() throws IOException {
+		if (position < limit) {
+			return true;
+		}
+
+		limit = reader.read(buffer, 0, buffer.length);
+		position = 0;
+
+		if (limit < 0) {
+			limit = 0;
+			return false;
+		}
+
+		return true;
+	}
+}
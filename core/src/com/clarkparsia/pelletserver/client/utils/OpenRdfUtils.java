@@ -14,19 +14,45 @@ package com.clarkparsia.pelletserver.client.utils;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.openrdf.model.Graph;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.TupleQueryResultHandlerBase;
+import org.openrdf.query.impl.TupleQueryResultBuilder;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import com.clarkparsia.openrdf.ExtGraph;
+import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
+import com.clarkparsia.pelletserver.client.Row;
+import com.clarkparsia.pelletserver.client.RowMapper;
+import com.clarkparsia.pelletserver.client.index.IndexedGraph;
 import com.clarkparsia.openrdf.query.results.SparqlXmlResultSetParser;
-
-import com.sun.org.apache.xerces.internal.parsers.SAXParser;
+import com.google.common.collect.Lists;
 
 /**
  * Utilities related to Sesame
@@ -36,6 +62,39 @@ import com.sun.org.apache.xerces.internal.parsers.SAXParser;
  */
 public abstract class OpenRdfUtils {
 
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	/**
+	 * The base URI of the parsed documents, as in {@link ExtGraph#read(InputStream, RDFFormat)}
+	 */
+	private static final String BASE_URI = "http://openrdf.clarkparsia.com/";
+
+	/**
+	 * The factory of the values of all parsed results
+	 */
+	private static volatile ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+
+	/**
+	 * Get the {@link ValueFactory} creating the values of the results parsed by the client
+	 * 
+	 * @return the value factory
+	 */
+	public static ValueFactory getValueFactory() {
+		return valueFactory;
+	}
+
+	/**
+	 * Set the {@link ValueFactory} creating the values of the results parsed by the client, e.g., a
+	 * {@link ValueDictionary} to share the values repeated across results. It is used concurrently by the parsers of
+	 * all threads, so it must be thread safe.
+	 * 
+	 * @param factory
+	 *            the value factory, or {@code null} for the default {@link ValueFactoryImpl}
+	 */
+	public static void setValueFactory(ValueFactory factory) {
+		valueFactory = factory != null ? factory : ValueFactoryImpl.getInstance();
+	}
+
 	/**
 	 * Creates a {@link org.openrdf.model.Graph Graph} from RDF/XML content
 	 * 
@@ -46,14 +105,200 @@ public abstract class OpenRdfUtils {
 	 * @throws IOException
 	 */
 	public static Graph createGraphFromRDFXMLBlob(String blob) throws RDFParseException, IOException {
-		InputStream is = new ByteArrayInputStream(blob.getBytes("UTF-8"));
+		return createGraphFromRDFXMLStream(new ByteArrayInputStream(blob.getBytes("UTF-8")));
+	}
 
+	/**
+	 * Creates a {@link org.openrdf.model.Graph Graph} from an RDF/XML stream
+	 * 
+	 * @param in
+	 *            The RDF/XML content
+	 * @return
+	 * @throws RDFParseException
+	 * @throws IOException
+	 */
+	public static Graph createGraphFromRDFXMLStream(InputStream in) throws RDFParseException, IOException {
 		ExtGraph graph = new ExtGraph();
-		graph.read(is, RDFFormat.RDFXML);
+
+		try {
+			parse(in, RDFFormat.RDFXML, new StatementCollector(graph));
+		}
+		catch (RDFHandlerException e) {
+			// a StatementCollector never fails
+			throw new RDFParseException(e);
+		}
 
 		return graph;
 	}
 
+	/**
+	 * Creates a {@link org.openrdf.model.Graph Graph} from a response in any of the
+	 * {@link PelletServerMimeTypes#RDF_FORMATS RDF formats}, according to its {@code Content-Type}. Responses without a
+	 * known content type are parsed as RDF/XML.
+	 * 
+	 * @param response
+	 *            The response
+	 * @return
+	 * @throws RDFParseException
+	 * @throws IOException
+	 */
+	public static Graph createGraphFromStream(ResponseStream response) throws RDFParseException, IOException {
+		return createGraphFromStream(response, 1);
+	}
+
+	/**
+	 * Creates a {@link org.openrdf.model.Graph Graph} from a response in any of the
+	 * {@link PelletServerMimeTypes#RDF_FORMATS RDF formats}, parsing N-Triples on several threads
+	 * 
+	 * @param response
+	 *            The response
+	 * @param threads
+	 *            The number of threads parsing an N-Triples response
+	 * @return
+	 * @throws RDFParseException
+	 * @throws IOException
+	 * @see ParallelNTriplesParser
+	 */
+	public static Graph createGraphFromStream(ResponseStream response, int threads) throws RDFParseException,
+		IOException {
+		return createGraphFromStream(response, threads, null);
+	}
+
+	/**
+	 * Creates a {@link org.openrdf.model.Graph Graph} of the statements of a response kept by {@code filter}
+	 * 
+	 * @param response
+	 *            The response
+	 * @param threads
+	 *            The number of threads parsing an N-Triples response
+	 * @param filter
+	 *            The filter of the statements to keep, or {@code null} to keep all of them
+	 * @return
+	 * @throws RDFParseException
+	 * @throws IOException
+	 * @see StatementFilter
+	 */
+	public static Graph createGraphFromStream(ResponseStream response, int threads, StatementFilter filter)
+		throws RDFParseException, IOException {
+		return createGraphFromStream(response, threads, filter, false);
+	}
+
+	/**
+	 * Creates a {@link org.openrdf.model.Graph Graph} of the statements of a response kept by {@code filter},
+	 * optionally indexed for pattern matching
+	 * 
+	 * @param response
+	 *            The response
+	 * @param threads
+	 *            The number of threads parsing an N-Triples response
+	 * @param filter
+	 *            The filter of the statements to keep, or {@code null} to keep all of them
+	 * @param indexed
+	 *            true to create an immutable {@link IndexedGraph}, false to create a modifiable graph
+	 * @return
+	 * @throws RDFParseException
+	 * @throws IOException
+	 */
+	public static Graph createGraphFromStream(ResponseStream response, int threads, StatementFilter filter,
+		boolean indexed) throws RDFParseException, IOException {
+		try {
+			if (indexed) {
+				IndexedGraph.Builder builder = new IndexedGraph.Builder();
+				parse(response, threads, filter, builder);
+				return builder.build();
+			}
+
+			ExtGraph graph = new ExtGraph();
+			parse(response, threads, filter, new StatementCollector(graph));
+			return graph;
+		}
+		catch (RDFHandlerException e) {
+			// neither a StatementCollector nor an IndexedGraph.Builder fail
+			throw new RDFParseException(e);
+		}
+	}
+
+	/**
+	 * Parses a response in any of the {@link PelletServerMimeTypes#RDF_FORMATS RDF formats}, according to its
+	 * {@code Content-Type}, passing the statements to {@code handler} as they are read instead of collecting them in a
+	 * {@link org.openrdf.model.Graph Graph}. Responses without a known content type are parsed as RDF/XML.
+	 * 
+	 * @param response
+	 *            The response
+	 * @param threads
+	 *            The number of threads parsing an N-Triples response
+	 * @param handler
+	 *            The handler receiving the statements, in the calling thread
+	 * @throws RDFParseException
+	 * @throws RDFHandlerException
+	 * @throws IOException
+	 */
+	public static void parse(ResponseStream response, int threads, RDFHandler handler) throws RDFParseException,
+		RDFHandlerException, IOException {
+		parse(response, threads, null, handler);
+	}
+
+	/**
+	 * Parses a response like {@link #parse(ResponseStream, int, RDFHandler)}, passing only the statements kept by
+	 * {@code filter} to {@code handler}. The lines of an N-Triples response are filtered before they are parsed.
+	 * 
+	 * @param response
+	 *            The response
+	 * @param threads
+	 *            The number of threads parsing an N-Triples response
+	 * @param filter
+	 *            The filter of the statements to keep, or {@code null} to keep all of them
+	 * @param handler
+	 *            The handler receiving the statements, in the calling thread
+	 * @throws RDFParseException
+	 * @throws RDFHandlerException
+	 * @throws IOException
+	 */
+	public static void parse(ResponseStream response, int threads, StatementFilter filter, RDFHandler handler)
+		throws RDFParseException, RDFHandlerException, IOException {
+		RDFFormat format = getRDFFormat(response);
+
+		if (filter != null) {
+			// Lines that can't be filtered before parsing are filtered once parsed
+			handler = filter.filter(handler);
+		}
+
+		if (format == RDFFormat.NTRIPLES && (threads > 1 || filter != null)) {
+			ParallelNTriplesParser parser = new ParallelNTriplesParser(threads);
+			parser.setFilter(filter);
+			parser.parse(response, handler);
+			return;
+		}
+
+		parse(response, format, handler);
+	}
+
+	private static void parse(InputStream in, RDFFormat format, RDFHandler handler) throws RDFParseException,
+		RDFHandlerException, IOException {
+		RDFParser parser = Rio.createParser(format);
+		parser.setValueFactory(valueFactory);
+		parser.setRDFHandler(handler);
+		parser.parse(in, BASE_URI);
+	}
+
+	/**
+	 * Get the {@link RDFFormat} of a response from its {@code Content-Type}
+	 * 
+	 * @param response
+	 *            The response
+	 * @return the format, RDF/XML if the content type is not known
+	 */
+	public static RDFFormat getRDFFormat(ResponseStream response) {
+		if (response.isContentType(PelletServerMimeTypes.TURTLE)) {
+			return RDFFormat.TURTLE;
+		}
+		else if (response.isContentType(PelletServerMimeTypes.NTRIPLES)) {
+			return RDFFormat.NTRIPLES;
+		}
+
+		return RDFFormat.RDFXML;
+	}
+
 	/**
 	 * Creates a {@link org.openrdf.query.TupleQueryResult TupleQueryResult} from SPARQL/XML content
 	 * 
@@ -66,12 +311,294 @@ public abstract class OpenRdfUtils {
 	 */
 	public static TupleQueryResult createResultSetFromSparqlXMLBlob(String blob) throws UnsupportedEncodingException, 
 		SAXException, IOException {
-		SparqlXmlResultSetParser ch = new SparqlXmlResultSetParser();
-		SAXParser p = new SAXParser();
+		SparqlXmlResultSetParser ch = valueFactory instanceof ValueFactoryImpl ? new SparqlXmlResultSetParser(
+						(ValueFactoryImpl) valueFactory) : new SparqlXmlResultSetParser();
 
-		p.setContentHandler(ch);
-		p.parse(new InputSource(new ByteArrayInputStream(blob.getBytes("UTF-8"))));
+		SaxUtils.parse(new InputSource(new StringReader(blob)), ch);
 
 		return ch.tupleResult();
 	}
+
+	/**
+	 * Creates a {@link org.openrdf.query.TupleQueryResult TupleQueryResult} that parses a SPARQL/XML stream as it is
+	 * iterated. The stream is closed when the result is closed, or fully read.
+	 * 
+	 * @param in
+	 *            The SPARQL/XML content
+	 * @return
+	 * @throws QueryEvaluationException
+	 */
+	public static TupleQueryResult createResultSetFromSparqlXMLStream(InputStream in) throws QueryEvaluationException {
+		return new StreamingTupleQueryResult(in);
+	}
+
+	/**
+	 * Creates a {@link org.openrdf.query.TupleQueryResult TupleQueryResult} that parses a SPARQL/JSON stream as it is
+	 * iterated. The stream is closed when the result is closed, or fully read.
+	 * 
+	 * @param in
+	 *            The SPARQL/JSON content
+	 * @return
+	 * @throws QueryEvaluationException
+	 */
+	public static TupleQueryResult createResultSetFromSparqlJSONStream(InputStream in) throws QueryEvaluationException {
+		return new SparqlJsonTupleQueryResult(in);
+	}
+
+	/**
+	 * Creates a {@link org.openrdf.query.TupleQueryResult TupleQueryResult} from a stream in the Sesame binary results
+	 * format. Unlike the SPARQL formats, the result is read completely before this method returns.
+	 * 
+	 * @param in
+	 *            The binary content
+	 * @return
+	 * @throws QueryEvaluationException
+	 */
+	public static TupleQueryResult createResultSetFromBinaryStream(InputStream in) throws QueryEvaluationException {
+		try {
+			TupleQueryResultBuilder builder = new TupleQueryResultBuilder();
+			QueryResultIO.parse(in, TupleQueryResultFormat.BINARY, builder, valueFactory);
+
+			return builder.getQueryResult();
+		}
+		catch (Exception e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Maps the rows of a {@code SELECT} result as they are parsed, without building a
+	 * {@link org.openrdf.query.TupleQueryResult TupleQueryResult}. The SPARQL/JSON and SPARQL/XML parsers hand the
+	 * lexical forms of the values to the mapper, so no {@link Value} is created unless the mapper asks for one; other
+	 * formats are parsed into values first. The response is closed when this method returns.
+	 * 
+	 * @param response
+	 *            The SPARQL/JSON, SPARQL/XML or binary response
+	 * @param mapper
+	 *            The mapper of the rows
+	 * @return the results of the mapper, in row order, without the {@code null}s
+	 * @throws QueryEvaluationException
+	 *             if the response could not be parsed
+	 */
+	public static <R> List<R> mapRows(ResponseStream response, final RowMapper<R> mapper)
+					throws QueryEvaluationException {
+		final List<R> results = Lists.newArrayList();
+
+		try {
+			RowSource source = null;
+
+			if (response.isContentType(PelletServerMimeTypes.SPARQL_JSON)) {
+				source = new SparqlJsonTupleQueryResult(response);
+			}
+			else if (!response.isContentType(PelletServerMimeTypes.SPARQL_BINARY)) {
+				source = new StreamingTupleQueryResult(response);
+			}
+
+			if (source != null) {
+				for (RawRow row = source.nextRow(); row != null; row = source.nextRow()) {
+					add(results, mapper.map(row));
+				}
+
+				return results;
+			}
+
+			QueryResultIO.parse(response, TupleQueryResultFormat.BINARY, new TupleQueryResultHandlerBase() {
+				private RawRow row;
+
+				@Override
+				public void startQueryResult(List<String> bindingNames) {
+					row = new RawRow(bindingNames, valueFactory);
+				}
+
+				@Override
+				public void handleSolution(BindingSet bindings) {
+					fill(row, bindings);
+					add(results, mapper.map(row));
+				}
+			}, valueFactory);
+
+			return results;
+		}
+		catch (QueryEvaluationException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new QueryEvaluationException(e);
+		}
+		finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Map the rows of a {@link TupleQueryResult}. The rows of a result parsed from SPARQL/JSON or SPARQL/XML are read
+	 * as {@link Row}s, so no {@link Value} is created unless the mapper asks for one; the {@link BindingSet}s of other
+	 * results are passed to the mapper as {@link Row}s. The result is closed when this method returns.
+	 * 
+	 * @param result
+	 *            The result
+	 * @param mapper
+	 *            The mapper of the rows
+	 * @return the results of the mapper, in row order, without the {@code null}s
+	 * @throws QueryEvaluationException
+	 *             if the result could not be read
+	 */
+	public static <R> List<R> mapRows(TupleQueryResult result, RowMapper<R> mapper) throws QueryEvaluationException {
+		List<R> results = Lists.newArrayList();
+
+		try {
+			if (result instanceof RowSource) {
+				RowSource source = (RowSource) result;
+
+				for (RawRow row = source.nextRow(); row != null; row = source.nextRow()) {
+					add(results, mapper.map(row));
+				}
+			}
+			else {
+				RawRow row = new RawRow(result.getBindingNames(), valueFactory);
+
+				while (result.hasNext()) {
+					fill(row, result.next());
+					add(results, mapper.map(row));
+				}
+			}
+
+			return results;
+		}
+		finally {
+			result.close();
+		}
+	}
+
+	/**
+	 * Fill a row with the values of a {@link BindingSet}
+	 */
+	private static void fill(RawRow row, BindingSet bindings) {
+		row.clear();
+
+		for (Binding binding : bindings) {
+			int column = row.getColumn(binding.getName());
+
+			if (column >= 0) {
+				row.set(column, binding.getValue());
+			}
+		}
+	}
+
+	private static <R> void add(List<R> results, R result) {
+		if (result != null) {
+			results.add(result);
+		}
+	}
+
+	/**
+	 * Reads the result of an {@code ASK} query from a SPARQL/XML stream
+	 * 
+	 * @param in
+	 *            The SPARQL/XML content
+	 * @return the boolean result
+	 * @throws XMLStreamException
+	 *             if the stream is not a SPARQL/XML boolean result
+	 */
+	public static Boolean readBooleanResult(InputStream in) throws XMLStreamException {
+		XMLStreamReader reader;
+
+		synchronized (XML_INPUT_FACTORY) {
+			reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+		}
+
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && "boolean".equals(reader.getLocalName())) {
+					return Boolean.valueOf(reader.getElementText().trim());
+				}
+			}
+
+			throw new XMLStreamException("No boolean result");
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads the result of an {@code ASK} query from a SPARQL/JSON stream
+	 * 
+	 * @param in
+	 *            The SPARQL/JSON content
+	 * @return the boolean result
+	 * @throws QueryEvaluationException
+	 *             if the stream is not a SPARQL/JSON boolean result
+	 */
+	public static Boolean readBooleanResultFromSparqlJSON(InputStream in) throws QueryEvaluationException {
+		return SparqlJsonTupleQueryResult.readBooleanResult(in);
+	}
+
+	/**
+	 * Reads the value of a binding in the first result of a SPARQL/XML stream. Parsing stops as soon as the first result
+	 * was read, so the rest of the document is never parsed.
+	 * 
+	 * @param in
+	 *            The SPARQL/XML content
+	 * @param name
+	 *            The name of the binding
+	 * @return the value of the binding, or {@code null} if there are no results or the first result does not bind
+	 *         {@code name}
+	 * @throws XMLStreamException
+	 *             if the stream is not a SPARQL/XML result
+	 */
+	public static Value readFirstBinding(InputStream in, String name) throws XMLStreamException {
+		XMLStreamReader reader;
+
+		synchronized (XML_INPUT_FACTORY) {
+			reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+		}
+
+		try {
+			ValueFactory factory = valueFactory;
+			boolean inBinding = false;
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.END_ELEMENT && "result".equals(reader.getLocalName())) {
+					return null;
+				}
+				else if (event != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+
+				String element = reader.getLocalName();
+
+				if ("binding".equals(element)) {
+					inBinding = name.equals(reader.getAttributeValue(null, "name"));
+				}
+				else if (inBinding) {
+					String datatype = reader.getAttributeValue(null, "datatype");
+					String language = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+					String label = reader.getElementText();
+
+					if ("uri".equals(element)) {
+						return factory.createURI(label);
+					}
+					else if ("bnode".equals(element)) {
+						return factory.createBNode(label);
+					}
+					else if (datatype != null) {
+						return factory.createLiteral(label, factory.createURI(datatype));
+					}
+					else if (language != null) {
+						return factory.createLiteral(label, language);
+					}
+
+					return factory.createLiteral(label);
+				}
+			}
+
+			return null;
+		}
+		finally {
+			reader.close();
+		}
+	}
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.openrdf.rio.ntriples.NTriplesParser;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Parses an N-Triples stream on several threads. Since every statement of an N-Triples document is on its own line, the
+ * stream is split into chunks at line boundaries, and each chunk is parsed by its own {@link NTriplesParser} on a pool
+ * of threads while the next chunks are read. The statements of each chunk are passed to the {@link RDFHandler} in the
+ * calling thread, in the order of the document.<br>
+ * Blank node identifiers are preserved, so the same identifier in two chunks is the same blank node. At most twice as
+ * many chunks as threads are held in memory at any time.
+ */
+public class ParallelNTriplesParser {
+
+	private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ntriples-parser");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	private int threads;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private ValueFactory valueFactory = OpenRdfUtils.getValueFactory();
+
+	/**
+	 * The filter of the lines to parse, or {@code null} to parse all of them
+	 */
+	private StatementFilter filter;
+
+	/**
+	 * Create a new ParallelNTriplesParser
+	 *
+	 * @param threads
+	 *            the number of threads parsing chunks
+	 */
+	public ParallelNTriplesParser(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Set the size, in bytes, of the chunks parsed by each thread (4 MB by default). Lines longer than a chunk are kept
+	 * whole.
+	 *
+	 * @param chunkSize
+	 *            the chunk size
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * Set the {@link ValueFactory} used to create the statements, {@link OpenRdfUtils#getValueFactory()} by default. It
+	 * is shared by all the threads, so it must be thread safe.
+	 *
+	 * @param valueFactory
+	 *            the value factory
+	 */
+	public void setValueFactory(ValueFactory valueFactory) {
+		this.valueFactory = valueFactory;
+	}
+
+	/**
+	 * Set the filter of the statements to parse. The lines it discards are dropped from each chunk before the chunk is
+	 * parsed, so no objects are created for them.
+	 *
+	 * @param filter
+	 *            the filter, or {@code null} to parse every statement
+	 */
+	public void setFilter(StatementFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Parse an N-Triples stream
+	 *
+	 * @param in
+	 *            the N-Triples content
+	 * @param handler
+	 *            the handler receiving the statements, always in the calling thread
+	 * @throws IOException
+	 *             if the stream can't be read
+	 * @throws RDFParseException
+	 *             if the content is not valid N-Triples
+	 * @throws RDFHandlerException
+	 *             if the handler fails
+	 */
+	public void parse(InputStream in, RDFHandler handler) throws IOException, RDFParseException, RDFHandlerException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, DAEMON_THREADS);
+		LinkedList<Future<List<Statement>>> pending = Lists.newLinkedList();
+		ChunkReader reader = new ChunkReader(in);
+
+		handler.startRDF();
+
+		try {
+			for (Chunk chunk = reader.next(); chunk != null; chunk = reader.next()) {
+				pending.add(executor.submit(new ChunkParser(chunk)));
+
+				// Bound the chunks held in memory, handing out the oldest as soon as the pool is saturated
+				while (pending.size() >= threads * 2) {
+					handle(pending.removeFirst(), handler);
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				handle(pending.removeFirst(), handler);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		handler.endRDF();
+	}
+
+	private static void handle(Future<List<Statement>> future, RDFHandler handler) throws IOException,
+		RDFParseException, RDFHandlerException {
+		List<Statement> statements;
+
+		try {
+			statements = future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof RDFParseException) {
+				throw (RDFParseException) cause;
+			}
+			else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+
+			throw new RDFParseException(cause);
+		}
+
+		for (Statement statement : statements) {
+			handler.handleStatement(statement);
+		}
+	}
+
+	/**
+	 * A piece of the document made of whole lines
+	 */
+	private static class Chunk {
+		private byte[] bytes;
+		private int length;
+
+		public Chunk(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Reads the stream into chunks ending at a line boundary, carrying the partial last line over to the next chunk
+	 */
+	private class ChunkReader {
+		private InputStream in;
+		private byte[] carry = new byte[0];
+		private int carryLength;
+		private boolean eof;
+
+		public ChunkReader(InputStream in) {
+			this.in = in;
+		}
+
+		public Chunk next() throws IOException {
+			if (eof && carryLength == 0) {
+				return null;
+			}
+
+			byte[] buffer = new byte[Math.max(chunkSize, carryLength * 2)];
+			System.arraycopy(carry, 0, buffer, 0, carryLength);
+			int length = carryLength;
+
+			while (true) {
+				while (!eof && length < buffer.length) {
+					int read = in.read(buffer, length, buffer.length - length);
+
+					if (read < 0) {
+						eof = true;
+					}
+					else {
+						length += read;
+					}
+				}
+
+				if (eof) {
+					carryLength = 0;
+					return length > 0 ? new Chunk(buffer, length) : null;
+				}
+
+				int end = length - 1;
+
+				while (end >= 0 && buffer[end] != '\n') {
+					end--;
+				}
+
+				if (end >= 0) {
+					carryLength = length - end - 1;
+
+					if (carry.length < carryLength) {
+						carry = new byte[Math.max(carryLength, 1024)];
+					}
+
+					System.arraycopy(buffer, end + 1, carry, 0, carryLength);
+
+					return new Chunk(buffer, end + 1);
+				}
+
+				// A line longer than the buffer
+				byte[] larger = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			}
+		}
+	}
+
+	private class ChunkParser implements Callable<List<Statement>> {
+		private Chunk chunk;
+
+		public ChunkParser(Chunk chunk) {
+			this.chunk = chunk;
+		}
+
+		public List<Statement> call() throws Exception {
+			if (filter != null) {
+				compact();
+			}
+
+			// Roughly 100 bytes per statement
+			List<Statement> statements = Lists.newArrayListWithExpectedSize(chunk.length / 100 + 16);
+			NTriplesParser parser = new NTriplesParser(valueFactory);
+
+			parser.setPreserveBNodeIDs(true);
+			parser.setRDFHandler(new StatementCollector(statements));
+			parser.parse(new ByteArrayInputStream(chunk.bytes, 0, chunk.length), "");
+
+			return statements;
+		}
+
+		/**
+		 * Move the lines accepted by the filter to the start of the chunk, over the lines it discards
+		 */
+		private void compact() {
+			byte[] bytes = chunk.bytes;
+			int length = 0;
+			int start = 0;
+
+			while (start < chunk.length) {
+				int end = start;
+
+				while (end < chunk.length && bytes[end] != '\n') {
+					end++;
+				}
+
+				int next = Math.min(end + 1, chunk.length);
+
+				if (filter.accept(bytes, start, end)) {
+					if (length != start) {
+						System.arraycopy(bytes, start, bytes, length, next - start);
+					}
+
+					length += next - start;
+				}
+
+				start = next;
+			}
+
+			chunk.length = length;
+		}
+	}
+}
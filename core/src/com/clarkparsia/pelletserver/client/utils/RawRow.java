@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+
+import com.clarkparsia.pelletserver.client.Row;
+import com.google.common.collect.Lists;
+
+/**
+ * The {@link Row} filled by the streaming SPARQL result parsers: each cell keeps the characters of a value in buffers
+ * reused from row to row, and the {@link Value} is only created when it is asked for
+ */
+class RawRow implements Row {
+
+	static final int UNBOUND = 0, URI = 1, BNODE = 2, LITERAL = 3;
+
+	/**
+	 * The largest number of distinct datatypes and languages whose strings are shared across rows
+	 */
+	private static final int MAX_SHARED = 64;
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+					1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final List<String> bindingNames;
+
+	private final Cell[] cells;
+
+	private final ValueFactory factory;
+
+	/**
+	 * The datatype and language strings already created
+	 */
+	private final List<String> shared = Lists.newArrayList();
+
+	RawRow(List<String> bindingNames, ValueFactory factory) {
+		this.bindingNames = Collections.unmodifiableList(Lists.newArrayList(bindingNames));
+		this.factory = factory;
+
+		cells = new Cell[bindingNames.size()];
+
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = new Cell();
+		}
+	}
+
+	/**
+	 * Unbind all the columns, before a row is read
+	 */
+	void clear() {
+		for (Cell cell : cells) {
+			cell.type = UNBOUND;
+			cell.value = null;
+		}
+	}
+
+	/**
+	 * Start filling the cell of a column, which is bound to a value of {@code type}
+	 *
+	 * @return the cell, whose buffers are empty
+	 */
+	Cell bind(int column, int type) {
+		Cell cell = cells[column];
+		cell.type = type;
+		cell.value = null;
+		cell.lexical.setLength(0);
+		cell.datatype.setLength(0);
+		cell.language.setLength(0);
+		return cell;
+	}
+
+	/**
+	 * Bind a column to a value created by a parser
+	 */
+	void set(int column, Value value) {
+		if (value == null) {
+			cells[column].type = UNBOUND;
+			cells[column].value = null;
+			return;
+		}
+
+		Cell cell = bind(column, value instanceof URI ? URI : value instanceof BNode ? BNODE : LITERAL);
+		cell.lexical.append(value.stringValue());
+		cell.value = value;
+
+		if (value instanceof Literal) {
+			Literal literal = (Literal) value;
+
+			if (literal.getDatatype() != null) {
+				cell.datatype.append(literal.getDatatype().stringValue());
+			}
+			else if (literal.getLanguage() != null) {
+				cell.language.append(literal.getLanguage());
+			}
+		}
+	}
+
+	/**
+	 * Get the bindings of the row
+	 */
+	BindingSet toBindingSet() {
+		MapBindingSet bindings = new MapBindingSet(cells.length);
+
+		for (int i = 0; i < cells.length; i++) {
+			if (cells[i].type != UNBOUND) {
+				bindings.addBinding(bindingNames.get(i), getValue(i));
+			}
+		}
+
+		return bindings;
+	}
+
+	/**
+	 * Get the column of a variable whose name is in a buffer
+	 *
+	 * @return the column, or -1 if the variable is not in the result
+	 */
+	int getColumn(CharSequence name) {
+		for (int i = 0; i < bindingNames.size(); i++) {
+			if (contentEquals(name, bindingNames.get(i))) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public List<String> getBindingNames() {
+		return bindingNames;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public int getColumn(String name) {
+		return bindingNames.indexOf(name);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean isBound(int column) {
+		return cells[column].type != UNBOUND;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean isURI(int column) {
+		return cells[column].type == URI;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean isBNode(int column) {
+		return cells[column].type == BNODE;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean isLiteral(int column) {
+		return cells[column].type == LITERAL;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public CharSequence getLexicalForm(int column) {
+		Cell cell = cells[column];
+
+		return cell.type != UNBOUND ? cell.lexical : null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public String getDatatype(int column) {
+		Cell cell = cells[column];
+
+		return cell.type == LITERAL && cell.datatype.length() > 0 ? share(cell.datatype) : null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public String getLanguage(int column) {
+		Cell cell = cells[column];
+
+		return cell.type == LITERAL && cell.language.length() > 0 ? share(cell.language) : null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public String getString(int column) {
+		Cell cell = cells[column];
+
+		return cell.type != UNBOUND ? cell.lexical.toString() : null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public long getLong(int column) {
+		CharSequence s = lexicalNumber(column);
+		int start = trimStart(s);
+		int end = trimEnd(s);
+		int i = start;
+		boolean negative = false;
+
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i++) == '-';
+		}
+
+		if (i == end || end - i > 18) {
+			// too long to be accumulated without overflow
+			return Long.parseLong(s.subSequence(start, end).toString().replace("+", ""));
+		}
+
+		long result = 0;
+
+		for (; i < end; i++) {
+			int digit = s.charAt(i) - '0';
+
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("Not an integer: " + s);
+			}
+
+			result = result * 10 + digit;
+		}
+
+		return negative ? -result : result;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public double getDouble(int column) {
+		CharSequence s = lexicalNumber(column);
+		int start = trimStart(s);
+		int end = trimEnd(s);
+		int i = start;
+		boolean negative = false;
+
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i++) == '-';
+		}
+
+		// plain decimals of at most 15 digits are exact as a long divided by a power of ten
+		long mantissa = 0;
+		int digits = 0;
+		int significant = 0;
+		int scale = 0;
+		boolean point = false;
+
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+
+				if (mantissa > 0) {
+					significant++;
+				}
+
+				if (point) {
+					scale++;
+				}
+			}
+			else if (c == '.' && !point) {
+				point = true;
+			}
+			else {
+				break;
+			}
+		}
+
+		if (i < end || digits == 0 || significant > 15 || scale >= POWERS_OF_TEN.length) {
+			// exponents, INF, NaN, and long or malformed numbers
+			String number = s.subSequence(start, end).toString();
+
+			if ("INF".equals(number)) {
+				return Double.POSITIVE_INFINITY;
+			}
+			else if ("-INF".equals(number)) {
+				return Double.NEGATIVE_INFINITY;
+			}
+
+			return Double.parseDouble(number);
+		}
+
+		double result = mantissa / POWERS_OF_TEN[scale];
+
+		return negative ? -result : result;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean getBoolean(int column) {
+		Cell cell = cells[column];
+
+		if (cell.type == UNBOUND) {
+			return false;
+		}
+
+		CharSequence s = cell.lexical;
+		int start = trimStart(s);
+		int end = trimEnd(s);
+
+		if (end - start == 1) {
+			return s.charAt(start) == '1';
+		}
+
+		return end - start == 4 && s.charAt(start) == 't' && s.charAt(start + 1) == 'r' && s.charAt(start + 2) == 'u'
+			   && s.charAt(start + 3) == 'e';
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public Value getValue(int column) {
+		Cell cell = cells[column];
+
+		if (cell.type == UNBOUND) {
+			return null;
+		}
+
+		if (cell.value == null) {
+			String lexical = cell.lexical.toString();
+
+			switch (cell.type) {
+				case URI:
+					cell.value = factory.createURI(lexical);
+					break;
+				case BNODE:
+					cell.value = factory.createBNode(lexical);
+					break;
+				default:
+					if (cell.datatype.length() > 0) {
+						cell.value = factory.createLiteral(lexical, factory.createURI(share(cell.datatype)));
+					}
+					else if (cell.language.length() > 0) {
+						cell.value = factory.createLiteral(lexical, share(cell.language));
+					}
+					else {
+						cell.value = factory.createLiteral(lexical);
+					}
+			}
+		}
+
+		return cell.value;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("Row(");
+
+		for (int i = 0; i < cells.length; i++) {
+			s.append(i > 0 ? ", " : "").append(bindingNames.get(i)).append('=').append(getValue(i));
+		}
+
+		return s.append(')').toString();
+	}
+
+	private CharSequence lexicalNumber(int column) {
+		Cell cell = cells[column];
+
+		if (cell.type == UNBOUND) {
+			throw new NumberFormatException(bindingNames.get(column) + " is unbound");
+		}
+
+		return cell.lexical;
+	}
+
+	/**
+	 * Get the string equal to a buffer, reusing the strings of the previous rows
+	 */
+	private String share(CharSequence s) {
+		for (String known : shared) {
+			if (contentEquals(s, known)) {
+				return known;
+			}
+		}
+
+		String string = s.toString();
+
+		if (shared.size() < MAX_SHARED) {
+			shared.add(string);
+		}
+
+		return string;
+	}
+
+	private static int trimStart(CharSequence s) {
+		int i = 0;
+
+		while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+			i++;
+		}
+
+		return i;
+	}
+
+	private static int trimEnd(CharSequence s) {
+		int i = s.length();
+
+		while (i > 0 && Character.isWhitespace(s.charAt(i - 1))) {
+			i--;
+		}
+
+		return i;
+	}
+
+	private static boolean contentEquals(CharSequence s, String string) {
+		int length = string.length();
+
+		if (s.length() != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (s.charAt(i) != string.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * The buffers of a value
+	 */
+	static class Cell {
+
+		int type;
+
+		final StringBuilder lexical = new StringBuilder();
+
+		final StringBuilder datatype = new StringBuilder();
+
+		final StringBuilder language = new StringBuilder();
+
+		/**
+		 * The value, once created
+		 */
+		Value value;
+	}
+}
@@ -13,7 +13,10 @@ package com.clarkparsia.pelletserver.client.utils;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Modifier;
+import java.net.URL;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.reflections.Reflections;
 import org.reflections.scanners.SubTypesScanner;
@@ -30,9 +33,31 @@ import com.google.common.collect.Sets;
  */
 public abstract class ReflectionUtils {
 
-	private static final Reflections REFLECTIONS = 
-		new Reflections(new ConfigurationBuilder().setUrls(ClasspathHelper.getUrlsForCurrentClasspath())
-						                          .setScanners(new SubTypesScanner()));
+	private static final Logger log = Logger.getLogger(ReflectionUtils.class.getName());
+
+	private static final Reflections REFLECTIONS = scan();
+
+	/**
+	 * Scan each entry of the classpath on its own, so an entry that can't be read (e.g., a jar of classes in a newer
+	 * format than the bytecode reader supports) doesn't keep the classes of the other entries from being found
+	 */
+	private static Reflections scan() {
+		Reflections reflections = null;
+
+		for (URL url : ClasspathHelper.getUrlsForCurrentClasspath()) {
+			try {
+				Reflections scanned = new Reflections(new ConfigurationBuilder().setUrls(url)
+								                                                .setScanners(new SubTypesScanner()));
+				reflections = reflections != null ? reflections.merge(scanned) : scanned;
+			}
+			catch (RuntimeException e) {
+				log.log(Level.FINE, "Unable to scan " + url, e);
+			}
+		}
+
+		return reflections != null ? reflections 
+						           : new Reflections(new ConfigurationBuilder().setScanners(new SubTypesScanner()));
+	}
 
 	/**
 	 * Get all non-abstract implementations of class {@code cl} annotated with {@code annotation}
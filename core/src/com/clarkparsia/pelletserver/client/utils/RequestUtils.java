@@ -12,6 +12,10 @@
 package com.clarkparsia.pelletserver.client.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Collection;
 
@@ -63,7 +67,7 @@ public abstract class RequestUtils {
 
 				if (response.getResponseCode() != 200) {
 					throw new PelletClientException("Wrong response code (" + response.getResponseCode() + ") :\n" 
-									               + response.getContent());
+									               + response.getContent(), response.getResponseCode());
 				}
 
 				return response;
@@ -76,9 +80,126 @@ public abstract class RequestUtils {
 		throw new PelletClientException("No HTTP methods in " + endpoint.getURL());
 	}
 
+	/**
+	 * Executes a HTTP Request with the provided parameters, and returns the body of the server response as a stream, so
+	 * it can be parsed while it is transferred. Callers must close the stream.
+	 *
+	 * @param endpoint
+	 *            The server {@link Endpoint}
+	 * @param defaultMethod
+	 *            Default HTTP Request {@link com.clarkparsia.utils.web.Method Method} to use
+	 * @param mimeType
+	 *            {@link MimeType}s to use in HTTP Accept header
+	 * @return The body of the response
+	 * @throws PelletClientException
+	 *             If the Request fails or its response code is different from 200
+	 */
+	public static ResponseStream stream(Endpoint endpoint, Method defaultMethod, MimeType... mimeType)
+		throws PelletClientException {
+
+		Collection<Method> methods = endpoint.getHTTPMethods();
+
+		if (methods.isEmpty()) {
+			throw new PelletClientException("No HTTP methods in " + endpoint.getURL());
+		}
+
+		Method method = (defaultMethod != null && methods.contains(defaultMethod)) ? defaultMethod
+						                                                           : methods.iterator().next();
+
+		try {
+			HttpURLConnection connection = (HttpURLConnection) endpoint.getURL().openConnection();
+			connection.setRequestMethod(method.name());
+			connection.setRequestProperty(HttpHeaders.Accept.toString(), COMMA_JOINER.join(mimeType));
+
+			int code = connection.getResponseCode();
+
+			if (code != 200) {
+				String content = read(connection.getErrorStream());
+				connection.disconnect();
+
+				throw new PelletClientException("Wrong response code (" + code + ") :\n" + content, code);
+			}
+
+			return new ResponseStream(connection, connection.getInputStream());
+		}
+		catch (IOException e) {
+			throw new PelletClientException(e);
+		}
+	}
+
+	/**
+	 * Get the HTTP validator ({@code ETag} or {@code Last-Modified}) of the resource at a URL, with a {@code HEAD}
+	 * request. Both connecting and reading the response are bounded by the timeout.
+	 * 
+	 * @param url
+	 *            The URL of the resource
+	 * @param timeout
+	 *            The connect and read timeout in milliseconds
+	 * @return the validator, or {@code null} if the server sends none, or does not support {@code HEAD} requests
+	 * @throws PelletClientException
+	 *             If the Request fails or times out, or its response code is an error other than
+	 *             {@code 405 Method Not Allowed} and {@code 501 Not Implemented}
+	 */
+	public static String validator(URL url, int timeout) throws PelletClientException {
+		try {
+			// A HEAD response has no body, so the connection is kept alive for the next probe
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			connection.setRequestMethod("HEAD");
+
+			int code = connection.getResponseCode();
+
+			if (code == 405 || code == 501) {
+				return null;
+			}
+
+			if (code != 200) {
+				throw new PelletClientException("Wrong response code (" + code + ") for HEAD " + url, code);
+			}
+
+			for (String validator : new String[] { "ETag", "Last-Modified" }) {
+				String value = connection.getHeaderField(validator);
+
+				if (value != null && value.length() > 0) {
+					return validator + ":" + value;
+				}
+			}
+
+			return null;
+		}
+		catch (IOException e) {
+			throw new PelletClientException(e);
+		}
+	}
+
 	private static Response execute(URL url, Method method, MimeType... mimeType) throws IOException {
 		Request request = new Request(method, url);
 		request.addHeader(HttpHeaders.Accept.toString(), COMMA_JOINER.join(mimeType));
 		return request.execute();
 	}
+
+	/**
+	 * Read a stream as a UTF-8 string, and close it
+	 */
+	static String read(InputStream in) throws IOException {
+		if (in == null) {
+			return "";
+		}
+
+		try {
+			Reader reader = new InputStreamReader(in, "UTF-8");
+			StringBuilder content = new StringBuilder();
+			char[] buffer = new char[4096];
+
+			for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+				content.append(buffer, 0, read);
+			}
+
+			return content.toString();
+		}
+		finally {
+			in.close();
+		}
+	}
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+
+/**
+ * The body of an HTTP response, read straight from the connection instead of being buffered like a
+ * {@link com.clarkparsia.utils.web.Response Response}. Closing the stream well before the end of the body aborts the
+ * transfer.
+ */
+public class ResponseStream extends FilterInputStream {
+
+	/**
+	 * The maximum number of bytes read when the stream is closed before the end of the body, to keep the connection
+	 */
+	public static final int DRAIN_LIMIT = 8 * 1024;
+
+	private HttpURLConnection connection;
+
+	private boolean eof;
+
+	public ResponseStream(HttpURLConnection connection, InputStream in) {
+		super(in);
+		this.connection = connection;
+	}
+
+	/**
+	 * Get the response code of the response
+	 *
+	 * @return the HTTP response code
+	 */
+	public int getResponseCode() {
+		try {
+			return connection.getResponseCode();
+		}
+		catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the {@code Content-Type} of the response
+	 *
+	 * @return the content type, or {@code null} if the server did not send it
+	 */
+	public String getContentType() {
+		return connection.getContentType();
+	}
+
+	/**
+	 * Checks if the {@code Content-Type} of the response matches a {@link MimeType}, ignoring its parameters
+	 *
+	 * @param type the mimetype
+	 * @return true if the content type matches, false if it does not or the server did not send it
+	 */
+	public boolean isContentType(MimeType type) {
+		String contentType = getContentType();
+
+		if (contentType == null) {
+			return false;
+		}
+
+		try {
+			return type.match(new MimeType(contentType));
+		}
+		catch (MimeTypeParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read the rest of the body as a string, and close the stream
+	 *
+	 * @return the content of the body
+	 * @throws IOException if the body can't be read
+	 */
+	public String readContent() throws IOException {
+		return RequestUtils.read(this);
+	}
+
+	/**
+	 * Get the value of a header of the response
+	 *
+	 * @param name the name of the header
+	 * @return the value of the header, or {@code null} if the server did not send it
+	 */
+	public String getHeader(String name) {
+		return connection.getHeaderField(name);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		eof |= b < 0;
+		return b;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		eof |= read < 0;
+		return read;
+	}
+
+	/**
+	 * Close the stream. If the body was not read to the end, at most {@value #DRAIN_LIMIT} more bytes are read, so a
+	 * short remainder (e.g., the closing tags of a document whose first result was all that was needed) doesn't cost
+	 * the connection; if more is left, the connection is dropped so the rest of the body is not transferred. Errors
+	 * while closing are ignored, since the body is not needed anymore.
+	 */
+	@Override
+	public void close() {
+		try {
+			byte[] buffer = new byte[1024];
+
+			for (int drained = 0; !eof && drained <= DRAIN_LIMIT; ) {
+				int read = read(buffer);
+				drained += Math.max(read, 0);
+			}
+		}
+		catch (IOException e) {
+			// the connection can't be reused
+		}
+
+		if (!eof) {
+			abort();
+		}
+
+		try {
+			super.close();
+		}
+		catch (IOException e) {
+			// the connection is already gone
+		}
+	}
+
+	/**
+	 * Abort the transfer of the body, dropping the connection
+	 */
+	public void abort() {
+		connection.disconnect();
+	}
+}
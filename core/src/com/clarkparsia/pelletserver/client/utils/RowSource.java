@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import org.openrdf.query.QueryEvaluationException;
+
+/**
+ * A SPARQL result parser that can read its results into a {@link RawRow} instead of creating
+ * {@link org.openrdf.query.BindingSet BindingSet}s
+ */
+interface RowSource {
+
+	/**
+	 * Read the next result
+	 * 
+	 * @return the row holding the result, which is reused for the next results, or {@code null} at the end of the
+	 *         results
+	 * @throws QueryEvaluationException if the result can't be read
+	 */
+	public RawRow nextRow() throws QueryEvaluationException;
+}
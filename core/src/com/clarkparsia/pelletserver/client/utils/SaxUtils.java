@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Namespace aware SAX parsers obtained through JAXP, reused by each thread instead of being created for every document
+ */
+public abstract class SaxUtils {
+
+	private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+
+	private static final ContentHandler NO_HANDLER = new DefaultHandler();
+
+	private static final ThreadLocal<XMLReader> READERS = new ThreadLocal<XMLReader>() {
+		@Override
+		protected XMLReader initialValue() {
+			try {
+				return newReader();
+			}
+			catch (SAXException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	static {
+		FACTORY.setNamespaceAware(true);
+	}
+
+	/**
+	 * Create a new namespace aware {@link XMLReader}
+	 *
+	 * @return the reader
+	 * @throws SAXException if the JAXP implementation can't create a reader
+	 */
+	public static XMLReader newReader() throws SAXException {
+		try {
+			synchronized (FACTORY) {
+				return FACTORY.newSAXParser().getXMLReader();
+			}
+		}
+		catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	/**
+	 * Parse a document with the {@link XMLReader} of the current thread. The reader does not keep a reference to
+	 * {@code handler} once the document is parsed, or if parsing fails.
+	 *
+	 * @param source the document
+	 * @param handler the handler receiving the content of the document
+	 * @throws SAXException if the document is not well-formed, or the handler fails
+	 * @throws IOException if the document can't be read
+	 */
+	public static void parse(InputSource source, ContentHandler handler) throws SAXException, IOException {
+		XMLReader reader;
+
+		try {
+			reader = READERS.get();
+		}
+		catch (IllegalStateException e) {
+			throw new SAXException("No SAX parser available", e);
+		}
+
+		reader.setContentHandler(handler);
+
+		try {
+			reader.parse(source);
+		}
+		finally {
+			reader.setContentHandler(NO_HANDLER);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * Reads the hits of a {@link com.clarkparsia.pelletserver.client.services.Search Search} response, e.g.,
+ * <code>[{"hit": {"type": "uri", "value": "http://..."}, "score": 0.8}, ...]</code>, one at a time as the stream is
+ * read. The value of each hit is read into a reused buffer, so a hit can be discarded by its score before its
+ * {@link Resource} is created:
+ *
+ * <pre>
+ * while (reader.next()) {
+ * 	if (reader.getScore() &gt; threshold) {
+ * 		results.add(new SearchResult(reader.getResource(), reader.getScore()));
+ * 	}
+ * }
+ * </pre>
+ */
+public class SearchJsonReader {
+
+	private final JsonScanner json;
+
+	private final ValueFactory values = OpenRdfUtils.getValueFactory();
+
+	private final StringBuilder value = new StringBuilder();
+
+	private boolean uri;
+
+	private double score;
+
+	private boolean started;
+
+	private boolean closed;
+
+	/**
+	 * Create a new SearchJsonReader
+	 *
+	 * @param in
+	 *            The JSON content
+	 * @throws IOException
+	 *             if the content can't be read
+	 */
+	public SearchJsonReader(InputStream in) throws IOException {
+		json = new JsonScanner(in);
+	}
+
+	/**
+	 * Read the next hit, closing the stream after the last one
+	 *
+	 * @return false at the end of the hits
+	 * @throws IOException
+	 *             if the content can't be read, or is not a list of hits
+	 */
+	public boolean next() throws IOException {
+		if (closed) {
+			return false;
+		}
+
+		if (!started) {
+			json.expect('[');
+			started = true;
+		}
+		else if (!json.nextMember()) {
+			close();
+			return false;
+		}
+
+		if (json.peek() == ']') {
+			close();
+			return false;
+		}
+
+		readHit();
+
+		return true;
+	}
+
+	/**
+	 * Get the score of the current hit
+	 *
+	 * @return the score
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * Checks if the current hit is an IRI, rather than a blank node
+	 *
+	 * @return true if it is an IRI
+	 */
+	public boolean isURI() {
+		return uri;
+	}
+
+	/**
+	 * Get the IRI or blank node identifier of the current hit, which is overwritten by the next one
+	 *
+	 * @return the value
+	 */
+	public CharSequence getValue() {
+		return value;
+	}
+
+	/**
+	 * Create the resource of the current hit
+	 *
+	 * @return the resource
+	 */
+	public Resource getResource() {
+		return uri ? values.createURI(value.toString()) : values.createBNode(value.toString());
+	}
+
+	/**
+	 * Close the underlying stream. Hits that were not read yet are not transferred.
+	 *
+	 * @throws IOException
+	 *             if the stream can't be closed
+	 */
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			json.close();
+		}
+	}
+
+	private void readHit() throws IOException {
+		boolean hit = false, scored = false;
+
+		json.expect('{');
+
+		if (json.peek() != '}') {
+			do {
+				json.readString();
+				json.expect(':');
+
+				if (json.textEquals("hit")) {
+					readResource();
+					hit = true;
+				}
+				else if (json.textEquals("score")) {
+					score = json.readNumber();
+					scored = true;
+				}
+				else {
+					json.skipValue();
+				}
+			}
+			while (json.nextMember());
+		}
+
+		json.expect('}');
+
+		if (!hit || !scored) {
+			throw new IOException("Search result without \"hit\" or \"score\" member");
+		}
+	}
+
+	private void readResource() throws IOException {
+		uri = true;
+		value.setLength(0);
+
+		json.expect('{');
+
+		if (json.peek() != '}') {
+			do {
+				json.readString();
+				json.expect(':');
+
+				if (json.textEquals("type")) {
+					json.readString();
+					uri = json.textEqualsIgnoreCase("uri");
+				}
+				else if (json.textEquals("value")) {
+					json.readString(value);
+				}
+				else {
+					json.skipValue();
+				}
+			}
+			while (json.nextMember());
+		}
+
+		json.expect('}');
+	}
+}
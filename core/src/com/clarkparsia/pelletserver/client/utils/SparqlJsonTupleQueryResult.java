@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link TupleQueryResult} that parses a SPARQL/JSON stream incrementally, like {@link StreamingTupleQueryResult}
+ * does for SPARQL/XML.<br>
+ * The parser is purpose-built for the SPARQL/JSON layout instead of building a generic JSON tree: it reads from its
+ * own character buffer, matches keys and value types without creating strings for them, and reads each result into
+ * the reused buffers of a {@link RawRow}, so the only objects created per result are its values, and none when the
+ * rows are {@link OpenRdfUtils#mapRows(ResponseStream, com.clarkparsia.pelletserver.client.RowMapper) mapped}.<br>
+ * The {@code head} member must precede the {@code results} member, as in the documents produced by Pellet Server and
+ * Sesame; a document listing its bindings first is rejected rather than read without binding names.
+ */
+public class SparqlJsonTupleQueryResult implements TupleQueryResult, RowSource {
+
+	private JsonScanner json;
+
+	private List<String> bindingNames = Lists.newArrayList();
+
+	/**
+	 * The result of a boolean document, or {@code null}
+	 */
+	private Boolean bool;
+
+	private BindingSet next;
+
+	/**
+	 * The row the results are read into, created after the header
+	 */
+	private RawRow row;
+
+	private boolean inBindings;
+
+	private boolean closed;
+
+	private ValueFactory values = OpenRdfUtils.getValueFactory();
+
+	/**
+	 * Create a new SparqlJsonTupleQueryResult, reading the header (i.e., the binding names) of the stream
+	 *
+	 * @param in
+	 *            The SPARQL/JSON content
+	 * @throws QueryEvaluationException
+	 *             if the header can't be read
+	 */
+	public SparqlJsonTupleQueryResult(InputStream in) throws QueryEvaluationException {
+		try {
+			this.json = new JsonScanner(in);
+			readHeader();
+		}
+		catch (IOException e) {
+			close();
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Reads the result of an {@code ASK} query from a SPARQL/JSON stream, and closes it
+	 *
+	 * @param in
+	 *            The SPARQL/JSON content
+	 * @return the boolean result
+	 * @throws QueryEvaluationException
+	 *             if the stream is not a SPARQL/JSON boolean result
+	 */
+	public static Boolean readBooleanResult(InputStream in) throws QueryEvaluationException {
+		SparqlJsonTupleQueryResult result = new SparqlJsonTupleQueryResult(in);
+		result.close();
+
+		if (result.bool == null) {
+			throw new QueryEvaluationException("No boolean result");
+		}
+
+		return result.bool;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public List<String> getBindingNames() {
+		return Collections.unmodifiableList(bindingNames);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean hasNext() throws QueryEvaluationException {
+		if (next == null && !closed) {
+			RawRow row = nextRow();
+
+			if (row != null) {
+				next = row.toBindingSet();
+			}
+		}
+
+		return next != null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public RawRow nextRow() throws QueryEvaluationException {
+		if (next != null) {
+			// the result read ahead by hasNext() is still in the row
+			next = null;
+			return row;
+		}
+
+		try {
+			return readResult() ? row : null;
+		}
+		catch (IOException e) {
+			close();
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public BindingSet next() throws QueryEvaluationException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		BindingSet result = next;
+		next = null;
+
+		return result;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void remove() throws QueryEvaluationException {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Close the result, and the underlying stream. Results that were not read yet are not transferred.
+	 */
+	public void close() throws QueryEvaluationException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		next = null;
+
+		try {
+			if (json != null) {
+				json.close();
+			}
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Read the top-level members up to the first result, or the end of the document
+	 */
+	private void readHeader() throws IOException {
+		boolean head = false;
+
+		json.expect('{');
+
+		if (json.peek() == '}') {
+			return;
+		}
+
+		do {
+			json.readString();
+			json.expect(':');
+
+			if (json.textEquals("head")) {
+				readHead();
+				head = true;
+			}
+			else if (json.textEquals("results")) {
+				json.expect('{');
+
+				if (json.peek() != '}') {
+					do {
+						json.readString();
+						json.expect(':');
+
+						if (json.textEquals("bindings")) {
+							if (!head) {
+								throw new IOException("The results precede the head of the document");
+							}
+
+							json.expect('[');
+							inBindings = true;
+							return;
+						}
+
+						json.skipValue();
+					}
+					while (json.nextMember());
+				}
+
+				json.expect('}');
+			}
+			else if (json.textEquals("boolean")) {
+				bool = json.readLiteralKeyword() == 't';
+			}
+			else {
+				json.skipValue();
+			}
+		}
+		while (json.nextMember());
+	}
+
+	private void readHead() throws IOException {
+		json.expect('{');
+
+		if (json.peek() == '}') {
+			json.skip();
+			return;
+		}
+
+		do {
+			json.readString();
+			json.expect(':');
+
+			if (json.textEquals("vars")) {
+				json.expect('[');
+
+				if (json.peek() != ']') {
+					do {
+						json.readString();
+						bindingNames.add(json.text.toString());
+					}
+					while (json.nextMember());
+				}
+
+				json.expect(']');
+			}
+			else {
+				json.skipValue();
+			}
+		}
+		while (json.nextMember());
+
+		json.expect('}');
+	}
+
+	/**
+	 * Read the next result of the {@code bindings} array into {@link #row}, closing the result at its end
+	 *
+	 * @return false at the end of the results
+	 */
+	private boolean readResult() throws IOException, QueryEvaluationException {
+		if (closed || !inBindings || json.peek() == ']') {
+			close();
+			return false;
+		}
+
+		if (json.peek() == ',') {
+			json.skip();
+		}
+
+		if (row == null) {
+			row = new RawRow(bindingNames, values);
+		}
+
+		row.clear();
+
+		json.expect('{');
+
+		if (json.peek() != '}') {
+			do {
+				json.readString();
+				int column = row.getColumn(json.text);
+				json.expect(':');
+
+				// variables missing from the header are skipped
+				if (column >= 0) {
+					readValue(row.bind(column, RawRow.LITERAL));
+				}
+				else {
+					json.skipValue();
+				}
+			}
+			while (json.nextMember());
+		}
+
+		json.expect('}');
+
+		return true;
+	}
+
+	/**
+	 * Read a value object, e.g., <code>{"type": "uri", "value": "http://..."}</code>, into the buffers of a cell
+	 */
+	private void readValue(RawRow.Cell cell) throws IOException {
+		boolean value = false;
+
+		json.expect('{');
+
+		if (json.peek() != '}') {
+			do {
+				json.readString();
+				json.expect(':');
+
+				if (json.textEquals("type")) {
+					json.readString();
+
+					if (json.textEquals("uri")) {
+						cell.type = RawRow.URI;
+					}
+					else if (json.textEquals("bnode")) {
+						cell.type = RawRow.BNODE;
+					}
+					else {
+						// "literal" and "typed-literal"
+						cell.type = RawRow.LITERAL;
+					}
+				}
+				else if (json.textEquals("value")) {
+					json.readString(cell.lexical);
+					value = true;
+				}
+				else if (json.textEquals("datatype")) {
+					json.readString(cell.datatype);
+				}
+				else if (json.textEquals("xml:lang")) {
+					json.readString(cell.language);
+				}
+				else {
+					json.skipValue();
+				}
+			}
+			while (json.nextMember());
+		}
+
+		json.expect('}');
+
+		if (!value) {
+			throw new IOException("Value without \"value\" member");
+		}
+	}
+}
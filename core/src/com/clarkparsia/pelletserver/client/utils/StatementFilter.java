@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.RDFHandlerWrapper;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Selects the statements of an RDF response to keep: statements with one of a set of predicates, statements whose
+ * subject is in one of a set of namespaces, and/or statements whose object is not a literal. Every condition that is set
+ * must hold.<br>
+ * N-Triples responses are filtered on the bytes of each line, before the line is parsed, so no {@link Statement} nor
+ * {@link org.openrdf.model.Value Value} is created for the statements discarded; other syntaxes are filtered once
+ * parsed, with {@link #filter(RDFHandler)}.
+ */
+public class StatementFilter {
+
+	/**
+	 * The predicates allowed, or {@code null} for any
+	 */
+	private Set<String> predicates;
+
+	/**
+	 * The predicates allowed, as the UTF-8 bytes of their IRI
+	 */
+	private byte[][] predicateBytes;
+
+	/**
+	 * The subject namespaces allowed, or {@code null} for any
+	 */
+	private List<String> namespaces;
+
+	/**
+	 * The subject namespaces allowed, as UTF-8 bytes
+	 */
+	private byte[][] namespaceBytes;
+
+	private boolean dropLiterals;
+
+	/**
+	 * Create a new StatementFilter
+	 *
+	 * @param predicates
+	 *            the predicates of the statements to keep, or none to keep any predicate
+	 */
+	public StatementFilter(URI... predicates) {
+		if (predicates.length > 0) {
+			setPredicates(predicates);
+		}
+	}
+
+	/**
+	 * Keep only the statements with one of {@code predicates}
+	 *
+	 * @param predicates
+	 *            the predicates of the statements to keep
+	 */
+	public void setPredicates(URI... predicates) {
+		this.predicates = Sets.newLinkedHashSet();
+
+		for (URI predicate : predicates) {
+			this.predicates.add(predicate.stringValue());
+		}
+
+		predicateBytes = toBytes(this.predicates);
+	}
+
+	/**
+	 * Keep only the statements whose subject is an IRI starting with one of {@code namespaces}
+	 *
+	 * @param namespaces
+	 *            the namespaces of the subjects to keep
+	 */
+	public void setSubjectNamespaces(String... namespaces) {
+		this.namespaces = Lists.newArrayList(namespaces);
+		namespaceBytes = toBytes(this.namespaces);
+	}
+
+	/**
+	 * Drop the statements whose object is a literal, e.g., labels and comments
+	 *
+	 * @param dropLiterals
+	 *            true to drop the statements with a literal object
+	 */
+	public void setDropLiterals(boolean dropLiterals) {
+		this.dropLiterals = dropLiterals;
+	}
+
+	/**
+	 * Checks if a statement is kept by this filter
+	 *
+	 * @param statement
+	 *            the statement
+	 * @return true if the statement is kept
+	 */
+	public boolean accept(Statement statement) {
+		if (predicates != null && !predicates.contains(statement.getPredicate().stringValue())) {
+			return false;
+		}
+
+		if (namespaces != null) {
+			if (!(statement.getSubject() instanceof URI)) {
+				return false;
+			}
+
+			String subject = statement.getSubject().stringValue();
+			boolean found = false;
+
+			for (String namespace : namespaces) {
+				if (subject.startsWith(namespace)) {
+					found = true;
+					break;
+				}
+			}
+
+			if (!found) {
+				return false;
+			}
+		}
+
+		return !(dropLiterals && statement.getObject() instanceof Literal);
+	}
+
+	/**
+	 * Wrap {@code handler} so it only receives the statements kept by this filter
+	 *
+	 * @param handler
+	 *            the handler
+	 * @return the filtering handler
+	 */
+	public RDFHandler filter(RDFHandler handler) {
+		return new RDFHandlerWrapper(handler) {
+			@Override
+			public void handleStatement(Statement statement) throws RDFHandlerException {
+				if (accept(statement)) {
+					super.handleStatement(statement);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Checks if an N-Triples line may be kept by this filter, without parsing it. Lines that can't be decided on their
+	 * bytes, such as lines with escaped IRIs, comments or syntax errors, are accepted, to be parsed and
+	 * {@link #accept(Statement) checked} or reported by the parser.
+	 *
+	 * @param line
+	 *            the bytes of the line
+	 * @param start
+	 *            the start of the line
+	 * @param end
+	 *            the end of the line, exclusive
+	 * @return false if the line is discarded by this filter
+	 */
+	boolean accept(byte[] line, int start, int end) {
+		int i = skipWhitespace(line, start, end);
+
+		if (i == end || line[i] == '#') {
+			return true;
+		}
+
+		// subject
+		if (line[i] == '<') {
+			int close = indexOf(line, i + 1, end, (byte) '>');
+
+			if (close < 0) {
+				return true;
+			}
+
+			if (namespaceBytes != null && !escaped(line, i + 1, close)
+				&& !startsWithAny(line, i + 1, close, namespaceBytes)) {
+				return false;
+			}
+
+			i = close + 1;
+		}
+		else {
+			if (namespaceBytes != null && line[i] == '_') {
+				// blank nodes are in no namespace
+				return false;
+			}
+
+			while (i < end && line[i] != ' ' && line[i] != '\t') {
+				i++;
+			}
+		}
+
+		// predicate
+		i = skipWhitespace(line, i, end);
+
+		if (i == end || line[i] != '<') {
+			return true;
+		}
+
+		int close = indexOf(line, i + 1, end, (byte) '>');
+
+		if (close < 0) {
+			return true;
+		}
+
+		if (predicateBytes != null && !escaped(line, i + 1, close) && !equalsAny(line, i + 1, close, predicateBytes)) {
+			return false;
+		}
+
+		// object
+		i = skipWhitespace(line, close + 1, end);
+
+		return !(dropLiterals && i < end && line[i] == '"');
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public String toString() {
+		return "StatementFilter(predicates=" + predicates + ", namespaces=" + namespaces + ", dropLiterals="
+			   + dropLiterals + ")";
+	}
+
+	private static byte[][] toBytes(Iterable<String> strings) {
+		List<byte[]> bytes = Lists.newArrayList();
+
+		try {
+			for (String s : strings) {
+				bytes.add(s.getBytes("UTF-8"));
+			}
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toArray(new byte[bytes.size()][]);
+	}
+
+	private static int skipWhitespace(byte[] line, int i, int end) {
+		while (i < end && (line[i] == ' ' || line[i] == '\t')) {
+			i++;
+		}
+
+		return i;
+	}
+
+	private static int indexOf(byte[] line, int i, int end, byte b) {
+		for (; i < end; i++) {
+			if (line[i] == b) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static boolean escaped(byte[] line, int start, int end) {
+		return indexOf(line, start, end, (byte) '\\') >= 0;
+	}
+
+	private static boolean equalsAny(byte[] line, int start, int end, byte[][] candidates) {
+		for (byte[] candidate : candidates) {
+			if (candidate.length == end - start && regionMatches(line, start, candidate)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean startsWithAny(byte[] line, int start, int end, byte[][] candidates) {
+		for (byte[] candidate : candidates) {
+			if (candidate.length <= end - start && regionMatches(line, start, candidate)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean regionMatches(byte[] line, int start, byte[] candidate) {
+		for (int i = 0; i < candidate.length; i++) {
+			if (line[start + i] != candidate[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
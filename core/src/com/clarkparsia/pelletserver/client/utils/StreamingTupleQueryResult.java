@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link TupleQueryResult} that parses a SPARQL/XML stream incrementally: a result is only read from the stream when
+ * it is requested with {@link #hasNext()} or {@link #next()}, so the time to the first result and the memory used do
+ * not depend on the size of the result set.<br>
+ * The stream is closed once the last result was read, or when {@link #close()} is called; closing a
+ * {@link ResponseStream} before its end aborts the HTTP transfer.<br>
+ * Each result is read into the reused buffers of a {@link RawRow}, so no {@link org.openrdf.model.Value Value} is
+ * created when the rows are {@link OpenRdfUtils#mapRows(ResponseStream, com.clarkparsia.pelletserver.client.RowMapper)
+ * mapped}.
+ */
+public class StreamingTupleQueryResult implements TupleQueryResult, RowSource {
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+	private InputStream in;
+
+	private XMLStreamReader reader;
+
+	private List<String> bindingNames;
+
+	/**
+	 * The next result, read ahead by {@link #hasNext()}
+	 */
+	private BindingSet next;
+
+	/**
+	 * The row the results are read into, created after the header
+	 */
+	private RawRow row;
+
+	private boolean closed;
+
+	private ValueFactory values = OpenRdfUtils.getValueFactory();
+
+	/**
+	 * Create a new StreamingTupleQueryResult, reading the header (i.e., the binding names) of the stream
+	 *
+	 * @param in
+	 *            The SPARQL/XML content
+	 * @throws QueryEvaluationException
+	 *             if the header can't be read
+	 */
+	public StreamingTupleQueryResult(InputStream in) throws QueryEvaluationException {
+		this.in = in;
+		this.bindingNames = Lists.newArrayList();
+
+		try {
+			synchronized (FACTORY) {
+				reader = FACTORY.createXMLStreamReader(in);
+			}
+
+			// Read the variables up to the beginning of the results
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+
+					if ("variable".equals(name)) {
+						bindingNames.add(reader.getAttributeValue(null, "name"));
+					}
+					else if ("results".equals(name) || "boolean".equals(name)) {
+						break;
+					}
+				}
+			}
+		}
+		catch (XMLStreamException e) {
+			close();
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public List<String> getBindingNames() {
+		return Collections.unmodifiableList(bindingNames);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public boolean hasNext() throws QueryEvaluationException {
+		if (next == null && !closed) {
+			RawRow row = nextRow();
+
+			if (row != null) {
+				next = row.toBindingSet();
+			}
+		}
+
+		return next != null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public RawRow nextRow() throws QueryEvaluationException {
+		if (next != null) {
+			// the result read ahead by hasNext() is still in the row
+			next = null;
+			return row;
+		}
+
+		return !closed && readResult() ? row : null;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public BindingSet next() throws QueryEvaluationException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		BindingSet result = next;
+		next = null;
+
+		return result;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void remove() throws QueryEvaluationException {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Close the result, and the underlying stream. Results that were not read yet are not transferred.
+	 */
+	public void close() throws QueryEvaluationException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		next = null;
+
+		try {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			// the stream is closed below anyway
+		}
+
+		try {
+			in.close();
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Read the next {@code result} element into {@link #row}, closing the result at the end of the stream
+	 *
+	 * @return false at the end of the results
+	 */
+	private boolean readResult() throws QueryEvaluationException {
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT && "result".equals(reader.getLocalName())) {
+					readBindings();
+					return true;
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT && "results".equals(reader.getLocalName())) {
+					break;
+				}
+			}
+		}
+		catch (XMLStreamException e) {
+			close();
+			throw new QueryEvaluationException(e);
+		}
+
+		close();
+
+		return false;
+	}
+
+	/**
+	 * Read the bindings of a {@code result} element, up to its end
+	 */
+	private void readBindings() throws XMLStreamException {
+		if (row == null) {
+			row = new RawRow(bindingNames, values);
+		}
+
+		row.clear();
+		int column = -1;
+
+		while (reader.hasNext()) {
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String element = reader.getLocalName();
+
+				if ("binding".equals(element)) {
+					// variables missing from the header are skipped
+					column = row.getColumn(reader.getAttributeValue(null, "name"));
+				}
+				else if (column >= 0) {
+					readValue(element, column);
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT && "result".equals(reader.getLocalName())) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Read a {@code uri}, {@code bnode} or {@code literal} element, up to its end, into the cell of a column
+	 */
+	private void readValue(String element, int column) throws XMLStreamException {
+		RawRow.Cell cell;
+
+		if ("uri".equals(element)) {
+			cell = row.bind(column, RawRow.URI);
+		}
+		else if ("bnode".equals(element)) {
+			cell = row.bind(column, RawRow.BNODE);
+		}
+		else {
+			cell = row.bind(column, RawRow.LITERAL);
+
+			String datatype = reader.getAttributeValue(null, "datatype");
+			String language = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+
+			if (datatype != null) {
+				cell.datatype.append(datatype);
+			}
+			else if (language != null) {
+				cell.language.append(language);
+			}
+		}
+
+		// the text of the element, without creating a string for it
+		while (reader.hasNext()) {
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+				|| event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE) {
+				cell.lexical.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+			else if (event == XMLStreamConstants.START_ELEMENT) {
+				throw new XMLStreamException("Unexpected element in " + element, reader.getLocation());
+			}
+		}
+	}
+}
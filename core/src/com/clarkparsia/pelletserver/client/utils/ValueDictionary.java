@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+/**
+ * A {@link org.openrdf.model.ValueFactory ValueFactory} that interns IRIs and short literals, so the values repeated
+ * across service results (e.g., the classes of a knowledge base) are shared instances instead of copies. Each interned
+ * value gets an integer id, from 0 up to the capacity of the dictionary.<br>
+ * The dictionary is bounded: once it holds {@link #getCapacity() capacity} values, new values are created as by a
+ * plain {@link ValueFactoryImpl}, without an id, and the values already interned keep their ids. Blank nodes are never
+ * interned, since their identifiers are only meaningful within a result.<br>
+ * Lookups of interned values do not lock, so a dictionary can be shared by all the parsers of a client; see
+ * {@link OpenRdfUtils#setValueFactory(org.openrdf.model.ValueFactory)}.
+ */
+public class ValueDictionary extends ValueFactoryImpl {
+
+	/**
+	 * Literals with longer labels, e.g., comments, are rarely repeated and are not interned
+	 */
+	private static final int MAX_LITERAL_LENGTH = 128;
+
+	private final int capacity;
+
+	private final ConcurrentMap<String, URI> uris = new ConcurrentHashMap<String, URI>();
+
+	private final ConcurrentMap<Literal, Literal> literals = new ConcurrentHashMap<Literal, Literal>();
+
+	/**
+	 * The interned values, by id. The array is replaced when it grows, always under the lock of the dictionary.
+	 */
+	private volatile Value[] values = new Value[1024];
+
+	private int size;
+
+	/**
+	 * Create a new ValueDictionary
+	 *
+	 * @param capacity
+	 *            the maximum number of values interned
+	 */
+	public ValueDictionary(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public URI createURI(String uri) {
+		URI value = uris.get(uri);
+
+		if (value != null) {
+			return value;
+		}
+
+		synchronized (this) {
+			value = uris.get(uri);
+
+			if (value == null) {
+				if (size == capacity) {
+					return super.createURI(uri);
+				}
+
+				value = new DictionaryURI(uri, size);
+				add(value);
+				uris.put(uri, value);
+			}
+
+			return value;
+		}
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public URI createURI(String namespace, String localName) {
+		return createURI(namespace + localName);
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public Literal createLiteral(String label) {
+		return intern(new LiteralImpl(label));
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public Literal createLiteral(String label, String language) {
+		return intern(new LiteralImpl(label, language));
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	@Override
+	public Literal createLiteral(String label, URI datatype) {
+		return intern(new LiteralImpl(label, datatype));
+	}
+
+	/**
+	 * Get the id of an interned value
+	 *
+	 * @param value
+	 *            the value
+	 * @return the id of the value, or -1 if it was not interned by this dictionary
+	 */
+	public int getId(Value value) {
+		int id = -1;
+
+		if (value instanceof DictionaryURI) {
+			id = ((DictionaryURI) value).id;
+		}
+		else if (value instanceof DictionaryLiteral) {
+			id = ((DictionaryLiteral) value).id;
+		}
+
+		return id >= 0 && getValue(id) == value ? id : -1;
+	}
+
+	/**
+	 * Get an interned value by id
+	 *
+	 * @param id
+	 *            the id
+	 * @return the value, or {@code null} if no value has this id
+	 */
+	public Value getValue(int id) {
+		Value[] values = this.values;
+
+		return id >= 0 && id < values.length ? values[id] : null;
+	}
+
+	/**
+	 * Get the number of values interned
+	 *
+	 * @return the number of values
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Get the maximum number of values interned
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the interned instance of a literal
+	 */
+	private Literal intern(Literal literal) {
+		if (literal.getLabel().length() > MAX_LITERAL_LENGTH) {
+			return literal;
+		}
+
+		Literal value = literals.get(literal);
+
+		if (value != null) {
+			return value;
+		}
+
+		synchronized (this) {
+			value = literals.get(literal);
+
+			if (value == null) {
+				if (size == capacity) {
+					return literal;
+				}
+
+				value = literal.getLanguage() != null ? new DictionaryLiteral(literal.getLabel(), literal.getLanguage(),
+								size) : new DictionaryLiteral(literal.getLabel(), literal.getDatatype(), size);
+				add(value);
+				literals.put(value, value);
+			}
+
+			return value;
+		}
+	}
+
+	/**
+	 * Store a new value at the next id, while holding the lock of the dictionary
+	 */
+	private void add(Value value) {
+		if (size == values.length) {
+			Value[] larger = new Value[Math.min(capacity, values.length * 2)];
+			System.arraycopy(values, 0, larger, 0, size);
+			larger[size++] = value;
+			values = larger;
+		}
+		else {
+			values[size++] = value;
+		}
+	}
+
+	private static class DictionaryURI extends URIImpl {
+		private static final long serialVersionUID = 1L;
+
+		private final int id;
+
+		public DictionaryURI(String uri, int id) {
+			super(uri);
+			this.id = id;
+		}
+	}
+
+	private static class DictionaryLiteral extends LiteralImpl {
+		private static final long serialVersionUID = 1L;
+
+		private final int id;
+
+		public DictionaryLiteral(String label, String language, int id) {
+			super(label, language);
+			this.id = id;
+		}
+
+		public DictionaryLiteral(String label, URI datatype, int id) {
+			super(label, datatype);
+			this.id = id;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import com.clarkparsia.pelletserver.client.cache.CachedTupleResult;
+import com.clarkparsia.pelletserver.client.index.ColumnarResult;
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares a large {@code SELECT} result held as {@link BindingSet}s, as by a
+ * {@link com.clarkparsia.pelletserver.client.cache.ResultCache ResultCache}, with the same result held as a
+ * {@link ColumnarResult}: the heap retained, the collections and time spent in garbage collection while the result is
+ * parsed and stored, and the time to scan it.<br>
+ * Usage: {@code ColumnarResultBenchmark [rows] [scans]}
+ */
+public class ColumnarResultBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+		int scans = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		byte[] response = select(rows);
+
+		System.out.println(rows + " rows of 3 variables, scanned " + scans + " times");
+
+		long before = usedHeap();
+		long[] gc = gc();
+		CachedTupleResult cached = CachedTupleResult.create(OpenRdfUtils
+						.createResultSetFromBinaryStream(new ByteArrayInputStream(response)));
+		long[] cachedGc = delta(gc);
+		long cachedHeap = usedHeap() - before;
+		long start = System.nanoTime();
+		int hits = 0;
+
+		for (int i = 0; i < scans; i++) {
+			for (BindingSet row : cached.getBindingSets()) {
+				if (row.getValue("label") != null) {
+					hits++;
+				}
+			}
+		}
+
+		long cachedTime = System.nanoTime() - start;
+
+		cached = null;
+		before = usedHeap();
+		gc = gc();
+		ColumnarResult columnar = ColumnarResult.create(OpenRdfUtils
+						.createResultSetFromBinaryStream(new ByteArrayInputStream(response)));
+		long[] columnarGc = delta(gc);
+		long columnarHeap = usedHeap() - before;
+		start = System.nanoTime();
+		int label = columnar.getColumn("label");
+
+		for (int i = 0; i < scans; i++) {
+			ColumnarResult.Cursor cursor = columnar.cursor();
+
+			while (cursor.next()) {
+				if (cursor.getValue(label) != null) {
+					hits--;
+				}
+			}
+		}
+
+		long columnarTime = System.nanoTime() - start;
+
+		if (hits != 0) {
+			throw new IllegalStateException("Results differ");
+		}
+
+		print("BindingSets", cachedHeap, cachedTime, cachedGc);
+		print("ColumnarResult", columnarHeap, columnarTime, columnarGc);
+	}
+
+	private static void print(String name, long heap, long time, long[] gc) {
+		System.out.println(String.format("%-15s %8.1f MB %8.1f ms scanning, %d collections (%d ms) parsing", name,
+						                 heap / (1024.0 * 1024), time / 1e6, gc[0], gc[1]));
+	}
+
+	/**
+	 * Get the number of collections and the time spent collecting so far
+	 */
+	private static long[] gc() {
+		long[] gc = new long[2];
+
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gc[0] += Math.max(0, bean.getCollectionCount());
+			gc[1] += Math.max(0, bean.getCollectionTime());
+		}
+
+		return gc;
+	}
+
+	private static long[] delta(long[] before) {
+		long[] after = gc();
+
+		return new long[] { after[0] - before[0], after[1] - before[1] };
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Instances, their classes and labels, as returned by a SELECT query
+	 */
+	private static byte[] select(int rows) throws Exception {
+		ValueFactory factory = ValueFactoryImpl.getInstance();
+		List<BindingSet> bindingSets = Lists.newArrayList();
+		Value[] classes = new Value[100];
+
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = factory.createURI("http://example.org/wine#Wine" + i);
+		}
+
+		for (int i = 0; i < rows; i++) {
+			MapBindingSet row = new MapBindingSet(3);
+			row.addBinding("i", factory.createURI("http://example.org/wine#wine" + i));
+			row.addBinding("c", classes[i % classes.length]);
+
+			if (i % 4 != 0) {
+				row.addBinding("label", factory.createLiteral("Wine " + (i % 1000), "en"));
+			}
+
+			bindingSets.add(row);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(Lists.newArrayList("i", "c", "label"), bindingSets),
+						    TupleQueryResultFormat.BINARY, out);
+
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.GraphImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import com.clarkparsia.pelletserver.client.index.ColumnarResult;
+import com.clarkparsia.pelletserver.client.index.IndexedGraph;
+import com.clarkparsia.pelletserver.client.index.Realization;
+import com.clarkparsia.pelletserver.client.index.Taxonomy;
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Unit {@link Test}s of the indexes built from service results
+ */
+public class IndexTests {
+
+	private static final ValueFactory FACTORY = ValueFactoryImpl.getInstance();
+
+	private static final URI THING = uri("Thing");
+
+	private static final URI WINE = uri("Wine");
+
+	private static final URI RED_WINE = uri("RedWine");
+
+	private static final URI VINO_ROSSO = uri("VinoRosso");
+
+	private static final URI MERLOT = uri("Merlot");
+
+	private static final URI GRAPE = uri("Grape");
+
+	@Test
+	public void taxonomy() {
+		List<Statement> statements = Lists.newArrayList();
+		statements.add(FACTORY.createStatement(THING, RDF.TYPE, OWL.CLASS));
+		statements.add(FACTORY.createStatement(WINE, RDFS.SUBCLASSOF, THING));
+		statements.add(FACTORY.createStatement(RED_WINE, RDFS.SUBCLASSOF, WINE));
+		statements.add(FACTORY.createStatement(RED_WINE, OWL.EQUIVALENTCLASS, VINO_ROSSO));
+		statements.add(FACTORY.createStatement(MERLOT, RDFS.SUBCLASSOF, RED_WINE));
+		statements.add(FACTORY.createStatement(GRAPE, RDFS.SUBCLASSOF, THING));
+		statements.add(FACTORY.createStatement(GRAPE, RDFS.LABEL, FACTORY.createLiteral("Grape")));
+
+		Taxonomy taxonomy = new Taxonomy(statements);
+		assertEquals(6, taxonomy.size());
+
+		int merlot = taxonomy.getId(MERLOT);
+		int wine = taxonomy.getId(WINE);
+		assertEquals(MERLOT, taxonomy.getClass(merlot));
+		assertEquals(-1, taxonomy.getId(uri("Cheese")));
+
+		// Subsumption
+		assertTrue(taxonomy.isSubClassOf(merlot, wine));
+		assertTrue(taxonomy.isSubClassOf(merlot, merlot));
+		assertFalse(taxonomy.isSubClassOf(wine, merlot));
+		assertTrue(taxonomy.isSubClassOf(MERLOT, VINO_ROSSO));
+		assertTrue(taxonomy.isSubClassOf(VINO_ROSSO, RED_WINE));
+		assertTrue(taxonomy.isSubClassOf(RED_WINE, VINO_ROSSO));
+		assertFalse(taxonomy.isSubClassOf(GRAPE, WINE));
+		assertFalse(taxonomy.isSubClassOf(uri("Cheese"), THING));
+
+		// Direct edges
+		assertArrayEquals(new int[] { taxonomy.getId(RED_WINE) }, taxonomy.getDirectSuperClasses(merlot));
+		assertEquals(Sets.newHashSet(WINE, VINO_ROSSO), taxonomy.getDirectSuperClasses(RED_WINE));
+		assertEquals(Sets.newHashSet(WINE, GRAPE), taxonomy.getDirectSubClasses(THING));
+		assertEquals(0, taxonomy.getDirectSubClasses(merlot).length);
+
+		// Closures, reusing the closure of RedWine once computed
+		assertEquals(Sets.newHashSet(WINE, THING, VINO_ROSSO), taxonomy.getSuperClasses(RED_WINE));
+		assertEquals(Sets.newHashSet(RED_WINE, VINO_ROSSO, WINE, THING), taxonomy.getSuperClasses(MERLOT));
+		assertEquals(Sets.newHashSet(WINE, RED_WINE, VINO_ROSSO, MERLOT, GRAPE), taxonomy.getSubClasses(THING));
+
+		BitSet ancestors = taxonomy.getAncestors(merlot);
+		assertEquals(4, ancestors.cardinality());
+		ancestors.clear();
+		assertEquals(4, taxonomy.getAncestors(merlot).cardinality());
+	}
+
+	@Test
+	public void taxonomyBuilder() throws Exception {
+		Taxonomy.Builder builder = new Taxonomy.Builder();
+		builder.handleStatement(FACTORY.createStatement(MERLOT, RDFS.SUBCLASSOF, RED_WINE));
+		builder.handleStatement(FACTORY.createStatement(MERLOT, RDFS.SUBCLASSOF, MERLOT));
+
+		Taxonomy taxonomy = builder.build();
+		assertEquals(2, taxonomy.size());
+		assertEquals(Sets.newHashSet(RED_WINE), taxonomy.getSuperClasses(MERLOT));
+		assertTrue(Taxonomy.newFilter().accept(FACTORY.createStatement(MERLOT, RDFS.SUBCLASSOF, RED_WINE)));
+		assertFalse(Taxonomy.newFilter().accept(FACTORY.createStatement(MERLOT, RDFS.LABEL, RED_WINE)));
+	}
+
+	@Test
+	public void realization() {
+		List<Statement> statements = Lists.newArrayList();
+		statements.add(FACTORY.createStatement(WINE, RDFS.SUBCLASSOF, THING));
+		statements.add(FACTORY.createStatement(RED_WINE, RDFS.SUBCLASSOF, WINE));
+		statements.add(FACTORY.createStatement(MERLOT, RDFS.SUBCLASSOF, RED_WINE));
+		statements.add(FACTORY.createStatement(GRAPE, RDFS.SUBCLASSOF, THING));
+		Taxonomy taxonomy = new Taxonomy(statements);
+
+		URI cheese = uri("Cheese");
+		URI merlotGrape = uri("MerlotGrape");
+		List<URI> merlots = Lists.newArrayList();
+
+		statements.clear();
+		statements.add(FACTORY.createStatement(merlotGrape, RDF.TYPE, GRAPE));
+		statements.add(FACTORY.createStatement(uri("Brie"), RDF.TYPE, cheese));
+		statements.add(FACTORY.createStatement(uri("Chianti"), RDF.TYPE, RED_WINE));
+		statements.add(FACTORY.createStatement(uri("Chianti"), RDF.TYPE, RED_WINE));
+
+		for (int i = 0; i < 100; i++) {
+			URI merlot = uri("Merlot" + i);
+			merlots.add(merlot);
+			statements.add(FACTORY.createStatement(merlot, RDF.TYPE, MERLOT));
+		}
+
+		Realization realization = new Realization(statements, taxonomy);
+		assertEquals(103, realization.getIndividualCount());
+		assertEquals(taxonomy.size() + 1, realization.getClassCount());
+		assertEquals(taxonomy.getId(MERLOT), realization.getClassId(MERLOT));
+		assertEquals(taxonomy.size(), realization.getClassId(cheese));
+		assertEquals(1, realization.getInstanceCount(realization.getClassId(RED_WINE)));
+
+		// Instances, with and without the subclasses
+		assertEquals(Sets.newHashSet(uri("Chianti")), realization.getInstances(RED_WINE, false));
+		assertEquals(101, realization.getInstances(RED_WINE, true).size());
+		assertEquals(102, realization.getInstances(realization.getClassId(THING), true).cardinality());
+		assertEquals(Sets.newHashSet(merlots), realization.getInstances(MERLOT, true));
+		assertEquals(Sets.newHashSet(uri("Brie")), realization.getInstances(cheese, true));
+
+		// Types
+		assertEquals(Sets.newHashSet(GRAPE), realization.getTypes(merlotGrape, false));
+		assertEquals(Sets.newHashSet(GRAPE, THING), realization.getTypes(merlotGrape, true));
+		assertTrue(realization.isInstanceOf(uri("Merlot7"), WINE, true));
+		assertFalse(realization.isInstanceOf(uri("Merlot7"), WINE, false));
+		assertFalse(realization.isInstanceOf(merlotGrape, WINE, true));
+		assertFalse(realization.isInstanceOf(uri("Brie"), THING, true));
+
+		assertTrue(realization.getMemoryFootprint() > 0);
+
+		// Without a taxonomy
+		realization = new Realization(statements, null);
+		assertEquals(4, realization.getClassCount());
+		assertEquals(Sets.newHashSet(uri("Chianti")), realization.getInstances(RED_WINE, true));
+	}
+
+	@Test
+	public void indexedGraph() {
+		Graph expected = new GraphImpl();
+		List<Resource> subjects = Lists.<Resource> newArrayList(THING, WINE, RED_WINE, MERLOT, FACTORY.createBNode("b0"));
+		List<URI> predicates = Lists.newArrayList(RDFS.SUBCLASSOF, RDFS.LABEL, RDF.TYPE);
+		List<Value> objects = Lists.<Value> newArrayList(subjects);
+		objects.add(FACTORY.createLiteral("Wine"));
+		objects.add(OWL.CLASS);
+
+		Random random = new Random(7);
+		IndexedGraph.Builder builder = new IndexedGraph.Builder();
+
+		for (int i = 0; i < 60; i++) {
+			Statement statement = FACTORY.createStatement(subjects.get(random.nextInt(subjects.size())), predicates
+							.get(random.nextInt(predicates.size())), objects.get(random.nextInt(objects.size())));
+
+			// repeated statements are kept once
+			expected.add(statement);
+			builder.handleStatement(statement);
+		}
+
+		IndexedGraph graph = builder.build();
+		assertEquals(Sets.newHashSet(expected).size(), graph.size());
+		assertEquals(Sets.newHashSet(expected), Sets.newHashSet(graph));
+
+		// Every pattern, including values in no statement
+		subjects.add(null);
+		subjects.add(GRAPE);
+		predicates.add(null);
+		objects.add(null);
+
+		for (Resource s : subjects) {
+			for (URI p : predicates) {
+				for (Value o : objects) {
+					assertEquals(Sets.newHashSet(expected.match(s, p, o)), Sets.newHashSet(graph.match(s, p, o)));
+				}
+			}
+		}
+
+		Statement statement = graph.iterator().next();
+		assertTrue(graph.contains(statement));
+		assertTrue(graph.match(null, null, null, (Resource) null).hasNext());
+		assertFalse(graph.match(null, null, null, THING).hasNext());
+		assertFalse(graph.contains(FACTORY.createStatement(GRAPE, RDF.TYPE, OWL.CLASS)));
+
+		try {
+			graph.add(statement);
+			fail("IndexedGraph is immutable");
+		}
+		catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void columnarResult() throws Exception {
+		List<BindingSet> rows = Lists.newArrayList();
+
+		for (int i = 0; i < 10; i++) {
+			MapBindingSet row = new MapBindingSet(2);
+			row.addBinding("c", i % 2 == 0 ? MERLOT : RED_WINE);
+
+			if (i != 3) {
+				row.addBinding("label", FACTORY.createLiteral("Wine " + i));
+			}
+
+			rows.add(row);
+		}
+
+		ColumnarResult result = ColumnarResult.create(new TupleQueryResultImpl(Lists.newArrayList("c", "label"), rows));
+		assertEquals(Lists.newArrayList("c", "label"), result.getBindingNames());
+		assertEquals(10, result.size());
+		assertEquals(2 + 9, result.getValueCount());
+		assertEquals(1, result.getColumn("label"));
+		assertEquals(-1, result.getColumn("x"));
+
+		// Cursor
+		ColumnarResult.Cursor cursor = result.cursor();
+		int count = 0;
+
+		while (cursor.next()) {
+			assertEquals(rows.get(count).getValue("c"), cursor.getValue(0));
+			assertEquals(rows.get(count).getValue("label"), cursor.getValue(1));
+			count++;
+		}
+
+		assertEquals(10, count);
+		assertEquals(ColumnarResult.UNBOUND, result.getId(3, 1));
+		assertNull(result.getValue(3, 1));
+
+		cursor.seek(4);
+		assertTrue(cursor.next());
+		assertEquals(result.getId(0, 0), cursor.getId(0));
+
+		// Columns
+		int[] ids = result.getIds(0);
+		assertEquals(10, ids.length);
+		assertEquals(ids[0], ids[8]);
+		assertFalse(ids[0] == ids[1]);
+
+		int[] slice = new int[3];
+		result.getIds(1, 2, slice, 0, 3);
+		assertEquals(ColumnarResult.UNBOUND, slice[1]);
+
+		// BindingSets
+		TupleQueryResult bindings = result.toTupleQueryResult();
+		assertEquals(rows, toList(bindings));
+	}
+
+	@Test
+	public void columnarResultFromRows() throws Exception {
+		URI integer = FACTORY.createURI("http://www.w3.org/2001/XMLSchema#int");
+		Value[] objects = { FACTORY.createLiteral("1"), FACTORY.createLiteral("1", "en"), FACTORY.createLiteral("1", integer),
+						    FACTORY.createBNode("b0"), null };
+		List<BindingSet> rows = Lists.newArrayList();
+
+		for (int i = 0; i < 30; i++) {
+			MapBindingSet row = new MapBindingSet(2);
+			row.addBinding("s", uri("S" + i % 3));
+
+			if (objects[i % objects.length] != null) {
+				row.addBinding("o", objects[i % objects.length]);
+			}
+
+			rows.add(row);
+		}
+
+		final int[] created = new int[1];
+
+		OpenRdfUtils.setValueFactory(new ValueFactoryImpl() {
+			@Override
+			public URI createURI(String uri) {
+				created[0]++;
+				return super.createURI(uri);
+			}
+
+			@Override
+			public BNode createBNode(String id) {
+				created[0]++;
+				return super.createBNode(id);
+			}
+
+			@Override
+			public Literal createLiteral(String label) {
+				created[0]++;
+				return super.createLiteral(label);
+			}
+
+			@Override
+			public Literal createLiteral(String label, String language) {
+				created[0]++;
+				return super.createLiteral(label, language);
+			}
+
+			@Override
+			public Literal createLiteral(String label, URI datatype) {
+				created[0]++;
+				return super.createLiteral(label, datatype);
+			}
+		});
+
+		try {
+			for (TupleQueryResultFormat format : new TupleQueryResultFormat[] { TupleQueryResultFormat.JSON, 
+				TupleQueryResultFormat.SPARQL }) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				QueryResultIO.write(new TupleQueryResultImpl(Lists.newArrayList("s", "o"), rows), format, out);
+				InputStream in = new ByteArrayInputStream(out.toByteArray());
+				created[0] = 0;
+				TupleQueryResult parsed = format == TupleQueryResultFormat.JSON 
+								? OpenRdfUtils.createResultSetFromSparqlJSONStream(in)
+								: OpenRdfUtils.createResultSetFromSparqlXMLStream(in);
+
+				// The row read ahead is not lost
+				assertTrue(parsed.hasNext());
+
+				ColumnarResult result = ColumnarResult.create(parsed);
+				assertEquals(format.getName(), rows, toList(result.toTupleQueryResult()));
+				assertEquals(3 + 4, result.getValueCount());
+
+				// A value is only created for the first occurrence of each distinct value, and the datatype
+				assertEquals(format.getName(), 3 + 4 + 1, created[0]);
+			}
+		}
+		finally {
+			OpenRdfUtils.setValueFactory(null);
+		}
+	}
+
+	private static List<BindingSet> toList(TupleQueryResult result) throws Exception {
+		List<BindingSet> rows = Lists.newArrayList();
+
+		while (result.hasNext()) {
+			rows.add(result.next());
+		}
+
+		return rows;
+	}
+
+	private static URI uri(String name) {
+		return FACTORY.createURI("http://example.org/wine#" + name);
+	}
+
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(IndexTests.class);
+	}
+}
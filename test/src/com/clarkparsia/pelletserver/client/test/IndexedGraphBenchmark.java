@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.openrdf.model.Graph;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+
+import com.clarkparsia.openrdf.ExtGraph;
+import com.clarkparsia.pelletserver.client.index.IndexedGraph;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the heap retained by, and the {@link Graph#match(org.openrdf.model.Resource, URI, org.openrdf.model.Value,
+ * org.openrdf.model.Resource...) pattern matching} of, an {@link ExtGraph} and an {@link IndexedGraph} of the same
+ * classification statements.<br>
+ * Usage: {@code IndexedGraphBenchmark [classes] [lookups]}
+ */
+public class IndexedGraphBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int classes = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		ValueFactory factory = ValueFactoryImpl.getInstance();
+		List<URI> uris = Lists.newArrayList();
+
+		for (int i = 0; i < classes; i++) {
+			uris.add(factory.createURI("http://example.org/wine#Wine" + i));
+		}
+
+		System.out.println(lookups + " subject lookups in " + classes * 2 + " statements");
+
+		long before = usedHeap();
+		Graph graph = new ExtGraph();
+
+		for (int i = 0; i < classes * 2; i++) {
+			graph.add(statement(uris, i));
+		}
+
+		long graphHeap = usedHeap() - before;
+		long graphTime = lookups(graph, uris, lookups);
+
+		graph = null;
+		before = usedHeap();
+		long start = System.nanoTime();
+		IndexedGraph.Builder builder = new IndexedGraph.Builder();
+
+		for (int i = 0; i < classes * 2; i++) {
+			builder.handleStatement(statement(uris, i));
+		}
+
+		IndexedGraph indexed = builder.build();
+		long buildTime = System.nanoTime() - start;
+		long indexedHeap = usedHeap() - before;
+		long indexedTime = lookups(indexed, uris, lookups);
+
+		System.out.println(String.format("%-15s %8.1f ms %8.1f MB", "ExtGraph", graphTime / 1e6,
+						                 graphHeap / (1024.0 * 1024)));
+		System.out.println(String.format("%-15s %8.1f ms %8.1f MB (built in %.1f ms)", "IndexedGraph",
+						                 indexedTime / 1e6, indexedHeap / (1024.0 * 1024), buildTime / 1e6));
+
+		// keep the graph reachable until the heap is measured
+		indexed.size();
+	}
+
+	/**
+	 * Create the statements of a class hierarchy, as parsed from a response: two statements per class
+	 */
+	private static Statement statement(List<URI> uris, int i) {
+		URI c = uris.get(i / 2);
+
+		return i % 2 == 0 ? new StatementImpl(c, RDF.TYPE, OWL.CLASS) : new StatementImpl(c, RDFS.SUBCLASSOF, uris
+						.get(i / 4));
+	}
+
+	private static long lookups(Graph graph, List<URI> uris, int lookups) {
+		Random random = new Random(42);
+		long start = System.nanoTime();
+		int found = 0;
+
+		for (int i = 0; i < lookups; i++) {
+			Iterator<Statement> it = graph.match(uris.get(random.nextInt(uris.size())), RDFS.SUBCLASSOF, null);
+
+			while (it.hasNext()) {
+				it.next();
+				found++;
+			}
+		}
+
+		if (found != lookups) {
+			throw new IllegalStateException(found + " != " + lookups);
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
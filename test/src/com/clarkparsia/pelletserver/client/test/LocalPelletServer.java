@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.PelletServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server that describes a {@link PelletServer} with a single KB, whose services are answered by the
+ * {@link HttpHandler}s of a test
+ */
+public class LocalPelletServer {
+
+	private static final String MIMETYPES = "[\"application/sparql-results+xml\", \"application/sparql-results+json\", "
+		+ "\"text/turtle\", \"application/rdf+xml\", \"text/json\"]";
+
+	private HttpServer http;
+
+	private String base;
+
+	/**
+	 * Start a new LocalPelletServer
+	 *
+	 * @param kb the name of the KB
+	 * @param services the names of the services of the KB, e.g., {@code classify}, optionally followed by the URI
+	 *            template of their endpoint, e.g., {@code query{?query}}
+	 * @throws IOException if the server can't be started
+	 */
+	public LocalPelletServer(String kb, String... services) throws IOException {
+		http = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		base = "http://localhost:" + http.getAddress().getPort() + "/";
+
+		StringBuilder root = new StringBuilder("{\"knowledge-bases\": [{\"name\": \"" + kb + "\", \"kb-services\": {");
+
+		for (int i = 0; i < services.length; i++) {
+			String name = services[i].indexOf('{') < 0 ? services[i] : services[i].substring(0, services[i].indexOf('{'));
+
+			root.append(i > 0 ? ", " : "").append('"').append(name).append("\": {\"endpoint\": {\"url\": \"")
+				.append(base).append(kb).append('/').append(services[i])
+				.append("\", \"http-methods\": [\"GET\"]}, \"response-mimetype\": ").append(MIMETYPES).append('}');
+		}
+
+		final byte[] content = root.append("}}]}").toString().getBytes("UTF-8");
+
+		http.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, content.length);
+				exchange.getResponseBody().write(content);
+				exchange.close();
+			}
+		});
+
+		http.start();
+	}
+
+	/**
+	 * Answer the requests to a path of the server
+	 *
+	 * @param path the path, e.g., {@code kb/classify}
+	 * @param handler the handler of the requests
+	 */
+	public void handle(String path, HttpHandler handler) {
+		http.createContext("/" + path, handler);
+	}
+
+	/**
+	 * Connect a client to the server
+	 *
+	 * @return the client
+	 * @throws PelletClientException if the server can't be discovered
+	 */
+	public PelletServer connect() throws PelletClientException {
+		try {
+			return new PelletServer(new URL(base));
+		}
+		catch (IOException e) {
+			throw new PelletClientException(e);
+		}
+	}
+
+	/**
+	 * Stop the server
+	 */
+	public void stop() {
+		http.stop(0);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.openrdf.rio.ntriples.NTriplesParser;
+
+import com.clarkparsia.pelletserver.client.utils.ParallelNTriplesParser;
+import com.clarkparsia.pelletserver.client.utils.StatementFilter;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures how {@link ParallelNTriplesParser} scales from one thread to the number of available processors, on a
+ * classification-like graph, against a single {@link NTriplesParser}. The statements are collected in a list, so the
+ * time spent building a {@link org.openrdf.model.Graph Graph} does not hide the time spent parsing. A
+ * {@link StatementFilter} keeping half of the statements is measured too.<br>
+ * Usage: {@code NTriplesParsingBenchmark [triples] [iterations]}
+ */
+public class NTriplesParsingBenchmark {
+
+	private interface Parser {
+		List<Statement> parse(byte[] content) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int triples = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		byte[] content = generate(triples);
+
+		System.out.println(triples + " triples (" + content.length / (1024 * 1024) + " MB), " + iterations
+						   + " iterations, " + processors + " processors");
+
+		double baseline = measure("NTriplesParser", new Parser() {
+			public List<Statement> parse(byte[] content) throws Exception {
+				List<Statement> statements = Lists.newArrayListWithExpectedSize(triples);
+				NTriplesParser parser = new NTriplesParser();
+				parser.setPreserveBNodeIDs(true);
+				parser.setRDFHandler(new StatementCollector(statements));
+				parser.parse(new ByteArrayInputStream(content), "");
+				return statements;
+			}
+		}, content, triples, iterations, 0);
+
+		final StatementFilter filter = new StatementFilter(RDFS.SUBCLASSOF);
+
+		measure("Filtered, rdfs:subClassOf", new Parser() {
+			public List<Statement> parse(byte[] content) throws Exception {
+				List<Statement> statements = Lists.newArrayListWithExpectedSize(triples / 2);
+				ParallelNTriplesParser parser = new ParallelNTriplesParser(1);
+				parser.setFilter(filter);
+				parser.parse(new ByteArrayInputStream(content), new StatementCollector(statements));
+				return statements;
+			}
+		}, content, triples / 2, iterations, baseline);
+
+		for (int threads = 1; threads <= processors; threads = threads < processors ? Math.min(threads * 2, processors)
+						: threads + 1) {
+			final int n = threads;
+
+			measure("Parallel, " + n + " thread(s)", new Parser() {
+				public List<Statement> parse(byte[] content) throws Exception {
+					List<Statement> statements = Lists.newArrayListWithExpectedSize(triples);
+					new ParallelNTriplesParser(n).parse(new ByteArrayInputStream(content), new StatementCollector(statements));
+					return statements;
+				}
+			}, content, triples, iterations, baseline);
+		}
+	}
+
+	private static double measure(String name, Parser parser, byte[] content, int triples, int iterations,
+		double baseline) throws Exception {
+		// warm up
+		parser.parse(content);
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++) {
+			if (parser.parse(content).size() != triples) {
+				throw new IllegalStateException(name + " lost triples");
+			}
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9 / iterations;
+
+		System.out.println(String.format("%-28s %8.2f s %12.0f triples/s %s", name, seconds, triples / seconds,
+						                 baseline > 0 ? String.format("x%.2f", baseline / seconds) : ""));
+
+		return seconds;
+	}
+
+	/**
+	 * A subclass hierarchy with labels, like the result of a classification
+	 */
+	private static byte[] generate(int triples) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(triples * 100);
+
+		for (int i = 0; i < triples; i++) {
+			String subject = "<http://example.org/wine#Wine" + (i / 2) + ">";
+
+			if (i % 2 == 0) {
+				out.write((subject + " <http://www.w3.org/2000/01/rdf-schema#subClassOf> <http://example.org/wine#Wine"
+						   + (i / 4) + "> .\n").getBytes("UTF-8"));
+			}
+			else {
+				out.write((subject + " <http://www.w3.org/2000/01/rdf-schema#label> \"Wine number " + i + "\"@en .\n")
+								.getBytes("UTF-8"));
+			}
+		}
+
+		return out.toByteArray();
+	}
+}
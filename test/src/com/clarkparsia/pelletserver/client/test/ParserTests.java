@@ -0,0 +1,1064 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.openrdf.rio.ntriples.NTriplesParser;
+
+import com.clarkparsia.pelletserver.client.BatchCallback;
+import com.clarkparsia.pelletserver.client.CallbackTask;
+import com.clarkparsia.pelletserver.client.Endpoint;
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
+import com.clarkparsia.pelletserver.client.Row;
+import com.clarkparsia.pelletserver.client.RowMapper;
+import com.clarkparsia.pelletserver.client.services.BulkQuery;
+import com.clarkparsia.pelletserver.client.services.BulkTupleQueryResult;
+import com.clarkparsia.pelletserver.client.services.PagedQuery;
+import com.clarkparsia.pelletserver.client.services.PagedTupleQueryResult;
+import com.clarkparsia.pelletserver.client.services.PreparedQuery;
+import com.clarkparsia.pelletserver.client.services.Query;
+import com.clarkparsia.pelletserver.client.services.Query.QueryForm;
+import com.clarkparsia.pelletserver.client.utils.CallbackUtils;
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.clarkparsia.pelletserver.client.utils.ParallelNTriplesParser;
+import com.clarkparsia.pelletserver.client.utils.RequestUtils;
+import com.clarkparsia.pelletserver.client.utils.SearchJsonReader;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
+import com.clarkparsia.pelletserver.client.utils.StatementFilter;
+import com.clarkparsia.pelletserver.client.utils.ValueDictionary;
+import com.clarkparsia.utils.web.Method;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit {@link Test}s for the parsers of service responses
+ */
+public class ParserTests {
+
+	private static final String CONSISTENCY = "<?xml version=\"1.0\"?>\n"
+		+ "<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">\n"
+		+ "<head><variable name=\"Consistent\"/></head>\n"
+		+ "<results>\n"
+		+ "<result><binding name=\"Consistent\">"
+		+ "<literal datatype=\"http://www.w3.org/2001/XMLSchema#boolean\">true</literal></binding></result>\n";
+
+	@Test
+	public void firstBinding() throws Exception {
+		// The document is truncated after the first result, which is all the reader needs
+		Literal consistent = (Literal) OpenRdfUtils.readFirstBinding(stream(CONSISTENCY), "Consistent");
+		assertEquals(true, consistent.booleanValue());
+
+		assertNull(OpenRdfUtils.readFirstBinding(stream(CONSISTENCY), "Inconsistent"));
+		assertNull(OpenRdfUtils.readFirstBinding(stream("<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">"
+						                                + "<head/><results/></sparql>"), "Consistent"));
+	}
+
+	@Test
+	public void drainOnClose() throws Exception {
+		final List<Integer> ports = Lists.newArrayList();
+		StringBuilder large = new StringBuilder(CONSISTENCY);
+
+		while (large.length() < 100 * ResponseStream.DRAIN_LIMIT) {
+			large.append("<result><binding name=\"Consistent\"><literal>true</literal></binding></result>\n");
+		}
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		final FixedHandler small = new FixedHandler("application/sparql-results+xml", CONSISTENCY 
+						                            + "</results>\n</sparql>\n");
+		final FixedHandler big = new FixedHandler("application/sparql-results+xml", large.toString());
+
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				ports.add(exchange.getRemoteAddress().getPort());
+				(exchange.getRequestURI().getPath().startsWith("/big") ? big : small).handle(exchange);
+			}
+		});
+		server.start();
+
+		try {
+			String base = "http://localhost:" + server.getAddress().getPort() + "/";
+
+			for (String path : new String[] { "small", "small", "big", "small" }) {
+				ResponseStream response = RequestUtils.stream(new Endpoint(new URL(base + path), Method.GET), 
+								                              Method.GET, PelletServerMimeTypes.SPARQL_XML);
+				assertNotNull(OpenRdfUtils.readFirstBinding(response, "Consistent"));
+				response.close();
+			}
+
+			// The rest of a short body is drained so the connection is kept alive, a long body drops the connection
+			assertEquals(ports.get(0), ports.get(1));
+			assertEquals(ports.get(1), ports.get(2));
+			assertFalse(ports.get(2).equals(ports.get(3)));
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void streamingTupleResult() throws Exception {
+		GeneratedResults in = new GeneratedResults(1000000);
+		TupleQueryResult result = OpenRdfUtils.createResultSetFromSparqlXMLStream(in);
+
+		assertEquals(Arrays.asList("s", "label"), result.getBindingNames());
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(result.hasNext());
+			BindingSet row = result.next();
+			assertEquals("urn:test:" + i, row.getValue("s").stringValue());
+			assertEquals(new LiteralImpl("row " + i, "en"), row.getValue("label"));
+		}
+
+		// Only the first rows were read from the stream, and closing it leaves the rest unread
+		result.close();
+		assertTrue(in.closed);
+		assertTrue(in.read < 64 * 1024);
+		assertFalse(result.hasNext());
+
+		// A fully read result closes the stream by itself
+		in = new GeneratedResults(10);
+		result = OpenRdfUtils.createResultSetFromSparqlXMLStream(in);
+		int count = 0;
+
+		while (result.hasNext()) {
+			assertNotNull(result.next());
+			count++;
+		}
+
+		assertEquals(10, count);
+		assertTrue(in.closed);
+	}
+
+	@Test
+	public void queryForm() throws Exception {
+		assertEquals(QueryForm.SELECT, QueryForm.of("select * where { ?s ?p ?o }"));
+		assertEquals(QueryForm.CONSTRUCT, QueryForm.of("# CONSTRUCT-ing a graph, not a SELECT\n"
+						                                + "PREFIX owl: <http://www.w3.org/2002/07/owl#>\n"
+						                                + "BASE <http://example.org/ask/>\n"
+						                                + "CONSTRUCT { ?c a owl:Class } WHERE { ?c a owl:Class }"));
+		assertEquals(QueryForm.ASK, QueryForm.of("PREFIX select: <urn:select:> ASK { select:a select:b select:c }"));
+		assertEquals(QueryForm.DESCRIBE, QueryForm.of("DESCRIBE <urn:test:a>"));
+		assertNull(QueryForm.of("{ ?s ?p ?o }"));
+
+		assertEquals(Boolean.FALSE, OpenRdfUtils.readBooleanResult(stream("<sparql "
+						+ "xmlns=\"http://www.w3.org/2005/sparql-results#\"><head/><boolean>false</boolean></sparql>")));
+	}
+
+	@Test
+	public void queryDispatch() throws Exception {
+		List<BindingSet> expected = rows();
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), expected), TupleQueryResultFormat.SPARQL, xml);
+		QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), expected), TupleQueryResultFormat.JSON, json);
+		String rdfxml = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" "
+			+ "xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"><rdf:Description rdf:about=\"urn:test:Red\">"
+			+ "<rdfs:subClassOf rdf:resource=\"urn:test:Wine\"/></rdf:Description></rdf:RDF>";
+		String ask = "<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\"><head/><boolean>true</boolean></sparql>";
+
+		final FixedHandler[] answer = new FixedHandler[1];
+		final List<String> requests = Lists.newArrayList();
+		final List<Integer> ports = Lists.newArrayList();
+		LocalPelletServer local = new LocalPelletServer("wine", "query{?query}");
+		local.handle("wine/query", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.add(exchange.getRequestURI().getRawQuery());
+				ports.add(exchange.getRemoteAddress().getPort());
+				answer[0].handle(exchange);
+			}
+		});
+
+		try {
+			Query<?> query = local.connect().getKnowledgeBase("wine").getService(Query.class);
+			String select = "SELECT * WHERE { ?s ?o ?x }";
+
+			// The content type decides how the response is parsed
+			answer[0] = new FixedHandler("application/sparql-results+json", json.toByteArray());
+			assertEquals(expected, toList(query.select(select)));
+			answer[0] = new FixedHandler("application/sparql-results+xml", xml.toByteArray());
+			assertEquals(expected, toList(query.select(select)));
+			answer[0] = new FixedHandler("application/rdf+xml", rdfxml);
+			assertEquals(1, query.construct("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }").size());
+			answer[0] = new FixedHandler("application/sparql-results+xml", ask);
+			assertTrue(query.ask("ASK { ?s ?p ?o }"));
+
+			// Without a content type, the form of the query decides
+			answer[0] = new FixedHandler(null, xml.toByteArray());
+			assertEquals(expected, toList(query.select(select)));
+			answer[0] = new FixedHandler(null, rdfxml);
+			assertEquals(1, query.construct("DESCRIBE <urn:test:Red>").size());
+			answer[0] = new FixedHandler(null, ask);
+			assertTrue(query.ask("ASK { ?s ?p ?o }"));
+
+			// Without either, both formats are tried
+			answer[0] = new FixedHandler(null, rdfxml);
+			assertEquals(1, ((Graph) query.query("{ ?s ?p ?o }")).size());
+			answer[0] = new FixedHandler(null, xml.toByteArray());
+			assertEquals(expected, toList((TupleQueryResult) query.query("{ ?s ?p ?o }")));
+
+			// The graphs are sent as the parameters they were passed as
+			query.select(select, new URIImpl("urn:test:named"), new URIImpl("urn:test:default")).close();
+			String request = requests.get(requests.size() - 1);
+			assertTrue(request, request.contains("&named-graph-uri=" + URLEncoder.encode("urn:test:named", "UTF-8")));
+			assertTrue(request, request.contains("&default-graph-uri=" + URLEncoder.encode("urn:test:default", "UTF-8")));
+
+			// A result of the wrong type is closed, so the connection is reused by the next query. The result is longer
+			// than what the parser reads ahead, and short enough to be drained
+			StringBuilder large = new StringBuilder("<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">"
+				+ "<head><variable name=\"s\"/></head><results>");
+
+			while (large.length() < ResponseStream.DRAIN_LIMIT + ResponseStream.DRAIN_LIMIT / 2) {
+				large.append("<result><binding name=\"s\"><uri>urn:test:s</uri></binding></result>\n");
+			}
+
+			answer[0] = new FixedHandler("application/sparql-results+xml", large.append("</results></sparql>").toString());
+
+			try {
+				query.construct("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }");
+				fail("A SELECT result should be rejected");
+			}
+			catch (PelletClientException e) {
+				// expected
+			}
+
+			answer[0] = new FixedHandler("application/sparql-results+xml", xml.toByteArray());
+			query.select(select).close();
+			assertEquals(ports.get(ports.size() - 2), ports.get(ports.size() - 1));
+		}
+		finally {
+			local.stop();
+		}
+	}
+
+	@Test
+	public void pagedQuery() throws Exception {
+		PagedQuery paged = new PagedQuery("PREFIX limit: <urn:limit:>\n"
+						                  + "SELECT DISTINCT ?s (COUNT(?o) AS ?n) WHERE { ?s limit:p ?o FILTER(?o < 3) } "
+						                  + "GROUP BY ?s # LIMIT 5\nLIMIT 25 OFFSET 10");
+		assertEquals(10, paged.getOffset());
+		assertEquals(25, paged.getLimit());
+		assertEquals(Arrays.asList("?s", "?n"), paged.getOrderBy());
+		assertEquals("PREFIX limit: <urn:limit:>\n"
+					 + "SELECT DISTINCT ?s (COUNT(?o) AS ?n) WHERE { ?s limit:p ?o FILTER(?o < 3) } "
+					 + "GROUP BY ?s # LIMIT 5\n \nORDER BY ?s ?n\nLIMIT 5\nOFFSET 30", paged.getPage(20, 10));
+		assertEquals(5, paged.getPageSize(20, 10));
+		assertTrue(paged.getPage(25, 10) == null);
+
+		paged = new PagedQuery("select * where { ?s <urn:p?x=1> $o . ?o ?p 'x ?y' } order by desc(?o)");
+		assertTrue(paged.getOrderBy().isEmpty());
+		assertEquals(-1, paged.getLimit());
+		assertEquals("select * where { ?s <urn:p?x=1> $o . ?o ?p 'x ?y' } order by desc(?o)\nLIMIT 100\nOFFSET 0", 
+					 paged.getPage(0, 100));
+		assertEquals(Arrays.asList("?s", "?o", "?p"), new PagedQuery("SELECT * { ?s <urn:p> $o . ?o ?p ?s }")
+						.getOrderBy());
+	}
+
+	@Test
+	public void pagedResult() throws Exception {
+		final List<BindingSet> rows = Lists.newArrayList();
+
+		for (int i = 0; i < 25; i++) {
+			MapBindingSet row = new MapBindingSet();
+			row.addBinding("i", new LiteralImpl(String.valueOf(i)));
+			rows.add(row);
+		}
+
+		// A fake service answering the pages of the rows
+		final List<String> requested = Lists.newArrayList();
+		final PagedQuery query = new PagedQuery("SELECT ?i WHERE { ?i ?p ?o }");
+
+		class Pages extends PagedTupleQueryResult {
+			Pages(int pageSize) throws Exception {
+				super(query, pageSize, page(rows, query.getPage(0, pageSize)));
+			}
+
+			@Override
+			protected TupleQueryResult fetch(String pageQuery) {
+				synchronized (requested) {
+					requested.add(pageQuery);
+				}
+
+				return page(rows, pageQuery);
+			}
+		}
+
+		for (int pageSize : new int[] { 1, 4, 5, 25, 100 }) {
+			requested.clear();
+			TupleQueryResult result = new Pages(pageSize);
+			assertEquals(Arrays.asList("i"), result.getBindingNames());
+			assertEquals(String.valueOf(pageSize), rows, toList(result));
+
+			// the pages after the first one, and at most one page past the end
+			assertTrue(requested.size() >= (rows.size() - 1) / pageSize);
+			assertTrue(requested.size() <= rows.size() / pageSize + 1);
+		}
+
+		// Closing early stops requesting pages
+		requested.clear();
+		TupleQueryResult result = new Pages(2);
+		result.next();
+		result.close();
+		assertFalse(result.hasNext());
+		assertTrue(requested.size() <= 1);
+	}
+
+	@Test
+	public void bulkQuery() throws Exception {
+		List<BindingSet> bindings = Lists.newArrayList();
+
+		for (int i = 0; i < 100; i++) {
+			MapBindingSet row = new MapBindingSet();
+			row.addBinding("s", new URIImpl("urn:test:s" + i));
+			bindings.add(row);
+		}
+
+		// A fake server failing the VALUES blocks of more than 12 rows
+		BulkQuery bulk = new FakeBulkQuery("SELECT ?s WHERE { ?s ?p ?o }", 12);
+		bulk.setBatchSize(5);
+		bulk.setMaxBatchSize(20);
+		bulk.setConcurrency(3);
+
+		BulkTupleQueryResult result = bulk.select(bindings.subList(0, 1));
+		assertEquals(1, toList(result).size());
+		assertEquals("SELECT ?s WHERE {\nVALUES ( ?s ) {\n( <urn:test:s0> )\n}\n ?s ?p ?o }", 
+					 ((FakeBulkQuery) bulk).lastQuery);
+
+		result = bulk.select(bindings);
+		assertEquals(Arrays.asList("s"), result.getBindingNames());
+		assertEquals(Sets.newHashSet(bindings), Sets.newHashSet(toList(result)));
+
+		int bindingsDone = 0;
+		boolean grew = false, failed = false;
+
+		for (BulkQuery.Batch batch : result.getBatches()) {
+			if (batch.isFailed()) {
+				failed = true;
+				assertTrue(batch.getSize() > 12);
+			}
+			else {
+				grew |= batch.getSize() > 5;
+				bindingsDone += batch.getSize();
+				assertEquals(batch.getSize(), batch.getResults());
+			}
+		}
+
+		assertEquals(100, bindingsDone);
+		assertTrue(grew);
+		assertTrue(failed);
+
+		// Batches are kept under the maximum length of a query, as sent in a URL
+		bulk.setMaxQueryLength(200);
+		((FakeBulkQuery) bulk).maxLength = 0;
+		result = bulk.select(bindings);
+		assertEquals(100, toList(result).size());
+		assertTrue(result.getBatches().size() > 20);
+		assertTrue(((FakeBulkQuery) bulk).maxLength <= 200);
+
+		// A single binding failing fails the result
+		bulk = new FakeBulkQuery("SELECT * { ?s ?p ?o }", 0);
+		result = bulk.select(bindings);
+
+		try {
+			result.hasNext();
+			fail();
+		}
+		catch (QueryEvaluationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void bulkQueryFailures() throws Exception {
+		List<BindingSet> bindings = Lists.newArrayList();
+
+		for (int i = 0; i < 40; i++) {
+			MapBindingSet row = new MapBindingSet();
+			row.addBinding("s", new URIImpl("urn:test:s" + i));
+			bindings.add(row);
+		}
+
+		// Server errors are retried in smaller batches
+		FakeBulkQuery bulk = new FakeBulkQuery("SELECT ?s WHERE { ?s ?p ?o }", 12);
+		bulk.failureCode = 503;
+		bulk.setBatchSize(40);
+		bulk.setConcurrency(1);
+		assertEquals(40, toList(bulk.select(bindings)).size());
+
+		// Other client errors do not depend on the size of the batch, so the result fails at once
+		bulk.failureCode = 400;
+		BulkTupleQueryResult result = bulk.select(bindings);
+
+		try {
+			result.hasNext();
+			fail("A bad request should not be retried");
+		}
+		catch (QueryEvaluationException e) {
+			assertEquals(400, ((PelletClientException) e.getCause()).getResponseCode());
+		}
+
+		assertEquals(1, result.getBatches().size());
+		assertEquals(40, result.getBatches().get(0).getSize());
+	}
+
+	@Test
+	public void preparedQuery() throws Exception {
+		PreparedQuery query = new PreparedQuery("SELECT ?label WHERE { ?s rdfs:label ?label . ?s ?p \"?s\" } # ?s", 
+												"s");
+		assertEquals(Arrays.asList("s"), query.getParameters());
+		assertEquals(QueryForm.SELECT, query.getForm());
+
+		// Only the variables are bound, not the strings or comments
+		URI s = new URIImpl("urn:test:s");
+		assertEquals("SELECT ?label WHERE { <urn:test:s> rdfs:label ?label . <urn:test:s> ?p \"?s\" } # ?s", 
+					 query.getQuery(s));
+		assertEquals(URLEncoder.encode(query.getQuery(s), "UTF-8"), query.getEncodedQuery(s));
+
+		// Literals are escaped
+		PreparedQuery triple = new PreparedQuery("ASK { ?s $p ?o }", "o", "p", "s");
+		Literal literal = new LiteralImpl("say \"hi\"\n\\", "en");
+		assertEquals("ASK { <urn:test:s> <urn:test:p> \"say \\\"hi\\\"\\n\\\\\"@en }", 
+					 triple.getQuery(literal, new URIImpl("urn:test:p"), s));
+
+		Literal typed = new LiteralImpl("1", new URIImpl("http://www.w3.org/2001/XMLSchema#int"));
+		String encoded = triple.getEncodedQuery(typed, new URIImpl("urn:test:p?q=1&r"), s);
+		assertEquals(URLEncoder.encode("ASK { <urn:test:s> <urn:test:p?q=1&r> "
+									   + "\"1\"^^<http://www.w3.org/2001/XMLSchema#int> }", "UTF-8"), encoded);
+
+		try {
+			triple.getQuery(literal, new BNodeImpl("b"), s);
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		try {
+			triple.getQuery(s);
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		try {
+			new PreparedQuery("SELECT * { ?s ?p ?o }", "x");
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// A projected variable can't be replaced by a value, in the query or in a sub-query
+		for (String projected : new String[] { "SELECT ?s ?label WHERE { ?s rdfs:label ?label }",
+			"SELECT DISTINCT (?s AS ?x) { ?s ?p ?o }", "SELECT ?o { ?o ?p ?v { SELECT ?s { ?s ?p ?o } } }" }) {
+			try {
+				new PreparedQuery(projected, "s");
+				fail(projected);
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+
+		assertEquals("SELECT * { <urn:test:s> ?p ?o }", new PreparedQuery("SELECT * { ?s ?p ?o }", "s").getQuery(s));
+		assertEquals("CONSTRUCT { <urn:test:s> ?p ?o } WHERE { <urn:test:s> ?p ?o }", 
+					 new PreparedQuery("CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }", "s").getQuery(s));
+	}
+
+	@Test
+	public void executeEach() throws Exception {
+		Map<Integer, CallbackTask<Integer>> tasks = Maps.newLinkedHashMap();
+
+		for (int i = 0; i < 20; i++) {
+			final int n = i;
+
+			tasks.put(n, new CallbackTask<Integer>() {
+				public Integer execute() throws PelletClientException {
+					if (n % 5 == 0) {
+						throw new PelletClientException("failed " + n);
+					}
+
+					return n * n;
+				}
+			});
+		}
+
+		final Map<Integer, Integer> results = Maps.newHashMap();
+		final Set<Integer> failed = Sets.newHashSet();
+
+		// Each task is reported, and a callback failing does not affect the others
+		CallbackUtils.executeEach(tasks, 3, new BatchCallback<Integer, Integer>() {
+			public synchronized void success(Integer key, Integer value) {
+				results.put(key, value);
+
+				if (key == 1) {
+					throw new IllegalStateException();
+				}
+			}
+
+			public synchronized void failure(Integer key, PelletClientException exception) {
+				failed.add(key);
+			}
+		});
+
+		assertEquals(16, results.size());
+		assertEquals(Integer.valueOf(49), results.get(7));
+		assertEquals(Sets.newHashSet(0, 5, 10, 15), failed);
+
+		Map<Integer, PelletClientException> failures = Maps.newHashMap();
+		Map<Integer, Integer> all = CallbackUtils.executeAll(tasks, 3, failures);
+		assertEquals(results, all);
+		assertEquals(Integer.valueOf(1), all.keySet().iterator().next());
+		assertEquals(failed, failures.keySet());
+	}
+
+	@Test
+	public void searchJson() throws Exception {
+		String json = "[{\"hit\": {\"type\": \"uri\", \"value\": \"urn:test:\\u00e9\\\"a\"}, \"score\": 0.5}, "
+					  + "{\"score\": 1.5E-1, \"other\": [1, {\"a\": null}], \"hit\": {\"value\": \"b0\", "
+					  + "\"type\": \"bnode\"}}]";
+		SearchJsonReader reader = new SearchJsonReader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+
+		assertTrue(reader.next());
+		assertEquals(new URIImpl("urn:test:\u00e9\"a"), reader.getResource());
+		assertEquals(0.5, reader.getScore(), 0);
+
+		// members in any order, unknown members skipped
+		assertTrue(reader.next());
+		assertFalse(reader.isURI());
+		assertEquals("b0", reader.getValue().toString());
+		assertEquals(0.15, reader.getScore(), 0);
+		assertFalse(reader.next());
+		assertFalse(reader.next());
+
+		reader = new SearchJsonReader(new ByteArrayInputStream(" [ ] ".getBytes("UTF-8")));
+		assertFalse(reader.next());
+
+		try {
+			new SearchJsonReader(new ByteArrayInputStream("[{\"score\": 1}]".getBytes("UTF-8"))).next();
+			fail();
+		}
+		catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void sparqlJson() throws Exception {
+		List<BindingSet> expected = rows();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), expected), TupleQueryResultFormat.JSON, out);
+
+		TupleQueryResult result = OpenRdfUtils.createResultSetFromSparqlJSONStream(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(Arrays.asList("s", "o"), result.getBindingNames());
+		assertEquals(expected, toList(result));
+
+		// Members this parser does not know about are skipped
+		String json = "{\"head\": {\"vars\": [\"x\"], \"link\": [\"urn:info\"]}, \"results\": {\"distinct\": false, "
+			+ "\"bindings\": [{\"x\": {\"type\": \"typed-literal\", \"datatype\": \"http://www.w3.org/2001/XMLSchema#int\", "
+			+ "\"value\": \"42\", \"extra\": {\"a\": [1, -2.5e3, null, true]}}}, {}]}}";
+		result = OpenRdfUtils.createResultSetFromSparqlJSONStream(stream(json));
+		assertEquals(42, ((Literal) result.next().getValue("x")).intValue());
+		assertEquals(0, result.next().size());
+		assertFalse(result.hasNext());
+
+		assertEquals(Boolean.TRUE, OpenRdfUtils.readBooleanResultFromSparqlJSON(stream("{\"head\": {}, \"boolean\": true}")));
+
+		// The binding names must be known before the first result
+		try {
+			OpenRdfUtils.createResultSetFromSparqlJSONStream(stream("{\"results\": {\"bindings\": []}, "
+				+ "\"head\": {\"vars\": [\"x\"]}}"));
+			fail("Results before the head should be rejected");
+		}
+		catch (QueryEvaluationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void sparqlXmlBlob() throws Exception {
+		List<BindingSet> expected = rows();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), expected), TupleQueryResultFormat.SPARQL, out);
+
+		// The parser of the thread is reused for each document
+		for (int i = 0; i < 3; i++) {
+			TupleQueryResult result = OpenRdfUtils.createResultSetFromSparqlXMLBlob(out.toString("UTF-8"));
+			assertEquals(Arrays.asList("s", "o"), result.getBindingNames());
+			assertEquals(expected, toList(result));
+		}
+	}
+
+	@Test
+	public void sparqlBinary() throws Exception {
+		List<BindingSet> expected = rows();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), expected), TupleQueryResultFormat.BINARY, out);
+
+		TupleQueryResult result = OpenRdfUtils.createResultSetFromBinaryStream(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(Arrays.asList("s", "o"), result.getBindingNames());
+		assertEquals(expected, toList(result));
+	}
+
+	@Test
+	public void rowMapper() throws Exception {
+		List<BindingSet> expected = rows();
+		TupleQueryResultFormat[] formats = { TupleQueryResultFormat.JSON, TupleQueryResultFormat.SPARQL, 
+						                     TupleQueryResultFormat.BINARY };
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+
+		for (TupleQueryResultFormat format : formats) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), expected), format, out);
+			server.createContext("/" + format.getDefaultFileExtension(), 
+							     new FixedHandler(format.getDefaultMIMEType(), out.toByteArray()));
+		}
+
+		server.createContext("/numbers", new FixedHandler("application/sparql-results+json", "{\"head\": {\"vars\": "
+						+ "[\"n\", \"d\", \"b\", \"u\"]}, \"results\": {\"bindings\": ["
+						+ "{\"n\": {\"type\": \"typed-literal\", \"datatype\": \"http://www.w3.org/2001/XMLSchema#long\", "
+						+ "\"value\": \"-9223372036854775808\"}, \"d\": {\"type\": \"literal\", \"value\": \" 0.1 \"}, "
+						+ "\"b\": {\"type\": \"literal\", \"value\": \"true\"}}, "
+						+ "{\"n\": {\"type\": \"literal\", \"value\": \"+42\"}, \"d\": {\"type\": \"literal\", "
+						+ "\"value\": \"-1.5E3\"}, \"b\": {\"type\": \"literal\", \"value\": \"0\"}}, "
+						+ "{\"n\": {\"type\": \"literal\", \"value\": \"7\"}, \"d\": {\"type\": \"literal\", "
+						+ "\"value\": \"INF\"}, \"b\": {\"type\": \"literal\", \"value\": \"1\"}}]}}"));
+		server.start();
+
+		try {
+			String base = "http://localhost:" + server.getAddress().getPort() + "/";
+
+			// Each format maps to the same values
+			for (TupleQueryResultFormat format : formats) {
+				URL url = new URL(base + format.getDefaultFileExtension());
+				ResponseStream response = RequestUtils.stream(new Endpoint(url, Method.GET), Method.GET, 
+								                              PelletServerMimeTypes.SPARQL_JSON);
+				List<BindingSet> rows = OpenRdfUtils.mapRows(response, new RowMapper<BindingSet>() {
+					public BindingSet map(Row row) {
+						assertEquals(Arrays.asList("s", "o"), row.getBindingNames());
+						assertTrue(row.isURI(0));
+
+						MapBindingSet bindings = new MapBindingSet();
+
+						for (String name : row.getBindingNames()) {
+							bindings.addBinding(name, row.getValue(row.getColumn(name)));
+						}
+
+						return bindings;
+					}
+				});
+
+				assertEquals(format.getName(), expected, rows);
+			}
+
+			// Typed values, read from the lexical forms, and aggregated by the mapper
+			final long[] sum = { 0 };
+			ResponseStream response = RequestUtils.stream(new Endpoint(new URL(base + "numbers"), Method.GET), Method.GET, 
+							                              PelletServerMimeTypes.SPARQL_JSON);
+			List<Double> doubles = OpenRdfUtils.mapRows(response, new RowMapper<Double>() {
+				public Double map(Row row) {
+					sum[0] += row.getBoolean(2) ? 0 : row.getLong(0);
+					assertFalse(row.isBound(3));
+					assertNull(row.getLexicalForm(3));
+
+					return row.getDatatype(0) == null ? row.getDouble(1) : null;
+				}
+			});
+
+			assertEquals(42, sum[0]);
+			assertEquals(Arrays.asList(-1500.0, Double.POSITIVE_INFINITY), doubles);
+
+			response = RequestUtils.stream(new Endpoint(new URL(base + "numbers"), Method.GET), Method.GET, 
+							               PelletServerMimeTypes.SPARQL_JSON);
+			List<Object> first = OpenRdfUtils.mapRows(response, new RowMapper<Object>() {
+				public Object map(Row row) {
+					return row.getDatatype(0) != null 
+						? Arrays.<Object> asList(row.getLong(0), row.getDouble(1), row.getString(1)) : null;
+				}
+			});
+
+			assertEquals(Arrays.<Object> asList(Arrays.<Object> asList(Long.MIN_VALUE, 0.1, " 0.1 ")), first);
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void rdfFormatNegotiation() throws Exception {
+		String turtle = "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+			+ "<urn:test:Red> rdfs:subClassOf <urn:test:Wine> .\n";
+		String ntriples = "<urn:test:Red> <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Wine> .\n";
+		String rdfxml = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" "
+			+ "xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"><rdf:Description rdf:about=\"urn:test:Red\">"
+			+ "<rdfs:subClassOf rdf:resource=\"urn:test:Wine\"/></rdf:Description></rdf:RDF>";
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/turtle", new FixedHandler("text/turtle", turtle));
+		server.createContext("/ntriples", new FixedHandler("text/plain; charset=utf-8", ntriples));
+		server.createContext("/rdfxml", new FixedHandler("application/rdf+xml", rdfxml));
+		server.start();
+
+		try {
+			for (String path : new String[] { "turtle", "ntriples", "rdfxml" }) {
+				URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/" + path);
+				ResponseStream response = RequestUtils.stream(new Endpoint(url, Method.GET), Method.GET, 
+								                              PelletServerMimeTypes.RDF_FORMATS);
+				Graph graph = OpenRdfUtils.createGraphFromStream(response);
+				response.close();
+
+				assertEquals(path, 1, graph.size());
+				assertTrue(path, graph.match(new URIImpl("urn:test:Red"), RDFS.SUBCLASSOF, new URIImpl("urn:test:Wine"))
+								.hasNext());
+
+				// The same statements, passed to a handler without building a graph
+				List<Statement> statements = Lists.newArrayList();
+				response = RequestUtils.stream(new Endpoint(url, Method.GET), Method.GET, PelletServerMimeTypes.RDF_FORMATS);
+				OpenRdfUtils.parse(response, 1, new StatementCollector(statements));
+				response.close();
+
+				assertEquals(path, Lists.newArrayList(graph), statements);
+			}
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void parallelNTriples() throws Exception {
+		StringBuilder ntriples = new StringBuilder();
+
+		for (int i = 0; i < 500; i++) {
+			ntriples.append("<urn:test:C").append(i).append("> <http://www.w3.org/2000/01/rdf-schema#subClassOf> _:b")
+							.append(i % 7).append(" .\n");
+			ntriples.append("_:b").append(i % 7).append(" <http://www.w3.org/2000/01/rdf-schema#label> \"C")
+							.append(i).append(" \\u00e9\"@fr .\r\n");
+		}
+
+		ntriples.append("<urn:test:Last> <http://www.w3.org/2000/01/rdf-schema#comment> \"last\" .\n");
+
+		List<Statement> sequential = Lists.newArrayList();
+		NTriplesParser parser = new NTriplesParser();
+		parser.setPreserveBNodeIDs(true);
+		parser.setRDFHandler(new StatementCollector(sequential));
+		parser.parse(stream(ntriples.toString()), "");
+
+		// Chunks much smaller than the document, and than some of its lines
+		for (int chunkSize : new int[] { 16, 1000, 1 << 20 }) {
+			List<Statement> parallel = Lists.newArrayList();
+			ParallelNTriplesParser parallelParser = new ParallelNTriplesParser(3);
+			parallelParser.setChunkSize(chunkSize);
+			parallelParser.parse(stream(ntriples.toString()), new StatementCollector(parallel));
+
+			assertEquals(1001, parallel.size());
+			assertEquals(sequential, parallel);
+		}
+	}
+
+	@Test
+	public void statementFilter() throws Exception {
+		String ntriples = "<urn:test:Red> <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Wine> .\n"
+			+ "<urn:test:Red> <http://www.w3.org/2000/01/rdf-schema#label> \"Red\"@en .\n"
+			+ "<urn:other:Red> <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Wine> .\n"
+			+ "_:b0 <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Wine> .\n"
+			+ "<urn:test:Red> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://www.w3.org/2002/07/owl#Class> .\n"
+			+ "# a comment\n"
+			+ "<urn:test:\\u00c9> <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Wine> .\n"
+			+ "<urn:other:\\u00c9> <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Wine> .\n"
+			+ "<urn:test:White> <http://www.w3.org/2000/01/rdf-schema#sub\\u0043lassOf> <urn:test:Wine> .\n"
+			+ "<urn:test:White> <http://www.w3.org/2000/01/rdf-schema#comment> <urn:test:Wine> .\n";
+
+		StatementFilter filter = new StatementFilter(RDFS.SUBCLASSOF, RDFS.LABEL);
+		filter.setSubjectNamespaces("urn:test:");
+		filter.setDropLiterals(true);
+
+		// Red, the escaped subject and the escaped predicate
+		List<Statement> expected = Lists.newArrayList();
+		NTriplesParser parser = new NTriplesParser();
+		parser.setRDFHandler(filter.filter(new StatementCollector(expected)));
+		parser.parse(stream(ntriples), "");
+		assertEquals(3, expected.size());
+
+		// Lines that can't be filtered on their bytes are filtered once parsed
+		List<Statement> filtered = Lists.newArrayList();
+		ParallelNTriplesParser parallelParser = new ParallelNTriplesParser(2);
+		parallelParser.setChunkSize(64);
+		parallelParser.setFilter(filter);
+		parallelParser.parse(stream(ntriples), filter.filter(new StatementCollector(filtered)));
+		assertEquals(expected, filtered);
+
+		// Only the lines with escapes are parsed to be checked
+		List<Statement> parsed = Lists.newArrayList();
+		parallelParser.parse(stream(ntriples), new StatementCollector(parsed));
+		assertEquals(4, parsed.size());
+	}
+
+	@Test
+	public void valueDictionary() throws Exception {
+		ValueDictionary dictionary = new ValueDictionary(3);
+
+		URI wine = dictionary.createURI("urn:test:Wine");
+		assertTrue(wine == dictionary.createURI("urn:test:", "Wine"));
+		assertEquals(0, dictionary.getId(wine));
+		assertTrue(wine == dictionary.getValue(0));
+
+		Literal label = dictionary.createLiteral("Wine", "en");
+		assertTrue(label == dictionary.createLiteral("Wine", "en"));
+		assertFalse(label == dictionary.createLiteral("Wine"));
+		assertEquals(3, dictionary.size());
+
+		// Full: values are still created, without an id
+		URI red = dictionary.createURI("urn:test:Red");
+		assertEquals(new URIImpl("urn:test:Red"), red);
+		assertEquals(-1, dictionary.getId(red));
+		assertEquals(-1, dictionary.getId(new URIImpl("urn:test:Wine")));
+		assertTrue(wine == dictionary.createURI("urn:test:Wine"));
+
+		// Parsed results share the interned values
+		OpenRdfUtils.setValueFactory(new ValueDictionary(100));
+
+		try {
+			ByteArrayOutputStream json = new ByteArrayOutputStream();
+			QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), rows()), TupleQueryResultFormat.JSON, json);
+			ByteArrayOutputStream xml = new ByteArrayOutputStream();
+			QueryResultIO.write(new TupleQueryResultImpl(Arrays.asList("s", "o"), rows()), TupleQueryResultFormat.SPARQL, xml);
+
+			List<BindingSet> first = toList(OpenRdfUtils.createResultSetFromSparqlJSONStream(new ByteArrayInputStream(json.toByteArray())));
+			List<BindingSet> second = toList(OpenRdfUtils.createResultSetFromSparqlXMLStream(new ByteArrayInputStream(xml.toByteArray())));
+
+			assertEquals(first, second);
+			assertTrue(first.get(0).getValue("s") == second.get(0).getValue("s"));
+			assertTrue(first.get(0).getValue("o") == second.get(0).getValue("o"));
+		}
+		finally {
+			OpenRdfUtils.setValueFactory(null);
+		}
+	}
+
+	private static class FixedHandler implements HttpHandler {
+		private String contentType;
+		private byte[] content;
+
+		public FixedHandler(String contentType, String content) throws IOException {
+			this(contentType, content.getBytes("UTF-8"));
+		}
+
+		public FixedHandler(String contentType, byte[] content) {
+			this.contentType = contentType;
+			this.content = content;
+		}
+
+		public void handle(HttpExchange exchange) throws IOException {
+			if (contentType != null) {
+				exchange.getResponseHeaders().set("Content-Type", contentType);
+			}
+
+
+			exchange.sendResponseHeaders(200, content.length);
+			exchange.getResponseBody().write(content);
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Rows with every kind of value, and characters that must be escaped
+	 */
+	private static List<BindingSet> rows() {
+		ValueFactory factory = ValueFactoryImpl.getInstance();
+		List<BindingSet> rows = Lists.newArrayList();
+		Value[] objects = { factory.createURI("urn:test:o"), factory.createBNode("b0"), factory.createLiteral("plain"), 
+						    factory.createLiteral("\"quoted\"\n\\ \u00e9\u4e2d\t", "fr"), factory.createLiteral(3.5) };
+
+		for (int i = 0; i < objects.length; i++) {
+			MapBindingSet row = new MapBindingSet();
+			row.addBinding("s", factory.createURI("urn:test:s" + i));
+			row.addBinding("o", objects[i]);
+			rows.add(row);
+		}
+
+		return rows;
+	}
+
+	/**
+	 * The rows of the page of a {@link PagedQuery}, from its {@code LIMIT} and {@code OFFSET}
+	 */
+	private static TupleQueryResult page(List<BindingSet> rows, String pageQuery) {
+		String[] words = pageQuery.split("\\s+");
+		int limit = Integer.parseInt(words[words.length - 3]);
+		int offset = Integer.parseInt(words[words.length - 1]);
+
+		return new TupleQueryResultImpl(Arrays.asList("i"), rows.subList(Math.min(offset, rows.size()), 
+						                Math.min(offset + limit, rows.size())));
+	}
+
+	private static List<BindingSet> toList(TupleQueryResult result) throws Exception {
+		List<BindingSet> list = Lists.newArrayList();
+
+		while (result.hasNext()) {
+			list.add(result.next());
+		}
+
+		return list;
+	}
+
+	private static InputStream stream(String content) throws Exception {
+		return new ByteArrayInputStream(content.getBytes("UTF-8"));
+	}
+
+	/**
+	 * Answers the bindings of the {@code VALUES} block of each batch, failing when there are too many
+	 */
+	private static class FakeBulkQuery extends BulkQuery {
+		private int maxRows;
+		private int failureCode = 413;
+		private volatile String lastQuery;
+		private volatile int maxLength;
+
+		public FakeBulkQuery(String template, int maxRows) {
+			super(null, template);
+			this.maxRows = maxRows;
+		}
+
+		@Override
+		protected TupleQueryResult fetch(String query) throws PelletClientException {
+			List<BindingSet> results = Lists.newArrayList();
+			int length;
+
+			try {
+				length = URLEncoder.encode(query, "UTF-8").length();
+			}
+			catch (UnsupportedEncodingException e) {
+				throw new PelletClientException(e);
+			}
+
+			synchronized (this) {
+				lastQuery = query;
+				maxLength = Math.max(maxLength, length);
+			}
+
+			for (String line : query.split("\n")) {
+				if (line.startsWith("( <")) {
+					MapBindingSet row = new MapBindingSet();
+					row.addBinding("s", new URIImpl(line.substring(3, line.indexOf('>'))));
+					results.add(row);
+				}
+			}
+
+			if (results.size() > maxRows) {
+				throw new PelletClientException("Too many rows: " + results.size(), failureCode);
+			}
+
+			return new TupleQueryResultImpl(Arrays.asList("s"), results);
+		}
+	}
+
+	/**
+	 * A SPARQL/XML result set generated as it is read, which keeps track of how much of it was read
+	 */
+	private static class GeneratedResults extends InputStream {
+		private int rows;
+		private int row = -1;
+		private byte[] chunk = new byte[0];
+		private int position;
+		private long read;
+		private boolean closed;
+
+		public GeneratedResults(int rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public int read() throws IOException {
+			while (position == chunk.length) {
+				if (row > rows) {
+					return -1;
+				}
+
+				chunk = nextChunk().getBytes("UTF-8");
+				position = 0;
+				row++;
+			}
+
+			read++;
+			return chunk[position++] & 0xFF;
+		}
+
+		private String nextChunk() {
+			if (row < 0) {
+				return "<?xml version=\"1.0\"?>\n<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">"
+					+ "<head><variable name=\"s\"/><variable name=\"label\"/></head><results>\n";
+			}
+			else if (row == rows) {
+				return "</results></sparql>\n";
+			}
+
+			return "<result><binding name=\"s\"><uri>urn:test:" + row + "</uri></binding>"
+				+ "<binding name=\"label\"><literal xml:lang=\"en\">row " + row + "</literal></binding></result>\n";
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(ParserTests.class);
+	}
+}
@@ -26,6 +26,9 @@ public class PelletServerClientTests {
 		TestSuite suite = new TestSuite("Pellet Server Java Client tests");
 
 		suite.addTest(ServiceTests.suite());
+		suite.addTest(ResultCacheTests.suite());
+		suite.addTest(ParserTests.suite());
+		suite.addTest(IndexTests.suite());
 
 		return suite;
 	}
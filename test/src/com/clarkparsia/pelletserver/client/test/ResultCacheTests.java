@@ -0,0 +1,669 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Graph;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+
+import com.clarkparsia.openrdf.ExtGraph;
+import com.clarkparsia.pelletserver.client.CallbackTask;
+import com.clarkparsia.pelletserver.client.KnowledgeBase;
+import com.clarkparsia.pelletserver.client.KnowledgeBaseImpl;
+import com.clarkparsia.pelletserver.client.PelletClientException;
+import com.clarkparsia.pelletserver.client.PelletServer;
+import com.clarkparsia.pelletserver.client.cache.CacheWarmer;
+import com.clarkparsia.pelletserver.client.cache.CachedCallbackTask;
+import com.clarkparsia.pelletserver.client.cache.CallRecorder;
+import com.clarkparsia.pelletserver.client.cache.DiskCache;
+import com.clarkparsia.pelletserver.client.cache.NegativeCache;
+import com.clarkparsia.pelletserver.client.cache.RecordedCall;
+import com.clarkparsia.pelletserver.client.cache.ResultCache;
+import com.clarkparsia.pelletserver.client.index.IndexedGraph;
+import com.clarkparsia.pelletserver.client.services.Classify;
+import com.clarkparsia.pelletserver.client.services.Query;
+import com.clarkparsia.pelletserver.client.services.Search;
+import com.google.common.collect.Maps;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * {@link ResultCache} unit {@link Test}s
+ */
+public class ResultCacheTests {
+
+	private static final ValueFactory FACTORY = ValueFactoryImpl.getInstance();
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = File.createTempFile("pellet-cache", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void memoryTier() throws Exception {
+		ResultCache cache = new ResultCache(100);
+
+		assertNull(cache.get("classify"));
+		assertEquals(Boolean.TRUE, cache.put("consistency", Boolean.TRUE));
+		assertEquals(Boolean.TRUE, cache.get("consistency"));
+
+		// Tuple results are materialized and replayed on every hit
+		TupleQueryResult result = cache.put("query", tupleResult());
+		assertEquals(2, count(result));
+		assertEquals(2, count((TupleQueryResult) cache.get("query")));
+		assertEquals(2, count((TupleQueryResult) cache.get("query")));
+
+		// Graphs are returned as read-only views, so callers can't modify the cached one
+		Graph classify = cache.put("classify", graph("A", 10));
+		Graph hit = (Graph) cache.get("classify");
+		assertEquals(10, hit.size());
+		assertTrue(hit.match(FACTORY.createURI("urn:test:A3"), RDFS.SUBCLASSOF, null).hasNext());
+
+		try {
+			hit.add(FACTORY.createURI("urn:test:B"), RDFS.SUBCLASSOF, FACTORY.createURI("urn:test:Top"));
+			fail("A cached graph should not be modified");
+		}
+		catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		try {
+			classify.clear();
+			fail("A cached graph should not be modified");
+		}
+		catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		assertEquals(10, ((Graph) cache.get("classify")).size());
+
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void largeTupleResult() throws Exception {
+		ResultCache cache = new ResultCache(100);
+		cache.setMaxTupleWeight(20);
+
+		// Up to the limit, a result is read ahead and cached
+		GeneratedResult small = new GeneratedResult(10);
+		assertEquals(10, count(cache.put("small", small)));
+		assertTrue(small.closed);
+		assertEquals(10, count((TupleQueryResult) cache.get("small")));
+
+		// A larger result is only read up to the limit, and the rest is streamed
+		GeneratedResult large = new GeneratedResult(1000000);
+		TupleQueryResult result = cache.put("large", large);
+		assertEquals(10, large.read);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(FACTORY.createLiteral(i), result.next().getValue("i"));
+		}
+
+		assertEquals(100, large.read);
+		result.close();
+		assertTrue(large.closed);
+		assertNull(cache.get("large"));
+		assertEquals(20, cache.getWeight());
+	}
+
+	@Test
+	public void spillToDisk() throws Exception {
+		DiskCache disk = new DiskCache(directory, 1024 * 1024);
+		ResultCache cache = new ResultCache(15, disk);
+
+		cache.put("g1", graph("A", 10));
+		cache.put("g2", graph("B", 10));
+
+		// g1 was evicted from the heap to the disk
+		assertEquals(1, disk.getEntryCount());
+		assertTrue(disk.contains("g1"));
+
+		Graph g1 = (Graph) cache.get("g1");
+		assertEquals(10, g1.size());
+		assertEquals(1, cache.getDiskHits());
+
+		// Results larger than the heap tier go straight to disk
+		cache.put("g3", graph("C", 50));
+		assertTrue(disk.contains("g3"));
+		assertEquals(50, ((Graph) cache.get("g3")).size());
+	}
+
+	@Test
+	public void diskSurvivesRestart() throws Exception {
+		DiskCache disk = new DiskCache(directory, 1024 * 1024);
+		disk.put("g1", graph("A", 10));
+		assertTrue(disk.put("flag", Boolean.FALSE));
+
+		IndexedGraph.Builder builder = new IndexedGraph.Builder();
+		for (Statement statement : graph("B", 5)) {
+			builder.handleStatement(statement);
+		}
+		assertTrue(disk.put("indexed", builder.build()));
+
+		DiskCache restarted = new DiskCache(directory, 1024 * 1024);
+		assertEquals(3, restarted.getEntryCount());
+		assertEquals(disk.getSize(), restarted.getSize());
+		assertEquals(10, ((Graph) restarted.get("g1")).size());
+		assertTrue(restarted.get("g1") instanceof ExtGraph);
+		assertEquals(Boolean.FALSE, restarted.get("flag"));
+
+		// Indexed graphs come back indexed
+		Graph indexed = (Graph) restarted.get("indexed");
+		assertTrue(indexed instanceof IndexedGraph);
+		assertEquals(5, indexed.size());
+		assertTrue(indexed.match(FACTORY.createURI("urn:test:B3"), RDFS.SUBCLASSOF, null).hasNext());
+	}
+
+	@Test
+	public void diskSizeCap() throws Exception {
+		DiskCache disk = new DiskCache(directory, 2048);
+
+		for (int i = 0; i < 20; i++) {
+			disk.put("g" + i, graph("N" + i, 10));
+		}
+
+		assertTrue(disk.getSize() <= 2048);
+		assertTrue(disk.contains("g19"));
+		assertFalse(disk.contains("g0"));
+		assertEquals(disk.getEntryCount(), directory.listFiles().length);
+	}
+
+	@Test
+	public void versionInvalidation() throws Exception {
+		DiskCache disk = new DiskCache(directory, 1024 * 1024);
+		ResultCache cache = new ResultCache(15, disk);
+
+		cache.setVersion("wine", "v1");
+		cache.put("wine", "classify", graph("A", 10));
+		cache.put("wine", "realize", graph("B", 10));
+		cache.put("galen", "galen-classify", graph("C", 10));
+		assertEquals(2, disk.getEntryCount());
+
+		// Same version, nothing is dropped
+		cache.setVersion("wine", "v1");
+		assertNotNull(cache.get("classify"));
+
+		cache.setVersion("wine", "v2");
+		assertNull(cache.get("classify"));
+		assertNull(cache.get("realize"));
+		assertNotNull(cache.get("galen-classify"));
+
+		// Results computed against an older version are not cached
+		assertNotNull(cache.put("wine", "v1", "classify", graph("A", 10)));
+		assertNull(cache.get("classify"));
+		cache.put("wine", "v1", "large", graph("L", 20));
+		assertFalse(disk.contains("large"));
+		cache.put("wine", "v2", "classify", graph("A", 10));
+		assertNotNull(cache.get("classify"));
+
+		// Entries of an older version left on disk are dropped once the current version is known
+		cache.put("wine", "realize", graph("D", 20));
+		DiskCache restarted = new DiskCache(directory, 1024 * 1024);
+		assertTrue(restarted.contains("realize"));
+		new ResultCache(15, restarted).setVersion("wine", "v3");
+		assertFalse(restarted.contains("realize"));
+	}
+
+	@Test
+	public void versionProbe() throws Exception {
+		LocalPelletServer local = new LocalPelletServer("wine", "kb-discovery", "classify");
+		final String[] etag = { "\"1\"" };
+		final AtomicInteger classifications = new AtomicInteger();
+
+		local.handle("wine/classify", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if (etag[0] != null) {
+					exchange.getResponseHeaders().set("ETag", etag[0]);
+				}
+
+				if ("HEAD".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(200, -1);
+				}
+				else {
+					classifications.incrementAndGet();
+					byte[] content = "<urn:test:A> <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Top> ."
+									.getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type", "text/turtle");
+					exchange.sendResponseHeaders(200, content.length);
+					exchange.getResponseBody().write(content);
+				}
+
+				exchange.close();
+			}
+		});
+
+		try {
+			PelletServer server = local.connect();
+			server.setResultCache(new ResultCache(100));
+			server.setVersionCheckInterval(-1);
+			Classify classify = server.getKnowledgeBase("wine").getService(Classify.class);
+
+			assertEquals(1, classify.classify().size());
+			assertEquals(1, classify.classify().size());
+			assertEquals(1, classifications.get());
+
+			// The KB is reloaded: its description stays the same, the validators of its services change
+			etag[0] = "\"2\"";
+			classify.classify();
+			assertEquals(2, classifications.get());
+			classify.classify();
+			assertEquals(2, classifications.get());
+
+			// Without validators the results of the KB are not cached
+			etag[0] = null;
+			classify.classify();
+			classify.classify();
+			assertEquals(4, classifications.get());
+		}
+		finally {
+			local.stop();
+		}
+	}
+
+	@Test
+	public void probeFailure() throws Exception {
+		LocalPelletServer local = new LocalPelletServer("wine", "classify");
+		final int[] probeStatus = { 503 };
+		final AtomicInteger probes = new AtomicInteger();
+		final AtomicInteger classifications = new AtomicInteger();
+
+		local.handle("wine/classify", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if ("HEAD".equals(exchange.getRequestMethod())) {
+					probes.incrementAndGet();
+					exchange.sendResponseHeaders(probeStatus[0], -1);
+				}
+				else {
+					classifications.incrementAndGet();
+					byte[] content = "<urn:test:A> <http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Top> ."
+									.getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type", "text/turtle");
+					exchange.sendResponseHeaders(200, content.length);
+					exchange.getResponseBody().write(content);
+				}
+
+				exchange.close();
+			}
+		});
+
+		try {
+			PelletServer server = local.connect();
+			server.setResultCache(new ResultCache(100));
+			server.setNegativeCache(new NegativeCache(60 * 1000, 10));
+			server.setVersionCheckInterval(-1);
+			Classify classify = server.getKnowledgeBase("wine").getService(Classify.class);
+
+			// The caches are bypassed while the server is unavailable
+			assertEquals(1, classify.classify().size());
+			assertEquals(1, classify.classify().size());
+			assertEquals(2, classifications.get());
+
+			// A missing KB is a deterministic error, answered from the negative cache
+			probeStatus[0] = 404;
+			int before = probes.get();
+
+			for (int i = 0; i < 2; i++) {
+				try {
+					classify.classify();
+					fail();
+				}
+				catch (PelletClientException e) {
+					assertEquals(404, e.getResponseCode());
+				}
+			}
+
+			assertEquals(before + 1, probes.get());
+			assertEquals(2, classifications.get());
+		}
+		finally {
+			local.stop();
+		}
+	}
+
+	@Test
+	public void negativeCache() throws Exception {
+		NegativeCache negativeCache = new NegativeCache(60 * 1000, 10);
+		ResultCache cache = new ResultCache(100);
+
+		CountingTask<Graph> empty = new CountingTask<Graph>(new ExtGraph(), null);
+		CachedCallbackTask<Graph> task = new CachedCallbackTask<Graph>(cache, negativeCache, null, "explain", empty);
+
+		assertTrue(task.execute().isEmpty());
+		assertTrue(task.execute().isEmpty());
+		assertEquals(1, empty.count);
+		assertEquals(1, negativeCache.getHits());
+		// Empty results are not kept by the positive cache
+		assertNull(cache.get("explain"));
+
+		CountingTask<Graph> missing = new CountingTask<Graph>(null, new PelletClientException("Missing", 404));
+		CountingTask<Graph> unavailable = new CountingTask<Graph>(null, new PelletClientException("Busy", 503));
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				new CachedCallbackTask<Graph>(cache, negativeCache, null, "missing", missing).execute();
+				fail();
+			}
+			catch (PelletClientException e) {
+				assertEquals(404, e.getResponseCode());
+			}
+
+			try {
+				new CachedCallbackTask<Graph>(cache, negativeCache, null, "unavailable", unavailable).execute();
+				fail();
+			}
+			catch (PelletClientException e) {
+				assertEquals(503, e.getResponseCode());
+			}
+		}
+
+		assertEquals(1, missing.count);
+		assertEquals(2, unavailable.count);
+
+		// Entries of a previous version of the KB are not used
+		VersionedKB kb = new VersionedKB(discover("kb", "kb-discovery"));
+		CountingTask<Graph> unsat = new CountingTask<Graph>(new ExtGraph(), null);
+		new CachedCallbackTask<Graph>(null, negativeCache, kb, "unsat", unsat).execute();
+		new CachedCallbackTask<Graph>(null, negativeCache, kb, "unsat", unsat).execute();
+		assertEquals(1, unsat.count);
+		kb.version = "v2";
+		new CachedCallbackTask<Graph>(null, negativeCache, kb, "unsat", unsat).execute();
+		assertEquals(2, unsat.count);
+
+		// Expired entries are not used
+		NegativeCache expired = new NegativeCache(-1, 10);
+		new CachedCallbackTask<Graph>(null, expired, null, "explain", empty).execute();
+		new CachedCallbackTask<Graph>(null, expired, null, "explain", empty).execute();
+		assertEquals(3, empty.count);
+	}
+
+	@Test
+	public void callRecorder() throws Exception {
+		CallRecorder recorder = new CallRecorder(4);
+		RecordedCall classify = new RecordedCall("classify", "wine", new String[0]);
+		RecordedCall query = new RecordedCall("query", "wine", new String[] { "SELECT * WHERE {?s ?p ?o}", null, null });
+
+		for (int i = 0; i < 3; i++) {
+			recorder.record(new RecordedCall("query", "wine", new String[] { "SELECT * WHERE {?s ?p ?o}", null, null }));
+		}
+		recorder.record(classify);
+		recorder.record(classify);
+		recorder.record(new RecordedCall("search", "wine", new String[] { "merlot" }));
+
+		assertEquals(Arrays.asList(query, classify), recorder.getTopCalls(2));
+
+		// The least frequent calls are forgotten once too many distinct calls are tracked
+		recorder.record(new RecordedCall("search", "wine", new String[] { "shiraz" }));
+		recorder.record(new RecordedCall("search", "wine", new String[] { "zinfandel" }));
+		assertTrue(recorder.size() <= 4);
+		assertEquals(Arrays.asList(query, classify), recorder.getTopCalls(2));
+
+		File log = new File(directory, "calls.log");
+		recorder.save(log, 2);
+
+		List<RecordedCall> loaded = CallRecorder.load(log);
+		assertEquals(Arrays.asList(query, classify), loaded);
+		assertNull(loaded.get(0).getParameter(1));
+		assertNull(loaded.get(1).getParameter(0));
+	}
+
+	/**
+	 * Discover a PelletServer with a single KB, which is no longer served afterwards
+	 */
+	@Test
+	public void cacheWarmer() throws Exception {
+		LocalPelletServer local = new LocalPelletServer("wine", "query{?query}", "search{?search}", "classify");
+		final Map<String, AtomicInteger> requests = Maps.newConcurrentMap();
+		final CountDownLatch gate = new CountDownLatch(1);
+		final Map<String, String[]> answers = Maps.newHashMap();
+		answers.put("query", new String[] { "application/sparql-results+xml", "<sparql "
+			+ "xmlns=\"http://www.w3.org/2005/sparql-results#\"><head><variable name=\"s\"/></head><results><result>"
+			+ "<binding name=\"s\"><uri>urn:test:Red</uri></binding></result></results></sparql>" });
+		answers.put("search", new String[] { "text/json", "[{\"hit\": {\"type\": \"uri\", "
+			+ "\"value\": \"urn:test:Merlot\"}, \"score\": 0.5}]" });
+		answers.put("classify", new String[] { "text/turtle", "<urn:test:A> "
+			+ "<http://www.w3.org/2000/01/rdf-schema#subClassOf> <urn:test:Top> ." });
+
+		for (final String service : answers.keySet()) {
+			requests.put(service, new AtomicInteger());
+			local.handle("wine/" + service, new HttpHandler() {
+				public void handle(HttpExchange exchange) throws IOException {
+					exchange.getResponseHeaders().set("ETag", "\"1\"");
+
+					if ("HEAD".equals(exchange.getRequestMethod())) {
+						exchange.sendResponseHeaders(200, -1);
+					}
+					else {
+						try {
+							gate.await();
+						}
+						catch (InterruptedException e) {
+							throw new IOException(e.toString());
+						}
+
+						requests.get(service).incrementAndGet();
+						byte[] content = answers.get(service)[1].getBytes("UTF-8");
+						exchange.getResponseHeaders().set("Content-Type", answers.get(service)[0]);
+						exchange.sendResponseHeaders(200, content.length);
+						exchange.getResponseBody().write(content);
+					}
+
+					exchange.close();
+				}
+			});
+		}
+
+		try {
+			List<RecordedCall> calls = Arrays.asList(
+				new RecordedCall("query", "wine", new String[] { "SELECT ?s WHERE { ?s ?p ?o }", null, null }), 
+				new RecordedCall("search", "wine", new String[] { "merlot" }), 
+				new RecordedCall("classify", "wine", new String[] { "graph" }));
+
+			PelletServer server = local.connect();
+			server.setResultCache(new ResultCache(100));
+			server.setCallRecorder(new CallRecorder(10));
+			CacheWarmer warmer = new CacheWarmer(server, 2);
+
+			// Every submitted call is waited for, not only the ones of the last warm-up
+			warmer.warm(calls.subList(0, 2));
+			warmer.warm(calls.subList(2, 3));
+			warmer.warm(Collections.<RecordedCall> emptyList());
+			assertFalse(warmer.isReady());
+			assertFalse(warmer.await(100));
+
+			gate.countDown();
+			warmer.await();
+			assertTrue(warmer.isReady());
+			assertEquals(3, warmer.getCompleted());
+			assertEquals(0, warmer.getFailed());
+
+			// The replayed calls are not recorded again
+			assertEquals(0, server.getCallRecorder().size());
+
+			// The calls are answered from the cache
+			KnowledgeBase wine = server.getKnowledgeBase("wine");
+			Query<?> query = wine.getService(Query.class);
+			assertEquals(1, count(query.select("SELECT ?s WHERE { ?s ?p ?o }")));
+			assertEquals(1, wine.getService(Search.class).search("merlot").size());
+			assertEquals(1, wine.getService(Classify.class).classify().size());
+
+			for (String service : answers.keySet()) {
+				assertEquals(service, 1, requests.get(service).get());
+			}
+
+			assertEquals(3, server.getCallRecorder().size());
+		}
+		finally {
+			local.stop();
+		}
+	}
+
+	private static PelletServer discover(String kb, String... services) throws Exception {
+		LocalPelletServer local = new LocalPelletServer(kb, services);
+
+		try {
+			return local.connect();
+		}
+		finally {
+			local.stop();
+		}
+	}
+
+	private static class VersionedKB extends KnowledgeBaseImpl {
+		private String version = "v1";
+
+		public VersionedKB(PelletServer server) {
+			super(server, null, "kb");
+		}
+
+		@Override
+		public String getVersion() {
+			return version;
+		}
+	}
+
+	private static class CountingTask<T> implements CallbackTask<T> {
+		private T result;
+		private PelletClientException failure;
+		private int count;
+
+		public CountingTask(T result, PelletClientException failure) {
+			this.result = result;
+			this.failure = failure;
+		}
+
+		public T execute() throws PelletClientException {
+			count++;
+
+			if (failure != null) {
+				throw failure;
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * A result of two columns, generated as it is read
+	 */
+	private static class GeneratedResult implements TupleQueryResult {
+		private int size;
+		private int read;
+		private boolean closed;
+
+		public GeneratedResult(int size) {
+			this.size = size;
+		}
+
+		public List<String> getBindingNames() {
+			return Arrays.asList("i", "s");
+		}
+
+		public boolean hasNext() {
+			return !closed && read < size;
+		}
+
+		public BindingSet next() {
+			MapBindingSet row = new MapBindingSet();
+			row.addBinding("i", FACTORY.createLiteral(read));
+			row.addBinding("s", FACTORY.createURI("urn:test:s" + read++));
+			return row;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private static Graph graph(String prefix, int size) {
+		Graph graph = new ExtGraph();
+
+		for (int i = 0; i < size; i++) {
+			graph.add(FACTORY.createURI("urn:test:" + prefix + i), RDFS.SUBCLASSOF, FACTORY.createURI("urn:test:Top"));
+		}
+
+		return graph;
+	}
+
+	private static TupleQueryResult tupleResult() {
+		List<String> names = Arrays.asList("s", "label");
+
+		MapBindingSet row1 = new MapBindingSet();
+		row1.addBinding("s", RDF.TYPE);
+		row1.addBinding("label", FACTORY.createLiteral("type", "en"));
+
+		MapBindingSet row2 = new MapBindingSet();
+		row2.addBinding("s", FACTORY.createBNode("b1"));
+
+		return new TupleQueryResultImpl(names, Arrays.<BindingSet> asList(row1, row2));
+	}
+
+	private static int count(TupleQueryResult result) throws Exception {
+		assertNotNull(result);
+		int count = 0;
+
+		while (result.hasNext()) {
+			result.next();
+			count++;
+		}
+
+		return count;
+	}
+
+	public static junit.framework.Test suite() {
+		return new JUnit4TestAdapter(ResultCacheTests.class);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the parse throughput of each {@code SELECT} result format supported by
+ * {@link com.clarkparsia.pelletserver.client.services.Query Query}.<br>
+ * Usage: {@code ResultFormatBenchmark [rows] [iterations]}
+ */
+public class ResultFormatBenchmark {
+
+	private static abstract class Format {
+		private String name;
+		private byte[] content;
+
+		public Format(String name, byte[] content) {
+			this.name = name;
+			this.content = content;
+		}
+
+		public abstract TupleQueryResult parse(InputStream in) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		List<String> names = Arrays.asList("s", "label", "count");
+		List<BindingSet> bindingSets = rows(rows);
+
+		Format[] formats = {
+			new Format("SPARQL/XML (streaming)", write(names, bindingSets, TupleQueryResultFormat.SPARQL)) {
+				public TupleQueryResult parse(InputStream in) throws Exception {
+					return OpenRdfUtils.createResultSetFromSparqlXMLStream(in);
+				}
+			},
+			new Format("SPARQL/XML (SAX, buffered)", write(names, bindingSets, TupleQueryResultFormat.SPARQL)) {
+				public TupleQueryResult parse(InputStream in) throws Exception {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] buffer = new byte[8192];
+
+					for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+						out.write(buffer, 0, read);
+					}
+
+					return OpenRdfUtils.createResultSetFromSparqlXMLBlob(out.toString("UTF-8"));
+				}
+			},
+			new Format("SPARQL/JSON", write(names, bindingSets, TupleQueryResultFormat.JSON)) {
+				public TupleQueryResult parse(InputStream in) throws Exception {
+					return OpenRdfUtils.createResultSetFromSparqlJSONStream(in);
+				}
+			},
+			new Format("Binary", write(names, bindingSets, TupleQueryResultFormat.BINARY)) {
+				public TupleQueryResult parse(InputStream in) throws Exception {
+					return OpenRdfUtils.createResultSetFromBinaryStream(in);
+				}
+			}
+		};
+
+		System.out.println(rows + " rows, " + iterations + " iterations");
+
+		for (Format format : formats) {
+			// warm up
+			count(format.parse(new ByteArrayInputStream(format.content)));
+
+			long start = System.nanoTime();
+
+			for (int i = 0; i < iterations; i++) {
+				if (count(format.parse(new ByteArrayInputStream(format.content))) != rows) {
+					throw new IllegalStateException(format.name + " lost rows");
+				}
+			}
+
+			double seconds = (System.nanoTime() - start) / 1e9 / iterations;
+
+			System.out.println(String.format("%-28s %8.1f KB %10.0f rows/s %8.1f MB/s", format.name,
+							                 format.content.length / 1024.0, rows / seconds,
+							                 format.content.length / seconds / (1024 * 1024)));
+		}
+	}
+
+	private static List<BindingSet> rows(int rows) {
+		ValueFactory factory = ValueFactoryImpl.getInstance();
+		List<BindingSet> bindingSets = Lists.newArrayListWithExpectedSize(rows);
+
+		for (int i = 0; i < rows; i++) {
+			MapBindingSet row = new MapBindingSet(3);
+			row.addBinding("s", factory.createURI("http://example.org/wine#Wine" + i));
+			row.addBinding("label", factory.createLiteral("Wine number " + i, "en"));
+			row.addBinding("count", factory.createLiteral(i));
+			bindingSets.add(row);
+		}
+
+		return bindingSets;
+	}
+
+	private static byte[] write(List<String> names, List<BindingSet> bindingSets, TupleQueryResultFormat format)
+		throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(names, bindingSets), format, out);
+		return out.toByteArray();
+	}
+
+	private static int count(TupleQueryResult result) throws Exception {
+		int count = 0;
+
+		while (result.hasNext()) {
+			result.next();
+			count++;
+		}
+
+		result.close();
+
+		return count;
+	}
+}
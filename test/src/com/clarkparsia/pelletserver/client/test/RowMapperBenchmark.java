@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+
+import com.clarkparsia.pelletserver.client.Endpoint;
+import com.clarkparsia.pelletserver.client.PelletServerMimeTypes;
+import com.clarkparsia.pelletserver.client.Row;
+import com.clarkparsia.pelletserver.client.RowMapper;
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.clarkparsia.pelletserver.client.utils.RequestUtils;
+import com.clarkparsia.pelletserver.client.utils.ResponseStream;
+import com.clarkparsia.utils.web.Method;
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares summing a numeric column of a SPARQL/JSON {@code SELECT} result read as a {@link TupleQueryResult}, which
+ * creates a {@link org.openrdf.query.BindingSet BindingSet} and its {@link org.openrdf.model.Value Value}s for each row,
+ * with the same sum computed by a {@link RowMapper} reading the lexical forms: the time, and the collections and time
+ * spent in garbage collection.<br>
+ * Usage: {@code RowMapperBenchmark [rows] [runs]}
+ */
+public class RowMapperBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		final byte[] content = select(rows);
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Content-Type", "application/sparql-results+json");
+				exchange.sendResponseHeaders(200, content.length);
+				exchange.getResponseBody().write(content);
+				exchange.close();
+			}
+		});
+		server.start();
+
+		try {
+			URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/");
+
+			System.out.println(rows + " rows of 3 variables (" + content.length / 1024 + " KB), read " + runs + " times");
+
+			// warm up both paths
+			long values = sumValues(url);
+			long mapped = sumMapped(url);
+
+			if (values != mapped) {
+				throw new IllegalStateException("Results differ");
+			}
+
+			long[] gc = gc();
+			long start = System.nanoTime();
+
+			for (int i = 0; i < runs; i++) {
+				sumValues(url);
+			}
+
+			print("TupleQueryResult", System.nanoTime() - start, delta(gc), runs);
+
+			gc = gc();
+			start = System.nanoTime();
+
+			for (int i = 0; i < runs; i++) {
+				sumMapped(url);
+			}
+
+			print("RowMapper", System.nanoTime() - start, delta(gc), runs);
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	private static long sumValues(URL url) throws Exception {
+		TupleQueryResult result = OpenRdfUtils.createResultSetFromSparqlJSONStream(stream(url));
+		long sum = 0;
+
+		while (result.hasNext()) {
+			sum += ((Literal) result.next().getValue("year")).longValue();
+		}
+
+		return sum;
+	}
+
+	private static long sumMapped(URL url) throws Exception {
+		final long[] sum = { 0 };
+
+		OpenRdfUtils.mapRows(stream(url), new RowMapper<Void>() {
+			public Void map(Row row) {
+				sum[0] += row.getLong(2);
+				return null;
+			}
+		});
+
+		return sum[0];
+	}
+
+	private static ResponseStream stream(URL url) throws Exception {
+		return RequestUtils.stream(new Endpoint(url, Method.GET), Method.GET, PelletServerMimeTypes.SPARQL_JSON);
+	}
+
+	private static void print(String name, long time, long[] gc, int runs) {
+		System.out.println(String.format("%-17s %8.1f ms per read, %d collections (%d ms)", name, time / 1e6 / runs,
+						                 gc[0], gc[1]));
+	}
+
+	/**
+	 * Get the number of collections and the time spent collecting so far
+	 */
+	private static long[] gc() {
+		long[] gc = new long[2];
+
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gc[0] += Math.max(0, bean.getCollectionCount());
+			gc[1] += Math.max(0, bean.getCollectionTime());
+		}
+
+		return gc;
+	}
+
+	private static long[] delta(long[] before) {
+		long[] after = gc();
+
+		return new long[] { after[0] - before[0], after[1] - before[1] };
+	}
+
+	/**
+	 * Wines, their labels and vintages, as returned by a SELECT query
+	 */
+	private static byte[] select(int rows) throws Exception {
+		ValueFactory factory = ValueFactoryImpl.getInstance();
+		List<BindingSet> bindingSets = Lists.newArrayList();
+
+		for (int i = 0; i < rows; i++) {
+			MapBindingSet row = new MapBindingSet(3);
+			row.addBinding("wine", factory.createURI("http://example.org/wine#wine" + i));
+			row.addBinding("label", factory.createLiteral("Wine " + (i % 1000), "en"));
+			row.addBinding("year", factory.createLiteral(1950 + i % 60));
+			bindingSets.add(row);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(Lists.newArrayList("wine", "label", "year"), bindingSets),
+						    TupleQueryResultFormat.JSON, out);
+
+		return out.toByteArray();
+	}
+}
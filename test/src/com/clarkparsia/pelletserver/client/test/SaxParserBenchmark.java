@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.io.StringReader;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import com.clarkparsia.openrdf.query.results.SparqlXmlResultSetParser;
+import com.clarkparsia.pelletserver.client.utils.SaxUtils;
+
+/**
+ * Compares creating a SAX parser for every document with reusing the parser of the thread through {@link SaxUtils},
+ * on the small SPARQL/XML documents returned by most service calls.<br>
+ * Usage: {@code SaxParserBenchmark [rows] [documents]}
+ */
+public class SaxParserBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int documents = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+		String document = document(rows);
+
+		System.out.println(documents + " documents of " + rows + " rows (" + document.length() + " chars)");
+
+		for (int round = 0; round < 2; round++) {
+			// the first round warms up
+			long start = System.nanoTime();
+
+			for (int i = 0; i < documents; i++) {
+				SparqlXmlResultSetParser handler = new SparqlXmlResultSetParser();
+				XMLReader reader = SaxUtils.newReader();
+				reader.setContentHandler(handler);
+				reader.parse(new InputSource(new StringReader(document)));
+			}
+
+			long created = System.nanoTime() - start;
+			start = System.nanoTime();
+
+			for (int i = 0; i < documents; i++) {
+				SaxUtils.parse(new InputSource(new StringReader(document)), new SparqlXmlResultSetParser());
+			}
+
+			long reused = System.nanoTime() - start;
+
+			if (round > 0) {
+				System.out.println(String.format("%-24s %8.2f us/document", "New parser per document", created / 1e3
+								                                                                           / documents));
+				System.out.println(String.format("%-24s %8.2f us/document (x%.2f)", "Reused parser", reused / 1e3
+								                                                                     / documents,
+								                 (double) created / reused));
+			}
+		}
+	}
+
+	private static String document(int rows) {
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\"?>\n"
+			+ "<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">\n"
+			+ "<head><variable name=\"s\"/><variable name=\"label\"/></head>\n<results>\n");
+
+		for (int i = 0; i < rows; i++) {
+			document.append("<result><binding name=\"s\"><uri>http://example.org/wine#Wine").append(i).append(
+				"</uri></binding><binding name=\"label\"><literal xml:lang=\"en\">Wine ").append(i).append(
+				"</literal></binding></result>\n");
+		}
+
+		return document.append("</results>\n</sparql>").toString();
+	}
+}
@@ -11,13 +11,18 @@
 
 package com.clarkparsia.pelletserver.client.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import junit.framework.JUnit4TestAdapter;
 
@@ -25,16 +30,25 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.openrdf.model.Graph;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.StatementImpl;
 import org.openrdf.model.impl.URIImpl;
 import org.openrdf.model.vocabulary.RDFS;
 import org.openrdf.query.TupleQueryResult;
+import org.openrdf.rio.helpers.StatementCollector;
 
+import com.clarkparsia.pelletserver.client.BatchCallback;
 import com.clarkparsia.pelletserver.client.Callback;
 import com.clarkparsia.pelletserver.client.KBPelletService;
 import com.clarkparsia.pelletserver.client.KnowledgeBase;
 import com.clarkparsia.pelletserver.client.PelletClientException;
 import com.clarkparsia.pelletserver.client.PelletServer;
 import com.clarkparsia.pelletserver.client.PelletService;
+import com.clarkparsia.pelletserver.client.Row;
+import com.clarkparsia.pelletserver.client.RowMapper;
+import com.clarkparsia.pelletserver.client.index.ColumnarResult;
+import com.clarkparsia.pelletserver.client.index.Realization;
+import com.clarkparsia.pelletserver.client.index.Taxonomy;
 import com.clarkparsia.pelletserver.client.services.Classify;
 import com.clarkparsia.pelletserver.client.services.Consistency;
 import com.clarkparsia.pelletserver.client.services.Explain;
@@ -44,6 +58,11 @@ import com.clarkparsia.pelletserver.client.services.Query;
 import com.clarkparsia.pelletserver.client.services.Realize;
 import com.clarkparsia.pelletserver.client.services.Search;
 import com.clarkparsia.pelletserver.client.services.Search.SearchResult;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 
 
 /**
@@ -76,6 +95,15 @@ public class ServiceTests {
 		assertNotNull(g);
 		assertFalse(g.size() == 0);
 
+		// Handler
+		List<Statement> statements = Lists.newArrayList();
+		classify.classify(new StatementCollector(statements));
+		assertEquals(g.size(), statements.size());
+
+		// Taxonomy
+		Taxonomy taxonomy = classify.taxonomy();
+		assertTrue(taxonomy.size() > 0);
+
 		// Callback
 		classify.classify(new TestCallback<Graph>());
 	}
@@ -92,6 +120,11 @@ public class ServiceTests {
 
 		// Callback
 		consistency.consistency(new TestCallback<Boolean>());
+
+		// Bulk
+		Map<KnowledgeBase, Boolean> results = Consistency.consistency(Arrays.asList(wine, galen), 2);
+		assertTrue(results.get(wine));
+		assertNotNull(results.get(galen));
 	}
 
 	@Test
@@ -105,6 +138,15 @@ public class ServiceTests {
 		assertNotNull(g);
 		assertFalse(g.size() == 0);
 
+		// Handler
+		List<Statement> statements = Lists.newArrayList();
+		realize.realize(new StatementCollector(statements));
+		assertEquals(g.size(), statements.size());
+
+		// Realization
+		Realization realization = realize.realization(wine.getService(Classify.class).taxonomy());
+		assertTrue(realization.getIndividualCount() > 0);
+
 		// Callback
 		realize.realize(new TestCallback<Graph>());
 	}
@@ -140,7 +182,7 @@ public class ServiceTests {
 	}
 
 	@Test
-	public void query() throws PelletClientException {
+	public void query() throws Exception {
 
 		String selectQuery = "SELECT * where { ?s <http://www.w3.org/2000/01/rdf-schema#subClassOf> ?o . }";
 		String constructQuery = "CONSTRUCT {?s <http://www.w3.org/2000/01/rdf-schema#subClassOf> ?o} where { ?s <http://www.w3.org/2000/01/rdf-schema#subClassOf> ?o . }";
@@ -158,6 +200,30 @@ public class ServiceTests {
 		assertNotNull(t);
 		assertFalse(t.getBindingNames().size() == 0);
 
+		// Columnar
+		ColumnarResult columns = select.selectColumnar(selectQuery);
+		assertEquals(2, columns.getBindingNames().size());
+		assertTrue(columns.size() > 0);
+
+		// Paged
+		TupleQueryResult paged = select.selectPaged(selectQuery, 10);
+		int pagedRows = 0;
+
+		while (paged.hasNext()) {
+			paged.next();
+			pagedRows++;
+		}
+
+		assertEquals(columns.size(), pagedRows);
+
+		// Mapped rows
+		List<String> subjects = select.query(selectQuery, new RowMapper<String>() {
+			public String map(Row row) {
+				return row.isURI(0) ? row.getString(0) : null;
+			}
+		});
+		assertFalse(subjects.isEmpty());
+
 		// Callback
 		select.query(selectQuery, new TestCallback<TupleQueryResult>());
 		select.query(selectQuery, null, null, new TestCallback<TupleQueryResult>());
@@ -175,6 +241,11 @@ public class ServiceTests {
 		assertNotNull(g);
 		assertFalse(g.size() == 0);
 
+		// Handler
+		List<Statement> statements = Lists.newArrayList();
+		construct.query(constructQuery, new StatementCollector(statements));
+		assertEquals(g.size(), statements.size());
+
 		// Callback
 		construct.query(constructQuery, new TestCallback<Graph>());
 		construct.query(constructQuery, null, null, new TestCallback<Graph>());
@@ -233,6 +304,29 @@ public class ServiceTests {
 		explain.inconsistent(new FailTestCallback<Graph>());
 		explain.unsat(sub, new FailTestCallback<Graph>());
 
+		// Batch, with a failure isolated to its entailment
+		Statement subclass = new StatementImpl(sub, RDFS.SUBCLASSOF, sup);
+		Statement unsat = new StatementImpl(sub, RDFS.SUBCLASSOF, new URIImpl("http://www.w3.org/2002/07/owl#Nothing"));
+		Map<Statement, PelletClientException> failures = Maps.newHashMap();
+		Map<Statement, Graph> explanations = explain.explainAll(Arrays.asList(subclass, unsat), 2, failures);
+		assertFalse(explanations.get(subclass).isEmpty());
+		assertTrue(failures.containsKey(unsat));
+
+		// Unsatisfiable classes, from the classification
+		final List<Resource> explained = Lists.newArrayList();
+		Set<Resource> unsatisfiable = explain.unsatisfiable(2, new BatchCallback<Resource, Graph>() {
+			public synchronized void success(Resource cl, Graph explanation) {
+				assertFalse(explanation.isEmpty());
+				explained.add(cl);
+			}
+
+			public void failure(Resource cl, PelletClientException exception) {
+				fail("Unsatisfiable class " + cl + " not explained: " + exception);
+			}
+		});
+		assertFalse(unsatisfiable.contains(sub));
+		assertEquals(unsatisfiable, Sets.newHashSet(explained));
+
 	}
 
 	@Test
@@ -248,6 +342,17 @@ public class ServiceTests {
 
 		// Callback
 		search.search("galen", new TestCallback<Collection<SearchResult>>());
+
+		// Top results, of one KB and of several KBs
+		List<SearchResult> top = search.search("galen", 3);
+		assertTrue(top.size() <= 3 && !top.isEmpty());
+		assertTrue(top.get(0).getScore() >= top.get(top.size() - 1).getScore());
+
+		Multimap<String, PelletClientException> failures = ArrayListMultimap.create();
+		Map<String, List<SearchResult>> results = Search.search(Arrays.asList(wine, galen), Arrays.asList("galen", 
+						"wine"), 5, 4, failures);
+		assertEquals(Arrays.asList("galen", "wine"), Lists.newArrayList(results.keySet()));
+		assertTrue(results.get("galen").get(0).getScore() >= top.get(0).getScore());
 	}
 
 	// TODO probably implement other way to see if thread fails (it can fail silently or similar, so use Future or
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.openrdf.model.Graph;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.GraphImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+
+import com.clarkparsia.pelletserver.client.index.Taxonomy;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Compares subsumption checks answered by walking the {@code rdfs:subClassOf} statements of a classification
+ * {@link Graph} with the same checks answered by a {@link Taxonomy}.<br>
+ * Usage: {@code TaxonomyBenchmark [classes] [checks]}
+ */
+public class TaxonomyBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int classes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int checks = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		ValueFactory factory = ValueFactoryImpl.getInstance();
+		List<URI> uris = Lists.newArrayList();
+		Graph graph = new GraphImpl();
+
+		for (int i = 0; i < classes; i++) {
+			uris.add(factory.createURI("http://example.org/wine#Wine" + i));
+
+			if (i > 0) {
+				graph.add(uris.get(i), RDFS.SUBCLASSOF, uris.get((i - 1) / 2));
+			}
+		}
+
+		Random random = new Random(42);
+		int[] subs = new int[checks];
+		int[] sups = new int[checks];
+
+		for (int i = 0; i < checks; i++) {
+			subs[i] = random.nextInt(classes);
+			sups[i] = random.nextInt(classes);
+		}
+
+		System.out.println(checks + " subsumption checks over " + classes + " classes");
+
+		long start = System.nanoTime();
+		int graphHits = 0;
+
+		for (int i = 0; i < checks; i++) {
+			if (isSubClassOf(graph, uris.get(subs[i]), uris.get(sups[i]))) {
+				graphHits++;
+			}
+		}
+
+		long graphTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		Taxonomy taxonomy = new Taxonomy(graph);
+		long buildTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		int taxonomyHits = 0;
+
+		for (int i = 0; i < checks; i++) {
+			if (taxonomy.isSubClassOf(uris.get(subs[i]), uris.get(sups[i]))) {
+				taxonomyHits++;
+			}
+		}
+
+		long taxonomyTime = System.nanoTime() - start;
+
+		if (graphHits != taxonomyHits) {
+			throw new IllegalStateException(graphHits + " != " + taxonomyHits);
+		}
+
+		System.out.println(String.format("%-20s %8.1f ms", "Graph", graphTime / 1e6));
+		System.out.println(String.format("%-20s %8.1f ms (x%.1f, built in %.1f ms)", "Taxonomy", taxonomyTime / 1e6,
+						                 (double) graphTime / taxonomyTime, buildTime / 1e6));
+	}
+
+	/**
+	 * Walk the superclasses of {@code sub} in the graph, as an application without an index would
+	 */
+	private static boolean isSubClassOf(Graph graph, Resource sub, Resource sup) {
+		Set<Resource> visited = Sets.newHashSet();
+		List<Resource> stack = Lists.newArrayList(sub);
+
+		while (!stack.isEmpty()) {
+			Resource c = stack.remove(stack.size() - 1);
+
+			if (c.equals(sup)) {
+				return true;
+			}
+
+			if (visited.add(c)) {
+				Iterator<Statement> it = graph.match(c, RDFS.SUBCLASSOF, null);
+
+				while (it.hasNext()) {
+					Value parent = it.next().getObject();
+
+					if (parent instanceof Resource) {
+						stack.add((Resource) parent);
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2010 Clark & Parsia, LLC. <http://www.clarkparsia.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.clarkparsia.pelletserver.client.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.impl.TupleQueryResultImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.rio.helpers.StatementCollector;
+
+import com.clarkparsia.pelletserver.client.utils.OpenRdfUtils;
+import com.clarkparsia.pelletserver.client.utils.ParallelNTriplesParser;
+import com.clarkparsia.pelletserver.client.utils.ValueDictionary;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the heap retained by service results parsed with and without a {@link ValueDictionary}: a number of
+ * classification graphs and query results over the same classes are parsed and held, as by an application caching
+ * them, and the heap used after a full collection is reported.<br>
+ * Usage: {@code ValueDictionaryBenchmark [classes] [responses]}
+ */
+public class ValueDictionaryBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int classes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int responses = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+		byte[] classification = classification(classes);
+		byte[] select = select(classes);
+
+		System.out.println(responses + " classification graphs and " + responses + " SELECT results over " + classes
+						   + " classes");
+
+		long before = usedHeap();
+		List<Object> results = parse(classification, select, responses);
+		long plain = usedHeap() - before;
+		results.clear();
+
+		ValueDictionary dictionary = new ValueDictionary(1 << 20);
+		OpenRdfUtils.setValueFactory(dictionary);
+
+		try {
+			before = usedHeap();
+			results = parse(classification, select, responses);
+			long interned = usedHeap() - before;
+
+			System.out.println(String.format("%-20s %8.1f MB", "ValueFactoryImpl", plain / (1024.0 * 1024)));
+			System.out.println(String.format("%-20s %8.1f MB (x%.2f, %d values interned)", "ValueDictionary",
+							                 interned / (1024.0 * 1024), (double) plain / interned, dictionary.size()));
+		}
+		finally {
+			OpenRdfUtils.setValueFactory(null);
+		}
+
+		// keep the results reachable until the heap is measured
+		results.clear();
+	}
+
+	private static List<Object> parse(byte[] classification, byte[] select, int responses) throws Exception {
+		List<Object> results = Lists.newArrayList();
+
+		for (int i = 0; i < responses; i++) {
+			List<Statement> statements = Lists.newArrayList();
+			new ParallelNTriplesParser(1).parse(new ByteArrayInputStream(classification), new StatementCollector(
+							statements));
+			results.add(statements);
+
+			TupleQueryResult result = OpenRdfUtils.createResultSetFromSparqlJSONStream(new ByteArrayInputStream(select));
+			List<BindingSet> rows = Lists.newArrayList();
+
+			while (result.hasNext()) {
+				rows.add(result.next());
+			}
+
+			results.add(rows);
+		}
+
+		return results;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * A class hierarchy with labels, as returned by Classify
+	 */
+	private static byte[] classification(int classes) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for (int i = 0; i < classes; i++) {
+			String subject = "<http://example.org/wine#Wine" + i + ">";
+
+			out.write((subject + " <http://www.w3.org/2000/01/rdf-schema#subClassOf> <http://example.org/wine#Wine"
+					   + (i / 2) + "> .\n").getBytes("UTF-8"));
+			out.write((subject + " <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+					   + "<http://www.w3.org/2002/07/owl#Class> .\n").getBytes("UTF-8"));
+			out.write((subject + " <http://www.w3.org/2000/01/rdf-schema#label> \"Wine " + i + "\"@en .\n")
+							.getBytes("UTF-8"));
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * The classes and their labels, as returned by a SELECT query
+	 */
+	private static byte[] select(int classes) throws Exception {
+		ValueFactory factory = ValueFactoryImpl.getInstance();
+		List<BindingSet> rows = Lists.newArrayList();
+
+		for (int i = 0; i < classes; i++) {
+			MapBindingSet row = new MapBindingSet(2);
+			row.addBinding("c", factory.createURI("http://example.org/wine#Wine" + i));
+			row.addBinding("label", factory.createLiteral("Wine " + i, "en"));
+			rows.add(row);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryResultIO.write(new TupleQueryResultImpl(Lists.newArrayList("c", "label"), rows),
+						    TupleQueryResultFormat.JSON, out);
+
+		return out.toByteArray();
+	}
+}